@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import model.data.DataResource;
+import model.data.type.GeoJsonDataType;
+import model.data.type.TextDataType;
+import model.job.result.type.DataResult;
+import model.status.StatusUpdate;
+
+/**
+ * Measures processing the result of a User Service into a Data Result and the Ingest Job sent on the message bus, for
+ * text, GeoJSON and DataResource results of increasing size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutionResultBenchmark {
+	@Param({ "text", "geojson", "dataresource" })
+	public String resultType;
+
+	/**
+	 * Approximate size of the result, in bytes.
+	 */
+	@Param({ "1024", "65536", "1048576" })
+	public int resultSize;
+
+	private HandlerFixture fixture;
+	private String outputType;
+	private ResponseEntity<String> response;
+
+	@Setup
+	public void setup() throws IOException {
+		fixture = new HandlerFixture("POST", new byte[0]);
+		String body;
+		if ("geojson".equals(resultType)) {
+			outputType = GeoJsonDataType.class.getSimpleName();
+			body = geoJson(resultSize);
+		} else if ("dataresource".equals(resultType)) {
+			outputType = TextDataType.class.getSimpleName();
+			DataResource data = new DataResource();
+			data.dataId = "benchmark-data";
+			TextDataType text = new TextDataType();
+			text.content = HandlerFixture.text(resultSize);
+			data.dataType = text;
+			body = fixture.getSerialization().write(data);
+		} else {
+			outputType = TextDataType.class.getSimpleName();
+			body = HandlerFixture.text(resultSize);
+		}
+		response = new ResponseEntity<>(body, HttpStatus.OK);
+	}
+
+	@Benchmark
+	public DataResult processExecutionResult() throws IOException, InterruptedException {
+		return fixture.getHandler().processExecutionResult(fixture.getService(), outputType, StatusUpdate.STATUS_SUCCESS, response,
+				"benchmark-data");
+	}
+
+	/**
+	 * @return A FeatureCollection of point Features of about the given size in bytes
+	 */
+	private static String geoJson(int size) {
+		StringBuilder builder = new StringBuilder(size + 128).append("{\"type\":\"FeatureCollection\",\"features\":[");
+		for (int i = 0; builder.length() < size; i++) {
+			builder.append(i == 0 ? "" : ",").append("{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[")
+					.append(i % 180).append(".5,").append(i % 90).append(".25]},\"properties\":{\"id\":").append(i).append("}}");
+		}
+		return builder.append("]}").toString();
+	}
+}
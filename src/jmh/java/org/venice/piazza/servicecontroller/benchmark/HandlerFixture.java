@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
+import org.venice.piazza.servicecontroller.messaging.MessageOutbox;
+import org.venice.piazza.servicecontroller.messaging.handlers.ExecuteServiceHandler;
+import org.venice.piazza.servicecontroller.result.FileSystemBlobStore;
+import org.venice.piazza.servicecontroller.result.ResultBufferFactory;
+import org.venice.piazza.servicecontroller.result.ResultOffloader;
+import org.venice.piazza.servicecontroller.util.JsonSerialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import model.job.metadata.ResourceMetadata;
+import model.logger.AuditElement;
+import model.logger.Severity;
+import model.service.metadata.Service;
+import util.PiazzaLogger;
+import util.UUIDFactory;
+
+/**
+ * Builds an ExecuteServiceHandler wired to in-process stand-ins for the database, the User Service and the message bus,
+ * so that benchmarks measure only the work done by the ServiceController itself.
+ */
+final class HandlerFixture {
+	static final String SERVICE_ID = "benchmark-service";
+	static final String SERVICE_URL = "http://localhost:8080/benchmark/service";
+
+	private final Service service = new Service();
+	private final JsonSerialization serialization = new JsonSerialization();
+	private final ExecuteServiceHandler handler = new ExecuteServiceHandler();
+	private final CountingRabbitTemplate rabbitTemplate = new CountingRabbitTemplate();
+
+	/**
+	 * @param method
+	 *            The HTTP method of the Service
+	 * @param responseBody
+	 *            The body returned by the stand-in User Service for every request
+	 */
+	HandlerFixture(String method, byte[] responseBody) {
+		ResourceMetadata metadata = new ResourceMetadata();
+		metadata.name = "Benchmark Service";
+		metadata.setCreatedBy("benchmark");
+		service.setResourceMetadata(metadata);
+		service.setServiceId(SERVICE_ID);
+		service.setUrl(SERVICE_URL);
+		service.setMethod(method);
+
+		ReflectionTestUtils.setField(serialization, "mapper", new ObjectMapper());
+		serialization.initialize();
+
+		ResultBufferFactory resultBufferFactory = new ResultBufferFactory();
+		ReflectionTestUtils.setField(resultBufferFactory, "MEMORY_THRESHOLD_BYTES", 1048576);
+		ReflectionTestUtils.setField(resultBufferFactory, "BUFFER_DIRECTORY", "");
+		ReflectionTestUtils.setField(resultBufferFactory, "SNIFF_LOOKAHEAD_BYTES", 65536);
+		ReflectionTestUtils.setField(resultBufferFactory, "mapper", serialization.getMapper());
+
+		// Offloading is disabled, so that results are measured being sent inline
+		ResultOffloader resultOffloader = new ResultOffloader();
+		ReflectionTestUtils.setField(resultOffloader, "OFFLOAD_THRESHOLD_BYTES", 0);
+		ReflectionTestUtils.setField(resultOffloader, "blobStore", new FileSystemBlobStore());
+
+		ReflectionTestUtils.setField(handler, "accessor", new StaticDatabaseAccessor(service));
+		ReflectionTestUtils.setField(handler, "logger", new SilentLogger());
+		ReflectionTestUtils.setField(handler, "uuidFactory", new UUIDFactory());
+		ReflectionTestUtils.setField(handler, "template", stubbedRestTemplate(responseBody));
+		ReflectionTestUtils.setField(handler, "requestJobQueue", new Queue("benchmark"));
+		// The outbox is disabled, so that ingest messages are sent directly
+		MessageOutbox outbox = new MessageOutbox();
+		ReflectionTestUtils.setField(outbox, "ENABLED", false);
+		ReflectionTestUtils.setField(outbox, "rabbitTemplate", rabbitTemplate);
+		ReflectionTestUtils.setField(handler, "outbox", outbox);
+		ReflectionTestUtils.setField(handler, "resultBufferFactory", resultBufferFactory);
+		ReflectionTestUtils.setField(handler, "resultOffloader", resultOffloader);
+		ReflectionTestUtils.setField(handler, "serialization", serialization);
+		ReflectionTestUtils.setField(handler, "SPACE", "benchmark");
+	}
+
+	ExecuteServiceHandler getHandler() {
+		return handler;
+	}
+
+	Service getService() {
+		return service;
+	}
+
+	JsonSerialization getSerialization() {
+		return serialization;
+	}
+
+	/**
+	 * @return Number of bytes sent to the stand-in message bus so far
+	 */
+	long getBytesSent() {
+		return rabbitTemplate.bytesSent;
+	}
+
+	/**
+	 * A RestTemplate whose requests never leave the process, and always receive the same response.
+	 */
+	private static RestTemplate stubbedRestTemplate(byte[] responseBody) {
+		RestTemplate template = new RestTemplate();
+		template.setRequestFactory((uri, httpMethod) -> {
+			MockClientHttpRequest request = new MockClientHttpRequest(httpMethod, uri);
+			MockClientHttpResponse response = new MockClientHttpResponse(responseBody, HttpStatus.OK);
+			response.getHeaders().setContentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8));
+			request.setResponse(response);
+			return request;
+		});
+		return template;
+	}
+
+	private static class StaticDatabaseAccessor extends DatabaseAccessor {
+		private final Service service;
+
+		StaticDatabaseAccessor(Service service) {
+			this.service = service;
+		}
+
+		@Override
+		public Service getServiceById(String serviceId) {
+			return service;
+		}
+
+		@Override
+		public Service getServiceById(String serviceId, boolean useCache) {
+			return service;
+		}
+	}
+
+	private static class SilentLogger extends PiazzaLogger {
+		@Override
+		public void log(String message, Severity severity) {
+			// Logging is not part of the measured work
+		}
+
+		@Override
+		public void log(String message, Severity severity, AuditElement auditElement) {
+			// Logging is not part of the measured work
+		}
+	}
+
+	/**
+	 * Discards messages, counting their size so that the work of producing them cannot be eliminated.
+	 */
+	private static class CountingRabbitTemplate extends RabbitTemplate {
+		private long bytesSent;
+
+		@Override
+		public void convertAndSend(String exchange, String routingKey, Object message) throws AmqpException {
+			bytesSent += String.valueOf(message).length();
+		}
+	}
+
+	/**
+	 * @return A String of the given length in bytes, made of repeating ASCII text
+	 */
+	static String text(int size) {
+		return String.join("", Collections.nCopies(size / 16 + 1, "Lorem ipsum dolo")).substring(0, size);
+	}
+}
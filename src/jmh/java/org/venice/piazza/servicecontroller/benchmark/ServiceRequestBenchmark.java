@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+
+import model.data.DataType;
+import model.data.type.BodyDataType;
+import model.data.type.TextDataType;
+import model.data.type.URLParameterDataType;
+import model.service.metadata.ExecuteServiceData;
+
+/**
+ * Measures preparing and sending the request to a User Service: resolving the Service, building the URL from
+ * URLParameterDataType inputs, and marshalling the remaining inputs into the request body. The User Service responds
+ * in-process, so network time is excluded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceRequestBenchmark {
+	/**
+	 * The kind of inputs of the execution: URL parameters on a GET, a raw Body on a POST, or Data Types marshalled as
+	 * JSON on a POST.
+	 */
+	@Param({ "url", "body", "json" })
+	public String inputs;
+
+	/**
+	 * Number of inputs of the execution.
+	 */
+	@Param({ "1", "10", "50" })
+	public int inputCount;
+
+	private HandlerFixture fixture;
+	private ExecuteServiceData data;
+
+	@Setup
+	public void setup() {
+		fixture = new HandlerFixture("url".equals(inputs) ? "GET" : "POST", "OK".getBytes(StandardCharsets.UTF_8));
+
+		Map<String, DataType> dataInputs = new HashMap<>();
+		if ("body".equals(inputs)) {
+			BodyDataType body = new BodyDataType();
+			body.content = HandlerFixture.text(inputCount * 64);
+			body.mimeType = "application/json";
+			dataInputs.put("body", body);
+		} else {
+			for (int i = 0; i < inputCount; i++) {
+				if ("url".equals(inputs)) {
+					URLParameterDataType parameter = new URLParameterDataType();
+					parameter.content = "value " + i;
+					dataInputs.put("parameter" + i, parameter);
+				} else {
+					TextDataType text = new TextDataType();
+					text.content = HandlerFixture.text(64);
+					dataInputs.put("input" + i, text);
+				}
+			}
+		}
+		data = new ExecuteServiceData();
+		data.setServiceId(HandlerFixture.SERVICE_ID);
+		data.setDataInputs(dataInputs);
+	}
+
+	@Benchmark
+	public ResponseEntity<String> executeService() throws InterruptedException {
+		return fixture.getHandler().handle(data);
+	}
+}
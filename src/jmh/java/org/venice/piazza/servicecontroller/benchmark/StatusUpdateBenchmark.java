@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.venice.piazza.servicecontroller.util.JsonSerialization;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import model.job.result.type.DataResult;
+import model.job.result.type.ErrorResult;
+import model.status.StatusUpdate;
+
+/**
+ * Measures serialization of the Status Updates sent for every Job, through the shared serialization component, against
+ * a mapper constructed per message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatusUpdateBenchmark {
+	private JsonSerialization serialization;
+	private StatusUpdate running;
+	private StatusUpdate success;
+	private StatusUpdate error;
+
+	@Setup
+	public void setup() {
+		serialization = new JsonSerialization();
+		ReflectionTestUtils.setField(serialization, "mapper", new ObjectMapper());
+		serialization.initialize();
+
+		running = new StatusUpdate(StatusUpdate.STATUS_RUNNING);
+		running.setJobId("benchmark-job");
+		success = new StatusUpdate(StatusUpdate.STATUS_SUCCESS);
+		success.setJobId("benchmark-job");
+		success.setResult(new DataResult("benchmark-data"));
+		error = new StatusUpdate(StatusUpdate.STATUS_ERROR);
+		error.setJobId("benchmark-job");
+		error.setResult(new ErrorResult("Service returned an error", "The User Service could not be reached."));
+	}
+
+	@Benchmark
+	public String running() throws JsonProcessingException {
+		return serialization.write(running);
+	}
+
+	@Benchmark
+	public String success() throws JsonProcessingException {
+		return serialization.write(success);
+	}
+
+	@Benchmark
+	public String error() throws JsonProcessingException {
+		return serialization.write(error);
+	}
+
+	/**
+	 * Baseline of constructing a mapper per message, as was done before serialization was shared.
+	 */
+	@Benchmark
+	public String successWithNewMapper() throws JsonProcessingException {
+		return new ObjectMapper().writeValueAsString(success);
+	}
+}
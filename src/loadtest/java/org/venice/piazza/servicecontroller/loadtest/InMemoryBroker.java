@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.loadtest;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.RabbitExceptionTranslator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
+
+import model.status.StatusUpdate;
+
+/**
+ * Stand-in for the message bus and the Job Manager behind it. Messages sent by the Service Controller never leave the
+ * process. Status Updates are read as the Job Manager would, and the time from submitting a Job to receiving its final
+ * Status is recorded as the latency of that Job.
+ */
+class InMemoryBroker extends RabbitTemplate {
+	private final String updateJobsRoutingKey;
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final Map<String, Long> submittedOn = new ConcurrentHashMap<>();
+	private final Map<String, AtomicLong> messageCounts = new ConcurrentHashMap<>();
+	private final Map<String, AtomicLong> finalStatusCounts = new ConcurrentHashMap<>();
+	private final AtomicLong unmatchedFinalStatuses = new AtomicLong();
+	private final AtomicInteger completedCount = new AtomicInteger();
+	private final long[] latencies;
+	private final CountDownLatch completion;
+	private volatile long lastCompletedOn;
+
+	/**
+	 * @param updateJobsRoutingKey
+	 *            Routing key that Status Updates are sent with
+	 * @param jobCount
+	 *            Number of Jobs that will be submitted
+	 */
+	InMemoryBroker(String updateJobsRoutingKey, int jobCount) {
+		this.updateJobsRoutingKey = updateJobsRoutingKey;
+		this.latencies = new long[jobCount];
+		this.completion = new CountDownLatch(jobCount);
+	}
+
+	/**
+	 * Records that a Job is about to be delivered to the Service Controller.
+	 */
+	void submitted(String jobId) {
+		submittedOn.put(jobId, System.nanoTime());
+	}
+
+	@Override
+	public void convertAndSend(String exchange, String routingKey, Object message) throws AmqpException {
+		messageCounts.computeIfAbsent(routingKey, key -> new AtomicLong()).incrementAndGet();
+		if (updateJobsRoutingKey.equals(routingKey)) {
+			receiveStatusUpdate(String.valueOf(message));
+		}
+	}
+
+	@Override
+	public void convertAndSend(String exchange, String routingKey, Object message, MessagePostProcessor messagePostProcessor)
+			throws AmqpException {
+		convertAndSend(exchange, routingKey, message);
+	}
+
+	/**
+	 * Runs the callback against a channel on which publishes are delivered as by
+	 * {@link #convertAndSend(String, String, Object)}, and confirms are always successful.
+	 */
+	@Override
+	public <T> T execute(ChannelCallback<T> action) throws AmqpException {
+		Channel channel = (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[] { Channel.class },
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "basicPublish":
+						convertAndSend((String) args[0], (String) args[1], new String((byte[]) args[args.length - 1], StandardCharsets.UTF_8));
+						return null;
+					case "waitForConfirms":
+						return true;
+					default:
+						return null;
+					}
+				});
+		try {
+			return action.doInRabbit(channel);
+		} catch (Exception exception) {
+			throw RabbitExceptionTranslator.convertRabbitAccessException(exception);
+		}
+	}
+
+	private void receiveStatusUpdate(String message) {
+		JsonNode statusUpdate;
+		try {
+			statusUpdate = mapper.readTree(message);
+		} catch (IOException exception) {
+			throw new AmqpException("Status Update could not be read: " + message, exception);
+		}
+		String status = statusUpdate.path("status").asText(null);
+		if (!isFinal(status)) {
+			return;
+		}
+		finalStatusCounts.computeIfAbsent(status, key -> new AtomicLong()).incrementAndGet();
+		Long startedOn = submittedOn.remove(statusUpdate.path("jobId").asText(""));
+		if (startedOn == null) {
+			// A final Status that cannot be matched to a Job. The Job will never complete.
+			unmatchedFinalStatuses.incrementAndGet();
+			return;
+		}
+		long now = System.nanoTime();
+		latencies[completedCount.getAndIncrement()] = now - startedOn;
+		lastCompletedOn = now;
+		completion.countDown();
+	}
+
+	private static boolean isFinal(String status) {
+		return StatusUpdate.STATUS_SUCCESS.equals(status) || StatusUpdate.STATUS_ERROR.equals(status)
+				|| StatusUpdate.STATUS_FAIL.equals(status) || StatusUpdate.STATUS_CANCELLED.equals(status);
+	}
+
+	/**
+	 * Waits for every submitted Job to reach a final Status.
+	 * 
+	 * @return True if all Jobs completed before the timeout
+	 */
+	boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+		return completion.await(timeout, unit);
+	}
+
+	int getCompletedCount() {
+		return completedCount.get();
+	}
+
+	long getLastCompletedOn() {
+		return lastCompletedOn;
+	}
+
+	long getUnmatchedFinalStatusCount() {
+		return unmatchedFinalStatuses.get();
+	}
+
+	Map<String, AtomicLong> getMessageCounts() {
+		return messageCounts;
+	}
+
+	Map<String, AtomicLong> getFinalStatusCounts() {
+		return finalStatusCounts;
+	}
+
+	/**
+	 * @return The latencies of all completed Jobs in nanoseconds, in ascending order
+	 */
+	long[] getSortedLatencies() {
+		long[] sorted = Arrays.copyOf(latencies, completedCount.get());
+		Arrays.sort(sorted);
+		return sorted;
+	}
+}
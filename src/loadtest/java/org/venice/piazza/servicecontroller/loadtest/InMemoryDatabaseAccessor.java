@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.loadtest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.joda.time.DateTime;
+import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
+import org.venice.piazza.servicecontroller.data.model.AsyncPollScheduleEntity;
+import org.venice.piazza.servicecontroller.data.model.ServiceJobQueueEntity;
+import org.venice.piazza.servicecontroller.data.model.ServicePollIntervalEntity;
+
+import model.job.Job;
+import model.service.async.AsyncServiceInstance;
+import model.service.metadata.Service;
+import model.service.taskmanaged.ServiceJob;
+
+/**
+ * Stand-in for the Piazza database, holding Services, Jobs, Async Service Instances and Service Queues in memory. Only
+ * the operations used while executing Services are implemented.
+ */
+class InMemoryDatabaseAccessor extends DatabaseAccessor {
+	private final Map<String, Service> services = new ConcurrentHashMap<>();
+	private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+	private final Map<String, AsyncServiceInstance> instances = new ConcurrentHashMap<>();
+	private final Map<String, AsyncPollScheduleEntity> pollSchedules = new ConcurrentHashMap<>();
+	private final Map<String, Map<String, ServiceJob>> serviceJobs = new ConcurrentHashMap<>();
+	private final Map<String, Queue<ServiceJob>> readyServiceJobs = new ConcurrentHashMap<>();
+
+	/**
+	 * Registers a Service, as the Service Controller would on a Register Service Job.
+	 */
+	void addService(Service service) {
+		services.put(service.getServiceId(), service);
+	}
+
+	/**
+	 * Registers a Job, as the Job Manager would before dispatching it to the Service Controller.
+	 */
+	void addJob(Job job) {
+		jobs.put(job.getJobId(), job);
+	}
+
+	/**
+	 * @return The number of Async Service Instances still awaiting completion
+	 */
+	int getInstanceCount() {
+		return instances.size();
+	}
+
+	@Override
+	public Service getServiceById(String serviceId) {
+		return services.get(serviceId);
+	}
+
+	@Override
+	public Service getServiceById(String serviceId, boolean useCache) {
+		return services.get(serviceId);
+	}
+
+	@Override
+	public Job getJobById(String jobId) {
+		return jobs.get(jobId);
+	}
+
+	@Override
+	public Map<String, Job> getJobsById(Collection<String> jobIds) {
+		Map<String, Job> found = new HashMap<>();
+		for (String jobId : jobIds) {
+			Job job = jobs.get(jobId);
+			if (job != null) {
+				found.put(jobId, job);
+			}
+		}
+		return found;
+	}
+
+	@Override
+	public void addAsyncServiceInstance(AsyncServiceInstance instance) {
+		instances.put(instance.getJobId(), instance);
+	}
+
+	@Override
+	public AsyncServiceInstance getInstanceByJobId(String jobId) {
+		return instances.get(jobId);
+	}
+
+	@Override
+	public void updateAsyncServiceInstance(AsyncServiceInstance instance) {
+		instances.replace(instance.getJobId(), instance);
+	}
+
+	@Override
+	public void deleteAsyncServiceInstance(String jobId) {
+		instances.remove(jobId);
+		pollSchedules.remove(jobId);
+	}
+
+	@Override
+	public synchronized List<AsyncPollScheduleEntity> claimDueSchedules(int shardCount, int shard, long leaseMs) {
+		// There is a single Service Controller, owning every shard
+		long now = System.currentTimeMillis();
+		List<AsyncPollScheduleEntity> claimed = new ArrayList<>();
+		for (AsyncPollScheduleEntity schedule : pollSchedules.values()) {
+			if (schedule.getNextPollAt() <= now) {
+				schedule.setNextPollAt(now + leaseMs);
+				claimed.add(schedule);
+			}
+		}
+		return claimed;
+	}
+
+	@Override
+	public void updatePollSchedules(List<AsyncPollScheduleEntity> schedules) {
+		for (AsyncPollScheduleEntity schedule : schedules) {
+			pollSchedules.replace(schedule.getJobId(), schedule);
+		}
+	}
+
+	@Override
+	public List<AsyncServiceInstance> getUnscheduledServiceInstances() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public AsyncPollScheduleEntity getPollSchedule(String jobId) {
+		return pollSchedules.get(jobId);
+	}
+
+	@Override
+	public void savePollSchedule(AsyncPollScheduleEntity schedule) {
+		pollSchedules.put(schedule.getJobId(), schedule);
+	}
+
+	@Override
+	public List<String> heartbeatNode(String nodeId, long timeoutMs) {
+		return Collections.singletonList(nodeId);
+	}
+
+	@Override
+	public void removeNode(String nodeId) {
+		// Nodes are not recorded
+	}
+
+	@Override
+	public ServicePollIntervalEntity getPollIntervals(String serviceId) {
+		// The stub User Service uses the default intervals
+		return null;
+	}
+
+	@Override
+	public boolean isStatusCallbackEnabled(String serviceId) {
+		// The stub User Service is polled
+		return false;
+	}
+
+	@Override
+	public void addJobToServiceQueue(String serviceId, ServiceJob serviceJob) {
+		serviceJobs.computeIfAbsent(serviceId, key -> new ConcurrentHashMap<>()).put(serviceJob.getJobId(), serviceJob);
+		readyServiceJobs.computeIfAbsent(serviceId, key -> new ConcurrentLinkedQueue<>()).add(serviceJob);
+	}
+
+	@Override
+	public int indexServiceJobQueues() {
+		// Every Service Job is queued when added
+		return 0;
+	}
+
+	@Override
+	public ServiceJobQueueEntity getNextJobInServiceQueue(String serviceId) {
+		Queue<ServiceJob> ready = readyServiceJobs.get(serviceId);
+		ServiceJob serviceJob = (ready == null) ? null : ready.poll();
+		if (serviceJob == null) {
+			return null;
+		}
+		serviceJob.setStartedOn(new DateTime());
+		Long timeout = getServiceById(serviceId).getTimeout();
+		ServiceJobQueueEntity entry = new ServiceJobQueueEntity(serviceId, serviceJob.getJobId(), (timeout == null) ? null : timeout * 1000);
+		entry.setStartedOn(serviceJob.getStartedOn().getMillis());
+		return entry;
+	}
+
+	@Override
+	public List<ServiceJobQueueEntity> getNextJobsInServiceQueue(String serviceId, int limit) {
+		List<ServiceJobQueueEntity> entries = new ArrayList<>();
+		ServiceJobQueueEntity entry;
+		while ((entries.size() < limit) && ((entry = getNextJobInServiceQueue(serviceId)) != null)) {
+			entries.add(entry);
+		}
+		return entries;
+	}
+
+	@Override
+	public ServiceJob getServiceJob(String serviceId, String jobId) {
+		Map<String, ServiceJob> queue = serviceJobs.get(serviceId);
+		return (queue == null) ? null : queue.get(jobId);
+	}
+
+	@Override
+	public void removeJobFromServiceQueue(String serviceId, String jobId) {
+		Map<String, ServiceJob> queue = serviceJobs.get(serviceId);
+		ServiceJob removed = (queue == null) ? null : queue.remove(jobId);
+		if (removed != null) {
+			readyServiceJobs.get(serviceId).remove(removed);
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.loadtest;
+
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.springframework.amqp.core.Queue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.http.client.HttpComponentsAsyncClientHttpRequestFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.web.client.AsyncRestTemplate;
+import org.springframework.web.client.RestTemplate;
+import org.venice.piazza.servicecontroller.async.AdaptivePollPolicy;
+import org.venice.piazza.servicecontroller.async.AsyncServiceInstanceScheduler;
+import org.venice.piazza.servicecontroller.async.AsynchronousServiceWorker;
+import org.venice.piazza.servicecontroller.async.PollShardCoordinator;
+import org.venice.piazza.servicecontroller.executor.ExecutorConfiguration;
+import org.venice.piazza.servicecontroller.executor.SupervisedScheduler;
+import org.venice.piazza.servicecontroller.messaging.ConfirmedMessageSender;
+import org.venice.piazza.servicecontroller.messaging.InFlightJobRegistry;
+import org.venice.piazza.servicecontroller.messaging.MessageOutbox;
+import org.venice.piazza.servicecontroller.messaging.ServiceMessageThreadManager;
+import org.venice.piazza.servicecontroller.messaging.ServiceMessageWorker;
+import org.venice.piazza.servicecontroller.messaging.StatusUpdatePublisher;
+import org.venice.piazza.servicecontroller.messaging.handlers.ExecuteServiceHandler;
+import org.venice.piazza.servicecontroller.result.FileSystemBlobStore;
+import org.venice.piazza.servicecontroller.result.ResultBufferFactory;
+import org.venice.piazza.servicecontroller.result.ResultOffloader;
+import org.venice.piazza.servicecontroller.taskmanaged.ServiceJobTimeoutWheel;
+import org.venice.piazza.servicecontroller.taskmanaged.ServiceQueueNotifier;
+import org.venice.piazza.servicecontroller.taskmanaged.ServiceTaskManager;
+import org.venice.piazza.servicecontroller.util.AbortableClientHttpRequestFactory;
+import org.venice.piazza.servicecontroller.util.JsonSerialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import messaging.job.JobMessageFactory;
+
+/**
+ * Application context for the load test. Contains the production components on the Service execution path, configured
+ * from application.properties. The database, message bus, logger and UUID factory are registered as stand-ins by
+ * {@link LoadTestRunner} before the context is refreshed.
+ * <p>
+ * Message listeners are not enabled, so no connection to RabbitMQ is made; Jobs are delivered to the
+ * ServiceMessageThreadManager directly.
+ * </p>
+ */
+@Configuration
+@EnableAsync
+@PropertySource("classpath:application.properties")
+@Import({ ExecutorConfiguration.class, SupervisedScheduler.class, JsonSerialization.class, ResultBufferFactory.class, ResultOffloader.class,
+		FileSystemBlobStore.class, ExecuteServiceHandler.class, ServiceMessageWorker.class, ServiceMessageThreadManager.class,
+		InFlightJobRegistry.class, ConfirmedMessageSender.class, MessageOutbox.class, StatusUpdatePublisher.class, AsynchronousServiceWorker.class, AdaptivePollPolicy.class, PollShardCoordinator.class, AsyncServiceInstanceScheduler.class,
+		ServiceQueueNotifier.class, ServiceJobTimeoutWheel.class, ServiceTaskManager.class })
+public class LoadTestConfiguration {
+	@Value("${http.max.total}")
+	private int httpMaxTotal;
+	@Value("${http.max.route}")
+	private int httpMaxRoute;
+	@Value("${http.request.timeout}")
+	private int httpRequestTimeout;
+	@Value("${SPACE}")
+	private String SPACE; //NOSONAR
+
+	@Bean
+	public static PropertySourcesPlaceholderConfigurer propertySourcesPlaceholderConfigurer() {
+		return new PropertySourcesPlaceholderConfigurer();
+	}
+
+	@Bean
+	public ObjectMapper objectMapper() {
+		// Configured as Spring Boot configures the application's ObjectMapper
+		return Jackson2ObjectMapperBuilder.json().build();
+	}
+
+	@Bean
+	public RestTemplate restTemplate() {
+		return new RestTemplate(clientHttpRequestFactory());
+	}
+
+	@Bean
+	public AbortableClientHttpRequestFactory clientHttpRequestFactory() {
+		AbortableClientHttpRequestFactory factory = new AbortableClientHttpRequestFactory(
+				HttpClientBuilder.create().setMaxConnTotal(httpMaxTotal).setMaxConnPerRoute(httpMaxRoute).build());
+		factory.setReadTimeout(httpRequestTimeout * 1000);
+		factory.setConnectTimeout(httpRequestTimeout * 1000);
+		return factory;
+	}
+
+	@Bean
+	public AsyncRestTemplate asyncRestTemplate() {
+		HttpComponentsAsyncClientHttpRequestFactory factory = new HttpComponentsAsyncClientHttpRequestFactory(
+				HttpAsyncClients.custom().setMaxConnTotal(httpMaxTotal).setMaxConnPerRoute(httpMaxRoute).build());
+		factory.setReadTimeout(httpRequestTimeout * 1000);
+		factory.setConnectTimeout(httpRequestTimeout * 1000);
+		return new AsyncRestTemplate(factory);
+	}
+
+	@Bean(name = "UpdateJobsQueue")
+	public Queue updateJobsQueue() {
+		return new Queue(String.format(JobMessageFactory.TOPIC_TEMPLATE, JobMessageFactory.UPDATE_JOB_TOPIC_NAME, SPACE), true, false,
+				false);
+	}
+
+	@Bean(name = "RequestJobQueue")
+	public Queue requestJobQueue() {
+		return new Queue(String.format(JobMessageFactory.TOPIC_TEMPLATE, JobMessageFactory.REQUEST_JOB_TOPIC_NAME, SPACE), true, false,
+				false);
+	}
+}
@@ -0,0 +1,432 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.loadtest;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.venice.piazza.servicecontroller.async.AsyncServiceInstanceScheduler;
+import org.venice.piazza.servicecontroller.messaging.ServiceMessageThreadManager;
+import org.venice.piazza.servicecontroller.taskmanaged.ServiceTaskManager;
+import org.venice.piazza.servicecontroller.util.JsonSerialization;
+
+import messaging.job.JobMessageFactory;
+import model.data.DataType;
+import model.data.type.BodyDataType;
+import model.data.type.TextDataType;
+import model.job.Job;
+import model.job.metadata.ResourceMetadata;
+import model.job.type.ExecuteServiceJob;
+import model.logger.AuditElement;
+import model.logger.Severity;
+import model.service.metadata.ExecuteServiceData;
+import model.service.metadata.Service;
+import model.status.StatusUpdate;
+import util.PiazzaLogger;
+import util.UUIDFactory;
+
+/**
+ * End-to-end load test of Service execution. Delivers Execute Service Jobs to the ServiceMessageThreadManager, as the
+ * RabbitMQ listener would, and measures throughput, latency from delivery to final Status, and heap usage.
+ * <p>
+ * The Service Controller components are the production ones. The message bus, database and User Service are
+ * in-process stand-ins, so results reflect the Service Controller and not the infrastructure around it. Note that the
+ * stand-ins share the heap, and the CPU, with the components under test.
+ * </p>
+ * <p>
+ * Options are given as --name=value arguments:
+ * <ul>
+ * <li>load.mode: sync, async, taskmanaged or all (default all)</li>
+ * <li>load.jobs: Number of Jobs to execute per mode (default 5000)</li>
+ * <li>load.listeners: Number of threads delivering Jobs, as concurrent listener consumers (default 4)</li>
+ * <li>load.latency.ms: Time the User Service takes to produce a result (default 50)</li>
+ * <li>load.payload.bytes: Size of the User Service result (default 1024)</li>
+ * <li>load.task.workers: Number of external workers serving the Task-Managed queue (default 8)</li>
+ * <li>load.task.batch: Number of Jobs each Task-Managed worker pulls, and reports, at once (default 1)</li>
+ * <li>load.task.wait.seconds: Time each Task-Managed worker waits for a Job when the queue is empty, rather than
+ * sleeping and asking again (default 0)</li>
+ * <li>load.stub.threads: Number of threads serving the stand-in User Service (default 200)</li>
+ * <li>load.timeout.seconds: Time to wait for all Jobs of a mode to complete (default 600)</li>
+ * </ul>
+ * Any other --name=value argument overrides the application property of the same name, for example
+ * --http.client.mode=async or --executor.execution.max.size=64.
+ * </p>
+ */
+public class LoadTestRunner {
+	private static final Logger LOG = LoggerFactory.getLogger(LoadTestRunner.class);
+	private static final String SPACE = "loadtest";
+	private static final long MEGABYTE = 1024L * 1024L;
+
+	private final Map<String, Object> properties;
+	private final int jobCount;
+	private final int listenerCount;
+	private final long latencyMillis;
+	private final int payloadBytes;
+	private final int taskWorkerCount;
+	private final int taskBatchSize;
+	private final int taskWaitSeconds;
+	private final int stubThreadCount;
+	private final long timeoutSeconds;
+
+	LoadTestRunner(Map<String, Object> properties) {
+		this.properties = properties;
+		this.jobCount = Integer.parseInt(option("load.jobs", "5000"));
+		this.listenerCount = Integer.parseInt(option("load.listeners", "4"));
+		this.latencyMillis = Long.parseLong(option("load.latency.ms", "50"));
+		this.payloadBytes = Integer.parseInt(option("load.payload.bytes", "1024"));
+		this.taskWorkerCount = Integer.parseInt(option("load.task.workers", "8"));
+		this.taskBatchSize = Integer.parseInt(option("load.task.batch", "1"));
+		this.taskWaitSeconds = Integer.parseInt(option("load.task.wait.seconds", "0"));
+		this.stubThreadCount = Integer.parseInt(option("load.stub.threads", "200"));
+		this.timeoutSeconds = Long.parseLong(option("load.timeout.seconds", "600"));
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, Object> properties = new HashMap<>();
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (!arg.startsWith("--") || separator < 0) {
+				throw new IllegalArgumentException("Arguments must be given as --name=value: " + arg);
+			}
+			properties.put(arg.substring(2, separator), arg.substring(separator + 1));
+		}
+		LoadTestRunner loadTest = new LoadTestRunner(properties);
+		String mode = loadTest.option("load.mode", "all");
+		boolean completed = true;
+		for (String runMode : "all".equals(mode) ? new String[] { "sync", "async", "taskmanaged" } : mode.split(",")) {
+			completed &= loadTest.run(runMode.trim());
+		}
+		// Pooled HTTP connections and executor threads are not daemons
+		System.exit(completed ? 0 : 1);
+	}
+
+	private String option(String name, String defaultValue) {
+		Object value = properties.get(name);
+		return (value == null) ? defaultValue : value.toString();
+	}
+
+	/**
+	 * Executes all Jobs against a Service of the given mode, and reports the results.
+	 * 
+	 * @return True if all Jobs completed within the timeout
+	 */
+	boolean run(String mode) throws Exception {
+		if (!"sync".equals(mode) && !"async".equals(mode) && !"taskmanaged".equals(mode)) {
+			throw new IllegalArgumentException("Unknown mode " + mode);
+		}
+		StubUserService userService = new StubUserService(latencyMillis, payloadBytes, stubThreadCount);
+		userService.start();
+
+		// Application properties, with any overrides given on the command line
+		Map<String, Object> contextProperties = new HashMap<>();
+		contextProperties.put("SPACE", SPACE);
+		contextProperties.put("workflow.url", userService.getUrl() + StubUserService.WORKFLOW_PATH);
+		contextProperties.put("async.poll.frequency.seconds", "1");
+		contextProperties.put("async.poll.min.interval.seconds", "1");
+		contextProperties.put("async.poll.max.interval.seconds", "4");
+		// There is no database, so the outbox sends messages directly
+		contextProperties.put("outbox.enabled", "false");
+		contextProperties.putAll(properties);
+
+		InMemoryDatabaseAccessor accessor = new InMemoryDatabaseAccessor();
+		InMemoryBroker broker = new InMemoryBroker(
+				String.format(JobMessageFactory.TOPIC_TEMPLATE, JobMessageFactory.UPDATE_JOB_TOPIC_NAME, SPACE), jobCount);
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("loadTest", contextProperties));
+		ConfigurableListableBeanFactory beanFactory = context.getBeanFactory();
+		beanFactory.registerSingleton("databaseAccessor", accessor);
+		beanFactory.registerSingleton("rabbitTemplate", broker);
+		beanFactory.registerSingleton("piazzaLogger", new SilentLogger());
+		beanFactory.registerSingleton("uuidFactory", new UUIDFactory());
+		context.register(LoadTestConfiguration.class);
+		context.refresh();
+
+		HeapSampler heapSampler = new HeapSampler();
+		List<Thread> taskWorkers = new ArrayList<>();
+		try {
+			Service service = createService(mode, userService.getUrl());
+			accessor.addService(service);
+			List<Map.Entry<String, String>> messages = createJobMessages(service.getServiceId(), accessor, context.getBean(JsonSerialization.class));
+			ServiceMessageThreadManager threadManager = context.getBean(ServiceMessageThreadManager.class);
+
+			heapSampler.start();
+			long startedOn = System.nanoTime();
+			if ("taskmanaged".equals(mode)) {
+				ServiceTaskManager taskManager = context.getBean(ServiceTaskManager.class);
+				for (int i = 0; i < taskWorkerCount; i++) {
+					taskWorkers.add(startTaskWorker(taskManager, service.getServiceId(), i));
+				}
+			}
+			List<Thread> listeners = startListeners(messages, broker, threadManager);
+			for (Thread listener : listeners) {
+				listener.join();
+			}
+			boolean completed = broker.awaitCompletion(timeoutSeconds, TimeUnit.SECONDS);
+			heapSampler.stop();
+
+			report(mode, context.getEnvironment().getProperty("http.client.mode"), broker, accessor, startedOn, heapSampler);
+			return completed;
+		} finally {
+			heapSampler.stop();
+			for (Thread taskWorker : taskWorkers) {
+				taskWorker.interrupt();
+			}
+			context.getBean(AsyncServiceInstanceScheduler.class).stopPolling();
+			context.close();
+			userService.stop();
+		}
+	}
+
+	private Service createService(String mode, String userServiceUrl) {
+		ResourceMetadata metadata = new ResourceMetadata();
+		metadata.name = "Load Test Service";
+		metadata.setCreatedBy(SPACE);
+		Service service = new Service();
+		service.setServiceId(String.format("%s-%s", SPACE, mode));
+		service.setResourceMetadata(metadata);
+		service.setMethod("POST");
+		service.setIsAsynchronous("async".equals(mode));
+		service.setIsTaskManaged("taskmanaged".equals(mode));
+		service.setUrl(userServiceUrl + ("async".equals(mode) ? StubUserService.ASYNC_PATH : StubUserService.SYNC_PATH));
+		return service;
+	}
+
+	/**
+	 * Creates the Job messages ahead of the run, as the Job Manager would have, and registers each Job in the
+	 * database.
+	 * 
+	 * @return The messages, keyed by Job ID
+	 */
+	private List<Map.Entry<String, String>> createJobMessages(String serviceId, InMemoryDatabaseAccessor accessor,
+			JsonSerialization serialization) throws Exception {
+		Map<String, String> messages = new LinkedHashMap<>();
+		for (int i = 0; i < jobCount; i++) {
+			BodyDataType body = new BodyDataType();
+			body.content = String.format("{\"job\":%s}", i);
+			body.mimeType = "application/json";
+			Map<String, DataType> dataInputs = new HashMap<>();
+			dataInputs.put("body", body);
+			TextDataType output = new TextDataType();
+			output.mimeType = "text/plain";
+			List<DataType> dataOutput = new ArrayList<>();
+			dataOutput.add(output);
+
+			ExecuteServiceData data = new ExecuteServiceData();
+			data.setServiceId(serviceId);
+			data.setDataInputs(dataInputs);
+			data.setDataOutput(dataOutput);
+			String jobId = UUID.randomUUID().toString();
+			ExecuteServiceJob executeServiceJob = new ExecuteServiceJob(jobId);
+			executeServiceJob.data = data;
+			Job job = new Job();
+			job.setJobId(jobId);
+			job.setJobType(executeServiceJob);
+
+			accessor.addJob(job);
+			messages.put(jobId, serialization.write(job));
+		}
+		return new ArrayList<>(messages.entrySet());
+	}
+
+	/**
+	 * Starts the threads that deliver Job messages, each acting as a concurrent consumer of the Job queue.
+	 */
+	private List<Thread> startListeners(List<Map.Entry<String, String>> messages, InMemoryBroker broker, ServiceMessageThreadManager threadManager) {
+		AtomicInteger next = new AtomicInteger();
+		List<Thread> listeners = new ArrayList<>();
+		for (int i = 0; i < listenerCount; i++) {
+			Thread listener = new Thread(() -> {
+				for (int index = next.getAndIncrement(); index < messages.size(); index = next.getAndIncrement()) {
+					Map.Entry<String, String> message = messages.get(index);
+					broker.submitted(message.getKey());
+					threadManager.processServiceExecutionJob(message.getValue());
+				}
+			}, "Listener-" + i);
+			listener.start();
+			listeners.add(listener);
+		}
+		return listeners;
+	}
+
+	/**
+	 * Starts an external worker that pulls Jobs off the Task-Managed Service queue, takes the User Service latency to
+	 * process each, and reports Success. With a batch size above one, the worker pulls a batch of Jobs, processes them
+	 * in parallel, and reports them together.
+	 */
+	private Thread startTaskWorker(ServiceTaskManager taskManager, String serviceId, int index) {
+		Thread worker = new Thread(() -> {
+			try {
+				while (!Thread.currentThread().isInterrupted()) {
+					if (taskBatchSize > 1) {
+						processTaskBatch(taskManager, serviceId);
+						continue;
+					}
+					ExecuteServiceJob job = (taskWaitSeconds > 0) ? waitForTask(taskManager, serviceId)
+							: taskManager.getNextJobFromQueue(serviceId);
+					if (job == null) {
+						Thread.sleep(10);
+						continue;
+					}
+					Thread.sleep(latencyMillis);
+					taskManager.processStatusUpdate(serviceId, job.getJobId(), new StatusUpdate(StatusUpdate.STATUS_SUCCESS));
+				}
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+			} catch (Exception exception) {
+				LOG.error("Task-Managed worker failed", exception);
+			}
+		}, "TaskWorker-" + index);
+		worker.setDaemon(true);
+		worker.start();
+		return worker;
+	}
+
+	private ExecuteServiceJob waitForTask(ServiceTaskManager taskManager, String serviceId) throws InterruptedException {
+		CompletableFuture<ExecuteServiceJob> nextJob = taskManager.awaitNextJobFromQueue(serviceId);
+		try {
+			return nextJob.get(taskWaitSeconds, TimeUnit.SECONDS);
+		} catch (TimeoutException exception) {
+			// Stop waiting. A Job pulled meanwhile is returned to the queue.
+			nextJob.complete(null);
+			return nextJob.getNow(null);
+		} catch (ExecutionException exception) {
+			throw new IllegalStateException(exception.getCause());
+		} finally {
+			nextJob.complete(null);
+		}
+	}
+
+	private void processTaskBatch(ServiceTaskManager taskManager, String serviceId) throws InterruptedException {
+		List<ExecuteServiceJob> jobs = taskManager.getNextJobsFromQueue(serviceId, taskBatchSize);
+		if (jobs.isEmpty()) {
+			Thread.sleep(10);
+			return;
+		}
+		Thread.sleep(latencyMillis);
+		List<StatusUpdate> statusUpdates = new ArrayList<>(jobs.size());
+		for (ExecuteServiceJob job : jobs) {
+			StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_SUCCESS);
+			statusUpdate.setJobId(job.getJobId());
+			statusUpdates.add(statusUpdate);
+		}
+		taskManager.processStatusUpdates(serviceId, statusUpdates);
+	}
+
+	private void report(String mode, String httpClientMode, InMemoryBroker broker, InMemoryDatabaseAccessor accessor, long startedOn,
+			HeapSampler heapSampler) {
+		long[] latencies = broker.getSortedLatencies();
+		int completed = latencies.length;
+		double seconds = (completed == 0) ? 0 : (broker.getLastCompletedOn() - startedOn) / 1e9;
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%n=== %s (http.client.mode=%s, latency=%sms, payload=%sB, listeners=%s) ===%n", mode,
+				httpClientMode, latencyMillis, payloadBytes, listenerCount));
+		report.append(String.format("Jobs completed:    %s / %s%n", completed, jobCount));
+		report.append(String.format("Duration:          %.2f s%n", seconds));
+		report.append(String.format("Throughput:        %.1f jobs/s%n", (seconds == 0) ? 0 : completed / seconds));
+		report.append(String.format("Latency (ms):      p50=%.1f p90=%.1f p99=%.1f max=%.1f%n", percentile(latencies, 50),
+				percentile(latencies, 90), percentile(latencies, 99), percentile(latencies, 100)));
+		report.append(String.format("Heap (MB):         baseline=%s peak=%s after GC=%s%n", heapSampler.baseline / MEGABYTE,
+				heapSampler.peak.get() / MEGABYTE, heapSampler.afterGc / MEGABYTE));
+		report.append(String.format("Final statuses:    %s%n", new TreeMap<>(broker.getFinalStatusCounts())));
+		report.append(String.format("Messages sent:     %s%n", new TreeMap<>(broker.getMessageCounts())));
+		if (broker.getUnmatchedFinalStatusCount() > 0 || accessor.getInstanceCount() > 0) {
+			report.append(String.format("Unmatched final statuses: %s, Async Instances remaining: %s%n",
+					broker.getUnmatchedFinalStatusCount(), accessor.getInstanceCount()));
+		}
+		System.out.print(report); // NOSONAR The report is the output of this program
+	}
+
+	private static double percentile(long[] sorted, int percentile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+		return sorted[Math.max(0, index)] / 1e6;
+	}
+
+	/**
+	 * Samples heap usage while Jobs are running, recording the peak. Heap usage is also recorded after a full
+	 * collection before and after the run, to show what is retained.
+	 */
+	private static class HeapSampler implements Runnable {
+		private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		private final AtomicLong peak = new AtomicLong();
+		private long baseline;
+		private long afterGc;
+		private Thread thread;
+
+		void start() {
+			memory.gc();
+			baseline = memory.getHeapMemoryUsage().getUsed();
+			thread = new Thread(this, "HeapSampler");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		void stop() throws InterruptedException {
+			if (thread == null) {
+				return;
+			}
+			thread.interrupt();
+			thread.join();
+			thread = null;
+			memory.gc();
+			afterGc = memory.getHeapMemoryUsage().getUsed();
+		}
+
+		@Override
+		public void run() {
+			while (!Thread.currentThread().isInterrupted()) {
+				peak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException exception) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	private static class SilentLogger extends PiazzaLogger {
+		@Override
+		public void log(String message, Severity severity) {
+			// Logging to the Piazza logger is not part of the measured work
+		}
+
+		@Override
+		public void log(String message, Severity severity, AuditElement auditElement) {
+			// Logging to the Piazza logger is not part of the measured work
+		}
+	}
+}
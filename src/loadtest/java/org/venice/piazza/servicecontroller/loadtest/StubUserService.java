@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import model.response.JobResponse;
+import model.status.StatusUpdate;
+
+/**
+ * Stand-in for a User Service, and for the Workflow service that is notified when a Service completes. Listens on an
+ * ephemeral local port.
+ * <p>
+ * Synchronous executions are answered after the configured latency. Asynchronous executions are answered immediately
+ * with an Instance ID; the Instance reports Running until the configured latency has elapsed, and Success after.
+ * Every result is a text payload of the configured size.
+ * </p>
+ */
+class StubUserService {
+	static final String SYNC_PATH = "/sync";
+	static final String ASYNC_PATH = "/async";
+	static final String WORKFLOW_PATH = "/workflow";
+
+	private static final String EVENT_TYPE_RESPONSE = "{\"data\":[{\"eventTypeId\":\"loadtest-execution-complete\"}]}";
+	private static final String MAX_IDLE_CONNECTIONS_PROPERTY = "sun.net.httpserver.maxIdleConnections";
+
+	static {
+		// By default the JDK server closes all but 200 idle keep-alive connections. The pooled HTTP clients of the
+		// Service Controller keep many more open under load, and would fail requests made on the closed ones.
+		if (System.getProperty(MAX_IDLE_CONNECTIONS_PROPERTY) == null) {
+			System.setProperty(MAX_IDLE_CONNECTIONS_PROPERTY, "100000");
+		}
+	}
+
+	private final long latencyMillis;
+	private final byte[] payload;
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final Map<String, Long> instanceStartedOn = new ConcurrentHashMap<>();
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	/**
+	 * @param latencyMillis
+	 *            Time the Service takes to produce a result
+	 * @param payloadBytes
+	 *            Size of the result
+	 * @param threads
+	 *            Number of threads serving requests
+	 */
+	StubUserService(long latencyMillis, int payloadBytes, int threads) throws IOException {
+		this.latencyMillis = latencyMillis;
+		this.payload = String.join("", Collections.nCopies(payloadBytes / 16 + 1, "Lorem ipsum dolo")).substring(0, payloadBytes)
+				.getBytes(StandardCharsets.US_ASCII);
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+		this.executor = Executors.newFixedThreadPool(threads);
+		server.setExecutor(executor);
+		server.createContext(SYNC_PATH, this::handleSync);
+		server.createContext(ASYNC_PATH, this::handleAsync);
+		server.createContext(WORKFLOW_PATH, this::handleWorkflow);
+	}
+
+	void start() {
+		server.start();
+	}
+
+	void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * @return Base URL of this server, without a trailing slash
+	 */
+	String getUrl() {
+		return String.format("http://localhost:%s", server.getAddress().getPort());
+	}
+
+	private void handleSync(HttpExchange exchange) throws IOException {
+		drain(exchange);
+		try {
+			Thread.sleep(latencyMillis);
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+		respond(exchange, 200, "text/plain", payload);
+	}
+
+	private void handleAsync(HttpExchange exchange) throws IOException {
+		drain(exchange);
+		String[] path = exchange.getRequestURI().getPath().substring(ASYNC_PATH.length()).split("/");
+		String operation = (path.length > 1) ? path[1] : "";
+		String instanceId = (path.length > 2) ? path[2] : null;
+		if (instanceId == null) {
+			// Execution. Start a new Instance and return its ID.
+			instanceId = UUID.randomUUID().toString();
+			instanceStartedOn.put(instanceId, System.currentTimeMillis());
+			respond(exchange, 200, "application/json", mapper.writeValueAsBytes(new JobResponse(instanceId)));
+			return;
+		}
+		Long startedOn = instanceStartedOn.get(instanceId);
+		if (startedOn == null) {
+			respond(exchange, 404, "text/plain", new byte[0]);
+		} else if ("status".equals(operation)) {
+			boolean complete = System.currentTimeMillis() - startedOn >= latencyMillis;
+			StatusUpdate status = new StatusUpdate(complete ? StatusUpdate.STATUS_SUCCESS : StatusUpdate.STATUS_RUNNING);
+			respond(exchange, 200, "application/json", mapper.writeValueAsBytes(status));
+		} else if ("result".equals(operation)) {
+			instanceStartedOn.remove(instanceId);
+			respond(exchange, 200, "text/plain", payload);
+		} else {
+			instanceStartedOn.remove(instanceId);
+			respond(exchange, 200, "text/plain", new byte[0]);
+		}
+	}
+
+	private void handleWorkflow(HttpExchange exchange) throws IOException {
+		drain(exchange);
+		if (exchange.getRequestURI().getPath().endsWith("/eventType")) {
+			respond(exchange, 200, "application/json", EVENT_TYPE_RESPONSE.getBytes(StandardCharsets.US_ASCII));
+		} else {
+			respond(exchange, 201, "application/json", "{}".getBytes(StandardCharsets.US_ASCII));
+		}
+	}
+
+	private static void drain(HttpExchange exchange) throws IOException {
+		try (InputStream body = exchange.getRequestBody()) {
+			byte[] buffer = new byte[8192];
+			while (body.read(buffer) != -1) {
+				// Discard the request body
+			}
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, (body.length == 0) ? -1 : body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+}
@@ -21,6 +21,9 @@ import org.apache.http.HeaderElement;
 import org.apache.http.HeaderElementIterator;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.message.BasicHeaderElementIterator;
 import org.apache.http.protocol.HTTP;
@@ -42,12 +45,14 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
-import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsAsyncClientHttpRequestFactory;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+import org.springframework.web.client.AsyncRestTemplate;
 import org.springframework.web.client.RestTemplate;
+import org.venice.piazza.servicecontroller.util.AbortableClientHttpRequestFactory;
 
 import messaging.job.JobMessageFactory;
 
@@ -65,8 +70,8 @@ import messaging.job.JobMessageFactory;
 @EnableScheduling
 @EnableTransactionManagement
 @EnableRabbit
-@EnableJpaRepositories(basePackages = { "org.venice.piazza.common.hibernate" })
-@EntityScan(basePackages = { "org.venice.piazza.common.hibernate" })
+@EnableJpaRepositories(basePackages = { "org.venice.piazza.common.hibernate", "org.venice.piazza.servicecontroller.data" })
+@EntityScan(basePackages = { "org.venice.piazza.common.hibernate", "org.venice.piazza.servicecontroller.data" })
 @ComponentScan(basePackages = { "org.venice.piazza.servicecontroller", "util", "org.venice.piazza" })
 public class Application extends SpringBootServletInitializer {
 	@Value("${http.max.total}")
@@ -89,6 +94,17 @@ public class Application extends SpringBootServletInitializer {
 	@Bean
 	public RestTemplate restTemplate() {
 		RestTemplate restTemplate = new RestTemplate();
+		restTemplate.setRequestFactory(clientHttpRequestFactory());
+
+		return restTemplate;
+	}
+
+	/**
+	 * Pooled request factory of the RestTemplate. Requests made through it can be aborted, so that cancelled Jobs do
+	 * not hold a thread while waiting on a User Service.
+	 */
+	@Bean
+	public AbortableClientHttpRequestFactory clientHttpRequestFactory() {
 		HttpClient httpClient = HttpClientBuilder.create().setMaxConnTotal(httpMaxTotal).setMaxConnPerRoute(httpMaxRoute)
 				.setKeepAliveStrategy((HttpResponse response, HttpContext context) -> {
 						HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
@@ -103,12 +119,24 @@ public class Application extends SpringBootServletInitializer {
 						return 5 * 1000L;
 					}
 				).build();
-		HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(httpClient);
+		AbortableClientHttpRequestFactory factory = new AbortableClientHttpRequestFactory(httpClient);
 		factory.setReadTimeout(httpRequestTimeout * 1000);
 		factory.setConnectTimeout(httpRequestTimeout * 1000);
-		restTemplate.setRequestFactory(factory);
 
-		return restTemplate;
+		return factory;
+	}
+
+	/**
+	 * Non-blocking template used to call User Services when http.client.mode is async. Requests are multiplexed over a
+	 * small number of I/O threads, so no thread is held while waiting on a slow User Service.
+	 */
+	@Bean
+	public AsyncRestTemplate asyncRestTemplate() {
+		RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(httpRequestTimeout * 1000)
+				.setSocketTimeout(httpRequestTimeout * 1000).build();
+		CloseableHttpAsyncClient httpAsyncClient = HttpAsyncClients.custom().setMaxConnTotal(httpMaxTotal).setMaxConnPerRoute(httpMaxRoute)
+				.setDefaultRequestConfig(requestConfig).build();
+		return new AsyncRestTemplate(new HttpComponentsAsyncClientHttpRequestFactory(httpAsyncClient));
 	}
 
 	public static void main(String[] args) {
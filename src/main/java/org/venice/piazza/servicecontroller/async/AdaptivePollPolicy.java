@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
+import org.venice.piazza.servicecontroller.executor.SupervisedScheduler;
+import org.venice.piazza.servicecontroller.executor.SupervisedScheduler.SupervisedTask;
+import org.venice.piazza.servicecontroller.data.model.AsyncPollScheduleEntity;
+import org.venice.piazza.servicecontroller.data.model.ServicePollIntervalEntity;
+
+import model.logger.Severity;
+import model.service.async.AsyncServiceInstance;
+import util.PiazzaLogger;
+
+/**
+ * Decides when each Asynchronous Service Instance is next polled for Status.
+ * <p>
+ * Instances are first polled after the minimum interval. While the Status of an instance is unchanged, the interval is
+ * multiplied by the backoff factor after each poll, up to the maximum interval, so that long-running instances are
+ * polled less often. Any change of Status resets the interval to the minimum. Each poll time is randomly spread by the
+ * jitter fraction, so that instances started together are not polled together.
+ * </p>
+ * <p>
+ * The minimum and maximum intervals may be set per Service. Instances of Services that report Status by callback are
+ * only polled at the callback fallback interval.
+ * </p>
+ * <p>
+ * Due instances are claimed in bulk, and their schedules are kept in memory while they are polled. The next poll time
+ * and Status of each polled instance are written back in batches, so that a poll cycle makes a fixed number of
+ * database round trips regardless of the number of instances.
+ * </p>
+ */
+@Component
+public class AdaptivePollPolicy {
+	@Value("${async.poll.min.interval.seconds}")
+	private int MIN_INTERVAL_SECONDS; //NOSONAR
+	@Value("${async.poll.max.interval.seconds}")
+	private int MAX_INTERVAL_SECONDS; //NOSONAR
+	@Value("${async.poll.backoff.multiplier}")
+	private double BACKOFF_MULTIPLIER; //NOSONAR
+	@Value("${async.poll.jitter}")
+	private double JITTER; //NOSONAR
+	@Value("${async.callback.fallback.poll.seconds}")
+	private int CALLBACK_FALLBACK_POLL_SECONDS; //NOSONAR
+	@Value("${async.poll.lease.seconds}")
+	private int LEASE_SECONDS; //NOSONAR
+	@Value("${async.poll.flush.interval.ms}")
+	private long FLUSH_INTERVAL_MS; //NOSONAR
+
+	@Autowired
+	private DatabaseAccessor accessor;
+	@Autowired
+	private SupervisedScheduler scheduler;
+	@Autowired
+	private PiazzaLogger logger;
+
+	private final Map<String, AsyncPollScheduleEntity> claimedSchedules = new ConcurrentHashMap<>();
+	private final Map<String, AsyncPollScheduleEntity> pendingSchedules = new ConcurrentHashMap<>();
+	private SupervisedTask flushTask;
+
+	/**
+	 * Begins writing back the schedules of polled instances.
+	 */
+	@PostConstruct
+	public void start() {
+		flushTask = scheduler.schedule("asyncPollFlush", this::flushSchedules, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS);
+	}
+
+	/**
+	 * Stops the periodic write back, and writes back any remaining schedules.
+	 */
+	@PreDestroy
+	public void stop() {
+		if (flushTask != null) {
+			flushTask.cancel();
+		}
+		flushSchedules();
+	}
+
+	/**
+	 * Claims the instances that are due to be polled in a shard. Each claimed instance is not due again until its lease
+	 * ends, unless it is rescheduled first.
+	 * 
+	 * @param shardCount
+	 *            The number of shards
+	 * @param shard
+	 *            The shard to claim from, from zero
+	 * @return The claimed instances, with the Status and error count from their last poll
+	 */
+	public List<AsyncServiceInstance> claimDueInstances(int shardCount, int shard) {
+		// Forget claims whose lease has ended without the instance being rescheduled
+		long now = System.currentTimeMillis();
+		claimedSchedules.values().removeIf(schedule -> schedule.getNextPollAt() <= now);
+
+		List<AsyncServiceInstance> instances = new ArrayList<>();
+		for (AsyncPollScheduleEntity schedule : accessor.claimDueSchedules(shardCount, shard, LEASE_SECONDS * 1000L)) {
+			AsyncServiceInstance instance;
+			if (schedule.getInstanceId() != null) {
+				instance = new AsyncServiceInstance(schedule.getJobId(), schedule.getServiceId(), schedule.getInstanceId(), null,
+						schedule.getOutputType());
+				schedule.applyPollState(instance);
+			} else {
+				// Scheduled before schedules held their instance
+				instance = accessor.getInstanceByJobId(schedule.getJobId());
+			}
+			if (instance == null) {
+				// The Instance has completed since it was scheduled
+				accessor.deleteAsyncServiceInstance(schedule.getJobId());
+				continue;
+			}
+			claimedSchedules.put(schedule.getJobId(), schedule);
+			instances.add(instance);
+		}
+		return instances;
+	}
+
+	/**
+	 * Schedules the first poll of a newly started instance.
+	 * 
+	 * @param instance
+	 *            The instance
+	 */
+	public void scheduleFirstPoll(AsyncServiceInstance instance) {
+		accessor.savePollSchedule(createSchedule(instance));
+	}
+
+	/**
+	 * Schedules the next poll of an instance that is still running.
+	 * 
+	 * @param instance
+	 *            The instance
+	 * @param statusChanged
+	 *            True if the Status of the instance changed since it was last polled. False if it was unchanged, or
+	 *            could not be fetched.
+	 */
+	public void scheduleNextPoll(AsyncServiceInstance instance, boolean statusChanged) {
+		AsyncPollScheduleEntity schedule = claimedSchedules.remove(instance.getJobId());
+		if (schedule == null) {
+			schedule = accessor.getPollSchedule(instance.getJobId());
+		}
+		if (schedule == null) {
+			schedule = createSchedule(instance);
+			schedule.setPollState(instance);
+			accessor.savePollSchedule(schedule);
+			return;
+		}
+		long interval = getNextInterval(schedule.getIntervalMs(), schedule.getMinIntervalMs(), schedule.getMaxIntervalMs(),
+				statusChanged);
+		schedule.setIntervalMs(interval);
+		schedule.setNextPollAt(System.currentTimeMillis() + applyJitter(interval));
+		schedule.setPollState(instance);
+		// Written back with the next batch
+		pendingSchedules.put(schedule.getJobId(), schedule);
+	}
+
+	/**
+	 * Writes back the schedules of all instances polled since the last write, in one batch. If the write fails, the
+	 * schedules are kept for the next attempt.
+	 */
+	public void flushSchedules() {
+		List<AsyncPollScheduleEntity> batch = new ArrayList<>();
+		for (String jobId : pendingSchedules.keySet()) {
+			AsyncPollScheduleEntity schedule = pendingSchedules.remove(jobId);
+			if (schedule != null) {
+				batch.add(schedule);
+			}
+		}
+		if (batch.isEmpty()) {
+			return;
+		}
+		try {
+			accessor.updatePollSchedules(batch);
+		} catch (RuntimeException exception) {
+			for (AsyncPollScheduleEntity schedule : batch) {
+				pendingSchedules.putIfAbsent(schedule.getJobId(), schedule);
+			}
+			throw exception;
+		}
+	}
+
+	/**
+	 * Schedules a poll of all instances that have no schedule, such as those started by an earlier version of this
+	 * service.
+	 */
+	public void scheduleUnscheduledInstances() {
+		List<AsyncServiceInstance> instances = accessor.getUnscheduledServiceInstances();
+		for (AsyncServiceInstance instance : instances) {
+			scheduleFirstPoll(instance);
+		}
+		if (!instances.isEmpty()) {
+			logger.log(String.format("Scheduled polling of %s Asynchronous Service Instances that had no poll schedule.", instances.size()),
+					Severity.INFORMATIONAL);
+		}
+	}
+
+	/**
+	 * Gets the interval until the next poll of an instance.
+	 * 
+	 * @param currentIntervalMs
+	 *            The interval the instance was last polled at
+	 * @param minIntervalMs
+	 *            The shortest interval for the instance
+	 * @param maxIntervalMs
+	 *            The longest interval for the instance
+	 * @param statusChanged
+	 *            True if the Status of the instance changed since it was last polled
+	 * @return The next interval, before jitter
+	 */
+	public long getNextInterval(long currentIntervalMs, long minIntervalMs, long maxIntervalMs, boolean statusChanged) {
+		if (statusChanged) {
+			return minIntervalMs;
+		}
+		long interval = (long) Math.ceil(currentIntervalMs * BACKOFF_MULTIPLIER);
+		return Math.max(minIntervalMs, Math.min(maxIntervalMs, interval));
+	}
+
+	/**
+	 * @return The interval, randomly moved earlier or later by up to the jitter fraction
+	 */
+	public long applyJitter(long intervalMs) {
+		long spread = (long) (intervalMs * JITTER);
+		if (spread <= 0) {
+			return intervalMs;
+		}
+		return Math.max(0, intervalMs + ThreadLocalRandom.current().nextLong(-spread, spread + 1));
+	}
+
+	/**
+	 * Creates the schedule of an instance that has not yet been polled, with the poll interval bounds of its Service.
+	 */
+	private AsyncPollScheduleEntity createSchedule(AsyncServiceInstance instance) {
+		long minIntervalMs;
+		long maxIntervalMs;
+		if (accessor.isStatusCallbackEnabled(instance.getServiceId())) {
+			// The Service calls back with Status. Poll only in case a callback is lost.
+			minIntervalMs = CALLBACK_FALLBACK_POLL_SECONDS * 1000L;
+			maxIntervalMs = minIntervalMs;
+		} else {
+			ServicePollIntervalEntity intervals = accessor.getPollIntervals(instance.getServiceId());
+			int minSeconds = MIN_INTERVAL_SECONDS;
+			int maxSeconds = MAX_INTERVAL_SECONDS;
+			if ((intervals != null) && (intervals.getMinIntervalSeconds() != null)) {
+				minSeconds = intervals.getMinIntervalSeconds();
+			}
+			if ((intervals != null) && (intervals.getMaxIntervalSeconds() != null)) {
+				maxSeconds = intervals.getMaxIntervalSeconds();
+			}
+			minIntervalMs = minSeconds * 1000L;
+			maxIntervalMs = Math.max(minIntervalMs, maxSeconds * 1000L);
+		}
+		AsyncPollScheduleEntity schedule = new AsyncPollScheduleEntity(instance.getJobId(), instance.getServiceId(), minIntervalMs,
+				maxIntervalMs);
+		schedule.setInstanceId(instance.getInstanceId());
+		schedule.setOutputType(instance.getOutputType());
+		schedule.setNextPollAt(System.currentTimeMillis() + applyJitter(minIntervalMs));
+		return schedule;
+	}
+}
@@ -16,8 +16,6 @@
 package org.venice.piazza.servicecontroller.async;
 
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 
 import javax.annotation.PostConstruct;
 
@@ -25,6 +23,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
+import org.venice.piazza.servicecontroller.executor.SupervisedScheduler;
+import org.venice.piazza.servicecontroller.executor.SupervisedScheduler.SupervisedTask;
 
 import model.service.async.AsyncServiceInstance;
 
@@ -36,18 +36,23 @@ import model.service.async.AsyncServiceInstance;
  */
 @Component
 public class AsyncServiceInstanceScheduler {
-	@Value("${async.stale.instance.threshold.seconds}")
-	private int STALE_INSTANCE_THRESHOLD_SECONDS; //NOSONAR
 	@Value("${async.poll.frequency.seconds}")
 	private int POLL_FREQUENCY_SECONDS; //NOSONAR
+	@Value("${async.callback.early.retention.seconds}")
+	private long EARLY_CALLBACK_RETENTION_SECONDS; //NOSONAR
 
 	@Autowired
 	private DatabaseAccessor accessor;
 	@Autowired
 	private AsynchronousServiceWorker worker;
+	@Autowired
+	private AdaptivePollPolicy pollPolicy;
+	@Autowired
+	private SupervisedScheduler scheduler;
+	@Autowired
+	private PollShardCoordinator shardCoordinator;
 
-	private PollServiceTask pollTask = new PollServiceTask();
-	private Timer pollTimer = new Timer();
+	private SupervisedTask pollTask;
 
 	/**
 	 * Begins scheduled polling of asynchronous job status.
@@ -55,14 +60,16 @@ public class AsyncServiceInstanceScheduler {
 	@PostConstruct
 	public void startPolling() {
 		// Begin polling at the determined frequency
-		pollTimer.schedule(pollTask, 10000, POLL_FREQUENCY_SECONDS * (long) 1000);
+		pollTask = scheduler.schedule("asyncPoll", new PollServiceTask(), 10000, POLL_FREQUENCY_SECONDS * (long) 1000);
 	}
 
 	/**
 	 * Halts scheduled polling of asynchronous job status.
 	 */
 	public void stopPolling() {
-		pollTimer.cancel();
+		if (pollTask != null) {
+			pollTask.cancel();
+		}
 	}
 
 	/**
@@ -81,7 +88,7 @@ public class AsyncServiceInstanceScheduler {
 	}
 
 	/**
-	 * Timer Task that will, on a schedule, poll for the Status of Stale asynchronous user services.
+	 * Task that will, on a schedule, poll for the Status of Stale asynchronous user services.
 	 * <p>
 	 * This component is responsible for polling the status of asynchronous user service instances. It will use the
 	 * AsyncServiceInstances collection in order to store persistence related to each running instance of an
@@ -89,18 +96,29 @@ public class AsyncServiceInstanceScheduler {
 	 * status and query time.
 	 * </p>
 	 */
-	public class PollServiceTask extends TimerTask {
+	public class PollServiceTask implements Runnable {
+		private boolean unscheduledInstancesScheduled = false;
+
 		/**
-		 * Polls all stale Asynchronous Service Instances (instances that haven't been checked since the last threshold
-		 * time)
+		 * Polls all stale Asynchronous Service Instances (instances whose next poll time has passed). On the first
+		 * cycle, any instances without a poll schedule are scheduled first.
 		 */
 		@Override
 		public void run() {
-			// Get the list of all stale User Services and poll each.
-			List<AsyncServiceInstance> staleInstances = accessor.getStaleServiceInstances();
+			if (!unscheduledInstancesScheduled) {
+				pollPolicy.scheduleUnscheduledInstances();
+				unscheduledInstancesScheduled = true;
+			}
+			// Claim all stale User Services in the shard owned by this Service Controller, and poll each.
+			PollShardCoordinator.Shard shard = shardCoordinator.getShard();
+			List<AsyncServiceInstance> staleInstances = pollPolicy.claimDueInstances(shard.getCount(), shard.getIndex());
 			for (AsyncServiceInstance instance : staleInstances) {
 				worker.pollStatus(instance);
 			}
+			if (shard.getIndex() == 0) {
+				// Callbacks for instances that were never recorded, such as those whose start failed
+				accessor.deleteEarlyStatusCallbacks(System.currentTimeMillis() - EARLY_CALLBACK_RETENTION_SECONDS * 1000);
+			}
 		}
 	}
 }
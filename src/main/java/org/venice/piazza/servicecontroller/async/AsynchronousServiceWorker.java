@@ -20,11 +20,9 @@ import java.io.IOException;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
@@ -32,13 +30,16 @@ import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestTemplate;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
+import org.venice.piazza.servicecontroller.executor.ExecutorConfiguration;
+import org.venice.piazza.servicecontroller.messaging.StatusUpdatePublisher;
 import org.venice.piazza.servicecontroller.messaging.handlers.ExecuteServiceHandler;
+import org.venice.piazza.servicecontroller.result.ResultBuffer;
+import org.venice.piazza.servicecontroller.result.ResultBufferFactory;
+import org.venice.piazza.servicecontroller.util.JsonSerialization;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import exception.DataInspectException;
-import messaging.job.JobMessageFactory;
 import model.job.result.type.DataResult;
 import model.job.result.type.ErrorResult;
 import model.job.type.ExecuteServiceJob;
@@ -80,12 +81,14 @@ public class AsynchronousServiceWorker {
 	@Autowired
 	private RestTemplate restTemplate;
 	@Autowired
-	private RabbitTemplate rabbitTemplate;
+	private StatusUpdatePublisher statusPublisher;
 	@Autowired
-	@Qualifier("UpdateJobsQueue")
-	private Queue updateJobsQueue;
+	private ResultBufferFactory resultBufferFactory;
+	@Autowired
+	private JsonSerialization serialization;
+	@Autowired
+	private AdaptivePollPolicy pollPolicy;
 
-	private ObjectMapper objectMapper = new ObjectMapper();
 	private static final String URL_FORMAT = "%s/%s/%s";
 	private static final Logger LOG = LoggerFactory.getLogger(AsynchronousServiceWorker.class);
 
@@ -96,7 +99,7 @@ public class AsynchronousServiceWorker {
 	 *            The Piazza Job Type, describing everything about the Service execution.
 	 * @throws InterruptedException
 	 */
-	@Async
+	@Async(ExecutorConfiguration.ASYNC_KICKOFF_EXECUTOR)
 	public void executeService(ExecuteServiceJob job) throws InterruptedException {
 		// Log the Request
 		logger.log(String.format("Processing Asynchronous User Service with Job ID %s", job.getJobId()), Severity.INFORMATIONAL);
@@ -112,11 +115,19 @@ public class AsynchronousServiceWorker {
 		} else {
 			try {
 				// Convert the response entity into a JobResponse object in order to get the Instance ID
-				JobResponse jobResponse = objectMapper.readValue(response.getBody(), JobResponse.class);
+				JobResponse jobResponse = serialization.read(response.getBody(), JobResponse.class);
 				// Create an persist the Async Service Instance Object for this Instance
 				AsyncServiceInstance instance = new AsyncServiceInstance(job.getJobId(), job.data.getServiceId(),
 						jobResponse.data.getJobId(), null, job.data.getDataOutput().get(0).getClass().getSimpleName());
 				accessor.addAsyncServiceInstance(instance);
+				pollPolicy.scheduleFirstPoll(instance);
+				if (accessor.isStatusCallbackEnabled(instance.getServiceId())) {
+					// The Service will call back with Status against this Instance ID. It may already have done so.
+					String earlyStatus = accessor.addStatusCallbackInstance(instance);
+					if (earlyStatus != null) {
+						processEarlyStatusCallback(instance, earlyStatus);
+					}
+				}
 				// Log the successful start of asynchronous service execution
 				logger.log(String.format("Successful start of Asynchronous Execution for Job ID %S with Service ID %s and Instance ID %s",
 						instance.getJobId(), instance.getServiceId(), instance.getInstanceId()), Severity.INFORMATIONAL);
@@ -140,7 +151,7 @@ public class AsynchronousServiceWorker {
 	 * 
 	 * @param instance
 	 */
-	@Async
+	@Async(ExecutorConfiguration.ASYNC_POLL_EXECUTOR)
 	public void pollStatus(AsyncServiceInstance instance) {
 		try {
 			// Get the Service, so we can fetch the URL
@@ -155,45 +166,7 @@ public class AsynchronousServiceWorker {
 				throw new DataInspectException("Null Status received from Service.");
 			}
 
-			// Act appropriately based on the status received
-			if ((status.getStatus().equals(StatusUpdate.STATUS_PENDING)) || (status.getStatus().equals(StatusUpdate.STATUS_RUNNING))
-					|| (status.getStatus().equals(StatusUpdate.STATUS_SUBMITTED))) {
-				// If this service is not done, then mark the status and we'll poll again later.
-				instance.setStatus(status);
-				instance.setLastCheckedOn(new DateTime());
-				accessor.updateAsyncServiceInstance(instance);
-				// Route the current Job Status through Message Bus.
-				try {
-					status.setJobId(instance.getJobId());
-					rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(), objectMapper.writeValueAsString(status));
-				} catch (JsonProcessingException exception) {
-					// The message could not be serialized. Record this.
-					LOG.error("Json processing error occured", exception);
-					logger.log("Could not send Running Status Message to Job Manager. Error serializing Status: " + exception.getMessage(),
-							Severity.ERROR);
-				}
-			} else if (status.getStatus().equals(StatusUpdate.STATUS_SUCCESS)) {
-				// Queue up a subsequent request to get the Result of the Instance
-				processSuccessStatus(service, instance);
-			} else if ((status.getStatus().equals(StatusUpdate.STATUS_ERROR)) || (status.getStatus().equals(StatusUpdate.STATUS_FAIL))
-					|| (status.getStatus().equals(StatusUpdate.STATUS_CANCELLED))) {
-				// Errors encountered. Report this and bubble it back up through the Job ID.
-				String errorMessage = String.format("Instance %s reported back Status %s. ", instance.getInstanceId(), status.getStatus());
-				if (status.getResult() instanceof ErrorResult) {
-					// If we can parse any further details on the error, then do so here.
-					ErrorResult errorResult = (ErrorResult) status.getResult();
-					errorMessage = String.format("%s Details: %s, %s", errorMessage, errorResult.getMessage(), errorResult.getDetails());
-				}
-				logger.log(errorMessage, Severity.ERROR);
-				processErrorStatus(instance.getJobId(), status.getStatus(), errorMessage);
-			} else {
-				// If it's an unknown status, then we can't process it.
-				updateFailureCount(instance);
-				logger.log(String.format(
-						"Unknown Status %s encountered for Service ID %s Instance %s under Job ID %s. The number of Errors has been incremented (%s)",
-						status.getStatus(), instance.getServiceId(), instance.getInstanceId(), instance.getJobId(),
-						instance.getNumberErrorResponses()), Severity.WARNING);
-			}
+			processStatus(service, instance, status);
 		} catch (HttpClientErrorException | HttpServerErrorException exception) {
 			updateFailureCount(instance);
 			String error = String.format(
@@ -213,6 +186,109 @@ public class AsynchronousServiceWorker {
 		}
 	}
 
+	/**
+	 * Handles a Status that a User Service has sent for one of its instances, in place of that instance being polled.
+	 * This is the same as processing a polled Status, including fetching the results once the instance has succeeded.
+	 * 
+	 * @param instance
+	 *            The instance the Status is for
+	 * @param status
+	 *            The Status reported by the User Service
+	 */
+	@Async(ExecutorConfiguration.STATUS_CALLBACK_EXECUTOR)
+	public void processStatusCallback(AsyncServiceInstance instance, StatusUpdate status) {
+		try {
+			processStatus(accessor.getServiceById(instance.getServiceId()), instance, status);
+		} catch (Exception exception) {
+			String error = String.format("Unexpected Error %s processing Status callback for Service ID %s Instance %s under Job ID %s",
+					exception.getMessage(), instance.getServiceId(), instance.getInstanceId(), instance.getJobId());
+			LOG.error(error, exception);
+			logger.log(error, Severity.WARNING);
+		}
+	}
+
+	/**
+	 * Keeps a Status that a User Service has sent for an instance it has started, but which has not been recorded yet
+	 * because the response starting the instance is still being handled. The Status is applied once it is recorded.
+	 * 
+	 * @param serviceId
+	 *            The ID of the Service
+	 * @param instanceId
+	 *            The Instance ID, as reported by the User Service
+	 * @param status
+	 *            The Status reported by the User Service
+	 * @return True if the Status was kept. False if the instance has been recorded in the meantime, so the Status
+	 *         should be processed now.
+	 */
+	public boolean deferStatusCallback(String serviceId, String instanceId, StatusUpdate status) throws JsonProcessingException {
+		return accessor.addEarlyStatusCallback(serviceId, instanceId, serialization.write(status));
+	}
+
+	/**
+	 * Applies a Status that arrived before its instance was recorded.
+	 */
+	private void processEarlyStatusCallback(AsyncServiceInstance instance, String earlyStatus) {
+		try {
+			logger.log(String.format("Applying Status received before the start of Service ID %s Instance %s under Job ID %s",
+					instance.getServiceId(), instance.getInstanceId(), instance.getJobId()), Severity.INFORMATIONAL);
+			processStatus(accessor.getServiceById(instance.getServiceId()), instance, serialization.read(earlyStatus, StatusUpdate.class));
+		} catch (Exception exception) {
+			String error = String.format(
+					"Unexpected Error %s processing early Status callback for Service ID %s Instance %s under Job ID %s. It will be polled instead.",
+					exception.getMessage(), instance.getServiceId(), instance.getInstanceId(), instance.getJobId());
+			LOG.error(error, exception);
+			logger.log(error, Severity.WARNING);
+		}
+	}
+
+	/**
+	 * Acts on the Status of an Asynchronous Service Instance. Running instances are updated in the Status table, and
+	 * completed instances have their result or error processed.
+	 * 
+	 * @param service
+	 *            The Service of the instance
+	 * @param instance
+	 *            The instance
+	 * @param status
+	 *            The Status reported by the User Service
+	 */
+	private void processStatus(Service service, AsyncServiceInstance instance, StatusUpdate status) {
+		// Act appropriately based on the status received
+		if ((status.getStatus().equals(StatusUpdate.STATUS_PENDING)) || (status.getStatus().equals(StatusUpdate.STATUS_RUNNING))
+				|| (status.getStatus().equals(StatusUpdate.STATUS_SUBMITTED))) {
+			// If this service is not done, then mark the status and we'll poll again later. Poll sooner if the
+			// status has changed, and later if not.
+			boolean statusChanged = (instance.getStatus() == null) || !status.getStatus().equals(instance.getStatus().getStatus());
+			instance.setStatus(status);
+			instance.setLastCheckedOn(new DateTime());
+			pollPolicy.scheduleNextPoll(instance, statusChanged);
+			// Route the current Job Status through Message Bus.
+			status.setJobId(instance.getJobId());
+			statusPublisher.publish(status);
+		} else if (status.getStatus().equals(StatusUpdate.STATUS_SUCCESS)) {
+			// Queue up a subsequent request to get the Result of the Instance
+			processSuccessStatus(service, instance);
+		} else if ((status.getStatus().equals(StatusUpdate.STATUS_ERROR)) || (status.getStatus().equals(StatusUpdate.STATUS_FAIL))
+				|| (status.getStatus().equals(StatusUpdate.STATUS_CANCELLED))) {
+			// Errors encountered. Report this and bubble it back up through the Job ID.
+			String errorMessage = String.format("Instance %s reported back Status %s. ", instance.getInstanceId(), status.getStatus());
+			if (status.getResult() instanceof ErrorResult) {
+				// If we can parse any further details on the error, then do so here.
+				ErrorResult errorResult = (ErrorResult) status.getResult();
+				errorMessage = String.format("%s Details: %s, %s", errorMessage, errorResult.getMessage(), errorResult.getDetails());
+			}
+			logger.log(errorMessage, Severity.ERROR);
+			processErrorStatus(instance.getJobId(), status.getStatus(), errorMessage);
+		} else {
+			// If it's an unknown status, then we can't process it.
+			updateFailureCount(instance);
+			logger.log(String.format(
+					"Unknown Status %s encountered for Service ID %s Instance %s under Job ID %s. The number of Errors has been incremented (%s)",
+					status.getStatus(), instance.getServiceId(), instance.getInstanceId(), instance.getJobId(),
+					instance.getNumberErrorResponses()), Severity.WARNING);
+		}
+	}
+
 	/**
 	 * Updates the failure count for the Instance.
 	 * 
@@ -229,13 +305,12 @@ public class AsynchronousServiceWorker {
 					"Job ID %s for Service ID %s Instance ID %s has failed too many times during periodic Status Checks. This Job is being marked as a failure.",
 					instance.getJobId(), instance.getServiceId(), instance.getInstanceId());
 			logger.log(errorMessage, Severity.ERROR);
-			// Remove this from the Collection of tracked instance Jobs.
-			accessor.deleteAsyncServiceInstance(instance.getJobId());
-			// Send a Failure message back to the Job Manager via Message Bus.
+			// Send a Failure message back to the Job Manager via Message Bus, removing this from the Collection of
+			// tracked instance Jobs.
 			processErrorStatus(instance.getJobId(), StatusUpdate.STATUS_ERROR, errorMessage);
 		} else {
-			// Update the Database that this instance has failed.
-			accessor.updateAsyncServiceInstance(instance);
+			// Record that this instance has failed, and back off before polling it again.
+			pollPolicy.scheduleNextPoll(instance, false);
 		}
 	}
 
@@ -254,18 +329,21 @@ public class AsynchronousServiceWorker {
 		// Make a request to the results endpoint to get the results of the Service
 		String url = String.format(URL_FORMAT, service.getUrl(), RESULTS_ENDPOINT, instance.getInstanceId());
 		try {
-			ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
+			// Stream the results into a buffer, rather than reading them into memory as a String
+			DataResult result;
 			String dataId = uuidFactory.getUUID();
-			// Get the Result of the Service
-			DataResult result = executeServiceHandler.processExecutionResult(service, instance.getOutputType(), StatusUpdate.STATUS_SUCCESS,
-					response, dataId);
+			try (ResultBuffer body = restTemplate.execute(url, HttpMethod.GET, resultBufferFactory.requestCallback(null, null),
+					resultBufferFactory.responseExtractor()).getBody()) {
+				// Get the Result of the Service
+				result = executeServiceHandler.processStreamedExecutionResult(service, instance.getOutputType(),
+						StatusUpdate.STATUS_SUCCESS, body, dataId);
+			}
 			// Send the Completed Status to the Job Manager, including the Result
 			StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_SUCCESS);
 			statusUpdate.setResult(result);
 			statusUpdate.setJobId(instance.getJobId());
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(), objectMapper.writeValueAsString(statusUpdate));
-			// Remove this Instance from the Instance table
-			accessor.deleteAsyncServiceInstance(instance.getJobId());
+			// Remove this Instance from the Instance table in the same transaction as the final Status
+			statusPublisher.publish(statusUpdate, () -> accessor.deleteAsyncServiceInstance(instance.getJobId()));
 		} catch (HttpClientErrorException | HttpServerErrorException exception) {
 			updateFailureCount(instance);
 
@@ -295,23 +373,15 @@ public class AsynchronousServiceWorker {
 	 *            The StatusUpdate received from the external User Service
 	 */
 	private void processErrorStatus(String jobId, String status, String message) {
-		// Remove the Instance from the Instance Table
-		accessor.deleteAsyncServiceInstance(jobId);
-
 		// Create a new Status Update to send to the Job Manager.
 		StatusUpdate statusUpdate = new StatusUpdate();
 		statusUpdate.setStatus(status);
 		// Create the Message for the Error Result of the Status
 		statusUpdate.setResult(new ErrorResult(message, null));
+		statusUpdate.setJobId(jobId);
 
-		// Send the Job Status through the Message Bus.
-		try {
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(), objectMapper.writeValueAsString(status));
-		} catch (JsonProcessingException exception) {
-			// The message could not be serialized. Record this.
-			LOG.error("Could not send Error Status to Job Manager. Error serializing Status", exception);
-			logger.log("Could not send Error Status to Job Manager. Error serializing Status: " + exception.getMessage(), Severity.ERROR);
-		}
+		// Send the Job Status through the Message Bus, and remove the Instance from the Instance Table.
+		statusPublisher.publish(statusUpdate, () -> accessor.deleteAsyncServiceInstance(jobId));
 	}
 
 	/**
@@ -320,7 +390,7 @@ public class AsynchronousServiceWorker {
 	 * @param instance
 	 *            The instance to be cancelled
 	 */
-	@Async
+	@Async(ExecutorConfiguration.CANCELLATION_EXECUTOR)
 	public void sendCancellationStatus(AsyncServiceInstance instance) {
 		// Remove this from the Instance Table
 		accessor.deleteAsyncServiceInstance(instance.getJobId());
@@ -341,16 +411,8 @@ public class AsynchronousServiceWorker {
 		}
 
 		// Send the Message for successful Cancellation status
-		try {
-			StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_CANCELLED);
-			statusUpdate.setJobId(instance.getJobId());
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(), objectMapper.writeValueAsString(statusUpdate));
-		} catch (JsonProcessingException jsonException) {
-			String error = String.format(
-					"Error sending Cancelled Status from Job %s: %s. The Job was cancelled, but its status will not be updated in the Job Manager.",
-					instance.getJobId(), jsonException.getMessage());
-			LOG.error(error, jsonException);
-			logger.log(error, Severity.ERROR);
-		}
+		StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_CANCELLED);
+		statusUpdate.setJobId(instance.getJobId());
+		statusPublisher.publish(statusUpdate);
 	}
 }
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.async;
+
+import java.util.List;
+import java.util.UUID;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
+import org.venice.piazza.servicecontroller.executor.SupervisedScheduler;
+import org.venice.piazza.servicecontroller.executor.SupervisedScheduler.SupervisedTask;
+
+import model.logger.Severity;
+import util.PiazzaLogger;
+
+/**
+ * Divides the polling of Asynchronous Service Instances between all running Service Controllers, so that each
+ * instance is polled by only one of them.
+ * <p>
+ * Each Service Controller records a heartbeat in the database. The live Service Controllers, ordered by ID, each own
+ * one shard of the instances, with instances assigned to shards by a hash of their Job ID. When a Service Controller
+ * starts or stops, the others pick up the new number of shards at their next heartbeat.
+ * </p>
+ */
+@Component
+public class PollShardCoordinator {
+	@Value("${async.poll.heartbeat.interval.seconds}")
+	private int HEARTBEAT_INTERVAL_SECONDS; //NOSONAR
+	@Value("${async.poll.heartbeat.timeout.seconds}")
+	private int HEARTBEAT_TIMEOUT_SECONDS; //NOSONAR
+
+	@Autowired
+	private DatabaseAccessor accessor;
+	@Autowired
+	private SupervisedScheduler scheduler;
+	@Autowired
+	private PiazzaLogger logger;
+
+	private final String nodeId = UUID.randomUUID().toString();
+	private volatile Shard shard = new Shard(1, 0);
+	private SupervisedTask heartbeatTask;
+
+	/**
+	 * Begins the heartbeat of this Service Controller.
+	 */
+	@PostConstruct
+	public void start() {
+		heartbeatTask = scheduler.schedule("asyncPollHeartbeat", this::heartbeat, 0, HEARTBEAT_INTERVAL_SECONDS * (long) 1000);
+	}
+
+	/**
+	 * Stops the heartbeat, and removes this Service Controller so that the others take over its shard.
+	 */
+	@PreDestroy
+	public void stop() {
+		if (heartbeatTask != null) {
+			heartbeatTask.cancel();
+		}
+		accessor.removeNode(nodeId);
+	}
+
+	/**
+	 * Records the heartbeat of this Service Controller, and takes the shard it owns among the live Service
+	 * Controllers.
+	 */
+	public void heartbeat() {
+		List<String> liveNodeIds = accessor.heartbeatNode(nodeId, HEARTBEAT_TIMEOUT_SECONDS * (long) 1000);
+		int index = liveNodeIds.indexOf(nodeId);
+		Shard current = (index < 0) ? new Shard(1, 0) : new Shard(liveNodeIds.size(), index);
+		if ((current.count != shard.count) || (current.index != shard.index)) {
+			logger.log(String.format("Service Controller %s now polls Asynchronous Service Instances in shard %s of %s.", nodeId,
+					current.index + 1, current.count), Severity.INFORMATIONAL);
+		}
+		shard = current;
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	/**
+	 * @return The shard of Asynchronous Service Instances that this Service Controller polls
+	 */
+	public Shard getShard() {
+		return shard;
+	}
+
+	/**
+	 * One share of the Asynchronous Service Instances, out of a number of shares.
+	 */
+	public static class Shard {
+		private final int count;
+		private final int index;
+
+		public Shard(int count, int index) {
+			this.count = count;
+			this.index = index;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+	}
+}
@@ -23,6 +23,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -39,6 +40,7 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.client.ResourceAccessException;
+import org.venice.piazza.servicecontroller.async.AsynchronousServiceWorker;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
 import org.venice.piazza.servicecontroller.messaging.handlers.DeleteServiceHandler;
 import org.venice.piazza.servicecontroller.messaging.handlers.DescribeServiceHandler;
@@ -60,7 +62,9 @@ import model.response.ServiceIdResponse;
 import model.response.ServiceResponse;
 import model.response.SuccessResponse;
 import model.service.metadata.ExecuteServiceData;
+import model.service.async.AsyncServiceInstance;
 import model.service.metadata.Service;
+import model.status.StatusUpdate;
 import util.PiazzaLogger;
 
 /**
@@ -91,6 +95,8 @@ public class ServiceController {
 	private PiazzaLogger logger;
 	@Autowired
 	private RegisterServiceHandler rsHandler;
+	@Autowired
+	private AsynchronousServiceWorker asyncWorker;
 
 	private static final String DEFAULT_PAGE_SIZE = "10";
 	private static final String DEFAULT_PAGE = "0";
@@ -109,13 +115,29 @@ public class ServiceController {
 	 * 
 	 * @param serviceMetadata
 	 *            metadata about the service
+	 * @param statusCallback
+	 *            True if the asynchronous service will report the status of its instances to the status callback
+	 *            endpoint, rather than being polled
+	 * @param pollMinIntervalSeconds
+	 *            The shortest interval at which instances of the asynchronous service are polled for status
+	 * @param pollMaxIntervalSeconds
+	 *            The longest interval at which instances of the asynchronous service are polled for status
 	 * @return A Json message with the resourceId {resourceId="<the id>"}
 	 */
 	@RequestMapping(value = "/registerService", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
-	public ResponseEntity<PiazzaResponse> registerService(@RequestBody PiazzaJobRequest jobRequest) {
+	public ResponseEntity<PiazzaResponse> registerService(@RequestBody PiazzaJobRequest jobRequest,
+			@RequestParam(value = "statusCallback", required = false) boolean statusCallback,
+			@RequestParam(value = "pollMinIntervalSeconds", required = false) Integer pollMinIntervalSeconds,
+			@RequestParam(value = "pollMaxIntervalSeconds", required = false) Integer pollMaxIntervalSeconds) {
 		try {
 			RegisterServiceJob serviceJob = (RegisterServiceJob) jobRequest.jobType;
 
+			// Only asynchronous Services report Status
+			if (statusCallback && !Boolean.TRUE.equals(serviceJob.getData().getIsAsynchronous())) {
+				throw new InvalidInputException("`statusCallback` is only supported for asynchronous Services.");
+			}
+			validatePollIntervals(serviceJob.getData(), pollMinIntervalSeconds, pollMaxIntervalSeconds);
+
 			// For Task-Managed Services, URL is not required. For all other
 			// services, it is. Validate that here.
 			if ((serviceJob.getData().getIsTaskManaged() == null) || (!serviceJob.getData().getIsTaskManaged())) {
@@ -126,6 +148,12 @@ public class ServiceController {
 			}
 
 			String serviceId = rsHandler.handle(serviceJob.getData());
+			if (statusCallback) {
+				accessor.setStatusCallbackEnabled(serviceId, true);
+			}
+			if ((pollMinIntervalSeconds != null) || (pollMaxIntervalSeconds != null)) {
+				accessor.setPollIntervals(serviceId, pollMinIntervalSeconds, pollMaxIntervalSeconds);
+			}
 			return new ResponseEntity<>(new ServiceIdResponse(serviceId), HttpStatus.OK);
 		} catch (InvalidInputException exception) {
 			LOG.error("Error Registering Service", exception);
@@ -143,6 +171,28 @@ public class ServiceController {
 		}
 	}
 
+	/**
+	 * Validates the bounds on poll intervals given for a service.
+	 * 
+	 * @throws InvalidInputException
+	 *             If bounds are given for a service that is not asynchronous, or are not positive and in order
+	 */
+	private void validatePollIntervals(Service service, Integer minIntervalSeconds, Integer maxIntervalSeconds)
+			throws InvalidInputException {
+		if ((minIntervalSeconds == null) && (maxIntervalSeconds == null)) {
+			return;
+		}
+		if (!Boolean.TRUE.equals(service.getIsAsynchronous())) {
+			throw new InvalidInputException("Poll intervals are only supported for asynchronous Services.");
+		}
+		if (((minIntervalSeconds != null) && (minIntervalSeconds <= 0)) || ((maxIntervalSeconds != null) && (maxIntervalSeconds <= 0))) {
+			throw new InvalidInputException("Poll intervals must be positive.");
+		}
+		if ((minIntervalSeconds != null) && (maxIntervalSeconds != null) && (minIntervalSeconds > maxIntervalSeconds)) {
+			throw new InvalidInputException("`pollMinIntervalSeconds` must not be greater than `pollMaxIntervalSeconds`.");
+		}
+	}
+
 	/**
 	 * Gets service metadata, based on its Id.
 	 * 
@@ -248,21 +298,30 @@ public class ServiceController {
 	 *            Service Id to delete.
 	 * @param serviceData
 	 *            The data of the service to update.
+	 * @param statusCallback
+	 *            If specified, whether the asynchronous service reports the status of its instances to the status
+	 *            callback endpoint, rather than being polled
+	 * @param pollMinIntervalSeconds
+	 *            If specified, the shortest interval at which new instances of the asynchronous service are polled
+	 * @param pollMaxIntervalSeconds
+	 *            If specified, the longest interval at which new instances of the asynchronous service are polled
 	 * @return Null if the service has been updated, or an appropriate error if there is one.
 	 */
 	@RequestMapping(value = "/service/{serviceId}", method = RequestMethod.PUT, produces = MediaType.APPLICATION_JSON_VALUE)
 	public ResponseEntity<PiazzaResponse> updateServiceMetadata(@PathVariable(value = "serviceId") String serviceId,
-			@RequestBody Service serviceData) {
+			@RequestBody Service serviceData, @RequestParam(value = "statusCallback", required = false) Boolean statusCallback,
+			@RequestParam(value = "pollMinIntervalSeconds", required = false) Integer pollMinIntervalSeconds,
+			@RequestParam(value = "pollMaxIntervalSeconds", required = false) Integer pollMaxIntervalSeconds) {
 		try {
 			// Ensure valid input
 			if ((serviceId == null) || (serviceId.isEmpty()))
 				return new ResponseEntity<>(new ErrorResponse("The serviceId was not specified", SERVICE_CONTROLLER_UPPER),
 						HttpStatus.BAD_REQUEST);
 
-			// Get the existing service.
+			// Get the existing service. Bypass the cache, as this instance is modified below.
 			Service existingService;
 			try {
-				existingService = accessor.getServiceById(serviceId);
+				existingService = accessor.getServiceById(serviceId, false);
 			} catch (ResourceAccessException rae) {
 				LOG.info(rae.getMessage(), rae);
 				return new ResponseEntity<>(new ErrorResponse(rae.getMessage(), SERVICE_CONTROLLER_UPPER),
@@ -291,9 +350,26 @@ public class ServiceController {
 						String.format("Error validating updated Service Metadata. Validation Errors: %s", builder.toString()));
 			}
 
+			if (Boolean.TRUE.equals(statusCallback) && !Boolean.TRUE.equals(existingService.getIsAsynchronous())) {
+				return new ResponseEntity<>(
+						new ErrorResponse("`statusCallback` is only supported for asynchronous Services.", SERVICE_CONTROLLER_UPPER),
+						HttpStatus.BAD_REQUEST);
+			}
+			try {
+				validatePollIntervals(existingService, pollMinIntervalSeconds, pollMaxIntervalSeconds);
+			} catch (InvalidInputException exception) {
+				return new ResponseEntity<>(new ErrorResponse(exception.getMessage(), SERVICE_CONTROLLER_UPPER), HttpStatus.BAD_REQUEST);
+			}
+
 			// Update Existing Service
 			existingService.setServiceId(serviceId);
 			String result = usHandler.handle(existingService);
+			if (statusCallback != null) {
+				accessor.setStatusCallbackEnabled(serviceId, statusCallback);
+			}
+			if ((pollMinIntervalSeconds != null) || (pollMaxIntervalSeconds != null)) {
+				accessor.setPollIntervals(serviceId, pollMinIntervalSeconds, pollMaxIntervalSeconds);
+			}
 			if (result.length() > 0) {
 				return new ResponseEntity<>(
 						new SuccessResponse("Service was updated successfully.", SERVICE_CONTROLLER_UPPER), HttpStatus.OK);
@@ -313,6 +389,80 @@ public class ServiceController {
 		}
 	}
 
+	/**
+	 * Receives the Status of an instance of an asynchronous Service that reports Status by callback, rather than being
+	 * polled. The Service must have been registered with status callbacks enabled, and the Status must be reported by
+	 * the user who registered the Service or by one of its task administrators. Once the instance reports success, its
+	 * results are fetched from the Service.
+	 * <p>
+	 * A Status that arrives before the instance has been recorded is kept, and applied once it is. If too many Statuses
+	 * are already waiting to be handled, the callback is refused with 503 Service Unavailable.
+	 * </p>
+	 * 
+	 * @param userName
+	 *            The name of the user reporting the Status. Used for verification.
+	 * @param serviceId
+	 *            The ID of the Service
+	 * @param instanceId
+	 *            The ID of the instance, as returned by the Service when it was executed
+	 * @param statusUpdate
+	 *            The Status of the instance
+	 * @return Success, or an appropriate error
+	 */
+	@RequestMapping(value = "/service/{serviceId}/instance/{instanceId}/status", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<PiazzaResponse> receiveStatusCallback(@RequestParam(value = "userName", required = true) String userName,
+			@PathVariable(value = "serviceId") String serviceId, @PathVariable(value = "instanceId") String instanceId,
+			@RequestBody StatusUpdate statusUpdate) {
+		try {
+			if ((statusUpdate.getStatus() == null) || (statusUpdate.getStatus().isEmpty())) {
+				return new ResponseEntity<>(
+						new ErrorResponse("`status` property must be provided in Update payload.", SERVICE_CONTROLLER_UPPER),
+						HttpStatus.BAD_REQUEST);
+			}
+			if (!accessor.canUserReportServiceStatus(serviceId, userName)) {
+				logger.log(String.format("User %s is not permitted to report Status for Service %s", userName, serviceId), Severity.WARNING,
+						new AuditElement(userName, "rejectedStatusCallback", serviceId));
+				return new ResponseEntity<>(new ErrorResponse(
+						String.format("User %s is not permitted to report Status for Service %s.", userName, serviceId),
+						SERVICE_CONTROLLER_UPPER), HttpStatus.UNAUTHORIZED);
+			}
+			AsyncServiceInstance instance = accessor.getStatusCallbackInstance(serviceId, instanceId);
+			if ((instance == null) && accessor.isStatusCallbackEnabled(serviceId)) {
+				if (asyncWorker.deferStatusCallback(serviceId, instanceId, statusUpdate)) {
+					// The instance is still being started
+					logger.log(String.format("Received Status %s for Service %s Instance %s before the instance was recorded",
+							statusUpdate.getStatus(), serviceId, instanceId), Severity.INFORMATIONAL);
+					return new ResponseEntity<>(new SuccessResponse("Accepted", SERVICE_CONTROLLER_UPPER), HttpStatus.ACCEPTED);
+				}
+				// Recorded in the meantime
+				instance = accessor.getStatusCallbackInstance(serviceId, instanceId);
+			}
+			if (instance == null) {
+				return new ResponseEntity<>(new ErrorResponse(
+						String.format("No running instance %s found for Service %s with status callbacks enabled.", instanceId, serviceId),
+						SERVICE_CONTROLLER_UPPER), HttpStatus.NOT_FOUND);
+			}
+			logger.log(String.format("Received Status %s for Service %s Instance %s under Job ID %s", statusUpdate.getStatus(), serviceId,
+					instanceId, instance.getJobId()), Severity.INFORMATIONAL);
+			asyncWorker.processStatusCallback(instance, statusUpdate);
+			return new ResponseEntity<>(new SuccessResponse("OK", SERVICE_CONTROLLER_UPPER), HttpStatus.OK);
+		} catch (InvalidInputException exception) {
+			return new ResponseEntity<>(new ErrorResponse(exception.getMessage(), SERVICE_CONTROLLER_UPPER), HttpStatus.NOT_FOUND);
+		} catch (TaskRejectedException exception) {
+			// Too many callbacks are waiting to be handled. The Service may retry, and the instance is still polled.
+			String error = String.format("Too many Status callbacks are being handled to accept Status for Service %s Instance %s",
+					serviceId, instanceId);
+			logger.log(error, Severity.WARNING);
+			return new ResponseEntity<>(new ErrorResponse(error, SERVICE_CONTROLLER_UPPER), HttpStatus.SERVICE_UNAVAILABLE);
+		} catch (Exception exception) {
+			String error = String.format("Error receiving Status for Service %s Instance %s: %s", serviceId, instanceId,
+					exception.getMessage());
+			LOG.error(error, exception);
+			logger.log(error, Severity.ERROR, new AuditElement(SERVICE_CONTROLLER_LOWER, "receivingStatusCallback", SERVICE));
+			return new ResponseEntity<>(new ErrorResponse(error, SERVICE_CONTROLLER_UPPER), HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+
 	/**
 	 * Executes a service registered in the Service Controller. This service is meant for internal Piazza use,
 	 * Swiss-Army-Knife (SAK) administration and for testing of the serviceController.
@@ -28,17 +28,23 @@ import model.status.StatusUpdate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
 import org.venice.piazza.servicecontroller.taskmanaged.ServiceTaskManager;
 import util.PiazzaLogger;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * REST Controller for Task-Managed Service endpoints. This includes pulling Jobs off the queue, and updating Status for
@@ -55,6 +61,11 @@ public class TaskManagedController {
     @Autowired
     private DatabaseAccessor accessor;
 
+    @Value("${task.managed.batch.max.size}")
+    private int BATCH_MAX_SIZE; //NOSONAR
+    @Value("${task.managed.max.wait.seconds}")
+    private int MAX_WAIT_SECONDS; //NOSONAR
+
     private static final String NO_ACCESS_MSG = "Service does not allow this user to access.";
     private static final String SERVICE_CONTROLLER = "ServiceController";
     private static final Logger LOG = LoggerFactory.getLogger(ServiceController.class);
@@ -100,6 +111,123 @@ public class TaskManagedController {
         }
     }
 
+    /**
+     * Pulls the next job off of the Service Queue, waiting for one to be added if the queue is empty. The request is
+     * held open, without holding a request thread, until a Job is added or the wait ends.
+     *
+     * @param userName    The name of the user. Used for verification.
+     * @param serviceId   The ID of the Service
+     * @param waitSeconds The longest time to wait for a Job, up to the configured maximum
+     * @return The information for the next Job, if one was present or added before the wait ended.
+     */
+    @RequestMapping(value = {"/service/{serviceId}/task"}, method = RequestMethod.POST, params = "waitSeconds", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<PiazzaResponse>> waitForNextServiceJobFromQueue(
+            @RequestParam(value = "userName", required = true) String userName, @PathVariable(value = "serviceId") String serviceId,
+            @RequestParam(value = "waitSeconds") int waitSeconds) {
+        if (waitSeconds <= 0) {
+            DeferredResult<ResponseEntity<PiazzaResponse>> immediate = new DeferredResult<>();
+            immediate.setResult(getNextServiceJobFromQueue(userName, serviceId));
+            return immediate;
+        }
+        // No Job Found before the wait ends. Return Null in the Response.
+        DeferredResult<ResponseEntity<PiazzaResponse>> deferredResult = new DeferredResult<>(waitSeconds * 1000L,
+                new ResponseEntity<>(new ServiceJobResponse(), HttpStatus.OK));
+        try {
+            // Log the Request
+            piazzaLogger.log(String.format("User %s Requesting to perform Work on Next Job for %s Service Queue, waiting up to %s seconds.",
+                    userName, serviceId, waitSeconds), Severity.INFORMATIONAL);
+
+            // Check for Access
+            boolean canAccess = accessor.canUserAccessServiceQueue(serviceId, userName);
+            if (!canAccess) {
+                throw new ResourceAccessException(NO_ACCESS_MSG);
+            }
+
+            // Simple Validation
+            if (waitSeconds > MAX_WAIT_SECONDS) {
+                throw new HttpServerErrorException(HttpStatus.BAD_REQUEST,
+                        String.format("`waitSeconds` must be at most %s.", MAX_WAIT_SECONDS));
+            }
+
+            // Get the Job once one is available. This will mark the Job as being processed.
+            CompletableFuture<ExecuteServiceJob> nextJob = serviceTaskManager.awaitNextJobFromQueue(serviceId);
+            deferredResult.onTimeout(() -> nextJob.complete(null));
+            deferredResult.onCompletion(() -> nextJob.complete(null));
+            nextJob.whenComplete((serviceJob, exception) -> {
+                if (exception != null) {
+                    deferredResult.setResult(getNextServiceErrorEntity(serviceId, userName,
+                            (exception instanceof Exception) ? (Exception) exception : new Exception(exception)));
+                } else if ((serviceJob != null)
+                        && !deferredResult.setResult(new ResponseEntity<>(new ServiceJobResponse(serviceJob, serviceJob.getJobId()), HttpStatus.OK))) {
+                    // The request ended before the Job could be returned
+                    serviceTaskManager.returnJobToQueue(serviceId, serviceJob.getJobId());
+                }
+            });
+        } catch (Exception ex) {
+            deferredResult.setResult(getNextServiceErrorEntity(serviceId, userName, ex));
+        }
+        return deferredResult;
+    }
+
+    private ResponseEntity<PiazzaResponse> getNextServiceErrorEntity(String serviceId, String userName, Exception exception) {
+        ErrorResponse error = getNextServiceErrorResponse(serviceId, userName, exception);
+        if (exception instanceof ResourceAccessException) {
+            return new ResponseEntity<>(error, HttpStatus.UNAUTHORIZED);
+        } else if (exception instanceof InvalidInputException) {
+            return new ResponseEntity<>(error, HttpStatus.NOT_FOUND);
+        } else if (exception instanceof HttpServerErrorException) {
+            return new ResponseEntity<>(error, ((HttpServerErrorException) exception).getStatusCode());
+        } else {
+            return new ResponseEntity<>(error, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Pulls up to a number of the next jobs off of the Service Queue at once.
+     *
+     * @param userName  The name of the user. Used for verification.
+     * @param serviceId The ID of the Service
+     * @param count     The maximum number of Jobs to pull, up to the configured batch size
+     * @return The information for each Job pulled, which may be none.
+     */
+    @RequestMapping(value = {"/service/{serviceId}/task/batch"}, method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity getNextServiceJobsFromQueue(@RequestParam(value = "userName", required = true) String userName,
+                                                      @PathVariable(value = "serviceId") String serviceId,
+                                                      @RequestParam(value = "count", required = false, defaultValue = "10") int count) {
+        try {
+            // Log the Request
+            piazzaLogger.log(String.format("User %s Requesting to perform Work on up to %s Jobs for %s Service Queue.", userName, count,
+                    serviceId), Severity.INFORMATIONAL);
+
+            // Check for Access
+            boolean canAccess = accessor.canUserAccessServiceQueue(serviceId, userName);
+            if (!canAccess) {
+                throw new ResourceAccessException(NO_ACCESS_MSG);
+            }
+
+            // Simple Validation
+            if ((count < 1) || (count > BATCH_MAX_SIZE)) {
+                throw new HttpServerErrorException(HttpStatus.BAD_REQUEST,
+                        String.format("`count` must be between 1 and %s.", BATCH_MAX_SIZE));
+            }
+
+            // Get the Jobs. This will mark the Jobs as being processed.
+            List<ServiceJobResponse> responses = new ArrayList<>();
+            for (ExecuteServiceJob serviceJob : serviceTaskManager.getNextJobsFromQueue(serviceId, count)) {
+                responses.add(new ServiceJobResponse(serviceJob, serviceJob.getJobId()));
+            }
+            return new ResponseEntity<List<ServiceJobResponse>>(responses, HttpStatus.OK);
+        } catch (ResourceAccessException ex) {
+            return new ResponseEntity<>(getNextServiceErrorResponse(serviceId, userName, ex), HttpStatus.UNAUTHORIZED);
+        } catch (InvalidInputException ex) {
+            return new ResponseEntity<>(getNextServiceErrorResponse(serviceId, userName, ex), HttpStatus.NOT_FOUND);
+        } catch (HttpServerErrorException ex) {
+            return new ResponseEntity<>(getNextServiceErrorResponse(serviceId, userName, ex), ex.getStatusCode());
+        } catch (Exception ex) {
+            return new ResponseEntity<>(getNextServiceErrorResponse(serviceId, userName, ex), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
     private ErrorResponse getNextServiceErrorResponse(String serviceId, String userName, Exception exception) {
         String error = String.format("Error Getting next Service Job for Service %s by User %s: %s", serviceId, userName,
                 exception.getMessage());
@@ -153,6 +281,69 @@ public class TaskManagedController {
         }
     }
 
+    /**
+     * Updates the Status for several Piazza Jobs at once.
+     *
+     * @param userName      The name of the user. Used for verification.
+     * @param serviceId     The ID of the Service containing the Jobs
+     * @param statusUpdates The update contents for each Job, including its Job ID, status, percentage, and possibly
+     *                      results.
+     * @return The number of updates processed, and the error for each Job whose update could not be processed.
+     */
+    @RequestMapping(value = {
+            "/service/{serviceId}/task/batch/status"}, method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity updateServiceJobStatuses(@RequestParam(value = "userName", required = true) String userName,
+                                                   @PathVariable(value = "serviceId") String serviceId,
+                                                   @RequestBody List<StatusUpdate> statusUpdates) {
+        try {
+            // Log the Request
+            piazzaLogger.log(String.format("User %s Requesting to Update Job Status for %s Jobs for Task-Managed Service %s.", userName,
+                    statusUpdates.size(), serviceId), Severity.INFORMATIONAL);
+
+            // Check for Access
+            boolean canAccess = accessor.canUserAccessServiceQueue(serviceId, userName);
+            if (!canAccess) {
+                throw new ResourceAccessException(NO_ACCESS_MSG);
+            }
+
+            // Simple Validation
+            if (statusUpdates.size() > BATCH_MAX_SIZE) {
+                throw new HttpServerErrorException(HttpStatus.BAD_REQUEST,
+                        String.format("At most %s updates may be sent at once.", BATCH_MAX_SIZE));
+            }
+            for (StatusUpdate statusUpdate : statusUpdates) {
+                if ((statusUpdate.getJobId() == null) || (statusUpdate.getJobId().isEmpty())) {
+                    throw new HttpServerErrorException(HttpStatus.BAD_REQUEST, "`jobId` property must be provided in each Update payload.");
+                }
+                if ((statusUpdate.getStatus() == null) || (statusUpdate.getStatus().isEmpty())) {
+                    throw new HttpServerErrorException(HttpStatus.BAD_REQUEST, "`status` property must be provided in each Update payload.");
+                }
+            }
+
+            // Process the Updates
+            Map<String, String> errors = serviceTaskManager.processStatusUpdates(serviceId, statusUpdates);
+            Map<String, Object> response = new HashMap<>();
+            response.put("processed", statusUpdates.size() - errors.size());
+            response.put("errors", errors);
+            return new ResponseEntity<Map<String, Object>>(response, HttpStatus.OK);
+        } catch (ResourceAccessException ex) {
+            return new ResponseEntity<>(getUpdateServicesErrorResponse(serviceId, userName, ex), HttpStatus.UNAUTHORIZED);
+        } catch (InvalidInputException ex) {
+            return new ResponseEntity<>(getUpdateServicesErrorResponse(serviceId, userName, ex), HttpStatus.NOT_FOUND);
+        } catch (HttpServerErrorException ex) {
+            return new ResponseEntity<>(getUpdateServicesErrorResponse(serviceId, userName, ex), ex.getStatusCode());
+        } catch (Exception exception) {
+            return new ResponseEntity<>(getUpdateServicesErrorResponse(serviceId, userName, exception), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private ErrorResponse getUpdateServicesErrorResponse(String serviceId, String userName, Exception exception) {
+        String error = String.format("Could not Update status for Jobs for Service %s : %s", serviceId, exception.getMessage());
+        LOG.error(error, exception);
+        piazzaLogger.log(error, Severity.ERROR, new AuditElement(userName, "failedToUpdateServiceJobs", serviceId));
+        return new ErrorResponse(error, SERVICE_CONTROLLER);
+    }
+
     private ErrorResponse getUpdateServiceErrorResponse(String jobId, String serviceId, String userName, Exception exception) {
         String error = String.format("Could not Update status for Job %s for Service %s : %s", jobId, serviceId,
                 exception.getMessage());
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.data.accessor;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
+import org.venice.piazza.servicecontroller.data.model.AsyncPollScheduleEntity;
+
+/**
+ * Repository for the poll schedules of Asynchronous Service Instances, keyed by Job ID.
+ */
+public interface AsyncPollScheduleDao extends CrudRepository<AsyncPollScheduleEntity, String> {
+	/**
+	 * Claims the schedules of instances due to be polled, in one shard of all instances, by moving their next poll
+	 * time to the end of a lease. Instances are assigned to shards by a hash of their Job ID. Schedules locked by
+	 * another claim are skipped, so that each instance is claimed once.
+	 * 
+	 * @param leaseUntil
+	 *            The epoch time at which claimed instances are due again, if their poll does not reschedule them
+	 * @param now
+	 *            The current epoch time
+	 * @param shardCount
+	 *            The number of shards
+	 * @param shard
+	 *            The shard to claim from, from zero
+	 * @param limit
+	 *            The maximum number of schedules to claim
+	 * @return The claimed schedules
+	 */
+	@Transactional
+	@Query(value = "UPDATE async_poll_schedule SET next_poll_at = ?1 WHERE job_id IN (SELECT job_id FROM async_poll_schedule "
+			+ "WHERE next_poll_at <= ?2 AND (hashtext(job_id) & 2147483647) % ?3 = ?4 ORDER BY next_poll_at LIMIT ?5 "
+			+ "FOR UPDATE SKIP LOCKED) RETURNING *", nativeQuery = true)
+	List<AsyncPollScheduleEntity> claimDueSchedules(long leaseUntil, long now, int shardCount, int shard, int limit);
+
+	@Modifying
+	@Transactional
+	@Query("DELETE FROM AsyncPollScheduleEntity e WHERE e.jobId = ?1")
+	int deleteByJobId(String jobId);
+}
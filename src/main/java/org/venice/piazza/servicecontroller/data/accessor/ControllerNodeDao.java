@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.data.accessor;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
+import org.venice.piazza.servicecontroller.data.model.ControllerNodeEntity;
+
+/**
+ * Repository for the heartbeats of running Service Controller instances, keyed by node ID.
+ */
+public interface ControllerNodeDao extends CrudRepository<ControllerNodeEntity, String> {
+	/**
+	 * Records the heartbeat of a node at the time of the database, so that the clocks of the nodes need not agree.
+	 * 
+	 * @param nodeId
+	 *            The ID of the node
+	 * @return The number of nodes updated
+	 */
+	@Modifying
+	@Transactional
+	@Query(value = "INSERT INTO controller_node (node_id, heartbeat_at) VALUES (?1, CAST(EXTRACT(EPOCH FROM now()) * 1000 AS bigint)) "
+			+ "ON CONFLICT (node_id) DO UPDATE SET heartbeat_at = EXCLUDED.heartbeat_at", nativeQuery = true)
+	int upsertHeartbeat(String nodeId);
+
+	/**
+	 * @param timeoutMs
+	 *            Milliseconds, by the clock of the database, after its last heartbeat that a node is considered dead
+	 * @return The IDs of all live nodes, in order
+	 */
+	@Query(value = "SELECT node_id FROM controller_node WHERE heartbeat_at >= CAST(EXTRACT(EPOCH FROM now()) * 1000 AS bigint) - ?1 "
+			+ "ORDER BY node_id", nativeQuery = true)
+	List<String> getLiveNodeIds(long timeoutMs);
+
+	@Modifying
+	@Transactional
+	@Query(value = "DELETE FROM controller_node WHERE heartbeat_at < CAST(EXTRACT(EPOCH FROM now()) * 1000 AS bigint) - ?1", nativeQuery = true)
+	int deleteExpiredNodes(long timeoutMs);
+}
@@ -15,10 +15,16 @@
  *******************************************************************************/
 package org.venice.piazza.servicecontroller.data.accessor;
 
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
@@ -27,7 +33,9 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.client.ResourceAccessException;
 import org.venice.piazza.common.hibernate.dao.AsyncServiceInstanceDao;
 import org.venice.piazza.common.hibernate.dao.ServiceJobDao;
@@ -37,6 +45,14 @@ import org.venice.piazza.common.hibernate.entity.AsyncServiceInstanceEntity;
 import org.venice.piazza.common.hibernate.entity.JobEntity;
 import org.venice.piazza.common.hibernate.entity.ServiceEntity;
 import org.venice.piazza.common.hibernate.entity.ServiceJobEntity;
+import org.venice.piazza.servicecontroller.data.cache.ServiceCache;
+import org.venice.piazza.servicecontroller.data.cache.ServiceCacheSynchronizer;
+import org.venice.piazza.servicecontroller.data.model.AsyncPollScheduleEntity;
+import org.venice.piazza.servicecontroller.data.model.OutboxMessageEntity;
+import org.venice.piazza.servicecontroller.data.model.ServiceJobQueueEntity;
+import org.venice.piazza.servicecontroller.data.model.ServicePollIntervalEntity;
+import org.venice.piazza.servicecontroller.data.model.StatusCallbackInstanceEntity;
+import org.venice.piazza.servicecontroller.data.model.StatusCallbackServiceEntity;
 
 import exception.InvalidInputException;
 import model.job.Job;
@@ -59,8 +75,8 @@ import util.PiazzaLogger;
  */
 @Component
 public class DatabaseAccessor {
-	@Value("${async.stale.instance.threshold.seconds}")
-	private int STALE_INSTANCE_THRESHOLD_SECONDS; //NOSONAR
+	@Value("${async.poll.max.instances.per.cycle}")
+	private int MAX_POLLS_PER_CYCLE; //NOSONAR
 	@Autowired
 	private PiazzaLogger logger;
 
@@ -72,9 +88,33 @@ public class DatabaseAccessor {
 	private AsyncServiceInstanceDao asyncServiceInstanceDao;
 	@Autowired
 	private JobDao jobDao;
+	@Autowired
+	private JobBatchDao jobBatchDao;
+	@Autowired
+	private OutboxMessageDao outboxMessageDao;
+	@Autowired
+	private StatusCallbackServiceDao statusCallbackServiceDao;
+	@Autowired
+	private StatusCallbackInstanceDao statusCallbackInstanceDao;
+	@Autowired
+	private AsyncPollScheduleDao asyncPollScheduleDao;
+	@Autowired
+	private ServicePollIntervalDao servicePollIntervalDao;
+	@Autowired
+	private ControllerNodeDao controllerNodeDao;
+	@Autowired
+	private ServiceJobQueueDao serviceJobQueueDao;
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+	@Autowired
+	private ServiceCache serviceCache;
+	@Autowired
+	private ServiceCacheSynchronizer serviceCacheSynchronizer;
 
 	private static final Logger LOG = LoggerFactory.getLogger(DatabaseAccessor.class);
 	private static final String SERVICE_CTR = "serviceController";
+	private static final String UPDATE_POLL_SCHEDULE_SQL = "UPDATE async_poll_schedule SET next_poll_at = ?, interval_ms = ?, "
+			+ "last_status = ?, error_count = ?, last_checked_on = ? WHERE job_id = ?";
 
 	/**
 	 * Deletes existing registered service from the Database
@@ -96,6 +136,7 @@ public class DatabaseAccessor {
 				}
 				serviceEntity.getService().getResourceMetadata().setAvailability(ResourceMetadata.STATUS_TYPE.OFFLINE.toString());
 				serviceDao.save(serviceEntity);
+				serviceCacheSynchronizer.invalidate(serviceId);
 				result = " service " + serviceId + " was disabled ";
 			}
 		} else {
@@ -105,8 +146,11 @@ public class DatabaseAccessor {
 			if (entity != null) {
 				serviceDao.delete(entity);
 			}
+			serviceCacheSynchronizer.invalidate(serviceId);
 			// If any Service Queue exists, also delete that here.
 			deleteServiceQueue(serviceId);
+			setStatusCallbackEnabled(serviceId, false);
+			setPollIntervals(serviceId, null, null);
 			result = " service " + serviceId + " was deleted ";
 		}
 		return result;
@@ -119,6 +163,7 @@ public class DatabaseAccessor {
 		logger.log(String.format("Saving resource in DB %s", service.getServiceId()), Severity.INFORMATIONAL,
 				new AuditElement(SERVICE_CTR, "Created Service ", service.getServiceId()));
 		serviceDao.save(new ServiceEntity(service));
+		serviceCacheSynchronizer.invalidate(service.getServiceId());
 		return service.getServiceId();
 	}
 
@@ -134,6 +179,10 @@ public class DatabaseAccessor {
 			entity.setService(service);
 			serviceDao.save(entity);
 		}
+		if (Boolean.TRUE.equals(service.getIsTaskManaged())) {
+			serviceJobQueueDao.setServiceTimeout(service.getServiceId(), getTimeoutMillis(service));
+		}
+		serviceCacheSynchronizer.invalidate(service.getServiceId());
 		return service.getServiceId();
 	}
 
@@ -183,7 +232,8 @@ public class DatabaseAccessor {
 	}
 
 	/**
-	 * Returns a ResourceMetadata object that matches the specified Id.
+	 * Returns a ResourceMetadata object that matches the specified Id. Reads through the Service cache; the returned
+	 * Service may be shared and must not be modified. Use {@link #getServiceById(String, boolean)} for updates.
 	 * 
 	 * @param jobId
 	 *            Job Id
@@ -191,10 +241,35 @@ public class DatabaseAccessor {
      * @throws ResourceAccessException
 	 */
 	public Service getServiceById(String serviceId) {
+		return getServiceById(serviceId, true);
+	}
+
+	/**
+	 * Returns a ResourceMetadata object that matches the specified Id.
+	 * 
+	 * @param serviceId
+	 *            The Service Id
+	 * @param useCache
+	 *            If true, the Service cache is consulted and populated. If false, the Service is always read from the
+	 *            database, and the returned instance is safe to modify.
+	 * @return The Service with the specified Id
+	 * @throws ResourceAccessException
+	 */
+	public Service getServiceById(String serviceId, boolean useCache) {
+		long cacheGeneration = serviceCache.getGeneration();
+		if (useCache) {
+			Service cached = serviceCache.get(serviceId);
+			if (cached != null) {
+				return cached;
+			}
+		}
 		ServiceEntity serviceEntity = serviceDao.getServiceById(serviceId);
 		if (serviceEntity == null) {
 			throw new ResourceAccessException(String.format("Service not found : %s", serviceId));
 		} else {
+			if (useCache) {
+				serviceCache.put(serviceEntity.getService(), cacheGeneration);
+			}
 			return serviceEntity.getService();
 		}
 	}
@@ -210,7 +285,7 @@ public class DatabaseAccessor {
 	}
 
 	/**
-	 * Gets the Async Service Instance for the Piazza Job ID
+	 * Gets the Async Service Instance for the Piazza Job ID, with the Status and error count from its last poll.
 	 * 
 	 * @param jobId
 	 *            The piazza Job ID
@@ -221,7 +296,12 @@ public class DatabaseAccessor {
 		if (entity == null) {
 			return null;
 		} else {
-			return entity.getAsyncServiceInstance();
+			AsyncServiceInstance instance = entity.getAsyncServiceInstance();
+			AsyncPollScheduleEntity schedule = asyncPollScheduleDao.findOne(jobId);
+			if (schedule != null) {
+				schedule.applyPollState(instance);
+			}
+			return instance;
 		}
 	}
 
@@ -248,21 +328,80 @@ public class DatabaseAccessor {
 		if (entity != null) {
 			asyncServiceInstanceDao.delete(entity);
 		}
+		statusCallbackInstanceDao.deleteByJobId(jobId);
+		asyncPollScheduleDao.deleteByJobId(jobId);
 	}
 
 	/**
-	 * @return Gets all Instances that require a status check.
+	 * Claims the schedules of Instances that are due a status check, up to the maximum per poll cycle, in a single
+	 * statement. Claimed Instances are not due again until the lease ends, so that no other poll cycle claims them while
+	 * they are being polled. Instances are split into shards by Job ID, so that each running Service Controller polls
+	 * only its own share.
+	 * 
+	 * @param shardCount
+	 *            The number of shards
+	 * @param shard
+	 *            The shard to claim from, from zero
+	 * @param leaseMs
+	 *            Milliseconds until claimed Instances are due again, if they are not rescheduled
+	 * @return The claimed schedules
 	 */
-	public List<AsyncServiceInstance> getStaleServiceInstances() {
-		long thresholdEpoch = new DateTime().minusSeconds(STALE_INSTANCE_THRESHOLD_SECONDS).getMillis();
-		Iterable<AsyncServiceInstanceEntity> results = asyncServiceInstanceDao.getStaleServiceInstances(thresholdEpoch);
+	public List<AsyncPollScheduleEntity> claimDueSchedules(int shardCount, int shard, long leaseMs) {
+		long now = System.currentTimeMillis();
+		return asyncPollScheduleDao.claimDueSchedules(now + leaseMs, now, shardCount, shard, MAX_POLLS_PER_CYCLE);
+	}
+
+	/**
+	 * Updates the next poll time, interval and last poll state of many Instances in one batch. Schedules of Instances
+	 * that have since completed are ignored.
+	 */
+	public void updatePollSchedules(List<AsyncPollScheduleEntity> schedules) {
+		jdbcTemplate.batchUpdate(UPDATE_POLL_SCHEDULE_SQL, schedules, schedules.size(), (statement, schedule) -> {
+			statement.setLong(1, schedule.getNextPollAt());
+			statement.setLong(2, schedule.getIntervalMs());
+			statement.setString(3, schedule.getLastStatus());
+			statement.setObject(4, schedule.getErrorCount(), Types.INTEGER);
+			statement.setObject(5, schedule.getLastCheckedOn(), Types.BIGINT);
+			statement.setString(6, schedule.getJobId());
+		});
+	}
+
+	/**
+	 * @return All Instances that have no poll schedule, such as those started before poll schedules were introduced.
+	 */
+	public List<AsyncServiceInstance> getUnscheduledServiceInstances() {
+		Set<String> scheduledJobIds = new HashSet<>();
+		for (AsyncPollScheduleEntity schedule : asyncPollScheduleDao.findAll()) {
+			scheduledJobIds.add(schedule.getJobId());
+		}
 		List<AsyncServiceInstance> instances = new ArrayList<>();
-		for (AsyncServiceInstanceEntity result : results) {
-			instances.add(result.getAsyncServiceInstance());
+		for (AsyncServiceInstanceEntity entity : asyncServiceInstanceDao.findAll()) {
+			AsyncServiceInstance instance = entity.getAsyncServiceInstance();
+			if (!scheduledJobIds.contains(instance.getJobId())) {
+				instances.add(instance);
+			}
 		}
 		return instances;
 	}
 
+	/**
+	 * Gets the poll schedule of an Async Service Instance.
+	 * 
+	 * @param jobId
+	 *            The Job ID of the instance
+	 * @return The schedule, or null if the instance has none
+	 */
+	public AsyncPollScheduleEntity getPollSchedule(String jobId) {
+		return asyncPollScheduleDao.findOne(jobId);
+	}
+
+	/**
+	 * Adds or updates the poll schedule of an Async Service Instance.
+	 */
+	public void savePollSchedule(AsyncPollScheduleEntity schedule) {
+		asyncPollScheduleDao.save(schedule);
+	}
+
 	/**
 	 * Gets a list of all Piazza Services that are registered as a Task-Managed Service.
 	 * 
@@ -280,52 +419,72 @@ public class DatabaseAccessor {
 	/**
 	 * Gets the next Job in the queue for a particular service.
 	 * <p>
-	 * This method is synchronized because it is incredibly important that we never return the same job twice, avoiding
-	 * potential race conditions.
+	 * It is incredibly important that we never return the same job twice. The Job is claimed with a single atomic
+	 * update of its Service Queue entry, which skips entries locked by concurrent claims, so that Jobs can be dequeued
+	 * in parallel across Services and Service Controllers without duplicate delivery. The claim and the start time of
+	 * the Job are committed together, so a Job is never seen as started without being claimed, or the reverse.
 	 * </p>
 	 * 
 	 * @param serviceId
 	 *            The ID of the Service to fetch work for.
-	 * @return The next ServiceJob in the Service Queue, if one exists; null if the Queue has no Jobs ready to be
-	 *         processed.
+	 * @return The claimed Service Queue entry of the next Job, holding its start time and the timeout it was queued
+	 *         with, if one exists; null if the Queue has no Jobs ready to be processed.
 	 */
-	public synchronized ServiceJob getNextJobInServiceQueue(String serviceId) {
-		ServiceJobEntity serviceJobEntity = serviceJobDao.getNextJobInServiceQueue(serviceId);
-		if (serviceJobEntity == null) {
-			// No jobs to be processed
-			return null;
-		} else {
+	@Transactional
+	public ServiceJobQueueEntity getNextJobInServiceQueue(String serviceId) {
+		while (true) {
+			ServiceJobQueueEntity claimed = serviceJobQueueDao.claimNextJob(serviceId, System.currentTimeMillis());
+			if (claimed == null) {
+				// No jobs to be processed
+				return null;
+			}
+			ServiceJobEntity serviceJobEntity = serviceJobDao.getServiceJobByServiceAndJobId(serviceId, claimed.getJobId());
+			if (serviceJobEntity == null) {
+				// The Job has since been removed from the Queue. Drop the entry and claim the next one.
+				serviceJobQueueDao.deleteJob(serviceId, claimed.getJobId());
+				continue;
+			}
 			// A job is to be processed. Set the start time.
-			serviceJobEntity.getServiceJob().setStartedOn(new DateTime());
+			serviceJobEntity.getServiceJob().setStartedOn(new DateTime(claimed.getStartedOn()));
 			serviceJobDao.save(serviceJobEntity);
-			return serviceJobEntity.getServiceJob();
+			return claimed;
 		}
 	}
 
 	/**
-	 * Gets the complete list of all Jobs in the Service's Service Queue that have exceeded the length of time for
-	 * processing, and are thus considered timed out.
+	 * Gets up to a number of the next Jobs in the queue for a particular service, claiming them all with a single
+	 * atomic update of their Service Queue entries. As with {@link #getNextJobInServiceQueue(String)}, a Job is never
+	 * returned twice, and the claims are committed together with the start times of the Jobs.
 	 * 
 	 * @param serviceId
-	 *            The ID of the Service whose Queue to check
-	 * @return The list of timed out Jobs
+	 *            The ID of the Service to fetch work for.
+	 * @param limit
+	 *            The maximum number of Jobs to return
+	 * @return The claimed Service Queue entries of the next Jobs, in queue order. Empty if the Queue has no Jobs ready
+	 *         to be processed.
 	 */
-	public List<ServiceJob> getTimedOutServiceJobs(String serviceId) {
-		Service service = getServiceById(serviceId);
-		Long timeout = service.getTimeout();
-		if (timeout == null) {
-			// If no timeout is specified for the Service, then we can't check for timeouts.
-			return new ArrayList<>();
+	@Transactional
+	public List<ServiceJobQueueEntity> getNextJobsInServiceQueue(String serviceId, int limit) {
+		List<ServiceJobQueueEntity> claimed = new ArrayList<>(
+				serviceJobQueueDao.claimNextJobs(serviceId, System.currentTimeMillis(), limit));
+		claimed.sort(Comparator.comparing(ServiceJobQueueEntity::getId));
+		List<ServiceJobEntity> entities = new ArrayList<>(claimed.size());
+		List<ServiceJobQueueEntity> entries = new ArrayList<>(claimed.size());
+		for (ServiceJobQueueEntity entry : claimed) {
+			ServiceJobEntity serviceJobEntity = serviceJobDao.getServiceJobByServiceAndJobId(serviceId, entry.getJobId());
+			if (serviceJobEntity == null) {
+				// The Job has since been removed from the Queue
+				serviceJobQueueDao.deleteJob(serviceId, entry.getJobId());
+				continue;
+			}
+			serviceJobEntity.getServiceJob().setStartedOn(new DateTime(entry.getStartedOn()));
+			entities.add(serviceJobEntity);
+			entries.add(entry);
 		}
-		// The timeout is in seconds. Get the current time and subtract the number of seconds to find the timestamp of a
-		// timed out service.
-		long timeoutEpoch = new DateTime().minusSeconds(timeout.intValue()).getMillis();
-		Iterable<ServiceJobEntity> results = serviceJobDao.getTimedOutServiceJobs(serviceId, timeoutEpoch);
-		List<ServiceJob> serviceJobs = new ArrayList<>();
-		for (ServiceJobEntity entity : results) {
-			serviceJobs.add(entity.getServiceJob());
+		if (!entities.isEmpty()) {
+			serviceJobDao.save(entities);
 		}
-		return serviceJobs;
+		return entries;
 	}
 
 	/**
@@ -347,22 +506,20 @@ public class DatabaseAccessor {
 	}
 
 	/**
-	 * Increments the timeout count for the Job ID
+	 * Returns a Service Job that was pulled off of the Service Queue, but not handed to a worker, to the front of the
+	 * Queue. Unlike a timeout, this is not counted against the Job.
 	 * 
 	 * @param serviceId
 	 *            The Service ID containing the Job
-	 * @param serviceJob
-	 *            The ServiceJob that has timed out
+	 * @param jobId
+	 *            The ID of the Job
 	 */
-	public synchronized void incrementServiceJobTimeout(String serviceId, ServiceJob serviceJob) {
-		ServiceJobEntity entity = serviceJobDao.getServiceJobByServiceAndJobId(serviceId, serviceJob.getJobId());
+	public void releaseServiceJob(String serviceId, String jobId) {
+		ServiceJobEntity entity = serviceJobDao.getServiceJobByServiceAndJobId(serviceId, jobId);
 		if (entity != null) {
-			// Increment the failure count
-			entity.getServiceJob().setTimeouts(entity.getServiceJob().getTimeouts() + 1);
-			// Delete the previous Started On date, so that it can be picked up again.
 			entity.getServiceJob().setStartedOn(null);
-			// Save
 			serviceJobDao.save(entity);
+			serviceJobQueueDao.releaseJob(serviceId, jobId);
 		}
 	}
 
@@ -376,6 +533,104 @@ public class DatabaseAccessor {
 	 */
 	public void addJobToServiceQueue(String serviceId, ServiceJob serviceJob) {
 		serviceJobDao.save(new ServiceJobEntity(serviceId, serviceJob));
+		serviceJobQueueDao.save(new ServiceJobQueueEntity(serviceId, serviceJob.getJobId(), getTimeoutMillis(getServiceById(serviceId))));
+	}
+
+	/**
+	 * Adds Service Queue entries for any Service Jobs queued before entries were kept, such as by an earlier version of
+	 * the Service Controller. Jobs that already have entries are left as they are. The entries are added by the
+	 * database in one statement, without loading the Service Jobs. The timeout of every Task-Managed Service is then
+	 * copied to the entries of its Jobs.
+	 * 
+	 * @return The number of entries added
+	 */
+	public int indexServiceJobQueues() {
+		int added = serviceJobQueueDao.insertMissingJobs();
+		for (Service service : getTaskManagedServices()) {
+			serviceJobQueueDao.setServiceTimeout(service.getServiceId(), getTimeoutMillis(service));
+		}
+		return added;
+	}
+
+	/**
+	 * Requeues every Service Job, of any Task-Managed Service, that has exceeded the timeout of its Service, and counts
+	 * the timeout against it. Jobs that have already timed out as many times as the limit are not requeued.
+	 * 
+	 * @param now
+	 *            The current epoch time
+	 * @param errorLimit
+	 *            The number of timeouts after which a Job is failed
+	 * @return The Service Queue entries of the requeued Jobs
+	 */
+	public List<ServiceJobQueueEntity> retryTimedOutServiceJobs(long now, int errorLimit) {
+		return serviceJobQueueDao.retryTimedOutJobs(now, errorLimit);
+	}
+
+	/**
+	 * Claims every Service Job, of any Task-Managed Service, that has exceeded the timeout of its Service, and has
+	 * already timed out as many times as the limit. The Jobs are removed from the Service Queue as they are claimed, so
+	 * each is returned to only one caller, however many Service Controllers sweep at once.
+	 * 
+	 * @param now
+	 *            The current epoch time
+	 * @param errorLimit
+	 *            The number of timeouts after which a Job is failed
+	 * @return The removed Service Queue entries of the Jobs to fail
+	 */
+	public List<ServiceJobQueueEntity> claimFailedTimedOutServiceJobs(long now, int errorLimit) {
+		return serviceJobQueueDao.claimFailedTimedOutJobs(now, errorLimit);
+	}
+
+	/**
+	 * Requeues the specified Service Jobs that have exceeded the timeout of their Service, and counts the timeout
+	 * against them. Jobs that have already timed out as many times as the limit are not requeued.
+	 * 
+	 * @param jobIds
+	 *            The IDs of the Jobs to check
+	 * @param now
+	 *            The current epoch time
+	 * @param errorLimit
+	 *            The number of timeouts after which a Job is failed
+	 * @return The Service Queue entries of the requeued Jobs
+	 */
+	public List<ServiceJobQueueEntity> retryTimedOutServiceJobs(Collection<String> jobIds, long now, int errorLimit) {
+		return serviceJobQueueDao.retryTimedOutJobs(now, errorLimit, jobIds);
+	}
+
+	/**
+	 * Claims the specified Service Jobs that have exceeded the timeout of their Service, and have already timed out as
+	 * many times as the limit, as {@link #claimFailedTimedOutServiceJobs(long, int)} does.
+	 * 
+	 * @param jobIds
+	 *            The IDs of the Jobs to check
+	 * @param now
+	 *            The current epoch time
+	 * @param errorLimit
+	 *            The number of timeouts after which a Job is failed
+	 * @return The removed Service Queue entries of the Jobs to fail
+	 */
+	public List<ServiceJobQueueEntity> claimFailedTimedOutServiceJobs(Collection<String> jobIds, long now, int errorLimit) {
+		return serviceJobQueueDao.claimFailedTimedOutJobs(now, errorLimit, jobIds);
+	}
+
+	/**
+	 * Gets the Service Queue entries of started Service Jobs, of Services with a timeout, in the specified shard.
+	 * 
+	 * @param shardCount
+	 *            The number of shards
+	 * @param shard
+	 *            The shard, from zero
+	 * @return The started entries in the shard
+	 */
+	public List<ServiceJobQueueEntity> getStartedServiceJobs(int shardCount, int shard) {
+		return serviceJobQueueDao.getStartedJobs(shardCount, shard);
+	}
+
+	/**
+	 * @return The timeout of the Service in milliseconds, or null if it has none
+	 */
+	private static Long getTimeoutMillis(Service service) {
+		return ((service == null) || (service.getTimeout() == null)) ? null : service.getTimeout() * 1000;
 	}
 
 	/**
@@ -391,6 +646,7 @@ public class DatabaseAccessor {
 		if (entity != null) {
 			serviceJobDao.delete(entity);
 		}
+		serviceJobQueueDao.deleteJob(serviceId, jobId);
 	}
 
 	/**
@@ -411,6 +667,24 @@ public class DatabaseAccessor {
 		}
 	}
 
+	/**
+	 * Returns the Jobs that match the specified Ids, read in a single query.
+	 * 
+	 * @param jobIds
+	 *            Job Ids
+	 * @return The Jobs found, keyed by Job Id
+	 */
+	public Map<String, Job> getJobsById(Collection<String> jobIds) {
+		Map<String, Job> jobs = new HashMap<>();
+		if (jobIds.isEmpty()) {
+			return jobs;
+		}
+		for (JobEntity entity : jobBatchDao.getJobsByJobIds(jobIds)) {
+			jobs.put(entity.getJob().getJobId(), entity.getJob());
+		}
+		return jobs;
+	}
+
 	/**
 	 * Completely deletes a Service Queue for a registered service.
 	 * 
@@ -419,6 +693,7 @@ public class DatabaseAccessor {
 	 */
 	public void deleteServiceQueue(String serviceId) {
 		serviceJobDao.deleteAllJobsByServiceId(serviceId);
+		serviceJobQueueDao.deleteByServiceId(serviceId);
 	}
 
 	/**
@@ -458,4 +733,229 @@ public class DatabaseAccessor {
 		map.put("totalJobCount", serviceJobDao.getServiceJobCountForService(serviceId));
 		return map;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Adds a message to the outbox. Called within the transaction of the database changes the message reports.
+	 * 
+	 * @param routingKey
+	 *            The routing key to send the message with
+	 * @param payload
+	 *            The message
+	 */
+	public void addOutboxMessage(String routingKey, String payload) {
+		outboxMessageDao.save(new OutboxMessageEntity(routingKey, payload));
+	}
+
+	/**
+	 * Claims the oldest messages in the outbox, skipping those claimed by other instances. The claim is committed on
+	 * return, and expires after the timeout if the messages are neither sent nor released.
+	 * 
+	 * @param limit
+	 *            The maximum number of messages
+	 * @param claimTimeoutMs
+	 *            How long the messages are claimed for
+	 * @return The messages, oldest first
+	 */
+	public List<OutboxMessageEntity> claimOutboxMessages(int limit, long claimTimeoutMs) {
+		List<OutboxMessageEntity> messages = new ArrayList<>(outboxMessageDao.claimOldestMessages(claimTimeoutMs, limit));
+		messages.sort(Comparator.comparing(OutboxMessageEntity::getId));
+		return messages;
+	}
+
+	/**
+	 * Releases the claim on messages that could not be sent.
+	 * 
+	 * @param messages
+	 *            The claimed messages
+	 */
+	public void releaseOutboxMessages(List<OutboxMessageEntity> messages) {
+		outboxMessageDao.releaseMessages(messages.stream().map(OutboxMessageEntity::getId).collect(Collectors.toList()));
+	}
+
+	/**
+	 * Removes messages from the outbox once they have been sent.
+	 * 
+	 * @param messages
+	 *            The sent messages
+	 */
+	public void deleteOutboxMessages(List<OutboxMessageEntity> messages) {
+		outboxMessageDao.delete(messages);
+	}
+
+	/**
+	 * @return The number of messages waiting in the outbox
+	 */
+	public long getOutboxMessageCount() {
+		return outboxMessageDao.count();
+	}
+
+	/**
+	 * Sets whether an asynchronous Service reports the Status of its instances by callback. Instances of such Services
+	 * are not polled.
+	 * 
+	 * @param serviceId
+	 *            The ID of the Service
+	 * @param enabled
+	 *            True if the Service reports Status by callback
+	 */
+	public void setStatusCallbackEnabled(String serviceId, boolean enabled) {
+		if (enabled) {
+			statusCallbackServiceDao.save(new StatusCallbackServiceEntity(serviceId));
+		} else if (statusCallbackServiceDao.exists(serviceId)) {
+			statusCallbackServiceDao.delete(serviceId);
+			statusCallbackInstanceDao.deleteByServiceId(serviceId);
+		}
+	}
+
+	/**
+	 * @return True if the Service reports the Status of its instances by callback
+	 */
+	public boolean isStatusCallbackEnabled(String serviceId) {
+		return statusCallbackServiceDao.exists(serviceId);
+	}
+
+	/**
+	 * Records the Instance ID of an Async Service Instance of a status callback Service, so that callbacks for it can
+	 * be matched to its Job. The instance must already have been added, so that callbacks arriving from now on can be
+	 * applied to it.
+	 * 
+	 * @param instance
+	 *            The instance
+	 * @return The Status of a callback that arrived before the instance was recorded, as JSON, or null if none did
+	 */
+	public String addStatusCallbackInstance(AsyncServiceInstance instance) {
+		// A callback may be kept between the claim and the insert. The insert then fails, and the second claim takes it.
+		for (int attempt = 0; attempt < 2; attempt++) {
+			String earlyStatus = statusCallbackInstanceDao.claimEarlyStatus(instance.getServiceId(), instance.getInstanceId(),
+					instance.getJobId());
+			if (earlyStatus != null) {
+				return earlyStatus;
+			}
+			if (statusCallbackInstanceDao.insertInstance(instance.getServiceId(), instance.getInstanceId(), instance.getJobId()) > 0) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Keeps the Status of a callback for an instance that has not been recorded yet, to be applied once it is.
+	 * 
+	 * @param serviceId
+	 *            The ID of the Service
+	 * @param instanceId
+	 *            The Instance ID, as reported by the User Service
+	 * @param status
+	 *            The Status, as JSON
+	 * @return True if the Status was kept. False if the instance has been recorded in the meantime.
+	 */
+	public boolean addEarlyStatusCallback(String serviceId, String instanceId, String status) {
+		return statusCallbackInstanceDao.upsertEarlyStatus(serviceId, instanceId, status, System.currentTimeMillis()) > 0;
+	}
+
+	/**
+	 * Deletes the Statuses of callbacks, received before the cutoff, for instances that were never recorded.
+	 * 
+	 * @param cutoff
+	 *            Epoch time, in milliseconds
+	 * @return The number of Statuses deleted
+	 */
+	public int deleteEarlyStatusCallbacks(long cutoff) {
+		return statusCallbackInstanceDao.deleteEarlyStatusesBefore(cutoff);
+	}
+
+	/**
+	 * Checks if a user may report the Status of instances of a Service: the user who registered the Service, or one of
+	 * its task administrators.
+	 * 
+	 * @param serviceId
+	 *            The ID of the Service
+	 * @param username
+	 *            The name of the user
+	 * @return True if the user may report Status
+	 */
+	public boolean canUserReportServiceStatus(String serviceId, String username) throws InvalidInputException {
+		if (username == null) {
+			return false;
+		}
+		try {
+			Service service = getServiceById(serviceId);
+			if ((service.getResourceMetadata() != null) && username.equals(service.getResourceMetadata().getCreatedBy())) {
+				return true;
+			}
+			return (service.getTaskAdministrators() != null) && service.getTaskAdministrators().contains(username);
+		} catch (ResourceAccessException exception) {
+			LOG.info(String.format("User %s attempted to report Status for non-existent service with ID %s", username, serviceId),
+					exception);
+			throw new InvalidInputException(String.format("Service not found : %s", serviceId));
+		}
+	}
+
+	/**
+	 * Gets the Async Service Instance that a status callback is for.
+	 * 
+	 * @param serviceId
+	 *            The ID of the Service
+	 * @param instanceId
+	 *            The Instance ID, as reported by the User Service
+	 * @return The instance, or null if the Service has no such running instance
+	 */
+	public AsyncServiceInstance getStatusCallbackInstance(String serviceId, String instanceId) {
+		StatusCallbackInstanceEntity entity = statusCallbackInstanceDao.findByServiceIdAndInstanceId(serviceId, instanceId);
+		if ((entity == null) || (entity.getJobId() == null)) {
+			return null;
+		}
+		return getInstanceByJobId(entity.getJobId());
+	}
+
+	/**
+	 * Sets the bounds on how often instances of an asynchronous Service are polled for Status. These apply to instances
+	 * started after they are set.
+	 * 
+	 * @param serviceId
+	 *            The ID of the Service
+	 * @param minIntervalSeconds
+	 *            The shortest interval, or null for the default
+	 * @param maxIntervalSeconds
+	 *            The longest interval, or null for the default
+	 */
+	public void setPollIntervals(String serviceId, Integer minIntervalSeconds, Integer maxIntervalSeconds) {
+		if ((minIntervalSeconds != null) || (maxIntervalSeconds != null)) {
+			servicePollIntervalDao.save(new ServicePollIntervalEntity(serviceId, minIntervalSeconds, maxIntervalSeconds));
+		} else if (servicePollIntervalDao.exists(serviceId)) {
+			servicePollIntervalDao.delete(serviceId);
+		}
+	}
+
+	/**
+	 * @return The bounds on how often instances of the Service are polled, or null if the defaults apply
+	 */
+	public ServicePollIntervalEntity getPollIntervals(String serviceId) {
+		return servicePollIntervalDao.findOne(serviceId);
+	}
+
+	/**
+	 * Records that a Service Controller node is alive, and removes nodes that have not been seen within the timeout.
+	 * Heartbeats are timed by the clock of the database, so skew between the nodes does not make them expire each other.
+	 * 
+	 * @param nodeId
+	 *            The ID of this node
+	 * @param timeoutMs
+	 *            Milliseconds after its last heartbeat that a node is considered dead
+	 * @return The IDs of all live nodes, in order
+	 */
+	public List<String> heartbeatNode(String nodeId, long timeoutMs) {
+		controllerNodeDao.upsertHeartbeat(nodeId);
+		controllerNodeDao.deleteExpiredNodes(timeoutMs);
+		return controllerNodeDao.getLiveNodeIds(timeoutMs);
+	}
+
+	/**
+	 * Removes a Service Controller node that is shutting down, so that the other nodes take over its work.
+	 */
+	public void removeNode(String nodeId) {
+		if (controllerNodeDao.exists(nodeId)) {
+			controllerNodeDao.delete(nodeId);
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.data.accessor;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.venice.piazza.common.hibernate.entity.JobEntity;
+
+/**
+ * Repository for reading several Jobs at once, which the Job repository of the common library does not offer.
+ */
+public interface JobBatchDao extends CrudRepository<JobEntity, Long> {
+	/**
+	 * @param jobIds
+	 *            The IDs of the Jobs. Must not be empty.
+	 * @return The Jobs found, in no particular order
+	 */
+	@Query("SELECT e FROM JobEntity e WHERE e.jobId IN ?1")
+	List<JobEntity> getJobsByJobIds(Collection<String> jobIds);
+}
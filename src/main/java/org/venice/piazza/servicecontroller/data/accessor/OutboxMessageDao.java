@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.data.accessor;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
+import org.venice.piazza.servicecontroller.data.model.OutboxMessageEntity;
+
+/**
+ * Repository for the outbox of messages waiting to be sent to the message bus.
+ */
+public interface OutboxMessageDao extends CrudRepository<OutboxMessageEntity, Long> {
+	/**
+	 * Claims the oldest messages in the outbox that are not claimed by another instance, or whose claim has expired.
+	 * The claim is committed before the messages are sent, so that no locks are held while waiting on the broker.
+	 * Claims are timed by the database clock, so that they expire at the same time for every instance.
+	 * 
+	 * @param claimTimeoutMs
+	 *            How long the messages are claimed for
+	 * @param limit
+	 *            The maximum number of messages to claim
+	 * @return The claimed messages, in no particular order
+	 */
+	@Transactional
+	@Query(value = "UPDATE outbox_message SET claimed_until = CAST(EXTRACT(EPOCH FROM now()) * 1000 AS bigint) + ?1 WHERE id IN "
+			+ "(SELECT id FROM outbox_message WHERE claimed_until IS NULL OR claimed_until < CAST(EXTRACT(EPOCH FROM now()) * 1000 AS bigint) "
+			+ "ORDER BY id LIMIT ?2 FOR UPDATE SKIP LOCKED) RETURNING *", nativeQuery = true)
+	List<OutboxMessageEntity> claimOldestMessages(long claimTimeoutMs, int limit);
+
+	/**
+	 * Releases the claim on messages that could not be sent, so that they can be sent again at once.
+	 * 
+	 * @param ids
+	 *            The IDs of the messages
+	 */
+	@Transactional
+	@Modifying
+	@Query("UPDATE OutboxMessageEntity m SET m.claimedUntil = NULL WHERE m.id IN ?1")
+	void releaseMessages(Collection<Long> ids);
+}
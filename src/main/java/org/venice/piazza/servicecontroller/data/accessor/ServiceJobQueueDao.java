@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.data.accessor;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
+import org.venice.piazza.servicecontroller.data.model.ServiceJobQueueEntity;
+
+/**
+ * Repository for the Service Queue entries of Task-Managed Services.
+ */
+public interface ServiceJobQueueDao extends CrudRepository<ServiceJobQueueEntity, Long> {
+	/**
+	 * Claims the oldest unstarted entry in the Service Queue by setting its Started On time. Entries locked by another
+	 * claim are skipped, so that concurrent claims never return the same Job.
+	 * 
+	 * @param serviceId
+	 *            The ID of the Service
+	 * @param now
+	 *            The current epoch time
+	 * @return The claimed entry, or null if no entries are ready to be processed
+	 */
+	@Transactional
+	@Query(value = "UPDATE service_job_queue SET started_on = ?2 WHERE id = (SELECT id FROM service_job_queue "
+			+ "WHERE service_id = ?1 AND started_on IS NULL ORDER BY id LIMIT 1 FOR UPDATE SKIP LOCKED) RETURNING *", nativeQuery = true)
+	ServiceJobQueueEntity claimNextJob(String serviceId, long now);
+
+	/**
+	 * Claims the oldest unstarted entries in the Service Queue, as {@link #claimNextJob(String, long)} does for one.
+	 * 
+	 * @param serviceId
+	 *            The ID of the Service
+	 * @param now
+	 *            The current epoch time
+	 * @param limit
+	 *            The maximum number of entries to claim
+	 * @return The claimed entries, in no particular order
+	 */
+	@Transactional
+	@Query(value = "UPDATE service_job_queue SET started_on = ?2 WHERE id IN (SELECT id FROM service_job_queue "
+			+ "WHERE service_id = ?1 AND started_on IS NULL ORDER BY id LIMIT ?3 FOR UPDATE SKIP LOCKED) RETURNING *", nativeQuery = true)
+	List<ServiceJobQueueEntity> claimNextJobs(String serviceId, long now, int limit);
+
+	/**
+	 * Requeues every started entry, of any Service, that has exceeded the timeout of its Service, and counts the
+	 * timeout against it. Entries that have already timed out as many times as the limit are left for
+	 * {@link #claimFailedTimedOutJobs(long, int)}.
+	 * 
+	 * @param now
+	 *            The current epoch time
+	 * @param errorLimit
+	 *            The number of timeouts after which a Job is failed
+	 * @return The requeued entries
+	 */
+	@Transactional
+	@Query(value = "UPDATE service_job_queue SET started_on = NULL, timeouts = COALESCE(timeouts, 0) + 1 WHERE started_on IS NOT NULL "
+			+ "AND started_on + timeout_ms < ?1 AND COALESCE(timeouts, 0) < ?2 RETURNING *", nativeQuery = true)
+	List<ServiceJobQueueEntity> retryTimedOutJobs(long now, int errorLimit);
+
+	/**
+	 * Claims every started entry, of any Service, that has exceeded the timeout of its Service, and has already timed
+	 * out as many times as the limit, by removing it from the Service Queue. An entry is returned to only one claim, so
+	 * concurrent sweeps never both fail the same Job.
+	 * 
+	 * @param now
+	 *            The current epoch time
+	 * @param errorLimit
+	 *            The number of timeouts after which a Job is failed
+	 * @return The removed entries of the Jobs to fail
+	 */
+	@Transactional
+	@Query(value = "DELETE FROM service_job_queue WHERE started_on IS NOT NULL AND started_on + timeout_ms < ?1 "
+			+ "AND COALESCE(timeouts, 0) >= ?2 RETURNING *", nativeQuery = true)
+	List<ServiceJobQueueEntity> claimFailedTimedOutJobs(long now, int errorLimit);
+
+	/**
+	 * As {@link #retryTimedOutJobs(long, int)}, for only the specified Jobs.
+	 */
+	@Transactional
+	@Query(value = "UPDATE service_job_queue SET started_on = NULL, timeouts = COALESCE(timeouts, 0) + 1 WHERE job_id IN (?3) "
+			+ "AND started_on IS NOT NULL AND started_on + timeout_ms < ?1 AND COALESCE(timeouts, 0) < ?2 RETURNING *", nativeQuery = true)
+	List<ServiceJobQueueEntity> retryTimedOutJobs(long now, int errorLimit, Collection<String> jobIds);
+
+	/**
+	 * As {@link #claimFailedTimedOutJobs(long, int)}, for only the specified Jobs.
+	 */
+	@Transactional
+	@Query(value = "DELETE FROM service_job_queue WHERE job_id IN (?3) AND started_on IS NOT NULL AND started_on + timeout_ms < ?1 "
+			+ "AND COALESCE(timeouts, 0) >= ?2 RETURNING *", nativeQuery = true)
+	List<ServiceJobQueueEntity> claimFailedTimedOutJobs(long now, int errorLimit, Collection<String> jobIds);
+
+	/**
+	 * Gets the started entries, of Services with a timeout, whose Job ID hashes to the specified shard.
+	 * 
+	 * @param shardCount
+	 *            The number of shards
+	 * @param shard
+	 *            The shard, from zero
+	 * @return The started entries in the shard
+	 */
+	@Query(value = "SELECT * FROM service_job_queue WHERE started_on IS NOT NULL AND timeout_ms IS NOT NULL "
+			+ "AND (hashtext(job_id) & 2147483647) % ?1 = ?2", nativeQuery = true)
+	List<ServiceJobQueueEntity> getStartedJobs(int shardCount, int shard);
+
+	@Modifying
+	@Transactional
+	@Query("UPDATE ServiceJobQueueEntity e SET e.timeoutMs = ?2 WHERE e.serviceId = ?1")
+	int setServiceTimeout(String serviceId, Long timeoutMs);
+
+	/**
+	 * Adds an entry to the Service Queue for every Service Job that is not already queued, in a single statement.
+	 * Entries are added in the order the Service Jobs were stored, and keep their Started On time and timeout count.
+	 * 
+	 * @return The number of entries added
+	 */
+	@Modifying
+	@Transactional
+	@Query(value = "INSERT INTO service_job_queue (service_id, job_id, started_on, timeouts) SELECT serviceid, servicejob->>'jobId', "
+			+ "CAST(servicejob->>'startedOn' AS bigint), COALESCE(CAST(servicejob->>'timeouts' AS int), 0) FROM servicejobs "
+			+ "ORDER BY id ON CONFLICT (job_id) DO NOTHING", nativeQuery = true)
+	int insertMissingJobs();
+
+	@Modifying
+	@Transactional
+	@Query("UPDATE ServiceJobQueueEntity e SET e.startedOn = NULL WHERE e.serviceId = ?1 AND e.jobId = ?2")
+	int releaseJob(String serviceId, String jobId);
+
+	@Modifying
+	@Transactional
+	@Query("DELETE FROM ServiceJobQueueEntity e WHERE e.serviceId = ?1 AND e.jobId = ?2")
+	int deleteJob(String serviceId, String jobId);
+
+	@Modifying
+	@Transactional
+	@Query("DELETE FROM ServiceJobQueueEntity e WHERE e.serviceId = ?1")
+	int deleteByServiceId(String serviceId);
+}
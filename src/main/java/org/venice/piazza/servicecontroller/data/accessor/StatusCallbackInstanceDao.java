@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.data.accessor;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
+import org.venice.piazza.servicecontroller.data.model.StatusCallbackInstanceEntity;
+
+/**
+ * Repository for the Instance IDs of status callback Services.
+ */
+public interface StatusCallbackInstanceDao extends CrudRepository<StatusCallbackInstanceEntity, Long> {
+	StatusCallbackInstanceEntity findByServiceIdAndInstanceId(String serviceId, String instanceId);
+
+	/**
+	 * Records the Job ID of an instance that a callback has already arrived for, and takes the Status of that callback.
+	 * 
+	 * @return The Status of the early callback, or null if none has arrived
+	 */
+	@Transactional
+	@Query(value = "WITH early AS (SELECT id, early_status FROM status_callback_instance WHERE service_id = ?1 AND instance_id = ?2 "
+			+ "AND job_id IS NULL FOR UPDATE) UPDATE status_callback_instance s SET job_id = ?3, early_status = NULL, received_on = NULL "
+			+ "FROM early WHERE s.id = early.id RETURNING early.early_status", nativeQuery = true)
+	String claimEarlyStatus(String serviceId, String instanceId, String jobId);
+
+	/**
+	 * Records the Job ID of an instance, unless a record of the instance already exists.
+	 * 
+	 * @return The number of records added
+	 */
+	@Modifying
+	@Transactional
+	@Query(value = "INSERT INTO status_callback_instance (service_id, instance_id, job_id) VALUES (?1, ?2, ?3) "
+			+ "ON CONFLICT (service_id, instance_id) DO NOTHING", nativeQuery = true)
+	int insertInstance(String serviceId, String instanceId, String jobId);
+
+	/**
+	 * Keeps the Status of a callback for an instance that has not been recorded yet. Has no effect once the instance
+	 * has been recorded.
+	 * 
+	 * @return The number of records added or updated
+	 */
+	@Modifying
+	@Transactional
+	@Query(value = "INSERT INTO status_callback_instance (service_id, instance_id, early_status, received_on) VALUES (?1, ?2, ?3, ?4) "
+			+ "ON CONFLICT (service_id, instance_id) DO UPDATE SET early_status = EXCLUDED.early_status, received_on = EXCLUDED.received_on "
+			+ "WHERE status_callback_instance.job_id IS NULL", nativeQuery = true)
+	int upsertEarlyStatus(String serviceId, String instanceId, String earlyStatus, long receivedOn);
+
+	@Modifying
+	@Transactional
+	@Query("DELETE FROM StatusCallbackInstanceEntity e WHERE e.jobId IS NULL AND e.receivedOn < ?1")
+	int deleteEarlyStatusesBefore(long cutoff);
+
+	@Modifying
+	@Transactional
+	@Query("DELETE FROM StatusCallbackInstanceEntity e WHERE e.jobId = ?1")
+	int deleteByJobId(String jobId);
+
+	@Modifying
+	@Transactional
+	@Query("DELETE FROM StatusCallbackInstanceEntity e WHERE e.serviceId = ?1")
+	int deleteByServiceId(String serviceId);
+}
@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.data.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import model.service.metadata.Service;
+
+/**
+ * Bounded, TTL-evicting in-process cache of registered Service metadata, keyed by Service ID.
+ * <p>
+ * Service metadata is read on every execution and every async poll, but changes rarely. This cache sits in front of
+ * the Service table in the DatabaseAccessor. Entries are evicted least-recently-used once the cache is full, and are
+ * expired after the configured time-to-live. Any write to a Service must invalidate its entry.
+ * </p>
+ * <p>
+ * Cached Service instances are shared between threads and must be treated as read-only by callers.
+ * </p>
+ * <p>
+ * A reader that misses the cache takes the current generation before reading the database, and passes it back when
+ * it puts what it read. If the Service was invalidated in between, the put is dropped, so that a read that raced with
+ * an update cannot put the old Service back. Recent invalidations are remembered per Service, up to the maximum size
+ * of the cache; once one is forgotten, puts taken before it are dropped for every Service.
+ * </p>
+ */
+@Component
+public class ServiceCache implements PublicMetrics {
+	@Value("${service.cache.max.size}")
+	private int MAX_SIZE; //NOSONAR
+	@Value("${service.cache.ttl.seconds}")
+	private int TTL_SECONDS; //NOSONAR
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	private long generation;
+	private long forgottenGeneration;
+	private final Map<String, Long> invalidations = new LinkedHashMap<String, Long>(16, 0.75f, false) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+			if (size() > Math.max(MAX_SIZE, 1)) {
+				forgottenGeneration = Math.max(forgottenGeneration, eldest.getValue());
+				return true;
+			}
+			return false;
+		}
+	};
+
+	private final Map<String, CacheEntry> entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+			if (size() > MAX_SIZE) {
+				evictions.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	};
+
+	/**
+	 * @return True if caching is enabled. A max size of zero or less disables the cache.
+	 */
+	public boolean isEnabled() {
+		return MAX_SIZE > 0;
+	}
+
+	/**
+	 * Gets the cached Service for the ID, if present and not expired.
+	 *
+	 * @param serviceId
+	 *            The ID of the Service
+	 * @return The cached Service, or null if there is no live entry for the ID
+	 */
+	public Service get(String serviceId) {
+		if (!isEnabled() || serviceId == null) {
+			return null;
+		}
+		synchronized (entries) {
+			CacheEntry entry = entries.get(serviceId);
+			if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+				entries.remove(serviceId);
+				evictions.incrementAndGet();
+				entry = null;
+			}
+			if (entry == null) {
+				misses.incrementAndGet();
+				return null;
+			}
+			hits.incrementAndGet();
+			return entry.service;
+		}
+	}
+
+	/**
+	 * Gets the current generation of the cache, to be taken before reading a Service from the database and passed to
+	 * {@link #put(Service, long)}.
+	 *
+	 * @return The current generation
+	 */
+	public long getGeneration() {
+		synchronized (entries) {
+			return generation;
+		}
+	}
+
+	/**
+	 * Adds or replaces the cached Service, read at the current generation. The entry expires after the configured
+	 * TTL.
+	 *
+	 * @param service
+	 *            The Service to cache
+	 */
+	public void put(Service service) {
+		put(service, getGeneration());
+	}
+
+	/**
+	 * Adds or replaces the cached Service, unless it has been invalidated since the generation it was read at. The
+	 * entry expires after the configured TTL.
+	 *
+	 * @param service
+	 *            The Service to cache
+	 * @param readGeneration
+	 *            The generation taken before the Service was read
+	 * @return True if the Service was cached
+	 */
+	public boolean put(Service service, long readGeneration) {
+		if (!isEnabled() || service == null || service.getServiceId() == null) {
+			return false;
+		}
+		long expiresOn = System.currentTimeMillis() + TTL_SECONDS * 1000L;
+		synchronized (entries) {
+			Long invalidatedAt = invalidations.get(service.getServiceId());
+			if ((readGeneration < forgottenGeneration) || ((invalidatedAt != null) && (readGeneration < invalidatedAt))) {
+				return false;
+			}
+			entries.put(service.getServiceId(), new CacheEntry(service, expiresOn));
+			return true;
+		}
+	}
+
+	/**
+	 * Removes the Service from the cache. This must be called whenever a Service is saved, updated or deleted.
+	 *
+	 * @param serviceId
+	 *            The ID of the Service
+	 */
+	public void invalidate(String serviceId) {
+		if (serviceId == null) {
+			return;
+		}
+		synchronized (entries) {
+			generation++;
+			invalidations.remove(serviceId);
+			invalidations.put(serviceId, generation);
+			entries.remove(serviceId);
+		}
+	}
+
+	/**
+	 * Removes all entries from the cache.
+	 */
+	public void invalidateAll() {
+		synchronized (entries) {
+			generation++;
+			forgottenGeneration = generation;
+			invalidations.clear();
+			entries.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * Exposes the cache counters on the actuator metrics endpoint.
+	 */
+	@Override
+	public Collection<Metric<?>> metrics() {
+		Collection<Metric<?>> metrics = new ArrayList<>();
+		metrics.add(new Metric<Long>("servicecontroller.service.cache.hits", getHitCount()));
+		metrics.add(new Metric<Long>("servicecontroller.service.cache.misses", getMissCount()));
+		metrics.add(new Metric<Long>("servicecontroller.service.cache.evictions", getEvictionCount()));
+		metrics.add(new Metric<Integer>("servicecontroller.service.cache.size", size()));
+		return metrics;
+	}
+
+	/**
+	 * A cached Service and the epoch time at which it expires.
+	 */
+	private static class CacheEntry {
+		private final Service service;
+		private final long expiresOn;
+
+		CacheEntry(Service service, long expiresOn) {
+			this.service = service;
+			this.expiresOn = expiresOn;
+		}
+
+		boolean isExpired(long now) {
+			return now >= expiresOn;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.data.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import messaging.job.JobMessageFactory;
+import model.logger.Severity;
+import util.PiazzaLogger;
+
+/**
+ * Keeps the Service cache of every Service Controller instance consistent. When a Service is changed on one instance,
+ * an invalidation message containing the Service ID is published on the Piazza exchange. Every instance binds its own
+ * exclusive queue to that routing key, and evicts the Service from its local cache when the message is received.
+ */
+@Component
+public class ServiceCacheSynchronizer {
+	@Autowired
+	private ServiceCache serviceCache;
+	@Autowired
+	private RabbitTemplate rabbitTemplate;
+	@Autowired
+	private PiazzaLogger logger;
+
+	@Value("${SPACE}")
+	private String SPACE; //NOSONAR
+
+	private static final String INVALIDATION_TOPIC_TEMPLATE = "ServiceCacheInvalidation-%s";
+	private static final Logger LOG = LoggerFactory.getLogger(ServiceCacheSynchronizer.class);
+
+	/**
+	 * Evicts the Service from the local cache, and notifies all other instances to do the same.
+	 * 
+	 * @param serviceId
+	 *            The ID of the Service that was changed
+	 */
+	public void invalidate(String serviceId) {
+		serviceCache.invalidate(serviceId);
+		try {
+			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, String.format(INVALIDATION_TOPIC_TEMPLATE, SPACE),
+					serviceId);
+		} catch (AmqpException exception) {
+			// Other instances will continue to serve their cached copy until it expires.
+			String error = String.format("Could not publish Service cache invalidation for Service %s: %s", serviceId,
+					exception.getMessage());
+			LOG.error(error, exception);
+			logger.log(error, Severity.WARNING);
+		}
+	}
+
+	/**
+	 * Processes a Service cache invalidation message from any instance of the Service Controller.
+	 * 
+	 * @param serviceId
+	 *            The ID of the Service to evict from the local cache
+	 */
+	@RabbitListener(bindings = @QueueBinding(key = "ServiceCacheInvalidation-${SPACE}", value = @Queue(autoDelete = "true", durable = "true", exclusive = "true"), exchange = @Exchange(value = JobMessageFactory.PIAZZA_EXCHANGE_NAME, autoDelete = "false", durable = "true")))
+	public void processServiceInvalidation(String serviceId) {
+		LOG.debug("Evicting Service {} from the Service cache", serviceId);
+		serviceCache.invalidate(serviceId);
+	}
+}
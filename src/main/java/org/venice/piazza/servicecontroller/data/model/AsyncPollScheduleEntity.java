@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.data.model;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import org.joda.time.DateTime;
+
+import model.service.async.AsyncServiceInstance;
+import model.status.StatusUpdate;
+
+/**
+ * When the Asynchronous Service Instance of a Job is next due to be polled for Status, and the interval it is being
+ * polled at. The interval grows while the Status of the instance is unchanged, within the bounds recorded here when the
+ * instance started.
+ * <p>
+ * The schedule also holds what is needed to poll the instance, and the Status, error count and check time from its
+ * last poll, so that a poll cycle reads and writes only this table.
+ * </p>
+ */
+@Entity
+@Table(name = "async_poll_schedule", indexes = { @Index(name = "async_poll_schedule_next_poll_at", columnList = "next_poll_at") })
+public class AsyncPollScheduleEntity implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	@Column(name = "job_id")
+	private String jobId;
+
+	@Column(name = "service_id", nullable = false)
+	private String serviceId;
+
+	@Column(name = "next_poll_at", nullable = false)
+	private long nextPollAt;
+
+	@Column(name = "interval_ms", nullable = false)
+	private long intervalMs;
+
+	@Column(name = "min_interval_ms", nullable = false)
+	private long minIntervalMs;
+
+	@Column(name = "max_interval_ms", nullable = false)
+	private long maxIntervalMs;
+
+	@Column(name = "instance_id")
+	private String instanceId;
+
+	@Column(name = "output_type")
+	private String outputType;
+
+	@Column(name = "last_status")
+	private String lastStatus;
+
+	@Column(name = "error_count")
+	private Integer errorCount;
+
+	@Column(name = "last_checked_on")
+	private Long lastCheckedOn;
+
+	public AsyncPollScheduleEntity() {
+		// Required by JPA
+	}
+
+	public AsyncPollScheduleEntity(String jobId, String serviceId, long minIntervalMs, long maxIntervalMs) {
+		this.jobId = jobId;
+		this.serviceId = serviceId;
+		this.minIntervalMs = minIntervalMs;
+		this.maxIntervalMs = maxIntervalMs;
+		this.intervalMs = minIntervalMs;
+	}
+
+	public String getJobId() {
+		return jobId;
+	}
+
+	public String getServiceId() {
+		return serviceId;
+	}
+
+	public long getNextPollAt() {
+		return nextPollAt;
+	}
+
+	public void setNextPollAt(long nextPollAt) {
+		this.nextPollAt = nextPollAt;
+	}
+
+	public long getIntervalMs() {
+		return intervalMs;
+	}
+
+	public void setIntervalMs(long intervalMs) {
+		this.intervalMs = intervalMs;
+	}
+
+	public long getMinIntervalMs() {
+		return minIntervalMs;
+	}
+
+	public long getMaxIntervalMs() {
+		return maxIntervalMs;
+	}
+
+	public String getInstanceId() {
+		return instanceId;
+	}
+
+	public void setInstanceId(String instanceId) {
+		this.instanceId = instanceId;
+	}
+
+	public String getOutputType() {
+		return outputType;
+	}
+
+	public void setOutputType(String outputType) {
+		this.outputType = outputType;
+	}
+
+	public String getLastStatus() {
+		return lastStatus;
+	}
+
+	public void setLastStatus(String lastStatus) {
+		this.lastStatus = lastStatus;
+	}
+
+	public Integer getErrorCount() {
+		return errorCount;
+	}
+
+	public void setErrorCount(Integer errorCount) {
+		this.errorCount = errorCount;
+	}
+
+	public Long getLastCheckedOn() {
+		return lastCheckedOn;
+	}
+
+	public void setLastCheckedOn(Long lastCheckedOn) {
+		this.lastCheckedOn = lastCheckedOn;
+	}
+
+	/**
+	 * Records the Status, error count and check time of an instance after it has been polled.
+	 */
+	public void setPollState(AsyncServiceInstance instance) {
+		lastStatus = (instance.getStatus() == null) ? null : instance.getStatus().getStatus();
+		errorCount = instance.getNumberErrorResponses();
+		lastCheckedOn = (instance.getLastCheckedOn() == null) ? null : instance.getLastCheckedOn().getMillis();
+	}
+
+	/**
+	 * Sets the Status, error count and check time recorded by the last poll on an instance. Nothing is set if the
+	 * instance has not been polled since it was scheduled.
+	 */
+	public void applyPollState(AsyncServiceInstance instance) {
+		if (lastStatus != null) {
+			instance.setStatus(new StatusUpdate(lastStatus));
+		}
+		if (errorCount != null) {
+			instance.setNumberErrorResponses(errorCount);
+		}
+		if (lastCheckedOn != null) {
+			instance.setLastCheckedOn(new DateTime(lastCheckedOn));
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.data.model;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * A running instance of the Service Controller, and the time of its last heartbeat. Live instances share the polling
+ * of Asynchronous Service Instances between them.
+ */
+@Entity
+@Table(name = "controller_node")
+public class ControllerNodeEntity implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	@Column(name = "node_id")
+	private String nodeId;
+
+	@Column(name = "heartbeat_at", nullable = false)
+	private long heartbeatAt;
+
+	public ControllerNodeEntity() {
+		// Required by JPA
+	}
+
+	public ControllerNodeEntity(String nodeId, long heartbeatAt) {
+		this.nodeId = nodeId;
+		this.heartbeatAt = heartbeatAt;
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	public long getHeartbeatAt() {
+		return heartbeatAt;
+	}
+}
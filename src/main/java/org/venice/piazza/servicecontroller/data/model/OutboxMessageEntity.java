@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.data.model;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * A message waiting in the outbox to be sent to the message bus. Outbox messages are written in the same transaction
+ * as the database changes they report, and are deleted once the broker has confirmed them. A message being sent is
+ * claimed by its instance until a set time, after which another instance may send it.
+ */
+@Entity
+@Table(name = "outbox_message")
+public class OutboxMessageEntity implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column(name = "id")
+	private Long id;
+
+	@Column(name = "routing_key", nullable = false)
+	private String routingKey;
+
+	@Column(name = "payload", nullable = false, columnDefinition = "text")
+	private String payload;
+
+	@Column(name = "created_on", nullable = false)
+	private long createdOn;
+
+	@Column(name = "claimed_until")
+	private Long claimedUntil;
+
+	public OutboxMessageEntity() {
+		// Required by JPA
+	}
+
+	public OutboxMessageEntity(String routingKey, String payload) {
+		this.routingKey = routingKey;
+		this.payload = payload;
+		this.createdOn = System.currentTimeMillis();
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getRoutingKey() {
+		return routingKey;
+	}
+
+	public String getPayload() {
+		return payload;
+	}
+
+	public long getCreatedOn() {
+		return createdOn;
+	}
+
+	/**
+	 * @return The epoch time until which an instance is sending the message, or null if it is not being sent
+	 */
+	public Long getClaimedUntil() {
+		return claimedUntil;
+	}
+}
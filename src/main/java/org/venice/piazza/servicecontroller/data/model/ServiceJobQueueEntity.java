@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.data.model;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * An entry in the Service Queue of a Task-Managed Service. Entries are claimed by Job ID in queue order, and mirror
+ * the Started On time of the Service Job so that Jobs can be dequeued with a single atomic update. Each entry also
+ * holds the timeout of its Service and the number of times the Job has timed out, so that timed out Jobs of all
+ * Services can be found and retried with a single statement. The entry, not the Service Job, is the record of whether
+ * and when the Job was started and how often it has timed out; the Service Job only seeds a missing entry.
+ */
+@Entity
+@Table(name = "service_job_queue", indexes = {
+		@Index(name = "service_job_queue_job", columnList = "job_id", unique = true),
+		@Index(name = "service_job_queue_service", columnList = "service_id,id"),
+		@Index(name = "service_job_queue_started", columnList = "started_on") })
+public class ServiceJobQueueEntity implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column(name = "id")
+	private Long id;
+
+	@Column(name = "service_id", nullable = false)
+	private String serviceId;
+
+	@Column(name = "job_id", nullable = false)
+	private String jobId;
+
+	@Column(name = "started_on")
+	private Long startedOn;
+
+	@Column(name = "timeout_ms")
+	private Long timeoutMs;
+
+	@Column(name = "timeouts")
+	private Integer timeouts;
+
+	public ServiceJobQueueEntity() {
+		// Required by JPA
+	}
+
+	public ServiceJobQueueEntity(String serviceId, String jobId) {
+		this.serviceId = serviceId;
+		this.jobId = jobId;
+	}
+
+	public ServiceJobQueueEntity(String serviceId, String jobId, Long timeoutMs) {
+		this(serviceId, jobId);
+		this.timeoutMs = timeoutMs;
+		this.timeouts = 0;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getServiceId() {
+		return serviceId;
+	}
+
+	public String getJobId() {
+		return jobId;
+	}
+
+	public Long getStartedOn() {
+		return startedOn;
+	}
+
+	public void setStartedOn(Long startedOn) {
+		this.startedOn = startedOn;
+	}
+
+	public Long getTimeoutMs() {
+		return timeoutMs;
+	}
+
+	public void setTimeoutMs(Long timeoutMs) {
+		this.timeoutMs = timeoutMs;
+	}
+
+	/**
+	 * @return The number of times the Job has timed out. Null for entries added before this was recorded.
+	 */
+	public Integer getTimeouts() {
+		return timeouts;
+	}
+
+	public void setTimeouts(Integer timeouts) {
+		this.timeouts = timeouts;
+	}
+}
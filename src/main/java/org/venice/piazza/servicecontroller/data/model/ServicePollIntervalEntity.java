@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.data.model;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * The bounds on how often instances of an asynchronous Service are polled for Status, overriding the defaults. Either
+ * bound may be null, in which case the default applies.
+ */
+@Entity
+@Table(name = "service_poll_interval")
+public class ServicePollIntervalEntity implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	@Column(name = "service_id")
+	private String serviceId;
+
+	@Column(name = "min_interval_seconds")
+	private Integer minIntervalSeconds;
+
+	@Column(name = "max_interval_seconds")
+	private Integer maxIntervalSeconds;
+
+	public ServicePollIntervalEntity() {
+		// Required by JPA
+	}
+
+	public ServicePollIntervalEntity(String serviceId, Integer minIntervalSeconds, Integer maxIntervalSeconds) {
+		this.serviceId = serviceId;
+		this.minIntervalSeconds = minIntervalSeconds;
+		this.maxIntervalSeconds = maxIntervalSeconds;
+	}
+
+	public String getServiceId() {
+		return serviceId;
+	}
+
+	public Integer getMinIntervalSeconds() {
+		return minIntervalSeconds;
+	}
+
+	public Integer getMaxIntervalSeconds() {
+		return maxIntervalSeconds;
+	}
+}
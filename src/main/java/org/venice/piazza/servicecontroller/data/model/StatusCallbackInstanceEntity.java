@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.data.model;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * Maps the Instance ID that a status callback Service reports against to the Piazza Job ID of the instance. User
+ * Services only know their own Instance IDs, while Async Service Instances are keyed by Job ID.
+ * <p>
+ * A callback may arrive before the instance has been recorded. It is then kept, with no Job ID, until the instance is
+ * recorded and the Status is applied.
+ * </p>
+ */
+@Entity
+@Table(name = "status_callback_instance", indexes = {
+		@Index(name = "status_callback_instance_service_instance", columnList = "service_id,instance_id", unique = true),
+		@Index(name = "status_callback_instance_job", columnList = "job_id") })
+public class StatusCallbackInstanceEntity implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column(name = "id")
+	private Long id;
+
+	@Column(name = "service_id", nullable = false)
+	private String serviceId;
+
+	@Column(name = "instance_id", nullable = false)
+	private String instanceId;
+
+	@Column(name = "job_id")
+	private String jobId;
+
+	@Column(name = "early_status", columnDefinition = "text")
+	private String earlyStatus;
+
+	@Column(name = "received_on")
+	private Long receivedOn;
+
+	public StatusCallbackInstanceEntity() {
+		// Required by JPA
+	}
+
+	public StatusCallbackInstanceEntity(String serviceId, String instanceId, String jobId) {
+		this.serviceId = serviceId;
+		this.instanceId = instanceId;
+		this.jobId = jobId;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getServiceId() {
+		return serviceId;
+	}
+
+	public String getInstanceId() {
+		return instanceId;
+	}
+
+	public String getJobId() {
+		return jobId;
+	}
+
+	/**
+	 * @return The Status received before the instance was recorded, or null
+	 */
+	public String getEarlyStatus() {
+		return earlyStatus;
+	}
+
+	public Long getReceivedOn() {
+		return receivedOn;
+	}
+}
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.data.model;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Marks an asynchronous Service as reporting the Status of its instances by calling back to the Service Controller,
+ * rather than being polled for it.
+ */
+@Entity
+@Table(name = "status_callback_service")
+public class StatusCallbackServiceEntity implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	@Column(name = "service_id")
+	private String serviceId;
+
+	@Column(name = "created_on", nullable = false)
+	private long createdOn;
+
+	public StatusCallbackServiceEntity() {
+		// Required by JPA
+	}
+
+	public StatusCallbackServiceEntity(String serviceId) {
+		this.serviceId = serviceId;
+		this.createdOn = System.currentTimeMillis();
+	}
+
+	public String getServiceId() {
+		return serviceId;
+	}
+
+	public long getCreatedOn() {
+		return createdOn;
+	}
+}
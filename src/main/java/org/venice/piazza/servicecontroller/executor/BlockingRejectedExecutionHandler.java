@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.executor;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Saturation policy that blocks the submitting thread until the executor's queue has room, instead of rejecting the
+ * task or running it on the caller.
+ * <p>
+ * Used for executors that are fed from a RabbitMQ listener. Blocking the listener thread means the message is not
+ * acknowledged and no further messages are prefetched, so a burst of Jobs remains queued in RabbitMQ rather than in the
+ * heap of this instance.
+ * </p>
+ */
+public class BlockingRejectedExecutionHandler implements RejectedExecutionHandler {
+	@Override
+	public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+		if (executor.isShutdown()) {
+			throw new RejectedExecutionException("Executor has been shut down.");
+		}
+		try {
+			executor.getQueue().put(runnable);
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new RejectedExecutionException("Interrupted while waiting for executor capacity.", exception);
+		}
+	}
+}
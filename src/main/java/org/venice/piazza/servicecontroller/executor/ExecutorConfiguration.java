@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.executor;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Defines the bounded executors that back the @Async workers of the Service Controller. Each workload has its own
+ * pool, so that a burst of one kind of work (for example, synchronous executions) cannot starve another (for example,
+ * polling of asynchronous instances).
+ * <p>
+ * The execution and asynchronous kickoff pools block their callers when full, which applies backpressure to the
+ * RabbitMQ listener. The polling pool also blocks when full, which holds back the poll cycle; instances it has claimed
+ * would otherwise not be polled again until their poll lease ends. Status callbacks are handed over by HTTP request
+ * threads, so their pool rejects work when full rather than blocking; the instance is then still polled. The task wait
+ * pool, which is also handed work by threads that must not be held up, rejects work when full too; the worker is then
+ * left waiting. The cancellation pool runs the work on the caller when full. User Service responses on the non-blocking
+ * HTTP path are queued without bound, as the I/O threads that hand them over must not block.
+ * </p>
+ * <p>
+ * When virtual threads are enabled and supported by the runtime, service execution and polling instead run on a
+ * virtual thread per task, bounded by a maximum concurrency with the same saturation behavior. These are the two
+ * workloads that block on calls to User Services.
+ * </p>
+ */
+@Configuration
+public class ExecutorConfiguration {
+	public static final String SERVICE_EXECUTION_EXECUTOR = "serviceExecutionExecutor";
+	public static final String ASYNC_KICKOFF_EXECUTOR = "asyncKickoffExecutor";
+	public static final String ASYNC_POLL_EXECUTOR = "asyncPollExecutor";
+	public static final String STATUS_CALLBACK_EXECUTOR = "statusCallbackExecutor";
+	public static final String CANCELLATION_EXECUTOR = "cancellationExecutor";
+	public static final String TASK_WAIT_EXECUTOR = "taskWaitExecutor";
+	public static final String ASYNC_RESPONSE_EXECUTOR = "asyncResponseExecutor";
+
+	@Value("${executor.execution.core.size}")
+	private int EXECUTION_CORE_SIZE; //NOSONAR
+	@Value("${executor.execution.max.size}")
+	private int EXECUTION_MAX_SIZE; //NOSONAR
+	@Value("${executor.execution.queue.capacity}")
+	private int EXECUTION_QUEUE_CAPACITY; //NOSONAR
+	@Value("${executor.async.kickoff.core.size}")
+	private int KICKOFF_CORE_SIZE; //NOSONAR
+	@Value("${executor.async.kickoff.max.size}")
+	private int KICKOFF_MAX_SIZE; //NOSONAR
+	@Value("${executor.async.kickoff.queue.capacity}")
+	private int KICKOFF_QUEUE_CAPACITY; //NOSONAR
+	@Value("${executor.async.poll.core.size}")
+	private int POLL_CORE_SIZE; //NOSONAR
+	@Value("${executor.async.poll.max.size}")
+	private int POLL_MAX_SIZE; //NOSONAR
+	@Value("${executor.async.poll.queue.capacity}")
+	private int POLL_QUEUE_CAPACITY; //NOSONAR
+	@Value("${executor.status.callback.core.size}")
+	private int CALLBACK_CORE_SIZE; //NOSONAR
+	@Value("${executor.status.callback.max.size}")
+	private int CALLBACK_MAX_SIZE; //NOSONAR
+	@Value("${executor.status.callback.queue.capacity}")
+	private int CALLBACK_QUEUE_CAPACITY; //NOSONAR
+	@Value("${executor.cancellation.core.size}")
+	private int CANCELLATION_CORE_SIZE; //NOSONAR
+	@Value("${executor.cancellation.max.size}")
+	private int CANCELLATION_MAX_SIZE; //NOSONAR
+	@Value("${executor.cancellation.queue.capacity}")
+	private int CANCELLATION_QUEUE_CAPACITY; //NOSONAR
+	@Value("${executor.task.wait.core.size}")
+	private int TASK_WAIT_CORE_SIZE; //NOSONAR
+	@Value("${executor.task.wait.max.size}")
+	private int TASK_WAIT_MAX_SIZE; //NOSONAR
+	@Value("${executor.task.wait.queue.capacity}")
+	private int TASK_WAIT_QUEUE_CAPACITY; //NOSONAR
+	@Value("${executor.async.response.pool.size}")
+	private int RESPONSE_POOL_SIZE; //NOSONAR
+	@Value("${executor.virtual.threads.enabled}")
+	private boolean VIRTUAL_THREADS_ENABLED; //NOSONAR
+	@Value("${executor.virtual.threads.max.concurrency}")
+	private int VIRTUAL_THREADS_MAX_CONCURRENCY; //NOSONAR
+
+	private static final Logger LOG = LoggerFactory.getLogger(ExecutorConfiguration.class);
+
+	@Bean(name = SERVICE_EXECUTION_EXECUTOR)
+	public AsyncTaskExecutor serviceExecutionExecutor() {
+		if (useVirtualThreads()) {
+			return new VirtualThreadTaskExecutor(VIRTUAL_THREADS_MAX_CONCURRENCY, true);
+		}
+		return createExecutor("ServiceExecution-", EXECUTION_CORE_SIZE, EXECUTION_MAX_SIZE, EXECUTION_QUEUE_CAPACITY,
+				new BlockingRejectedExecutionHandler());
+	}
+
+	@Bean(name = ASYNC_KICKOFF_EXECUTOR)
+	public ThreadPoolTaskExecutor asyncKickoffExecutor() {
+		return createExecutor("AsyncKickoff-", KICKOFF_CORE_SIZE, KICKOFF_MAX_SIZE, KICKOFF_QUEUE_CAPACITY,
+				new BlockingRejectedExecutionHandler());
+	}
+
+	@Bean(name = ASYNC_POLL_EXECUTOR)
+	public AsyncTaskExecutor asyncPollExecutor() {
+		if (useVirtualThreads()) {
+			return new VirtualThreadTaskExecutor(VIRTUAL_THREADS_MAX_CONCURRENCY, true);
+		}
+		return createExecutor("AsyncPoll-", POLL_CORE_SIZE, POLL_MAX_SIZE, POLL_QUEUE_CAPACITY, new BlockingRejectedExecutionHandler());
+	}
+
+	/**
+	 * Runs the handling of Statuses that User Services report by callback. Callbacks are handed over from HTTP request
+	 * threads, which must not block, so work beyond the queue is rejected and the caller is told to retry.
+	 */
+	@Bean(name = STATUS_CALLBACK_EXECUTOR)
+	public ThreadPoolTaskExecutor statusCallbackExecutor() {
+		return createExecutor("StatusCallback-", CALLBACK_CORE_SIZE, CALLBACK_MAX_SIZE, CALLBACK_QUEUE_CAPACITY,
+				new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	@Bean(name = CANCELLATION_EXECUTOR)
+	public ThreadPoolTaskExecutor cancellationExecutor() {
+		return createExecutor("Cancellation-", CANCELLATION_CORE_SIZE, CANCELLATION_MAX_SIZE, CANCELLATION_QUEUE_CAPACITY,
+				new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	/**
+	 * Runs the dequeue attempts of Task-Managed workers that were waiting for a Job to be added to a Service Queue.
+	 * Attempts are handed over from broker listener and request threads, so work beyond the queue is rejected, and the
+	 * worker left waiting, rather than run on the caller.
+	 */
+	@Bean(name = TASK_WAIT_EXECUTOR)
+	public ThreadPoolTaskExecutor taskWaitExecutor() {
+		return createExecutor("TaskWait-", TASK_WAIT_CORE_SIZE, TASK_WAIT_MAX_SIZE, TASK_WAIT_QUEUE_CAPACITY,
+				new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * Runs the handling of User Service responses received on the non-blocking HTTP path. Tasks are handed over from
+	 * the HTTP client's I/O threads, which must never block, so the queue is not bounded here. The number of waiting
+	 * responses is bounded instead by the number of Jobs in flight.
+	 */
+	@Bean(name = ASYNC_RESPONSE_EXECUTOR)
+	public ThreadPoolTaskExecutor asyncResponseExecutor() {
+		return createExecutor("AsyncResponse-", RESPONSE_POOL_SIZE, RESPONSE_POOL_SIZE, Integer.MAX_VALUE,
+				new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * @return True if virtual threads are enabled, and available in this runtime
+	 */
+	private boolean useVirtualThreads() {
+		if (!VIRTUAL_THREADS_ENABLED) {
+			return false;
+		}
+		if (!VirtualThreadTaskExecutor.isSupported()) {
+			LOG.warn("Virtual threads are enabled, but are not supported by this Java runtime. Falling back to a bounded thread pool.");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Creates a bounded thread pool. Threads are interrupted on shutdown, so running Jobs do not block the application
+	 * from stopping.
+	 */
+	private ThreadPoolTaskExecutor createExecutor(String threadNamePrefix, int coreSize, int maxSize, int queueCapacity,
+			RejectedExecutionHandler rejectedExecutionHandler) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setThreadNamePrefix(threadNamePrefix);
+		executor.setCorePoolSize(coreSize);
+		executor.setMaxPoolSize(Math.max(coreSize, maxSize));
+		executor.setQueueCapacity(queueCapacity);
+		executor.setRejectedExecutionHandler(rejectedExecutionHandler);
+		executor.setWaitForTasksToCompleteOnShutdown(false);
+		return executor;
+	}
+}
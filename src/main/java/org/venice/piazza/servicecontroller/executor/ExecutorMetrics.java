@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.executor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Exposes the pool and queue sizes, or virtual thread concurrency, of the worker executors on the actuator metrics
+ * endpoint.
+ */
+@Component
+public class ExecutorMetrics implements PublicMetrics {
+	@Autowired
+	private Map<String, AsyncTaskExecutor> executors;
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		Collection<Metric<?>> metrics = new ArrayList<>();
+		for (Map.Entry<String, AsyncTaskExecutor> entry : executors.entrySet()) {
+			String prefix = String.format("servicecontroller.executor.%s.", entry.getKey());
+			if (entry.getValue() instanceof VirtualThreadTaskExecutor) {
+				VirtualThreadTaskExecutor executor = (VirtualThreadTaskExecutor) entry.getValue();
+				metrics.add(new Metric<Integer>(prefix + "active", executor.getActiveCount()));
+				metrics.add(new Metric<Integer>(prefix + "max.concurrency", executor.getMaxConcurrency()));
+				continue;
+			}
+			if (!(entry.getValue() instanceof ThreadPoolTaskExecutor)) {
+				continue;
+			}
+			ThreadPoolExecutor executor = ((ThreadPoolTaskExecutor) entry.getValue()).getThreadPoolExecutor();
+			metrics.add(new Metric<Integer>(prefix + "active", executor.getActiveCount()));
+			metrics.add(new Metric<Integer>(prefix + "pool.size", executor.getPoolSize()));
+			metrics.add(new Metric<Integer>(prefix + "queue.size", executor.getQueue().size()));
+			metrics.add(new Metric<Integer>(prefix + "queue.remaining", executor.getQueue().remainingCapacity()));
+			metrics.add(new Metric<Long>(prefix + "completed", executor.getCompletedTaskCount()));
+		}
+		return metrics;
+	}
+}
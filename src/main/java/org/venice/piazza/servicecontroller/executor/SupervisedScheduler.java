@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.executor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import model.logger.Severity;
+import util.PiazzaLogger;
+
+/**
+ * Runs the periodic background tasks of the Service Controller, such as polling of asynchronous instances and checking
+ * for timed out Service Jobs.
+ * <p>
+ * Each task is triggered at a fixed rate, and runs on a pool thread rather than on the trigger, so that a slow run
+ * does not delay the schedule. A trigger that fires while the previous run of the same task is still going is skipped.
+ * A run that fails is logged, and the task runs again at its next trigger; one failure never stops the schedule.
+ * </p>
+ * <p>
+ * On shutdown, no further runs are triggered and runs in progress are given time to finish before being interrupted.
+ * The run, failure and skip counts, and run durations, of each task are exposed on the actuator metrics endpoint.
+ * </p>
+ */
+@Component
+public class SupervisedScheduler implements PublicMetrics {
+	@Value("${scheduler.pool.size}")
+	private int POOL_SIZE; //NOSONAR
+	@Value("${scheduler.shutdown.timeout.seconds}")
+	private int SHUTDOWN_TIMEOUT_SECONDS; //NOSONAR
+
+	@Autowired
+	private PiazzaLogger logger;
+
+	private static final Logger LOG = LoggerFactory.getLogger(SupervisedScheduler.class);
+
+	private final Map<String, SupervisedTask> tasks = new ConcurrentHashMap<>();
+	private ScheduledThreadPoolExecutor executor;
+
+	@PostConstruct
+	public void initialize() {
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("Scheduler-");
+		threadFactory.setDaemon(true);
+		// One thread fires the triggers, the rest run the tasks
+		executor = new ScheduledThreadPoolExecutor(Math.max(2, POOL_SIZE), threadFactory);
+		executor.setRemoveOnCancelPolicy(true);
+		executor.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+	}
+
+	/**
+	 * Schedules a task to run periodically.
+	 * 
+	 * @param name
+	 *            The unique name of the task, used in logs and metrics
+	 * @param task
+	 *            The task to run
+	 * @param initialDelayMs
+	 *            Milliseconds until the first run
+	 * @param periodMs
+	 *            Milliseconds between the start of each run
+	 * @return The scheduled task, which may be cancelled
+	 */
+	public SupervisedTask schedule(String name, Runnable task, long initialDelayMs, long periodMs) {
+		SupervisedTask supervisedTask = new SupervisedTask(name, task);
+		SupervisedTask existing = tasks.putIfAbsent(name, supervisedTask);
+		if (existing != null) {
+			throw new IllegalStateException(String.format("A task named %s is already scheduled.", name));
+		}
+		supervisedTask.future = executor.scheduleAtFixedRate(supervisedTask::trigger, initialDelayMs, periodMs, TimeUnit.MILLISECONDS);
+		return supervisedTask;
+	}
+
+	/**
+	 * Stops triggering tasks, and waits for runs in progress to finish. Runs still going after the shutdown timeout are
+	 * interrupted.
+	 */
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		for (SupervisedTask task : tasks.values()) {
+			task.cancel();
+		}
+		executor.shutdown();
+		if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+			LOG.warn("Scheduled tasks did not finish within {} seconds of shutdown, and will be interrupted.", SHUTDOWN_TIMEOUT_SECONDS);
+			executor.shutdownNow();
+		}
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		Collection<Metric<?>> metrics = new ArrayList<>();
+		for (SupervisedTask task : tasks.values()) {
+			String prefix = String.format("servicecontroller.scheduler.%s.", task.getName());
+			long runs = task.getRunCount();
+			metrics.add(new Metric<Long>(prefix + "runs", runs));
+			metrics.add(new Metric<Long>(prefix + "failures", task.getFailureCount()));
+			metrics.add(new Metric<Long>(prefix + "skipped", task.getSkippedCount()));
+			metrics.add(new Metric<Integer>(prefix + "running", task.isRunning() ? 1 : 0));
+			metrics.add(new Metric<Long>(prefix + "duration.last.ms", task.lastDurationMs.get()));
+			metrics.add(new Metric<Long>(prefix + "duration.max.ms", task.maxDurationMs.get()));
+			metrics.add(new Metric<Long>(prefix + "duration.mean.ms", (runs == 0) ? 0 : (task.totalDurationMs.get() / runs)));
+		}
+		return metrics;
+	}
+
+	/**
+	 * A periodic task run by the scheduler.
+	 */
+	public class SupervisedTask {
+		private final String name;
+		private final Runnable task;
+		private final AtomicBoolean running = new AtomicBoolean(false);
+		private final AtomicLong runCount = new AtomicLong();
+		private final AtomicLong failureCount = new AtomicLong();
+		private final AtomicLong skippedCount = new AtomicLong();
+		private final AtomicLong lastDurationMs = new AtomicLong();
+		private final AtomicLong maxDurationMs = new AtomicLong();
+		private final AtomicLong totalDurationMs = new AtomicLong();
+		private volatile ScheduledFuture<?> future;
+		private volatile boolean failing = false;
+
+		private SupervisedTask(String name, Runnable task) {
+			this.name = name;
+			this.task = task;
+		}
+
+		/**
+		 * Starts a run of the task on a pool thread, unless the previous run is still going. Never throws, as an
+		 * exception here would end the schedule.
+		 */
+		private void trigger() {
+			if (!running.compareAndSet(false, true)) {
+				skippedCount.incrementAndGet();
+				LOG.warn("Scheduled task {} is still running from its last trigger, and was skipped.", name);
+				return;
+			}
+			try {
+				executor.execute(this::run);
+			} catch (RejectedExecutionException exception) {
+				// Shutting down
+				running.set(false);
+			} catch (Exception exception) {
+				running.set(false);
+				LOG.error(String.format("Could not start scheduled task %s.", name), exception);
+			}
+		}
+
+		private void run() {
+			long start = System.currentTimeMillis();
+			try {
+				task.run();
+				if (failing) {
+					failing = false;
+					logger.log(String.format("Scheduled task %s has recovered.", name), Severity.INFORMATIONAL);
+				}
+			} catch (Throwable throwable) { //NOSONAR
+				// Keep the schedule alive; the task runs again at its next trigger
+				failureCount.incrementAndGet();
+				failing = true;
+				String error = String.format("Scheduled task %s failed, and will run again at its next trigger: %s", name,
+						throwable.getMessage());
+				LOG.error(error, throwable);
+				logger.log(error, Severity.ERROR);
+			} finally {
+				long duration = System.currentTimeMillis() - start;
+				runCount.incrementAndGet();
+				lastDurationMs.set(duration);
+				totalDurationMs.addAndGet(duration);
+				maxDurationMs.accumulateAndGet(duration, Math::max);
+				running.set(false);
+			}
+		}
+
+		/**
+		 * Stops triggering the task. A run in progress is allowed to finish.
+		 */
+		public void cancel() {
+			if (future != null) {
+				future.cancel(false);
+			}
+			tasks.remove(name, this);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public boolean isRunning() {
+			return running.get();
+		}
+
+		public long getRunCount() {
+			return runCount.get();
+		}
+
+		public long getFailureCount() {
+			return failureCount.get();
+		}
+
+		public long getSkippedCount() {
+			return skippedCount.get();
+		}
+	}
+}
@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.executor;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+/**
+ * Task executor that starts a new virtual thread for each task, with the number of concurrent tasks bounded by a
+ * semaphore.
+ * <p>
+ * Virtual threads are not pinned to a platform thread while blocked on I/O, so a node can hold many more in-flight
+ * calls to slow User Services than a platform thread pool allows. The application still targets Java 8, so the
+ * virtual thread executor is obtained reflectively, and {@link #isSupported()} is false on runtimes that predate it.
+ * </p>
+ * <p>
+ * cancel(true) on a Future returned by submit interrupts the virtual thread. A task's permit is returned when it
+ * finishes, or when it is cancelled before it starts. When not blocking, a task submitted while all permits are taken
+ * is discarded: execute drops it, and submit returns a Future that is already cancelled.
+ * </p>
+ */
+public class VirtualThreadTaskExecutor implements AsyncTaskExecutor, DisposableBean {
+	private final ExecutorService delegate;
+	private final Semaphore permits;
+	private final int maxConcurrency;
+	private final boolean blockWhenFull;
+
+	/**
+	 * @param maxConcurrency
+	 *            The maximum number of tasks that may run at once
+	 * @param blockWhenFull
+	 *            If true, submitting threads wait for a free permit. If false, tasks are discarded when all permits
+	 *            are taken.
+	 */
+	public VirtualThreadTaskExecutor(int maxConcurrency, boolean blockWhenFull) {
+		this(createVirtualThreadExecutor(), maxConcurrency, blockWhenFull);
+	}
+
+	VirtualThreadTaskExecutor(ExecutorService delegate, int maxConcurrency, boolean blockWhenFull) {
+		if (delegate == null) {
+			throw new IllegalStateException("Virtual threads are not supported by this Java runtime.");
+		}
+		this.delegate = delegate;
+		this.maxConcurrency = maxConcurrency;
+		this.permits = new Semaphore(maxConcurrency);
+		this.blockWhenFull = blockWhenFull;
+	}
+
+	/**
+	 * @return True if the current Java runtime can create virtual threads
+	 */
+	public static boolean isSupported() {
+		return getFactoryMethod() != null;
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		if (acquire()) {
+			try {
+				delegate.execute(releasing(task));
+			} catch (RuntimeException exception) {
+				permits.release();
+				throw exception;
+			}
+		}
+	}
+
+	@Override
+	public void execute(Runnable task, long startTimeout) {
+		execute(task);
+	}
+
+	@Override
+	public Future<?> submit(Runnable task) {
+		return submit(new PermitFuture<Object>(task, null));
+	}
+
+	@Override
+	public <T> Future<T> submit(Callable<T> task) {
+		return submit(new PermitFuture<>(task));
+	}
+
+	/**
+	 * @return The number of tasks currently running
+	 */
+	public int getActiveCount() {
+		return maxConcurrency - permits.availablePermits();
+	}
+
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	@Override
+	public void destroy() {
+		delegate.shutdownNow();
+	}
+
+	private boolean acquire() {
+		if (!blockWhenFull) {
+			return permits.tryAcquire();
+		}
+		try {
+			permits.acquire();
+			return true;
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new TaskRejectedException("Interrupted while waiting for executor capacity.", exception);
+		}
+	}
+
+	private <T> Future<T> submit(PermitFuture<T> future) {
+		if (!acquire()) {
+			// Discarded, as the thread pools discard when full
+			future.discard();
+			return future;
+		}
+		try {
+			delegate.execute(future);
+		} catch (RuntimeException exception) {
+			permits.release();
+			throw exception;
+		}
+		return future;
+	}
+
+	private Runnable releasing(Runnable task) {
+		return () -> {
+			try {
+				task.run();
+			} finally {
+				permits.release();
+			}
+		};
+	}
+
+	private static Method getFactoryMethod() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException exception) { //NOSONAR
+			return null;
+		}
+	}
+
+	private static ExecutorService createVirtualThreadExecutor() {
+		Method factoryMethod = getFactoryMethod();
+		if (factoryMethod == null) {
+			return null;
+		}
+		try {
+			return (ExecutorService) factoryMethod.invoke(null);
+		} catch (ReflectiveOperationException exception) {
+			throw new IllegalStateException("Could not create virtual thread executor.", exception);
+		}
+	}
+
+	/**
+	 * Future of a submitted task that holds one permit. The permit is returned as the task finishes, before its result
+	 * is visible, or when the Future is cancelled before the task starts.
+	 */
+	private class PermitFuture<T> extends FutureTask<T> {
+		private final AtomicBoolean started = new AtomicBoolean();
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		PermitFuture(Callable<T> task) {
+			super(task);
+		}
+
+		PermitFuture(Runnable task, T result) {
+			super(task, result);
+		}
+
+		@Override
+		public void run() {
+			if (started.compareAndSet(false, true)) {
+				try {
+					super.run();
+				} finally {
+					release();
+				}
+			}
+		}
+
+		@Override
+		protected void set(T result) {
+			release();
+			super.set(result);
+		}
+
+		@Override
+		protected void setException(Throwable exception) {
+			release();
+			super.setException(exception);
+		}
+
+		@Override
+		protected void done() {
+			if (isCancelled() && started.compareAndSet(false, true)) {
+				release();
+			}
+		}
+
+		/**
+		 * Cancels a task that was never given a permit.
+		 */
+		void discard() {
+			started.set(true);
+			released.set(true);
+			cancel(false);
+		}
+
+		private void release() {
+			if (released.compareAndSet(false, true)) {
+				permits.release();
+			}
+		}
+	}
+}
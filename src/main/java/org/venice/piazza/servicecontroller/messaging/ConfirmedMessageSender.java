@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.messaging;
+
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.AbstractConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import messaging.job.JobMessageFactory;
+
+/**
+ * Sends batches of messages to the Piazza exchange on a single channel, and waits for the broker to confirm them. A
+ * batch that returns normally has been accepted by the broker.
+ * <p>
+ * Publisher confirms cannot be turned off on a channel once enabled, so batches are sent on channels of a dedicated
+ * connection, rather than on the cached channels shared by every other user of the RabbitTemplate.
+ * </p>
+ */
+@Component
+public class ConfirmedMessageSender {
+	@Autowired
+	private RabbitTemplate rabbitTemplate;
+	@Autowired(required = false)
+	private ConnectionFactory connectionFactory;
+
+	@Value("${messaging.confirm.timeout.ms}")
+	private long CONFIRM_TIMEOUT_MS; //NOSONAR
+
+	private static final Logger LOG = LoggerFactory.getLogger(ConfirmedMessageSender.class);
+
+	private final MessagePropertiesConverter propertiesConverter = new DefaultMessagePropertiesConverter();
+	private CachingConnectionFactory confirmConnectionFactory;
+	private RabbitTemplate confirmTemplate;
+
+	/**
+	 * Creates the dedicated connection, with the same broker settings as the shared connection.
+	 */
+	@PostConstruct
+	public void initialize() {
+		if (connectionFactory instanceof AbstractConnectionFactory) {
+			confirmConnectionFactory = new CachingConnectionFactory(
+					((AbstractConnectionFactory) connectionFactory).getRabbitConnectionFactory());
+			confirmTemplate = new RabbitTemplate(confirmConnectionFactory);
+		} else {
+			// No shared connection factory to copy, as with a stand-in for the broker
+			LOG.warn("No RabbitMQ connection factory is available. Confirmed messages are sent through the shared RabbitTemplate.");
+			confirmTemplate = rabbitTemplate;
+		}
+	}
+
+	/**
+	 * Closes the dedicated connection.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		if (confirmConnectionFactory != null) {
+			confirmConnectionFactory.destroy();
+		}
+	}
+
+	/**
+	 * Publishes the messages in order, and waits for the broker to confirm them.
+	 * 
+	 * @param routingKey
+	 *            The routing key to send the messages with
+	 * @param payloads
+	 *            The messages
+	 * @throws AmqpException
+	 *             If the messages could not be sent, or the broker did not confirm all of them. Some may have been
+	 *             delivered.
+	 */
+	public void send(String routingKey, List<String> payloads) {
+		if (payloads.isEmpty()) {
+			return;
+		}
+		confirmTemplate.execute(channel -> {
+			channel.confirmSelect();
+			for (String payload : payloads) {
+				Message message = rabbitTemplate.getMessageConverter().toMessage(payload, new MessageProperties());
+				channel.basicPublish(JobMessageFactory.PIAZZA_EXCHANGE_NAME, routingKey, false,
+						propertiesConverter.fromMessageProperties(message.getMessageProperties(), "UTF-8"), message.getBody());
+			}
+			if (!channel.waitForConfirms(CONFIRM_TIMEOUT_MS)) {
+				throw new AmqpException("The broker did not accept the messages.");
+			}
+			return null;
+		});
+	}
+}
@@ -0,0 +1,310 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.messaging;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+/**
+ * Registry of the Execute Service Jobs currently in flight on this instance, keyed by Job ID.
+ * <p>
+ * A Job is registered by the listener before it is handed to a worker, and completed by the worker's callback. Because
+ * the Job is registered first, a callback that fires before the listener has attached the worker's Future cannot leave
+ * a stale entry behind. The number of Jobs in flight is capped: once the cap is reached, registering blocks the
+ * listener, so that further Jobs remain queued in RabbitMQ.
+ * </p>
+ * <p>
+ * Only the worker's callback completes a Job, including a cancelled one, so that its place is not freed while the
+ * worker may still be running it. A Job cancelled before its worker has started is not interrupted; the worker instead
+ * finds it cancelled when it starts, and completes it without running it.
+ * </p>
+ * <p>
+ * Counts, per-Service counts and an age histogram of the Jobs in flight are exposed on the actuator metrics endpoint.
+ * </p>
+ */
+@Component
+public class InFlightJobRegistry implements PublicMetrics {
+	@Value("${job.inflight.max}")
+	private int MAX_IN_FLIGHT; //NOSONAR
+
+	/**
+	 * Upper bounds, in seconds, of the age histogram buckets. Older Jobs fall into a final, unbounded bucket.
+	 */
+	private static final long[] AGE_BUCKET_SECONDS = { 1, 10, 60, 300 };
+
+	private final ConcurrentMap<String, InFlightJob> jobs = new ConcurrentHashMap<>();
+	private Semaphore permits;
+
+	@PostConstruct
+	public void initialize() {
+		permits = new Semaphore(MAX_IN_FLIGHT);
+	}
+
+	/**
+	 * Registers a Job as in flight, blocking while the number of Jobs in flight is at the cap.
+	 * 
+	 * @param jobId
+	 *            The ID of the Job
+	 * @param serviceId
+	 *            The ID of the Service the Job executes, if known
+	 * @return The registered Job, or null if a Job with this ID is already in flight
+	 */
+	public InFlightJob register(String jobId, String serviceId) throws InterruptedException {
+		permits.acquire();
+		InFlightJob job = new InFlightJob(jobId, serviceId, System.currentTimeMillis());
+		try {
+			if (jobs.putIfAbsent(jobId, job) != null) {
+				permits.release();
+				return null;
+			}
+		} catch (RuntimeException exception) {
+			// Such as a null Job ID. The Job was not registered, so it must not hold a permit.
+			permits.release();
+			throw exception;
+		}
+		return job;
+	}
+
+	/**
+	 * Attaches the Future of the worker executing the Job. If the Job has already been cancelled after its worker
+	 * started, the Future is cancelled immediately. Has no effect if the Job has already completed.
+	 */
+	public void attach(String jobId, Future<?> future) {
+		InFlightJob job = jobs.get(jobId);
+		if (job != null) {
+			job.attach(future);
+		}
+	}
+
+	/**
+	 * Records that the worker has started the Job, and the calling thread as the thread executing it.
+	 * 
+	 * @return False if the Job was cancelled before it started, in which case the worker must not run it
+	 */
+	public boolean started(String jobId) {
+		InFlightJob job = jobs.get(jobId);
+		return (job == null) || job.start(Thread.currentThread());
+	}
+
+	/**
+	 * Records that the worker has started the Job without holding a thread for it, as on the non-blocking HTTP path.
+	 * 
+	 * @return False if the Job was cancelled before it started, in which case the worker must not run it
+	 */
+	public boolean startedNonBlocking(String jobId) {
+		InFlightJob job = jobs.get(jobId);
+		return (job == null) || job.start(null);
+	}
+
+	/**
+	 * Removes the Job from the registry, freeing its place under the cap. Safe to call more than once.
+	 * 
+	 * @return True if the Job was in flight
+	 */
+	public boolean complete(String jobId) {
+		if ((jobId != null) && (jobs.remove(jobId) != null)) {
+			permits.release();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return True if the Job is in flight and has been cancelled
+	 */
+	public boolean isCancelled(String jobId) {
+		InFlightJob job = get(jobId);
+		return (job != null) && job.isCancelled();
+	}
+
+	/**
+	 * @return The Job in flight with this ID, or null if there is none
+	 */
+	public InFlightJob get(String jobId) {
+		return (jobId == null) ? null : jobs.get(jobId);
+	}
+
+	/**
+	 * @return A snapshot of the Jobs in flight
+	 */
+	public List<InFlightJob> getJobs() {
+		return new ArrayList<>(jobs.values());
+	}
+
+	public int getCount() {
+		return jobs.size();
+	}
+
+	/**
+	 * @return The number of Jobs that can be registered before the listener blocks
+	 */
+	public int getAvailableCount() {
+		return permits.availablePermits();
+	}
+
+	/**
+	 * @return The number of Jobs in flight for each Service ID
+	 */
+	public Map<String, Integer> getCountsByService() {
+		Map<String, Integer> counts = new TreeMap<>();
+		for (InFlightJob job : jobs.values()) {
+			counts.merge(String.valueOf(job.getServiceId()), 1, Integer::sum);
+		}
+		return counts;
+	}
+
+	/**
+	 * @return The number of Jobs in flight in each age bucket, keyed by bucket name (for example "lt10s" or "ge300s")
+	 */
+	public Map<String, Integer> getAgeHistogram() {
+		long now = System.currentTimeMillis();
+		int[] counts = new int[AGE_BUCKET_SECONDS.length + 1];
+		for (InFlightJob job : jobs.values()) {
+			long age = now - job.getStartedOn();
+			int bucket = 0;
+			while ((bucket < AGE_BUCKET_SECONDS.length) && (age >= AGE_BUCKET_SECONDS[bucket] * 1000)) {
+				bucket++;
+			}
+			counts[bucket]++;
+		}
+		Map<String, Integer> histogram = new LinkedHashMap<>();
+		for (int i = 0; i < AGE_BUCKET_SECONDS.length; i++) {
+			histogram.put(String.format("lt%ss", AGE_BUCKET_SECONDS[i]), counts[i]);
+		}
+		histogram.put(String.format("ge%ss", AGE_BUCKET_SECONDS[AGE_BUCKET_SECONDS.length - 1]), counts[AGE_BUCKET_SECONDS.length]);
+		return histogram;
+	}
+
+	/**
+	 * @return The age in milliseconds of the oldest Job in flight, or zero if there are none
+	 */
+	public long getOldestAge() {
+		long now = System.currentTimeMillis();
+		long oldest = 0;
+		for (InFlightJob job : jobs.values()) {
+			oldest = Math.max(oldest, now - job.getStartedOn());
+		}
+		return oldest;
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		Collection<Metric<?>> metrics = new ArrayList<>();
+		metrics.add(new Metric<Integer>("servicecontroller.inflight.jobs", getCount()));
+		metrics.add(new Metric<Integer>("servicecontroller.inflight.jobs.available", getAvailableCount()));
+		metrics.add(new Metric<Long>("servicecontroller.inflight.jobs.oldest.age", getOldestAge()));
+		for (Map.Entry<String, Integer> bucket : getAgeHistogram().entrySet()) {
+			metrics.add(new Metric<Integer>("servicecontroller.inflight.jobs.age." + bucket.getKey(), bucket.getValue()));
+		}
+		for (Map.Entry<String, Integer> service : getCountsByService().entrySet()) {
+			metrics.add(new Metric<Integer>("servicecontroller.inflight.jobs.service." + service.getKey(), service.getValue()));
+		}
+		return metrics;
+	}
+
+	/**
+	 * A Job in flight: when it started, which Service it executes, the thread executing it and the Future that can
+	 * cancel it.
+	 */
+	public static class InFlightJob {
+		private final String jobId;
+		private final String serviceId;
+		private final long startedOn;
+		private volatile Thread thread;
+		private Future<?> future;
+		private boolean started;
+		private boolean cancelled;
+
+		InFlightJob(String jobId, String serviceId, long startedOn) {
+			this.jobId = jobId;
+			this.serviceId = serviceId;
+			this.startedOn = startedOn;
+		}
+
+		public String getJobId() {
+			return jobId;
+		}
+
+		public String getServiceId() {
+			return serviceId;
+		}
+
+		/**
+		 * @return Epoch time in milliseconds at which the Job was registered
+		 */
+		public long getStartedOn() {
+			return startedOn;
+		}
+
+		/**
+		 * @return The thread executing the Job, or null if no thread is held by it, such as while awaiting a
+		 *         non-blocking request
+		 */
+		public Thread getThread() {
+			return thread;
+		}
+
+		synchronized void attach(Future<?> future) {
+			this.future = future;
+			if (cancelled && started) {
+				future.cancel(true);
+			}
+		}
+
+		synchronized boolean start(Thread thread) {
+			if (cancelled) {
+				return false;
+			}
+			this.thread = thread;
+			started = true;
+			return true;
+		}
+
+		/**
+		 * @return True if the Job has been cancelled
+		 */
+		public synchronized boolean isCancelled() {
+			return cancelled;
+		}
+
+		/**
+		 * Cancels the Job. If its worker has started, the thread executing it is interrupted, as soon as the worker's
+		 * Future is attached. Otherwise the worker does not run the Job when it starts. Either way, the worker's
+		 * callback completes the Job.
+		 * 
+		 * @return False if the Future could not be cancelled, typically because the Job had already completed
+		 */
+		public synchronized boolean cancel() {
+			cancelled = true;
+			return (future == null) || !started || future.cancel(true);
+		}
+	}
+}
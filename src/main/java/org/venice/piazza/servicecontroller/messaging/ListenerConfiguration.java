@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.messaging;
+
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Defines the RabbitMQ listener containers that consume the queues of the Service Controller. Each kind of queue has
+ * its own container factory, so that consumers, prefetch and acknowledgement can be tuned per deployment through
+ * properties.
+ * <p>
+ * Execution Jobs are acknowledged only once they have been handed off to a worker (see
+ * {@link ServiceMessageThreadManager#processServiceExecutionJob(String, com.rabbitmq.client.Channel, long)}). With
+ * MANUAL acknowledgement each message is acknowledged as it is handed off. With AUTO acknowledgement the container
+ * acknowledges after the listener returns, in batches of the configured size. Keeping the prefetch low spreads Jobs
+ * evenly between instances, as messages prefetched by a busy instance are not available to the others.
+ * </p>
+ * <p>
+ * Other listeners use AUTO acknowledgement. New queues should use one of these factories, or add their own with
+ * {@link #createContainerFactory(int, int, int, int, AcknowledgeMode)}.
+ * </p>
+ */
+@Configuration
+public class ListenerConfiguration {
+	public static final String EXECUTION_CONTAINER_FACTORY = "executionListenerContainerFactory";
+	public static final String ABORT_CONTAINER_FACTORY = "abortListenerContainerFactory";
+
+	@Autowired
+	private ConnectionFactory connectionFactory;
+
+	@Value("${listener.execution.concurrency}")
+	private int EXECUTION_CONCURRENCY; //NOSONAR
+	@Value("${listener.execution.max.concurrency}")
+	private int EXECUTION_MAX_CONCURRENCY; //NOSONAR
+	@Value("${listener.execution.prefetch}")
+	private int EXECUTION_PREFETCH; //NOSONAR
+	@Value("${listener.execution.batch.size}")
+	private int EXECUTION_BATCH_SIZE; //NOSONAR
+	@Value("${listener.execution.acknowledge.mode}")
+	private AcknowledgeMode EXECUTION_ACKNOWLEDGE_MODE; //NOSONAR
+	@Value("${listener.abort.concurrency}")
+	private int ABORT_CONCURRENCY; //NOSONAR
+	@Value("${listener.abort.max.concurrency}")
+	private int ABORT_MAX_CONCURRENCY; //NOSONAR
+	@Value("${listener.abort.prefetch}")
+	private int ABORT_PREFETCH; //NOSONAR
+
+	@Bean(name = EXECUTION_CONTAINER_FACTORY)
+	public SimpleRabbitListenerContainerFactory executionListenerContainerFactory() {
+		return createContainerFactory(EXECUTION_CONCURRENCY, EXECUTION_MAX_CONCURRENCY, EXECUTION_PREFETCH, EXECUTION_BATCH_SIZE,
+				EXECUTION_ACKNOWLEDGE_MODE);
+	}
+
+	@Bean(name = ABORT_CONTAINER_FACTORY)
+	public SimpleRabbitListenerContainerFactory abortListenerContainerFactory() {
+		return createContainerFactory(ABORT_CONCURRENCY, ABORT_MAX_CONCURRENCY, ABORT_PREFETCH, 1, AcknowledgeMode.AUTO);
+	}
+
+	/**
+	 * Creates a listener container factory. The container starts the given number of consumers, and adds consumers up
+	 * to the maximum while messages are arriving faster than they are consumed. Messages that fail in the listener are
+	 * requeued, unless the listener rejects them outright.
+	 * 
+	 * @param concurrency
+	 *            The number of consumers to start with
+	 * @param maxConcurrency
+	 *            The maximum number of consumers
+	 * @param prefetch
+	 *            The number of unacknowledged messages each consumer may hold
+	 * @param batchSize
+	 *            The number of messages each consumer processes between acknowledgements, in AUTO mode
+	 * @param acknowledgeMode
+	 *            How messages are acknowledged
+	 * @return The container factory
+	 */
+	public SimpleRabbitListenerContainerFactory createContainerFactory(int concurrency, int maxConcurrency, int prefetch, int batchSize,
+			AcknowledgeMode acknowledgeMode) {
+		SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+		factory.setConnectionFactory(connectionFactory);
+		factory.setConcurrentConsumers(Math.max(1, concurrency));
+		factory.setMaxConcurrentConsumers(Math.max(Math.max(1, concurrency), maxConcurrency));
+		// The prefetch must cover a full batch, or the consumer waits on messages the broker will not send
+		factory.setPrefetchCount(Math.max(Math.max(1, prefetch), batchSize));
+		factory.setTxSize(Math.max(1, batchSize));
+		factory.setAcknowledgeMode(acknowledgeMode);
+		factory.setDefaultRequeueRejected(true);
+		return factory;
+	}
+}
@@ -0,0 +1,289 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.messaging;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
+import org.venice.piazza.servicecontroller.data.model.OutboxMessageEntity;
+
+import messaging.job.JobMessageFactory;
+import model.logger.Severity;
+import util.PiazzaLogger;
+
+/**
+ * Transactional outbox for messages that must not be lost, such as final Job Statuses carrying the result of a Service
+ * execution, and the Ingest Jobs for those results.
+ * <p>
+ * A message is written to the outbox table in the same database transaction as the changes it reports, so that either
+ * both are committed or neither is. A relay thread then claims the oldest messages in batches, sends them outside of
+ * any transaction, and deletes them once the broker has confirmed them. If the broker is unavailable, messages remain
+ * in the outbox and are sent when it returns, by this or any other instance. Delivery is at-least-once: a batch that
+ * fails part way is sent again in full.
+ * </p>
+ * <p>
+ * When the outbox is disabled, messages are sent directly before the database changes are made.
+ * </p>
+ */
+@Component
+public class MessageOutbox implements PublicMetrics {
+	@Autowired
+	private DatabaseAccessor accessor;
+	@Autowired
+	private ConfirmedMessageSender sender;
+	@Autowired
+	private RabbitTemplate rabbitTemplate;
+	@Autowired
+	private PiazzaLogger logger;
+	@Autowired(required = false)
+	private PlatformTransactionManager transactionManager;
+
+	@Value("${outbox.enabled}")
+	private boolean ENABLED; //NOSONAR
+	@Value("${outbox.batch.size}")
+	private int BATCH_SIZE; //NOSONAR
+	@Value("${outbox.relay.interval.ms}")
+	private long RELAY_INTERVAL_MS; //NOSONAR
+	@Value("${outbox.claim.timeout.ms}")
+	private long CLAIM_TIMEOUT_MS; //NOSONAR
+
+	private static final Logger LOG = LoggerFactory.getLogger(MessageOutbox.class);
+	private static final long MAX_RETRY_DELAY_MS = 30000;
+	private static final long SHUTDOWN_TIMEOUT_MS = 10000;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition messagesAdded = lock.newCondition();
+	private boolean hasNewMessages;
+	private final AtomicLong relayedCount = new AtomicLong();
+	private final AtomicLong failureCount = new AtomicLong();
+
+	private TransactionTemplate transactionTemplate;
+	private volatile boolean running;
+	private Thread relayThread;
+
+	/**
+	 * Starts the relay thread, if the outbox is enabled.
+	 */
+	@PostConstruct
+	public void initialize() {
+		if (!ENABLED) {
+			return;
+		}
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		running = true;
+		relayThread = new Thread(this::relayMessages, "MessageOutboxRelay");
+		relayThread.setDaemon(true);
+		relayThread.start();
+	}
+
+	/**
+	 * Stops the relay thread. Messages still in the outbox are sent once an instance is running again.
+	 */
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		running = false;
+		wakeRelay();
+		if (relayThread != null) {
+			relayThread.join(SHUTDOWN_TIMEOUT_MS);
+		}
+	}
+
+	public boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * Sends a message through the outbox.
+	 * 
+	 * @param routingKey
+	 *            The routing key to send the message with
+	 * @param payload
+	 *            The message
+	 * @param databaseUpdate
+	 *            Changes to the database that the message reports, made in the same transaction as the message is
+	 *            written. May be null.
+	 */
+	public void send(String routingKey, String payload, Runnable databaseUpdate) {
+		send(routingKey, Collections.singletonList(payload), databaseUpdate);
+	}
+
+	/**
+	 * Sends several messages through the outbox, writing them in a single transaction.
+	 * 
+	 * @param routingKey
+	 *            The routing key to send the messages with
+	 * @param payloads
+	 *            The messages
+	 * @param databaseUpdate
+	 *            Changes to the database that the messages report, made in the same transaction as the messages are
+	 *            written. May be null.
+	 */
+	public void send(String routingKey, List<String> payloads, Runnable databaseUpdate) {
+		if (!ENABLED) {
+			for (String payload : payloads) {
+				rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, routingKey, payload);
+			}
+			if (databaseUpdate != null) {
+				databaseUpdate.run();
+			}
+			return;
+		}
+		transactionTemplate.execute(status -> {
+			for (String payload : payloads) {
+				accessor.addOutboxMessage(routingKey, payload);
+			}
+			if (databaseUpdate != null) {
+				databaseUpdate.run();
+			}
+			return null;
+		});
+		wakeRelay();
+	}
+
+	/**
+	 * Sends the oldest batch of messages in the outbox, and removes them once confirmed. The batch is claimed before
+	 * it is sent, so that no transaction or row lock is held while waiting for the broker. A batch that cannot be sent
+	 * is released to be sent again.
+	 * 
+	 * @return The number of messages sent
+	 */
+	public int relayBatch() {
+		List<OutboxMessageEntity> messages = accessor.claimOutboxMessages(BATCH_SIZE, CLAIM_TIMEOUT_MS);
+		if (messages.isEmpty()) {
+			return 0;
+		}
+		// Send in order, grouped by routing key
+		Map<String, List<String>> payloadsByRoutingKey = new LinkedHashMap<>();
+		for (OutboxMessageEntity message : messages) {
+			payloadsByRoutingKey.computeIfAbsent(message.getRoutingKey(), key -> new ArrayList<>()).add(message.getPayload());
+		}
+		try {
+			for (Map.Entry<String, List<String>> entry : payloadsByRoutingKey.entrySet()) {
+				sender.send(entry.getKey(), entry.getValue());
+			}
+		} catch (RuntimeException exception) {
+			releaseClaim(messages);
+			throw exception;
+		}
+		accessor.deleteOutboxMessages(messages);
+		relayedCount.addAndGet(messages.size());
+		return messages.size();
+	}
+
+	/**
+	 * Releases a claimed batch. If this fails, the claim expires after its timeout instead.
+	 */
+	private void releaseClaim(List<OutboxMessageEntity> messages) {
+		try {
+			accessor.releaseOutboxMessages(messages);
+		} catch (RuntimeException exception) {
+			LOG.error("Could not release the claim on outbox messages. They will be sent once the claim expires.", exception);
+		}
+	}
+
+	/**
+	 * Exposes the outbox counters on the actuator metrics endpoint.
+	 */
+	@Override
+	public Collection<Metric<?>> metrics() {
+		Collection<Metric<?>> metrics = new ArrayList<>();
+		metrics.add(new Metric<Long>("servicecontroller.outbox.relayed", relayedCount.get()));
+		metrics.add(new Metric<Long>("servicecontroller.outbox.failures", failureCount.get()));
+		if (ENABLED) {
+			metrics.add(new Metric<Long>("servicecontroller.outbox.pending", accessor.getOutboxMessageCount()));
+		}
+		return metrics;
+	}
+
+	/**
+	 * Body of the relay thread. Sends batches while the outbox is full, and otherwise waits for new messages or the
+	 * relay interval. Backs off while messages cannot be sent.
+	 */
+	private void relayMessages() {
+		long retryDelay = RELAY_INTERVAL_MS;
+		while (running) {
+			try {
+				if (relayBatch() >= BATCH_SIZE) {
+					continue;
+				}
+				retryDelay = RELAY_INTERVAL_MS;
+				awaitMessages(RELAY_INTERVAL_MS, true);
+			} catch (Exception exception) {
+				failureCount.incrementAndGet();
+				String error = String.format("Error relaying messages from the outbox. They will be sent again. %s", exception.getMessage());
+				LOG.error(error, exception);
+				logger.log(error, Severity.ERROR);
+				retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MS);
+				awaitMessages(retryDelay, false);
+			}
+		}
+	}
+
+	/**
+	 * Waits until the timeout elapses or the relay is stopped.
+	 * 
+	 * @param wakeOnNewMessages
+	 *            If true, also stops waiting when new messages are added to the outbox by this instance
+	 */
+	private void awaitMessages(long timeoutMs, boolean wakeOnNewMessages) {
+		lock.lock();
+		try {
+			long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+			while (running && !(wakeOnNewMessages && hasNewMessages) && (remainingNanos > 0)) {
+				remainingNanos = messagesAdded.awaitNanos(remainingNanos);
+			}
+			hasNewMessages = false;
+		} catch (InterruptedException exception) {
+			LOG.warn("Outbox relay was interrupted while waiting for messages.", exception);
+			Thread.currentThread().interrupt();
+			running = false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void wakeRelay() {
+		lock.lock();
+		try {
+			hasNewMessages = true;
+			messagesAdded.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+}
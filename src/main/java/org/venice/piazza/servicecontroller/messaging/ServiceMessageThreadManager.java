@@ -16,28 +16,36 @@
 package org.venice.piazza.servicecontroller.messaging;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.AcknowledgeMode;
 import org.springframework.amqp.rabbit.annotation.Exchange;
 import org.springframework.amqp.rabbit.annotation.Queue;
 import org.springframework.amqp.rabbit.annotation.QueueBinding;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 import org.venice.piazza.servicecontroller.async.AsyncServiceInstanceScheduler;
+import org.venice.piazza.servicecontroller.messaging.InFlightJobRegistry.InFlightJob;
 import org.venice.piazza.servicecontroller.taskmanaged.ServiceTaskManager;
+import org.venice.piazza.servicecontroller.util.AbortableClientHttpRequestFactory;
+import org.venice.piazza.servicecontroller.util.JsonSerialization;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
 
 import messaging.job.JobMessageFactory;
 import messaging.job.WorkerCallback;
 import model.job.Job;
 import model.job.type.AbortJob;
+import model.job.type.ExecuteServiceJob;
 import model.logger.Severity;
 import model.request.PiazzaJobRequest;
 import util.PiazzaLogger;
@@ -59,82 +67,227 @@ public class ServiceMessageThreadManager {
 	@Autowired
 	private AsyncServiceInstanceScheduler asyncServiceInstanceManager;
 	@Autowired
-	private ObjectMapper mapper;
+	private JsonSerialization serialization;
+	@Autowired
+	private InFlightJobRegistry inFlightJobs;
+	@Autowired
+	private AbortableClientHttpRequestFactory requestFactory;
 
 	@Value("${SPACE}")
 	private String SPACE; //NOSONAR
+	@Value("${http.client.mode}")
+	private String HTTP_CLIENT_MODE; //NOSONAR
+	@Value("${listener.execution.acknowledge.mode}")
+	private AcknowledgeMode EXECUTION_ACKNOWLEDGE_MODE; //NOSONAR
 
 	private static final Logger LOG = LoggerFactory.getLogger(ServiceMessageThreadManager.class);
-	private Map<String, Future<?>> runningServiceRequests = new HashMap<>();
+	private static final String ASYNC_HTTP_CLIENT_MODE = "async";
+
+	/**
+	 * The outcome of handing off an Execution Job Message, which determines how the Message is acknowledged
+	 */
+	public enum HandOff {
+		/** The Job was handed off to a worker, or is already running on this instance. The Message is acknowledged. */
+		ACCEPTED,
+		/** The Message could not be read, and would fail again if redelivered. The Message is discarded. */
+		REJECTED,
+		/** The Job could not be handed off at this time. The Message is requeued for this or another instance. */
+		REQUEUE
+	}
+
+	/**
+	 * Listens for requests to execute a service job. The Message is acknowledged only after the Job has been handed off
+	 * to a worker, so that Jobs not yet started are redelivered if this instance stops.
+	 * 
+	 * @param serviceJobRequest
+	 *            The ExecuteServiceJob Request with the Execution information
+	 * @param channel
+	 *            The channel the Message was delivered on
+	 * @param deliveryTag
+	 *            The delivery tag of the Message
+	 */
+	@RabbitListener(containerFactory = ListenerConfiguration.EXECUTION_CONTAINER_FACTORY, bindings = @QueueBinding(key = "ExecuteServiceJob-${SPACE}", value = @Queue(value = "ServiceControllerJob-${SPACE}", autoDelete = "false", durable = "true"), exchange = @Exchange(value = JobMessageFactory.PIAZZA_EXCHANGE_NAME, autoDelete = "false", durable = "true")))
+	public void processServiceExecutionJob(String serviceJobRequest, Channel channel, @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag)
+			throws IOException {
+		HandOff handOff;
+		try {
+			handOff = processServiceExecutionJob(serviceJobRequest);
+		} catch (RuntimeException exception) {
+			// The Message must still be settled, or with manual acknowledgement this consumer would stall
+			String error = String.format("Unexpected error handing off Execution Job Message: %s", exception.getMessage());
+			LOG.error(error, exception);
+			coreLogger.log(error, Severity.ERROR);
+			handOff = HandOff.REJECTED;
+		}
+		if (AcknowledgeMode.MANUAL.equals(EXECUTION_ACKNOWLEDGE_MODE)) {
+			if (HandOff.ACCEPTED.equals(handOff)) {
+				channel.basicAck(deliveryTag, false);
+			} else {
+				channel.basicReject(deliveryTag, HandOff.REQUEUE.equals(handOff));
+			}
+		} else if (HandOff.REJECTED.equals(handOff)) {
+			// The container acknowledges; signal it to discard or requeue the Message instead
+			throw new AmqpRejectAndDontRequeueException("Execution Job Message could not be read.");
+		} else if (HandOff.REQUEUE.equals(handOff)) {
+			throw new AmqpException("Execution Job could not be handed off, and will be requeued.");
+		}
+	}
 
 	/**
 	 * Processes a message for a request to execute a service job
 	 * 
 	 * @param serviceJobRequest
 	 *            The ExecuteServiceJob Request with the Execution information
+	 * @return The outcome of handing off the Job
 	 */
-	@RabbitListener(bindings = @QueueBinding(key = "ExecuteServiceJob-${SPACE}", value = @Queue(value = "ServiceControllerJob-${SPACE}", autoDelete = "false", durable = "true"), exchange = @Exchange(value = JobMessageFactory.PIAZZA_EXCHANGE_NAME, autoDelete = "false", durable = "true")))
-	public void processServiceExecutionJob(String serviceJobRequest) {
+	public HandOff processServiceExecutionJob(String serviceJobRequest) {
+		Job job;
 		try {
-			// Callback that will be invoked when a Worker completes. This will
-			// remove the Job Id from the running Jobs list.
-			WorkerCallback callback = (String jobId) -> runningServiceRequests.remove(jobId);
 			// Get the Job Model
-			Job job = mapper.readValue(serviceJobRequest, Job.class);
-			// Process the work
-			Future<?> workerFuture = serviceMessageWorker.run(job, callback);
-			// Keep track of this running Job's ID
-			runningServiceRequests.put(job.getJobId(), workerFuture);
+			job = serialization.read(serviceJobRequest, Job.class);
 		} catch (IOException exception) {
 			String error = String.format("Error Reading Execution Job Message from Queue %s", exception.getMessage());
 			LOG.error(error, exception);
 			coreLogger.log(error, Severity.ERROR);
+			return HandOff.REJECTED;
+		}
+		if ((job == null) || (job.getJobId() == null)) {
+			String error = "Execution Job Message from Queue has no Job ID and was discarded.";
+			LOG.error(error);
+			coreLogger.log(error, Severity.ERROR);
+			return HandOff.REJECTED;
+		}
+		try {
+			// Keep track of this Job before it starts, blocking this listener while at capacity so that further Jobs
+			// remain queued in RabbitMQ
+			if (inFlightJobs.register(job.getJobId(), getServiceId(job)) == null) {
+				String error = String.format("Execution Job %s is already running on this instance. The duplicate message was ignored.",
+						job.getJobId());
+				LOG.warn(error);
+				coreLogger.log(error, Severity.WARNING);
+				return HandOff.ACCEPTED;
+			}
+		} catch (InterruptedException exception) {
+			String error = String.format("Interrupted while waiting to process Execution Job Message from Queue %s", exception.getMessage());
+			LOG.error(error, exception);
+			coreLogger.log(error, Severity.ERROR);
+			Thread.currentThread().interrupt();
+			return HandOff.REQUEUE;
+		}
+		// Callback that will be invoked when a Worker completes. This will remove the Job from the in-flight Jobs.
+		WorkerCallback callback = (String jobId) -> inFlightJobs.complete(jobId);
+		// Process the work
+		Future<?> workerFuture;
+		try {
+			if (ASYNC_HTTP_CLIENT_MODE.equalsIgnoreCase(HTTP_CLIENT_MODE)) {
+				workerFuture = serviceMessageWorker.runAsync(job, callback);
+			} else {
+				workerFuture = serviceMessageWorker.run(job, callback);
+			}
+		} catch (RejectedExecutionException exception) {
+			// The workers are shutting down
+			String error = String.format("Execution Job %s could not be started and will be requeued: %s", job.getJobId(),
+					exception.getMessage());
+			LOG.error(error, exception);
+			coreLogger.log(error, Severity.ERROR);
+			inFlightJobs.complete(job.getJobId());
+			return HandOff.REQUEUE;
+		} catch (RuntimeException exception) {
+			// The Job could not be started, and would fail the same way if redelivered. Free its place so that
+			// redeliveries are not ignored as duplicates.
+			String error = String.format("Execution Job %s could not be started and was discarded: %s", job.getJobId(),
+					exception.getMessage());
+			LOG.error(error, exception);
+			coreLogger.log(error, Severity.ERROR);
+			inFlightJobs.complete(job.getJobId());
+			return HandOff.REJECTED;
 		}
+		inFlightJobs.attach(job.getJobId(), workerFuture);
+		return HandOff.ACCEPTED;
 	}
 
 	/**
-	 * Process a message for cancelling a Job. If this instance of the Service Controller contains this job, it will be
-	 * terminated.
+	 * Process a message for cancelling a Job. If this instance of the Service Controller is running this job, it will
+	 * be terminated.
+	 * <p>
+	 * Every instance binds its own exclusive queue for aborts, so each abort reaches every instance, including the one
+	 * running the Job. Instances not running the Job ignore it. Jobs whose state is held in the database are cancelled
+	 * by {@link #processPersistedJobAbort(String)}.
+	 * </p>
 	 * 
 	 * @param abortJobRequest
 	 *            The information regarding the job to abort
 	 */
-	@RabbitListener(bindings = @QueueBinding(key = "AbortJob-${SPACE}", value = @Queue(autoDelete = "true", durable = "true", exclusive = "true"), exchange = @Exchange(value = JobMessageFactory.PIAZZA_EXCHANGE_NAME, autoDelete = "false", durable = "true")))
+	@RabbitListener(containerFactory = ListenerConfiguration.ABORT_CONTAINER_FACTORY, bindings = @QueueBinding(key = "AbortJob-${SPACE}", value = @Queue(autoDelete = "true", durable = "true", exclusive = "true"), exchange = @Exchange(value = JobMessageFactory.PIAZZA_EXCHANGE_NAME, autoDelete = "false", durable = "true")))
 	public void processAbortJob(String abortJobRequest) {
-		// Get the Job ID
-		String jobId = null;
+		String jobId = getAbortJobId(abortJobRequest);
+		InFlightJob inFlightJob = inFlightJobs.get(jobId);
+		if (inFlightJob == null) {
+			// This Job is not running on this instance
+			return;
+		}
+
+		// Cancel the Running Synchronous Job by terminating its thread
+		boolean cancelled = inFlightJob.cancel();
+		// Interrupting the thread does not interrupt a blocking call to the User Service, so abort the call as well
+		requestFactory.abort(jobId);
+		if (cancelled) {
+			// Log the cancellation has occurred
+			coreLogger.log(String.format("Successfully requested termination of Job thread for Job ID %s", jobId), Severity.INFORMATIONAL);
+		} else {
+			coreLogger.log(
+					String.format("Attempted to Cancel running job thread for ID %s, but the thread could not be forcefully cancelled.", jobId),
+					Severity.ERROR);
+		}
+		// The worker's callback removes the Job from the list of Running Jobs once its thread has stopped
+	}
+
+	/**
+	 * Process a message for cancelling a Job whose state is held in the database: a Task-Managed Job waiting in its
+	 * Service Queue, or a running Asynchronous Service Instance.
+	 * <p>
+	 * All instances consume from a single shared queue for these aborts, so that each is handled once across the
+	 * cluster, rather than once by every instance.
+	 * </p>
+	 * 
+	 * @param abortJobRequest
+	 *            The information regarding the job to abort
+	 */
+	@RabbitListener(containerFactory = ListenerConfiguration.ABORT_CONTAINER_FACTORY, bindings = @QueueBinding(key = "AbortJob-${SPACE}", value = @Queue(value = "ServiceControllerAbort-${SPACE}", autoDelete = "false", durable = "true"), exchange = @Exchange(value = JobMessageFactory.PIAZZA_EXCHANGE_NAME, autoDelete = "false", durable = "true")))
+	public void processPersistedJobAbort(String abortJobRequest) {
+		String jobId = getAbortJobId(abortJobRequest);
+		if (jobId == null) {
+			return;
+		}
+		// Is this a Task Managed Job? Remove it from the Jobs queue if it is pending.
+		serviceTaskManager.cancelJob(jobId);
+		// Is this an Async Job? Send a cancellation to the running service.
+		asyncServiceInstanceManager.cancelInstance(jobId);
+	}
+
+	/**
+	 * @return The ID of the Job to abort, or null if it could not be read from the Message
+	 */
+	private String getAbortJobId(String abortJobRequest) {
 		try {
-			PiazzaJobRequest request = mapper.readValue(abortJobRequest, PiazzaJobRequest.class);
-			jobId = ((AbortJob) request.jobType).getJobId();
+			PiazzaJobRequest request = serialization.read(abortJobRequest, PiazzaJobRequest.class);
+			return ((AbortJob) request.jobType).getJobId();
 		} catch (Exception exception) {
 			String error = String.format("Error Aborting Job. Could not get the Job ID from the Message with error:  %s",
 					exception.getMessage());
 			LOG.error(error, exception);
 			coreLogger.log(error, Severity.ERROR);
+			return null;
 		}
+	}
 
-		// Determine if this a Sync or Async job
-		if (runningServiceRequests.containsKey(jobId)) {
-			// Cancel the Running Synchronous Job by terminating its thread
-			boolean cancelled = runningServiceRequests.get(jobId).cancel(true);
-			if (cancelled) {
-				// Log the cancellation has occurred
-				coreLogger.log(String.format("Successfully requested termination of Job thread for Job ID %s", jobId),
-						Severity.INFORMATIONAL);
-			} else {
-				coreLogger.log(
-						String.format("Attempted to Cancel running job thread for ID %s, but the thread could not be forcefully cancelled.",
-								jobId),
-						Severity.ERROR);
-			}
-			// Remove it from the list of Running Jobs
-			runningServiceRequests.remove(jobId);
-		} else {
-			// Is this a Task Managed Job? Remove it from the Jobs queue if it is pending.
-			serviceTaskManager.cancelJob(jobId);
-			// Is this an Async Job? Send a cancellation to the running service.
-			asyncServiceInstanceManager.cancelInstance(jobId);
+	/**
+	 * @return The ID of the Service that the Job executes, or null if the Job is not an Execute Service Job
+	 */
+	private String getServiceId(Job job) {
+		if ((job.getJobType() instanceof ExecuteServiceJob) && (((ExecuteServiceJob) job.getJobType()).data != null)) {
+			return ((ExecuteServiceJob) job.getJobType()).data.getServiceId();
 		}
+		return null;
 	}
-
 }
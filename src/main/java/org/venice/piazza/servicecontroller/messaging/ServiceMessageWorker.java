@@ -18,15 +18,17 @@ package org.venice.piazza.servicecontroller.messaging;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -35,19 +37,21 @@ import org.springframework.scheduling.annotation.AsyncResult;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 import org.venice.piazza.servicecontroller.async.AsynchronousServiceWorker;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
+import org.venice.piazza.servicecontroller.executor.ExecutorConfiguration;
 import org.venice.piazza.servicecontroller.messaging.handlers.ExecuteServiceHandler;
+import org.venice.piazza.servicecontroller.result.ResultBuffer;
 import org.venice.piazza.servicecontroller.taskmanaged.ServiceTaskManager;
-
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.venice.piazza.servicecontroller.util.AbortableClientHttpRequestFactory;
+import org.venice.piazza.servicecontroller.util.AbortableClientHttpRequestFactory.TrackedJob;
+import org.venice.piazza.servicecontroller.util.JsonSerialization;
 
 import exception.DataInspectException;
 import exception.PiazzaJobException;
-import messaging.job.JobMessageFactory;
 import messaging.job.WorkerCallback;
 import model.job.Job;
 import model.job.PiazzaJobType;
@@ -83,7 +87,7 @@ ServiceMessageWorker {
 	private String WORKFLOW_URL; //NOSONAR
 
 	@Autowired
-	private ObjectMapper objectMapper;
+	private JsonSerialization serialization;
 	@Autowired
 	private UUIDFactory uuidFactory;
 	@Autowired
@@ -97,23 +101,35 @@ ServiceMessageWorker {
 	@Autowired
 	private ServiceTaskManager serviceTaskManager;
 	@Autowired
+	private InFlightJobRegistry inFlightJobs;
+	@Autowired
 	private RestTemplate restTemplate;
 	@Autowired
-	@Qualifier("UpdateJobsQueue")
-	private Queue updateJobsQueue;
+	private StatusUpdatePublisher statusPublisher;
+	@Autowired
+	private AbortableClientHttpRequestFactory requestFactory;
 	@Autowired
-	private RabbitTemplate rabbitTemplate;
+	@Qualifier(ExecutorConfiguration.ASYNC_RESPONSE_EXECUTOR)
+	private AsyncTaskExecutor responseExecutor;
 
 	private static final Logger LOG = LoggerFactory.getLogger(ServiceMessageWorker.class);
-	private static final String JSON_ERR = "Json processing error occurred";
+	private static final String WORKER_RESULT = "ServiceMessageWorker_Thread";
+	private static final String MISSING_OUTPUT_ERR = "DataOuptut mimeType was not specified.  Please refer to the API for details.";
 
 	/**
 	 * Handles service job requests on a thread
 	 */
-	@Async
+	@Async(ExecutorConfiguration.SERVICE_EXECUTION_EXECUTOR)
 	public Future<String> run(Job job, WorkerCallback callback) {
 		String jobId = (job == null) ? "null" : job.getJobId();
-		try {
+		if (!inFlightJobs.started(jobId)) {
+			// Aborted while waiting for a worker
+			interruptJob(jobId, "Job was cancelled.");
+			callback.onComplete(jobId);
+			return new AsyncResult<>(WORKER_RESULT);
+		}
+		// Requests made while running the Job can be aborted if the Job is cancelled
+		try (TrackedJob trackedJob = requestFactory.track(jobId, () -> inFlightJobs.isCancelled(jobId))) {
 			validateJob(job);
 
 			// Process the Execution of the External Service
@@ -121,18 +137,150 @@ ServiceMessageWorker {
 		} catch (InterruptedException ex) { // NOSONAR normal handling of InterruptedException
 			interruptJob(jobId, ex.toString());
 		} catch (Exception ex) {
-			LOG.error("Unexpected Error in processing External Service", ex);
-			// Catch any General Exceptions that occur during runtime.
-			logger.log(ex.getMessage(), Severity.ERROR);
-
-			sendErrorStatus(StatusUpdate.STATUS_ERROR, "Unexpected Error in processing External Service: " + ex.getMessage(),
-					HttpStatus.INTERNAL_SERVER_ERROR.value(), jobId);
+			handleUnexpectedError(ex, jobId);
 		}
 
 		// Return Future
 		callback.onComplete(jobId);
 
-		return new AsyncResult<>("ServiceMessageWorker_Thread");
+		return new AsyncResult<>(WORKER_RESULT);
+	}
+
+	/**
+	 * Non-blocking variant of {@link #run(Job, WorkerCallback)}, used when http.client.mode is async. The Job is
+	 * prepared on the calling thread and the User Service is called without holding a thread. The response is
+	 * processed on the service execution executor once it arrives.
+	 * 
+	 * @param job
+	 *            The Execute Service Job
+	 * @param callback
+	 *            Invoked exactly once, when the Job has completed or has been cancelled
+	 * @return Future for the Job. Cancelling it aborts the request to the User Service.
+	 */
+	public CompletableFuture<String> runAsync(Job job, WorkerCallback callback) {
+		final String jobId = (job == null) ? "null" : job.getJobId();
+		final AtomicBoolean completed = new AtomicBoolean(false);
+		final WorkerCallback completeOnce = (String completedJobId) -> {
+			if (completed.compareAndSet(false, true)) {
+				callback.onComplete(completedJobId);
+			}
+		};
+		if (!inFlightJobs.startedNonBlocking(jobId)) {
+			// Aborted before it was handed to this worker
+			interruptJob(jobId, "Job was cancelled.");
+			completeOnce.onComplete(jobId);
+			return CompletableFuture.completedFuture(WORKER_RESULT);
+		}
+		try {
+			validateJob(job);
+
+			final ExecuteServiceJob jobItem = (ExecuteServiceJob) job.getJobType();
+			jobItem.setJobId(jobId);
+			final ExecuteServiceData esData = jobItem.data;
+			final Service service = accessor.getServiceById(esData.getServiceId());
+			sendJobStatusInfo(service, jobId);
+
+			if (esData.getDataOutput() == null) {
+				ResponseEntity<String> response = new ResponseEntity<>(MISSING_OUTPUT_ERR, HttpStatus.BAD_REQUEST);
+				sendErrorStatus(StatusUpdate.STATUS_FAIL, response, response.getStatusCode().value(), jobId);
+				completeOnce.onComplete(jobId);
+				return CompletableFuture.completedFuture(WORKER_RESULT);
+			}
+
+			validateResourceMetadata(service.getResourceMetadata(), esData.getServiceId());
+			if (isAsynOrTaskManagedService(service, completeOnce, jobId, jobItem)) {
+				return CompletableFuture.completedFuture(WORKER_RESULT);
+			}
+
+			logger.log("ExecuteServiceJob Non-blocking", Severity.DEBUG);
+			final CompletableFuture<ResponseEntity<String>> request = esHandler.handleAsync(jobItem);
+			// The response and a cancellation race to decide the outcome of the Job; only the first is reported.
+			final AtomicBoolean resolved = new AtomicBoolean(false);
+			final CompletableFuture<String> result = request.handleAsync((response, exception) -> {
+				if (resolved.compareAndSet(false, true)) {
+					completeExternalServiceExecution(job, service, jobItem, response, exception);
+					completeOnce.onComplete(jobId);
+				}
+				return WORKER_RESULT;
+			}, responseExecutor);
+			result.whenComplete((value, exception) -> {
+				if (result.isCancelled() && resolved.compareAndSet(false, true)) {
+					request.cancel(true);
+					interruptJob(jobId, "Job was cancelled.");
+					completeOnce.onComplete(jobId);
+				}
+			});
+			return result;
+		} catch (InterruptedException ex) { // NOSONAR normal handling of InterruptedException
+			interruptJob(jobId, ex.toString());
+		} catch (ResourceAccessException ex) {
+			handleExecutionError(ex, jobId);
+		} catch (Exception ex) {
+			handleUnexpectedError(ex, jobId);
+		}
+
+		completeOnce.onComplete(jobId);
+		return CompletableFuture.completedFuture(WORKER_RESULT);
+	}
+
+	/**
+	 * Continuation of {@link #runAsync(Job, WorkerCallback)} that handles the outcome of the call to the User Service.
+	 */
+	private void completeExternalServiceExecution(final Job job, final Service service, final ExecuteServiceJob jobItem,
+			final ResponseEntity<String> externalServiceResponse, final Throwable failure) {
+		final String jobId = job.getJobId();
+		try {
+			if (failure != null) {
+				Throwable cause = (failure instanceof CompletionException && failure.getCause() != null) ? failure.getCause() : failure;
+				handleExecutionError(cause, jobId);
+				return;
+			}
+			try (ResultBuffer body = ResultBuffer.of(externalServiceResponse.getBody())) {
+				processExternalServiceResponse(job, service, jobItem, externalServiceResponse.getStatusCode(), body);
+			}
+		} catch (InterruptedException ex) { // NOSONAR normal handling of InterruptedException
+			interruptJob(jobId, ex.toString());
+			return;
+		} catch (IOException | ResourceAccessException | HttpClientErrorException | HttpServerErrorException | PiazzaJobException ex) {
+			handleExecutionError(ex, jobId);
+		} catch (Exception ex) {
+			handleUnexpectedError(ex, jobId);
+			return;
+		}
+
+		if (externalServiceResponse.getStatusCode() != HttpStatus.OK) {
+			sendErrorStatus(StatusUpdate.STATUS_FAIL, externalServiceResponse, externalServiceResponse.getStatusCode().value(), jobId);
+		}
+	}
+
+	/**
+	 * Logs an error raised while executing a User Service, and sends the corresponding error status.
+	 */
+	private void handleExecutionError(final Throwable exception, final String jobId) {
+		if (exception instanceof HttpStatusCodeException) {
+			HttpStatusCodeException hex = (HttpStatusCodeException) exception;
+			LOG.error("HttpException occurred", hex);
+			logger.log(hex.getMessage(), Severity.ERROR);
+			sendErrorStatus(StatusUpdate.STATUS_ERROR, hex.getResponseBodyAsString(), hex.getStatusCode().value(), jobId);
+		} else if (exception instanceof PiazzaJobException) {
+			PiazzaJobException pex = (PiazzaJobException) exception;
+			LOG.error("PiazzaJobException occurred", pex);
+			logger.log(pex.getMessage(), Severity.ERROR);
+			sendErrorStatus(StatusUpdate.STATUS_ERROR, pex.getMessage(), pex.getStatusCode(), jobId);
+		} else {
+			LOG.error("Exception occurred", exception);
+			logger.log(exception.getMessage(), Severity.ERROR);
+			sendErrorStatus(StatusUpdate.STATUS_ERROR, exception.getMessage(), 400, jobId);
+		}
+	}
+
+	private void handleUnexpectedError(final Exception exception, final String jobId) {
+		LOG.error("Unexpected Error in processing External Service", exception);
+		// Catch any General Exceptions that occur during runtime.
+		logger.log(exception.getMessage(), Severity.ERROR);
+
+		sendErrorStatus(StatusUpdate.STATUS_ERROR, "Unexpected Error in processing External Service: " + exception.getMessage(),
+				HttpStatus.INTERNAL_SERVER_ERROR.value(), jobId);
 	}
 
 	private void validateJob(final Job job) throws PiazzaJobException, DataInspectException {
@@ -162,7 +310,7 @@ ServiceMessageWorker {
 		}
 	}
 
-	private void sendJobStatusInfo(final Service service, final String jobId) throws JsonProcessingException {
+	private void sendJobStatusInfo(final Service service, final String jobId) {
 		StatusUpdate su = new StatusUpdate();
 		su.setJobId(jobId);
 		if ((service.getIsTaskManaged() != null) && (service.getIsTaskManaged().booleanValue())) {
@@ -170,8 +318,7 @@ ServiceMessageWorker {
 		} else {
 			su.setStatus(StatusUpdate.STATUS_RUNNING);
 		}
-		rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(),
-				objectMapper.writeValueAsString(su));
+		statusPublisher.publish(su);
 	}
 
 	private boolean isAsynOrTaskManagedService(final Service service, final WorkerCallback callback, final String consumerRecordKey,
@@ -197,37 +344,28 @@ ServiceMessageWorker {
 		TextResult result = new TextResult(exception);
 		statusUpdate.setResult(result);
 		statusUpdate.setJobId(jobId);
-		try {
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(),
-					objectMapper.writeValueAsString(statusUpdate));
-		} catch (JsonProcessingException jsonException) {
-			LOG.error(JSON_ERR, jsonException);
-			logger.log(String.format(
-					"Error sending Cancelled Status from Job %s: %s. The Job was cancelled, but its status will not be updated in the Job Manager.",
-					jobId, jsonException.getMessage()), Severity.ERROR, new AuditElement("serviceController", "errorCancellingServiceJob", jobId));
-		}
+		statusPublisher.publish(statusUpdate);
 	}
 
-	private void checkServiceResponseCode(final ResponseEntity<String> externalServiceResponse) throws PiazzaJobException {
-		if (!externalServiceResponse.getStatusCode().is2xxSuccessful()) {
-			throw new PiazzaJobException(String.format("Error %s with Status Code %s", externalServiceResponse.getBody(),
-					externalServiceResponse.getStatusCode().toString()), externalServiceResponse.getStatusCode().value());
+	private void checkServiceResponseCode(final HttpStatus statusCode, final ResultBuffer body) throws PiazzaJobException, IOException {
+		if (!statusCode.is2xxSuccessful()) {
+			throw new PiazzaJobException(String.format("Error %s with Status Code %s", body.asString(), statusCode.toString()),
+					statusCode.value());
 		}
 	}
 
-	private void sendJobStatusResultUpdate(final DataResult result, final String jobId) throws JsonProcessingException {
+	private void sendJobStatusResultUpdate(final DataResult result, final String jobId) {
 		if (result != null) {
 			StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_SUCCESS);
 			statusUpdate.setResult(result);
 			statusUpdate.setJobId(jobId);
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(),
-					objectMapper.writeValueAsString(statusUpdate));
+			statusPublisher.publish(statusUpdate);
 		}
 	}
 
-	private ResponseEntity<String> executeExternalService(final PiazzaJobType jobType) throws InterruptedException {
+	private ResponseEntity<ResultBuffer> executeExternalService(final PiazzaJobType jobType) throws InterruptedException {
 		try {
-			return esHandler.handle(jobType);
+			return esHandler.handleStreaming(jobType);
 		} catch (Exception exception) {
 			// InterruptedException to ensure a common handled exception type.
 			LOG.info("Exception occurred", exception);
@@ -273,43 +411,22 @@ ServiceMessageWorker {
 				// If Service is neither Asynchronous nor Task Managed, process it synchronously
 				logger.log("ExecuteServiceJob Original Way", Severity.DEBUG);
 
-				// Execute the external Service and get the Response Entity
-				externalServiceResponse = executeExternalService(jobType);
-
-				checkThreadInterrupted();
-
-				// If an internal error occurred during Service Handling, then throw an exception.
-				checkServiceResponseCode(externalServiceResponse);
+				// Execute the external Service, streaming the body of the Response Entity into a buffer
+				final ResponseEntity<ResultBuffer> streamedResponse = executeExternalService(jobType);
+				try (ResultBuffer body = streamedResponse.getBody()) {
+					// Only a failed response is read as text, to be reported in the error status
+					externalServiceResponse = new ResponseEntity<>(
+							(streamedResponse.getStatusCode() == HttpStatus.OK) ? null : body.asString(), streamedResponse.getStatusCode());
 
-				// Process the Response and handle any Ingest that may result
-				final String dataId = uuidFactory.getUUID();
-				final String outputType = jobItem.data.getDataOutput().get(0).getClass().getSimpleName();
-				final DataResult result = esHandler.processExecutionResult(service, outputType, StatusUpdate.STATUS_SUCCESS,
-						externalServiceResponse, dataId);
+					checkThreadInterrupted();
 
-				checkThreadInterrupted();
-
-				// If there is a Result, Send the Status Update with Result to the Job Manager component
-				sendJobStatusResultUpdate(result, job.getJobId());
-
-				// Fire Event to Workflow
-				fireWorkflowEvent(job.getCreatedBy(), job.getJobId(), dataId, "Service completed successfully.");
+					processExternalServiceResponse(job, service, jobItem, streamedResponse.getStatusCode(), body);
+				}
 			} else {
-				externalServiceResponse = new ResponseEntity<>(
-						"DataOuptut mimeType was not specified.  Please refer to the API for details.", HttpStatus.BAD_REQUEST);
+				externalServiceResponse = new ResponseEntity<>(MISSING_OUTPUT_ERR, HttpStatus.BAD_REQUEST);
 			}
-		} catch (IOException | ResourceAccessException ex) {
-			LOG.error("Exception occurred", ex);
-			logger.log(ex.getMessage(), Severity.ERROR);
-			sendErrorStatus(StatusUpdate.STATUS_ERROR, ex.getMessage(), 400, job.getJobId());
-		} catch (HttpClientErrorException | HttpServerErrorException hex) {
-			LOG.error("HttpException occurred", hex);
-			logger.log(hex.getMessage(), Severity.ERROR);
-			sendErrorStatus(StatusUpdate.STATUS_ERROR, hex.getResponseBodyAsString(), hex.getStatusCode().value(), job.getJobId());
-		} catch (PiazzaJobException pex) {
-			LOG.error("PiazzaJobException occurred", pex);
-			logger.log(pex.getMessage(), Severity.ERROR);
-			sendErrorStatus(StatusUpdate.STATUS_ERROR, pex.getMessage(), pex.getStatusCode(), job.getJobId());
+		} catch (IOException | ResourceAccessException | HttpClientErrorException | HttpServerErrorException | PiazzaJobException ex) {
+			handleExecutionError(ex, job.getJobId());
 		}
 
 		checkThreadInterrupted();
@@ -322,7 +439,31 @@ ServiceMessageWorker {
 		// Return Future
 		callback.onComplete(job.getJobId());
 
-		return new AsyncResult<>("ServiceMessageWorker_Thread");
+		return new AsyncResult<>(WORKER_RESULT);
+	}
+
+	/**
+	 * Processes the response of a User Service: handles any Ingest that may result, sends the Status Update with the
+	 * Result, and fires the completion Event to Workflow.
+	 */
+	private void processExternalServiceResponse(final Job job, final Service service, final ExecuteServiceJob jobItem,
+			final HttpStatus statusCode, final ResultBuffer body) throws PiazzaJobException, IOException, InterruptedException {
+		// If an internal error occurred during Service Handling, then throw an exception.
+		checkServiceResponseCode(statusCode, body);
+
+		// Process the Response and handle any Ingest that may result
+		final String dataId = uuidFactory.getUUID();
+		final String outputType = jobItem.data.getDataOutput().get(0).getClass().getSimpleName();
+		final DataResult result = esHandler.processStreamedExecutionResult(service, outputType, StatusUpdate.STATUS_SUCCESS, body,
+				dataId);
+
+		checkThreadInterrupted();
+
+		// If there is a Result, Send the Status Update with Result to the Job Manager component
+		sendJobStatusResultUpdate(result, job.getJobId());
+
+		// Fire Event to Workflow
+		fireWorkflowEvent(job.getCreatedBy(), job.getJobId(), dataId, "Service completed successfully.");
 	}
 
 	/**
@@ -344,15 +485,7 @@ ServiceMessageWorker {
 		errorResult.setStatusCode(statusCode);
 		statusUpdate.setResult(errorResult);
 		statusUpdate.setJobId(jobId);
-
-		try {
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(),
-					objectMapper.writeValueAsString(statusUpdate));
-		} catch (JsonProcessingException exception) {
-			// The message could not be serialized. Record this.
-			LOG.error(JSON_ERR, exception);
-			logger.log("Could not send Error Status to Job Manager. Error serializing Status: " + exception.getMessage(), Severity.ERROR);
-		}
+		statusPublisher.publish(statusUpdate);
 	}
 
 	/**
@@ -364,7 +497,7 @@ ServiceMessageWorker {
 		try {
 			// Retrieve piazza:executionCompletion EventTypeId from pz-workflow.
 			String url = String.format("%s/%s?name=%s", WORKFLOW_URL, "eventType", "piazza:executionComplete");
-			EventType eventType = objectMapper.readValue(restTemplate.getForObject(url, String.class), EventTypeListResponse.class).data
+			EventType eventType = serialization.read(restTemplate.getForObject(url, String.class), EventTypeListResponse.class).data
 					.get(0);
 
 			// Construct Event object
@@ -379,7 +512,7 @@ ServiceMessageWorker {
 			event.data = data;
 
 			// Call pz-workflow endpoint to fire Event object
-			restTemplate.postForObject(String.format("%s/%s", WORKFLOW_URL, "event"), objectMapper.writeValueAsString(event), String.class);
+			restTemplate.postForObject(String.format("%s/%s", WORKFLOW_URL, "event"), serialization.write(event), String.class);
 		} catch (HttpClientErrorException | HttpServerErrorException exception) {
 			String error = String.format("Could not successfully send Event to Workflow Service. Returned with code %s and message %s",
 					exception.getStatusCode().toString(), exception.getResponseBodyAsString());
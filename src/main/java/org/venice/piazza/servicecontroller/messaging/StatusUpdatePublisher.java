@@ -0,0 +1,544 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.messaging;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Queue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import org.venice.piazza.servicecontroller.util.JsonSerialization;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import model.logger.Severity;
+import model.status.StatusUpdate;
+import util.PiazzaLogger;
+
+/**
+ * Publishes Job Status Updates to the Job Manager.
+ * <p>
+ * Non-terminal Statuses (Pending, Running) are placed in a bounded in-memory buffer, and sent in batches by a single
+ * publisher thread once a batch has filled or the linger time has passed. While a Job has an unsent non-terminal
+ * Status, a newer Status for that Job replaces it, so that only the latest is sent. Each batch is published on one
+ * channel, and is retried until the broker confirms it.
+ * </p>
+ * <p>
+ * Terminal Statuses (Success, Error, Fail, Cancelled) are never replaced or discarded. They are written to the
+ * {@link MessageOutbox}, together with any database changes that complete the Job, and discard any unsent
+ * non-terminal Status of the Job.
+ * </p>
+ * <p>
+ * Once a terminal Status of a Job has been written, no non-terminal Status of that Job is sent by this instance, even
+ * one in a batch waiting to be retried. Writing a terminal Status waits for any batch of the Job already being sent,
+ * so the Job Manager never receives a non-terminal Status after the terminal one.
+ * </p>
+ * <p>
+ * Callers block while the buffer is full. Buffered Status Updates are serialized when their batch is sent, so they
+ * must not be modified after they are published.
+ * </p>
+ */
+@Component
+public class StatusUpdatePublisher implements PublicMetrics {
+	@Autowired
+	private ConfirmedMessageSender sender;
+	@Autowired
+	private MessageOutbox outbox;
+	@Autowired
+	@Qualifier("UpdateJobsQueue")
+	private Queue updateJobsQueue;
+	@Autowired
+	private JsonSerialization serialization;
+	@Autowired
+	private PiazzaLogger logger;
+
+	@Value("${status.publisher.buffer.capacity}")
+	private int BUFFER_CAPACITY; //NOSONAR
+	@Value("${status.publisher.batch.size}")
+	private int BATCH_SIZE; //NOSONAR
+	@Value("${status.publisher.linger.ms}")
+	private long LINGER_MS; //NOSONAR
+
+	private static final Logger LOG = LoggerFactory.getLogger(StatusUpdatePublisher.class);
+	private static final long MAX_RETRY_DELAY_MS = 30000;
+	private static final long SHUTDOWN_TIMEOUT_MS = 10000;
+	private static final int TERMINAL_JOB_HISTORY = 10000;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	private final Deque<PendingStatus> buffer = new ArrayDeque<>();
+	private final Map<String, PendingStatus> pendingByJob = new HashMap<>();
+	private final Condition sendCompleted = lock.newCondition();
+	private final Map<String, Integer> sendingJobs = new HashMap<>();
+	// Jobs whose terminal Status has been written, most recent last
+	private final Map<String, Boolean> terminalJobs = new LinkedHashMap<String, Boolean>() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+			return size() > TERMINAL_JOB_HISTORY;
+		}
+	};
+
+	private final AtomicLong publishedCount = new AtomicLong();
+	private final AtomicLong coalescedCount = new AtomicLong();
+	private final AtomicLong batchCount = new AtomicLong();
+	private final AtomicLong failureCount = new AtomicLong();
+
+	private volatile boolean running;
+	private volatile boolean stopped;
+	private volatile long shutdownDeadline;
+	private Thread publisherThread;
+
+	/**
+	 * Starts the publisher thread.
+	 */
+	@PostConstruct
+	public void initialize() {
+		running = true;
+		publisherThread = new Thread(this::publishBatches, "StatusUpdatePublisher");
+		publisherThread.setDaemon(true);
+		publisherThread.start();
+	}
+
+	/**
+	 * Stops the publisher thread, once the Status Updates already buffered have been sent. Status Updates published
+	 * after this are sent immediately. Sends that fail are retried until the shutdown timeout.
+	 */
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		shutdownDeadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MS;
+		stopped = true;
+		running = false;
+		lock.lock();
+		try {
+			notEmpty.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		if (publisherThread != null) {
+			publisherThread.join(SHUTDOWN_TIMEOUT_MS);
+		}
+	}
+
+	/**
+	 * Sends a Status Update to the Job Manager. Non-terminal Statuses are queued, blocking while the buffer is full.
+	 * 
+	 * @param statusUpdate
+	 *            The Status Update, with its Job ID set
+	 */
+	public void publish(StatusUpdate statusUpdate) {
+		publish(statusUpdate, null);
+	}
+
+	/**
+	 * Sends a Status Update to the Job Manager, along with the database changes it reports. For a terminal Status, the
+	 * changes are made in the same transaction as the Status is written to the outbox. Otherwise, they are made once
+	 * the Status is queued.
+	 * 
+	 * @param statusUpdate
+	 *            The Status Update, with its Job ID set
+	 * @param databaseUpdate
+	 *            The database changes. May be null.
+	 */
+	public void publish(StatusUpdate statusUpdate, Runnable databaseUpdate) {
+		publishAll(Collections.singletonList(statusUpdate), databaseUpdate);
+	}
+
+	/**
+	 * Sends several Status Updates to the Job Manager, along with the database changes they report. Terminal Statuses
+	 * are written to the outbox together, in the same transaction as the changes. Otherwise, the changes are made once
+	 * the non-terminal Statuses are queued.
+	 * 
+	 * @param statusUpdates
+	 *            The Status Updates, each with its Job ID set
+	 * @param databaseUpdate
+	 *            The database changes. May be null.
+	 */
+	public void publishAll(List<StatusUpdate> statusUpdates, Runnable databaseUpdate) {
+		List<StatusUpdate> terminal = new ArrayList<>();
+		List<StatusUpdate> nonTerminal = new ArrayList<>();
+		for (StatusUpdate statusUpdate : statusUpdates) {
+			(isTerminal(statusUpdate) ? terminal : nonTerminal).add(statusUpdate);
+		}
+		if (!nonTerminal.isEmpty()) {
+			if (stopped) {
+				sendUntilConfirmed(nonTerminal);
+			} else {
+				enqueue(nonTerminal);
+			}
+		}
+		if (!terminal.isEmpty()) {
+			publishTerminal(terminal, databaseUpdate);
+		} else if (databaseUpdate != null) {
+			databaseUpdate.run();
+		}
+	}
+
+	/**
+	 * Writes terminal Statuses to the outbox, discarding any unsent non-terminal Status of their Jobs. Waits for any
+	 * batch of their Jobs that is being sent.
+	 */
+	private void publishTerminal(List<StatusUpdate> statusUpdates, Runnable databaseUpdate) {
+		lock.lock();
+		try {
+			for (StatusUpdate statusUpdate : statusUpdates) {
+				String jobId = statusUpdate.getJobId();
+				if (jobId == null) {
+					continue;
+				}
+				terminalJobs.put(jobId, Boolean.TRUE);
+				PendingStatus pending = pendingByJob.remove(jobId);
+				if (pending != null) {
+					// The slot is skipped when the buffer is drained
+					pending.statusUpdate = null;
+					coalescedCount.incrementAndGet();
+				}
+			}
+			for (StatusUpdate statusUpdate : statusUpdates) {
+				// Sends are bounded by the confirm timeout, and retries will now skip the Job
+				while ((statusUpdate.getJobId() != null) && sendingJobs.containsKey(statusUpdate.getJobId())) {
+					sendCompleted.awaitUninterruptibly();
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		List<String> payloads = new ArrayList<>(statusUpdates.size());
+		for (StatusUpdate statusUpdate : statusUpdates) {
+			try {
+				payloads.add(serialization.write(statusUpdate));
+			} catch (JsonProcessingException exception) {
+				String error = String.format("Could not send Status to Job Manager for Job %s. Error serializing Status: %s",
+						statusUpdate.getJobId(), exception.getMessage());
+				LOG.error(error, exception);
+				logger.log(error, Severity.ERROR);
+			}
+		}
+		if (payloads.isEmpty()) {
+			if (databaseUpdate != null) {
+				databaseUpdate.run();
+			}
+			return;
+		}
+		outbox.send(updateJobsQueue.getName(), payloads, databaseUpdate);
+	}
+
+	/**
+	 * Queues non-terminal Statuses, replacing any unsent Status of their Jobs.
+	 */
+	private void enqueue(List<StatusUpdate> statusUpdates) {
+		lock.lock();
+		try {
+			for (StatusUpdate statusUpdate : statusUpdates) {
+				enqueueLocked(statusUpdate);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Queues a non-terminal Status. Must be called holding the lock.
+	 */
+	private void enqueueLocked(StatusUpdate statusUpdate) {
+		String jobId = statusUpdate.getJobId();
+		while (true) {
+			if ((jobId != null) && terminalJobs.containsKey(jobId)) {
+				// The Job has already finished
+				coalescedCount.incrementAndGet();
+				return;
+			}
+			PendingStatus pending = jobId != null ? pendingByJob.get(jobId) : null;
+			if (pending != null) {
+				// Replace the unsent Status with this newer one
+				pending.statusUpdate = statusUpdate;
+				coalescedCount.incrementAndGet();
+				return;
+			}
+			if (buffer.size() < BUFFER_CAPACITY) {
+				PendingStatus added = new PendingStatus(statusUpdate);
+				buffer.addLast(added);
+				if (jobId != null) {
+					pendingByJob.put(jobId, added);
+				}
+				notEmpty.signal();
+				return;
+			}
+			// Status Updates must not be lost, so wait for room even if interrupted
+			notFull.awaitUninterruptibly();
+		}
+	}
+
+	/**
+	 * Sends all buffered Status Updates, on the calling thread.
+	 */
+	public void flush() {
+		List<StatusUpdate> batch;
+		while (!(batch = takeBatch(false)).isEmpty()) {
+			sendUntilConfirmed(batch);
+		}
+	}
+
+	/**
+	 * @return The number of Status Updates waiting to be sent
+	 */
+	public int getBufferedCount() {
+		lock.lock();
+		try {
+			return buffer.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getPublishedCount() {
+		return publishedCount.get();
+	}
+
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	/**
+	 * Exposes the publisher counters on the actuator metrics endpoint.
+	 */
+	@Override
+	public Collection<Metric<?>> metrics() {
+		Collection<Metric<?>> metrics = new ArrayList<>();
+		metrics.add(new Metric<Long>("servicecontroller.status.publisher.published", getPublishedCount()));
+		metrics.add(new Metric<Long>("servicecontroller.status.publisher.coalesced", getCoalescedCount()));
+		metrics.add(new Metric<Long>("servicecontroller.status.publisher.batches", batchCount.get()));
+		metrics.add(new Metric<Long>("servicecontroller.status.publisher.failures", failureCount.get()));
+		metrics.add(new Metric<Integer>("servicecontroller.status.publisher.buffered", getBufferedCount()));
+		return metrics;
+	}
+
+	/**
+	 * Body of the publisher thread. Sends batches until stopped, and then sends what remains in the buffer.
+	 */
+	private void publishBatches() {
+		while (running) {
+			List<StatusUpdate> batch = takeBatch(true);
+			if (!batch.isEmpty()) {
+				sendUntilConfirmed(batch);
+			}
+		}
+		flush();
+	}
+
+	/**
+	 * Removes the next batch of Status Updates from the buffer.
+	 * 
+	 * @param wait
+	 *            If true, waits for a Status Update to arrive, and then up to the linger time for the batch to fill
+	 * @return The batch, which is empty if there was nothing to send
+	 */
+	private List<StatusUpdate> takeBatch(boolean wait) {
+		lock.lock();
+		try {
+			if (wait) {
+				while (running && buffer.isEmpty()) {
+					notEmpty.awaitUninterruptibly();
+				}
+				long remainingNanos = TimeUnit.MILLISECONDS.toNanos(LINGER_MS);
+				while (running && (buffer.size() < BATCH_SIZE) && (remainingNanos > 0)) {
+					remainingNanos = notEmpty.awaitNanos(remainingNanos);
+				}
+			}
+			List<StatusUpdate> batch = new ArrayList<>(Math.min(buffer.size(), BATCH_SIZE));
+			while (!buffer.isEmpty() && (batch.size() < BATCH_SIZE)) {
+				PendingStatus pending = buffer.pollFirst();
+				if (pending.statusUpdate == null) {
+					// Superseded by a terminal Status
+					continue;
+				}
+				String jobId = pending.statusUpdate.getJobId();
+				if ((jobId != null) && (pendingByJob.get(jobId) == pending)) {
+					pendingByJob.remove(jobId);
+				}
+				batch.add(pending.statusUpdate);
+			}
+			notFull.signalAll();
+			return batch;
+		} catch (InterruptedException exception) {
+			LOG.warn("Status Update publisher was interrupted while waiting for a batch.", exception);
+			Thread.currentThread().interrupt();
+			return Collections.emptyList();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Sends the batch, retrying with backoff until the broker confirms it. Once the publisher is stopping, the batch
+	 * is retried only until the shutdown timeout, and is then dropped.
+	 */
+	private void sendUntilConfirmed(List<StatusUpdate> batch) {
+		long retryDelay = 1000;
+		while (!sendUnlessTerminal(batch)) {
+			long delay = retryDelay;
+			if (!running) {
+				delay = Math.min(retryDelay, shutdownDeadline - System.currentTimeMillis());
+				if (delay <= 0) {
+					String error = String.format("Could not send %s Status Updates to Job Manager before shutting down. They were dropped.",
+							batch.size());
+					LOG.error(error);
+					logger.log(error, Severity.ERROR);
+					return;
+				}
+			}
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException exception) {
+				LOG.warn("Status Update publisher was interrupted while waiting to retry.", exception);
+				Thread.currentThread().interrupt();
+				if (stopped) {
+					return;
+				}
+			}
+			retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MS);
+		}
+	}
+
+	/**
+	 * Sends the Status Updates of the batch whose Jobs have not yet had a terminal Status written. Their Jobs are
+	 * marked as being sent until the send has completed.
+	 * 
+	 * @return True if the batch has been sent, or has nothing left to send. False if it should be retried.
+	 */
+	private boolean sendUnlessTerminal(List<StatusUpdate> batch) {
+		List<StatusUpdate> sendable = new ArrayList<>(batch.size());
+		lock.lock();
+		try {
+			for (StatusUpdate statusUpdate : batch) {
+				String jobId = statusUpdate.getJobId();
+				if ((jobId != null) && terminalJobs.containsKey(jobId)) {
+					coalescedCount.incrementAndGet();
+					continue;
+				}
+				sendable.add(statusUpdate);
+				if (jobId != null) {
+					sendingJobs.merge(jobId, 1, Integer::sum);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		try {
+			if (sendable.isEmpty()) {
+				return true;
+			}
+			boolean sent = send(sendable);
+			if (!sent) {
+				// Retry only what was not superseded
+				batch.retainAll(sendable);
+			}
+			return sent;
+		} finally {
+			lock.lock();
+			try {
+				for (StatusUpdate statusUpdate : sendable) {
+					if (statusUpdate.getJobId() != null) {
+						sendingJobs.computeIfPresent(statusUpdate.getJobId(), (jobId, count) -> (count > 1) ? count - 1 : null);
+					}
+				}
+				sendCompleted.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Publishes the Status Updates on a single channel, and waits for the broker to confirm them.
+	 * 
+	 * @return True if the batch was confirmed, or could not be serialized and will never be sent. False if it should
+	 *         be retried.
+	 */
+	private boolean send(List<StatusUpdate> batch) {
+		List<String> payloads = new ArrayList<>(batch.size());
+		for (StatusUpdate statusUpdate : batch) {
+			try {
+				payloads.add(serialization.write(statusUpdate));
+			} catch (JsonProcessingException exception) {
+				String error = String.format("Could not send Status to Job Manager for Job %s. Error serializing Status: %s",
+						statusUpdate.getJobId(), exception.getMessage());
+				LOG.error(error, exception);
+				logger.log(error, Severity.ERROR);
+			}
+		}
+		if (payloads.isEmpty()) {
+			return true;
+		}
+		try {
+			sender.send(updateJobsQueue.getName(), payloads);
+		} catch (AmqpException exception) {
+			failureCount.incrementAndGet();
+			String error = String.format("Error sending %s Status Updates to Job Manager. They will be sent again. %s", payloads.size(),
+					exception.getMessage());
+			LOG.error(error, exception);
+			logger.log(error, Severity.ERROR);
+			return false;
+		}
+		publishedCount.addAndGet(payloads.size());
+		batchCount.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * @return True if the Status is final for its Job
+	 */
+	private static boolean isTerminal(StatusUpdate statusUpdate) {
+		String status = statusUpdate.getStatus();
+		return StatusUpdate.STATUS_SUCCESS.equals(status) || StatusUpdate.STATUS_ERROR.equals(status)
+				|| StatusUpdate.STATUS_FAIL.equals(status) || StatusUpdate.STATUS_CANCELLED.equals(status);
+	}
+
+	/**
+	 * A buffered Status Update. The Status Update may be replaced by a newer one for the same Job until it is sent.
+	 */
+	private static class PendingStatus {
+		private StatusUpdate statusUpdate;
+
+		PendingStatus(StatusUpdate statusUpdate) {
+			this.statusUpdate = statusUpdate;
+		}
+	}
+}
@@ -21,9 +21,9 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
+import org.venice.piazza.servicecontroller.util.JsonSerialization;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 
 import model.job.PiazzaJobType;
@@ -45,6 +45,8 @@ public class DescribeServiceHandler implements PiazzaJobHandler {
 	private DatabaseAccessor accessor;
 	@Autowired
 	private PiazzaLogger coreLogger;
+	@Autowired
+	private JsonSerialization serialization;
 	
 	/**
 	 * Describe service handler
@@ -71,8 +73,7 @@ public class DescribeServiceHandler implements PiazzaJobHandler {
 
 		try {
 			Service sMetadata = accessor.getServiceById(serviceId);
-			ObjectMapper mapper = new ObjectMapper();
-			String result = mapper.writeValueAsString(sMetadata);
+			String result = serialization.write(sMetadata);
 			responseEntity = new ResponseEntity<>(result, HttpStatus.OK);
 		} catch (JsonProcessingException ex) {
 			LOG.error("Could not retrieve resourceId", ex);
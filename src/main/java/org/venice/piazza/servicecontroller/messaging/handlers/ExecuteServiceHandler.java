@@ -16,35 +16,43 @@
 package org.venice.piazza.servicecontroller.messaging.handlers;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.web.client.AsyncRestTemplate;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
+import org.venice.piazza.servicecontroller.messaging.MessageOutbox;
+import org.venice.piazza.servicecontroller.result.ResultBuffer;
+import org.venice.piazza.servicecontroller.result.ResultBufferFactory;
+import org.venice.piazza.servicecontroller.result.ResultOffloader;
+import org.venice.piazza.servicecontroller.util.JsonSerialization;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import messaging.job.JobMessageFactory;
 import model.data.DataResource;
 import model.data.DataType;
 import model.data.type.BodyDataType;
@@ -81,13 +89,23 @@ public class ExecuteServiceHandler implements PiazzaJobHandler {
 	@Autowired
 	private RestTemplate template;
 	@Autowired
+	private AsyncRestTemplate asyncTemplate;
+	@Autowired
 	@Qualifier("RequestJobQueue")
 	private Queue requestJobQueue;
 	@Autowired
-	private RabbitTemplate rabbitTemplate;
+	private MessageOutbox outbox;
+	@Autowired
+	private ResultBufferFactory resultBufferFactory;
+	@Autowired
+	private ResultOffloader resultOffloader;
+	@Autowired
+	private JsonSerialization serialization;
 
 	@Value("${SPACE}")
 	private String SPACE; //NOSONAR
+	@Value("${result.inline.max.bytes}")
+	private long MAX_INLINE_BYTES; //NOSONAR
 
 	private static final Logger LOG = LoggerFactory.getLogger(ExecuteServiceHandler.class);
 	private static final String MIME_TYPE = "application/json";
@@ -120,6 +138,54 @@ public class ExecuteServiceHandler implements PiazzaJobHandler {
 		}
 	}
 
+	/**
+	 * Variant of {@link #handle(PiazzaJobType)} that streams the response body of the User Service into a
+	 * {@link ResultBuffer}, rather than reading it into a String. The caller must close the buffer.
+	 * 
+	 * @param jobRequest
+	 *            The Execute Service Job
+	 * @return The response of the User Service, with the body buffered
+	 */
+	public ResponseEntity<ResultBuffer> handleStreaming(PiazzaJobType jobRequest) throws InterruptedException {
+		logger.log("Executing a Service.", Severity.DEBUG);
+
+		ExecuteServiceJob job = (ExecuteServiceJob) jobRequest;
+		if (job == null) {
+			logger.log("Job is null", Severity.ERROR);
+			return new ResponseEntity<>(ResultBuffer.of("Job is null"), HttpStatus.BAD_REQUEST);
+		}
+		ServiceRequest request = prepareRequest(job.data);
+		if (request.getRejection() != null) {
+			return new ResponseEntity<>(ResultBuffer.of(request.getRejection().getBody()), request.getRejection().getStatusCode());
+		}
+		return executeJobStreaming(request);
+	}
+
+	/**
+	 * Non-blocking variant of {@link #handle(PiazzaJobType)}. The Service metadata is resolved and the request is built
+	 * on the calling thread, but the call to the User Service is made without holding a thread while waiting for the
+	 * response.
+	 * 
+	 * @param jobRequest
+	 *            The Execute Service Job
+	 * @return Future that completes with the response of the User Service, or completes exceptionally if the request
+	 *         failed. Cancelling the future aborts the request.
+	 */
+	public CompletableFuture<ResponseEntity<String>> handleAsync(PiazzaJobType jobRequest) {
+		logger.log("Executing a Service asynchronously.", Severity.DEBUG);
+
+		ExecuteServiceJob job = (ExecuteServiceJob) jobRequest;
+		if (job == null) {
+			logger.log("Job is null", Severity.ERROR);
+			return CompletableFuture.completedFuture(new ResponseEntity<>("Job is null", HttpStatus.BAD_REQUEST));
+		}
+		ServiceRequest request = prepareRequest(job.data);
+		if (request.getRejection() != null) {
+			return CompletableFuture.completedFuture(request.getRejection());
+		}
+		return executeJobAsync(request);
+	}
+
 	/**
 	 * Handles requests to execute a service. TODO this needs to change to leverage pz-jbcommon ExecuteServiceMessage
 	 * after it builds.
@@ -129,16 +195,29 @@ public class ExecuteServiceHandler implements PiazzaJobHandler {
 	 * @throws InterruptedException
 	 */
 	public ResponseEntity<String> handle(ExecuteServiceData data) throws InterruptedException {
+		ServiceRequest request = prepareRequest(data);
+		if (request.getRejection() != null) {
+			return request.getRejection();
+		}
+		return executeJob(request.getMethod(), request.getMimeType(), request.getUri(), request.getBody());
+	}
+
+	/**
+	 * Resolves the Service and builds the HTTP request to send to it.
+	 * 
+	 * @param data
+	 *            The execution parameters
+	 * @return The request, or a rejection if the request could not be built
+	 */
+	private ServiceRequest prepareRequest(ExecuteServiceData data) {
 		logger.log(String.format("Beginning execution of Service ID %s", data.getServiceId()), Severity.INFORMATIONAL);
 		String serviceId = data.getServiceId();
 		Service sMetadata = null;
-		ObjectMapper objectMapper = new ObjectMapper();
-
 		try {
 			// Accessor throws exception if can't find service
 			sMetadata = accessor.getServiceById(serviceId);
 
-			String result = objectMapper.writeValueAsString(sMetadata);
+			String result = serialization.write(sMetadata);
 			logger.log(result, Severity.INFORMATIONAL);
 		} catch (ResourceAccessException | JsonProcessingException ex) {
 			LOG.error("Exception occurred", ex);
@@ -149,14 +228,12 @@ public class ExecuteServiceHandler implements PiazzaJobHandler {
 		} else {
 			logger.log(String.format("The service was NOT found id %s", data.getServiceId()), Severity.ERROR,
 					new AuditElement("serviceController", "notFound", data.getServiceId()));
-			return new ResponseEntity<>("Service Id " + data.getServiceId() + " not found", HttpStatus.NOT_FOUND);
+			return ServiceRequest.rejected(new ResponseEntity<>("Service Id " + data.getServiceId() + " not found", HttpStatus.NOT_FOUND));
 		}
 	}
 
-	private ResponseEntity<String> processServiceMetadata(final Service sMetadata, final ExecuteServiceData data)
-			throws InterruptedException {
+	private ServiceRequest processServiceMetadata(final Service sMetadata, final ExecuteServiceData data) {
 		// Default request mimeType application/json
-		ObjectMapper objectMapper = new ObjectMapper();
 		String requestMimeType = MIME_TYPE;
 
 		String rawURL = sMetadata.getUrl();
@@ -182,7 +259,7 @@ public class ExecuteServiceHandler implements PiazzaJobHandler {
 				requestMimeType = bdt.getMimeType();
 				if ((requestMimeType == null) || (requestMimeType.length() == 0)) {
 					logger.log("Body mime type not specified", Severity.ERROR);
-					return new ResponseEntity<>("Body mime type not specified", HttpStatus.BAD_REQUEST);
+					return ServiceRequest.rejected(new ResponseEntity<>("Body mime type not specified", HttpStatus.BAD_REQUEST));
 				}
 			} else {
 				// Default behavior for other inputs, put them in list of objects
@@ -197,22 +274,22 @@ public class ExecuteServiceHandler implements PiazzaJobHandler {
 
 			if (postString.length() > 0) {
 				logger.log("String Input not consistent with other Inputs", Severity.ERROR);
-				return new ResponseEntity<>("String Input not consistent with other Inputs", HttpStatus.BAD_REQUEST);
+				return ServiceRequest.rejected(new ResponseEntity<>("String Input not consistent with other Inputs", HttpStatus.BAD_REQUEST));
 			}
 
 			try {
-				postString = objectMapper.writeValueAsString(postObjects);
+				postString = serialization.write(postObjects);
 			} catch (JsonProcessingException e) {
 				LOG.error("Json processing error occurred", e);
 				logger.log(e.getMessage(), Severity.ERROR);
-				return new ResponseEntity<>("Could not marshal post requests", HttpStatus.BAD_REQUEST);
+				return ServiceRequest.rejected(new ResponseEntity<>("Could not marshal post requests", HttpStatus.BAD_REQUEST));
 			}
 		}
 
 		logger.log(String.format("Triggered execution of service %s", sMetadata.getServiceId()), Severity.INFORMATIONAL,
 				new AuditElement("serviceController", "executingExternalService", sMetadata.getServiceId()));
 
-		return executeJob(sMetadata.getMethod(), requestMimeType, builder.toUriString(), postString);
+		return new ServiceRequest(sMetadata.getMethod(), requestMimeType, builder.toUriString(), postString);
 	}
 
 	private UriComponentsBuilder processURLParameterDataTypeMetadata(final String paramValue, final String inputName,
@@ -260,6 +337,63 @@ public class ExecuteServiceHandler implements PiazzaJobHandler {
 		}
 	}
 
+	private ResponseEntity<ResultBuffer> executeJobStreaming(final ServiceRequest request) throws InterruptedException {
+		URI url = URI.create(request.getUri());
+		if ("GET".equals(request.getMethod())) {
+			logger.log("Streaming GET URL=" + url, Severity.INFORMATIONAL);
+			return template.execute(url, HttpMethod.GET, resultBufferFactory.requestCallback(null, null),
+					resultBufferFactory.responseExtractor());
+		} else if ("POST".equals(request.getMethod())) {
+			HttpHeaders headers = new HttpHeaders();
+			headers.setContentType(createMediaType(request.getMimeType()));
+
+			logger.log("Streaming POST URL=" + url, Severity.INFORMATIONAL);
+			try {
+				return template.execute(url, HttpMethod.POST, resultBufferFactory.requestCallback(headers, request.getBody()),
+						resultBufferFactory.responseExtractor());
+			} catch (HttpServerErrorException hex) {
+				LOG.info(String.format("Server Error for URL %s:  %s", url, hex.getResponseBodyAsString()), hex);
+				throw new InterruptedException(hex.getResponseBodyAsString());
+			}
+		} else {
+			logger.log("Request method type not specified", Severity.ERROR);
+			return new ResponseEntity<>(ResultBuffer.of("Request method type not specified"), HttpStatus.BAD_REQUEST);
+		}
+	}
+
+	private CompletableFuture<ResponseEntity<String>> executeJobAsync(final ServiceRequest request) {
+		URI url = URI.create(request.getUri());
+		ListenableFuture<ResponseEntity<String>> responseFuture;
+		if ("GET".equals(request.getMethod())) {
+			logger.log("Async GetForEntity URL=" + url, Severity.INFORMATIONAL);
+			responseFuture = asyncTemplate.getForEntity(url, String.class);
+		} else if ("POST".equals(request.getMethod())) {
+			HttpHeaders headers = new HttpHeaders();
+			headers.setContentType(createMediaType(request.getMimeType()));
+			HttpEntity<String> requestEntity = makeHttpEntity(headers, request.getBody());
+
+			logger.log("Async PostForEntity URL=" + url, Severity.INFORMATIONAL);
+			responseFuture = asyncTemplate.postForEntity(url, requestEntity, String.class);
+		} else {
+			logger.log("Request method type not specified", Severity.ERROR);
+			return CompletableFuture.completedFuture(new ResponseEntity<>("Request method type not specified", HttpStatus.BAD_REQUEST));
+		}
+
+		// Adapt the Spring future, and abort the HTTP request if the caller cancels
+		CompletableFuture<ResponseEntity<String>> result = new CompletableFuture<>();
+		responseFuture.addCallback(response -> {
+			ResponseEntity<String> handleResult = new ResponseEntity<>(response.getBody(), response.getStatusCode());
+			logger.log("The result is " + handleResult, Severity.DEBUG);
+			result.complete(handleResult);
+		}, result::completeExceptionally);
+		result.whenComplete((response, exception) -> {
+			if (result.isCancelled()) {
+				responseFuture.cancel(true);
+			}
+		});
+		return result;
+	}
+
 	/**
 	 * This method creates a MediaType based on the mimetype that was provided
 	 * 
@@ -301,7 +435,7 @@ public class ExecuteServiceHandler implements PiazzaJobHandler {
 	}
 
 	ObjectMapper makeObjectMapper() {
-		return new ObjectMapper();
+		return serialization.getMapper();
 	}
 
 	/**
@@ -312,58 +446,76 @@ public class ExecuteServiceHandler implements PiazzaJobHandler {
 	 */
 	public DataResult processExecutionResult(Service service, String outputType, String status, ResponseEntity<String> handleResult,
 			String dataId) throws IOException, InterruptedException {
+		if (handleResult == null) {
+			logger.log("Send Execute Status Message", Severity.DEBUG);
+			return null;
+		}
+		try (ResultBuffer result = ResultBuffer.of(handleResult.getBody())) {
+			return processStreamedExecutionResult(service, outputType, status, result, dataId);
+		}
+	}
+
+	/**
+	 * Processes the buffered Result of the external Service execution. The result is only parsed as a DataResource if
+	 * it has a top-level dataType field, and is then parsed from the buffer as a stream. Otherwise the result is
+	 * wrapped as the output type of the Service. This will send the Ingest job through the message bus, and will
+	 * return the Result of the data.
+	 * <p>
+	 * Results that are sent inline in the Ingest job are read into memory, so they may be no larger than
+	 * result.inline.max.bytes. Larger results fail, unless they are GeoJSON that is offloaded to the Blob Store.
+	 * </p>
+	 * 
+	 * @param result
+	 *            The buffered response body. It is not closed.
+	 */
+	public DataResult processStreamedExecutionResult(Service service, String outputType, String status, ResultBuffer result, String dataId)
+			throws IOException, InterruptedException {
 		logger.log("Send Execute Status Message", Severity.DEBUG);
 		// Initialize ingest job items
 		DataResource data = new DataResource();
 		PiazzaJobRequest jobRequest = new PiazzaJobRequest();
 		IngestJob ingestJob = new IngestJob();
-		ObjectMapper objectMapper = new ObjectMapper();
-
-		if (handleResult != null) {
-			logger.log("The result provided from service is " + handleResult.getBody(), Severity.DEBUG);
 
-			// String serviceControlString = handleResult.getBody().get(0).toString();
-			String serviceControlString = handleResult.getBody();
-
-			logger.log("The service controller string is " + serviceControlString, Severity.DEBUG);
+		if (result != null) {
+			logger.log(String.format("The result provided from service is %s bytes", result.size()), Severity.DEBUG);
 
 			try {
 				// Now produce a new record
 				jobRequest.createdBy = service.getResourceMetadata().getCreatedBy();
 				data.dataId = dataId;
 				logger.log("dataId is " + data.dataId, Severity.DEBUG);
-				data = objectMapper.readValue(serviceControlString, DataResource.class);
-
-				// Now check to see if the conversion is actually a proper DataResource
-				// if it is not time to create a TextDataType and return
-				if ((data == null) || (data.getDataType() == null)) {
-					logger.log("The DataResource is not in a valid format, creating a new DataResource and TextDataType", Severity.DEBUG);
-
-					data = new DataResource();
-					data.dataId = dataId;
-					TextDataType tr = new TextDataType();
-					tr.content = serviceControlString;
-					logger.log("The data being sent is " + tr.content, Severity.DEBUG);
-
-					data.dataType = tr;
-				} else if ((null != data) && (null != data.getDataType())) { // NOSONAR
-					data.dataId = dataId;
+
+				if (resultBufferFactory.isDataResource(result)) {
+					checkInlineSize(result);
+					try (InputStream stream = result.getInputStream()) {
+						data = serialization.read(stream, DataResource.class);
+					}
+
+					// Now check to see if the conversion is actually a proper DataResource
+					// if it is not time to create a TextDataType and return
+					if ((data == null) || (data.getDataType() == null)) {
+						logger.log("The DataResource is not in a valid format, creating a new DataResource and TextDataType", Severity.DEBUG);
+
+						data = new DataResource();
+						data.dataId = dataId;
+						TextDataType tr = new TextDataType();
+						tr.content = readInline(result);
+						logger.log("The data being sent is " + result.size() + " bytes", Severity.DEBUG);
+
+						data.dataType = tr;
+					} else {
+						data.dataId = dataId;
+					}
+				} else {
+					// Not a DataResource. Wrap the raw result as the output type of the Service.
+					setResultDataType(data, outputType, result);
 				}
 			} catch (Exception ex) {
 				LOG.error("Exception occurred", ex);
 				logger.log(ex.getMessage(), Severity.ERROR);
 
 				if (data != null) {
-					// Checking payload type and settings the correct type
-					if (outputType.equals((new TextDataType()).getClass().getSimpleName())) { // NOSONAR
-						TextDataType newDataType = new TextDataType();
-						newDataType.content = serviceControlString;
-						data.dataType = newDataType;
-					} else if (outputType.equals((new GeoJsonDataType()).getClass().getSimpleName())) { // NOSONAR
-						GeoJsonDataType newDataType = new GeoJsonDataType();
-						newDataType.setGeoJsonContent(serviceControlString);
-						data.dataType = newDataType;
-					}
+					setResultDataType(data, outputType, result);
 				}
 			}
 
@@ -382,7 +534,15 @@ public class ExecuteServiceHandler implements PiazzaJobHandler {
 
 			String jobId = uuidFactory.getUUID();
 			jobRequest.jobId = jobId;
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, requestJobQueue.getName(), objectMapper.writeValueAsString(jobRequest));
+			try {
+				outbox.send(requestJobQueue.getName(), serialization.write(jobRequest), null);
+			} catch (RuntimeException exception) {
+				// The Ingest job will never read an offloaded result, so do not leave it in the Blob Store
+				if (data.dataType instanceof GeoJsonDataType && ((GeoJsonDataType) data.dataType).getLocation() != null) {
+					resultOffloader.discard(((GeoJsonDataType) data.dataType).getLocation());
+				}
+				throw exception;
+			}
 
 			logger.log(String.format("Sending Ingest Job Id %s for Data Id %s for Data of Type %s", jobId, dataId,
 					data.getDataType().getClass().getSimpleName()), Severity.INFORMATIONAL);
@@ -393,4 +553,91 @@ public class ExecuteServiceHandler implements PiazzaJobHandler {
 
 		return null;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Sets the content of the result as the Data Type matching the output type of the Service. GeoJSON results larger
+	 * than the offload threshold are stored in the Blob Store, and only their location is set on the Data Type.
+	 */
+	private void setResultDataType(DataResource data, String outputType, ResultBuffer result) throws IOException {
+		// Checking payload type and settings the correct type
+		if (outputType.equals((new TextDataType()).getClass().getSimpleName())) { // NOSONAR
+			TextDataType newDataType = new TextDataType();
+			newDataType.content = readInline(result);
+			data.dataType = newDataType;
+		} else if (outputType.equals((new GeoJsonDataType()).getClass().getSimpleName())) { // NOSONAR
+			GeoJsonDataType newDataType = new GeoJsonDataType();
+			if (resultOffloader.shouldOffload(result)) {
+				newDataType.setLocation(resultOffloader.offload(data.dataId, result));
+				logger.log(String.format("Offloaded result of %s bytes for Data Id %s", result.size(), data.dataId), Severity.INFORMATIONAL);
+			} else {
+				newDataType.setGeoJsonContent(readInline(result));
+			}
+			data.dataType = newDataType;
+		}
+	}
+
+	/**
+	 * Reads a result that is to be sent inline in the Ingest job.
+	 * 
+	 * @throws IOException
+	 *             If the result is too large to be sent inline
+	 */
+	private String readInline(ResultBuffer result) throws IOException {
+		checkInlineSize(result);
+		return result.asString();
+	}
+
+	private void checkInlineSize(ResultBuffer result) throws IOException {
+		if ((MAX_INLINE_BYTES > 0) && (result.size() > MAX_INLINE_BYTES)) {
+			throw new IOException(String.format("The result of %s bytes is larger than the %s bytes that may be sent inline.",
+					result.size(), MAX_INLINE_BYTES));
+		}
+	}
+
+	/**
+	 * The HTTP request to be sent to a User Service, or the response to return if the request could not be built.
+	 */
+	private static class ServiceRequest {
+		private final String method;
+		private final String mimeType;
+		private final String uri;
+		private final String body;
+		private final ResponseEntity<String> rejection;
+
+		ServiceRequest(String method, String mimeType, String uri, String body) {
+			this(method, mimeType, uri, body, null);
+		}
+
+		private ServiceRequest(String method, String mimeType, String uri, String body, ResponseEntity<String> rejection) {
+			this.method = method;
+			this.mimeType = mimeType;
+			this.uri = uri;
+			this.body = body;
+			this.rejection = rejection;
+		}
+
+		static ServiceRequest rejected(ResponseEntity<String> rejection) {
+			return new ServiceRequest(null, null, null, null, rejection);
+		}
+
+		String getMethod() {
+			return method;
+		}
+
+		String getMimeType() {
+			return mimeType;
+		}
+
+		String getUri() {
+			return uri;
+		}
+
+		String getBody() {
+			return body;
+		}
+
+		ResponseEntity<String> getRejection() {
+			return rejection;
+		}
+	}
+}
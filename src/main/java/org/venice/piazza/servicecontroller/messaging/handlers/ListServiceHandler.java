@@ -24,6 +24,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
+import org.venice.piazza.servicecontroller.util.JsonSerialization;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -45,6 +46,8 @@ public class ListServiceHandler implements PiazzaJobHandler {
 	private DatabaseAccessor accessor;
 	@Autowired
 	private PiazzaLogger coreLogger;
+	@Autowired
+	private JsonSerialization serialization;
 	
 	/**
 	 * ListService handler
@@ -78,6 +81,6 @@ public class ListServiceHandler implements PiazzaJobHandler {
 	}
 	
 	ObjectMapper makeObjectMapper() {
-		return new ObjectMapper();
+		return serialization.getMapper();
 	}
 }
\ No newline at end of file
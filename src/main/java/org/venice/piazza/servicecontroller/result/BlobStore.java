@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.result;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Storage for result payloads that are too large to be sent inline through the message bus. The message carries only
+ * the location returned by {@link #store(String, InputStream)}, and the consumer reads the payload from there.
+ * <p>
+ * The default implementation is {@link FileSystemBlobStore}. Another store, such as an object store, can be used by
+ * registering a primary bean of this type. The store must be readable by every consumer of the Ingest messages.
+ * </p>
+ */
+public interface BlobStore {
+	/**
+	 * @return True if the store has been configured with a location that consumers can read. Results are never
+	 *         offloaded to a store that is not configured.
+	 */
+	boolean isConfigured();
+
+	/**
+	 * Stores the content under the key.
+	 * 
+	 * @param key
+	 *            Unique key of the payload, such as the Data ID
+	 * @param content
+	 *            The content to store. It is not closed.
+	 * @return The location of the stored payload
+	 */
+	String store(String key, InputStream content) throws IOException;
+
+	/**
+	 * Opens the payload at the location. The caller must close the stream.
+	 */
+	InputStream retrieve(String location) throws IOException;
+
+	/**
+	 * Deletes the payload at the location, if it exists.
+	 */
+	void delete(String location) throws IOException;
+
+	/**
+	 * Deletes every payload stored before the cutoff.
+	 * 
+	 * @param cutoff
+	 *            Epoch time, in milliseconds
+	 * @return The number of payloads deleted
+	 */
+	int deleteOlderThan(long cutoff) throws IOException;
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.result;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Blob Store backed by a directory on a share mounted by both this component and the consumers of the Ingest messages.
+ * The store is not configured, and nothing is offloaded, until the directory is set.
+ * <p>
+ * Payloads are written to a temporary file and then moved into place, so that a consumer never sees a partially
+ * written payload.
+ * </p>
+ */
+@Component
+public class FileSystemBlobStore implements BlobStore {
+	@Value("${result.offload.directory}")
+	private String OFFLOAD_DIRECTORY; //NOSONAR
+
+	private static final String TEMPORARY_PREFIX = "pz-result-";
+
+	@Override
+	public boolean isConfigured() {
+		return OFFLOAD_DIRECTORY != null && !OFFLOAD_DIRECTORY.isEmpty();
+	}
+
+	@Override
+	public String store(String key, InputStream content) throws IOException {
+		Path directory = getDirectory();
+		Files.createDirectories(directory);
+		Path target = directory.resolve(key).normalize();
+		if (!directory.equals(target.getParent())) {
+			throw new IOException(String.format("Invalid key %s for stored payload.", key));
+		}
+		Path temporary = Files.createTempFile(directory, TEMPORARY_PREFIX, ".part");
+		try {
+			Files.copy(content, temporary, StandardCopyOption.REPLACE_EXISTING);
+			Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+		return target.toString();
+	}
+
+	@Override
+	public InputStream retrieve(String location) throws IOException {
+		return Files.newInputStream(Paths.get(location));
+	}
+
+	@Override
+	public void delete(String location) throws IOException {
+		Files.deleteIfExists(Paths.get(location));
+	}
+
+	/**
+	 * Deletes stored payloads, and temporary files left by interrupted writes, last modified before the cutoff.
+	 */
+	@Override
+	public int deleteOlderThan(long cutoff) throws IOException {
+		if (!isConfigured()) {
+			return 0;
+		}
+		Path directory = getDirectory();
+		if (!Files.isDirectory(directory)) {
+			return 0;
+		}
+		int deleted = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				if (Files.isRegularFile(file) && Files.getLastModifiedTime(file).toMillis() < cutoff && Files.deleteIfExists(file)) {
+					deleted++;
+				}
+			}
+		}
+		return deleted;
+	}
+
+	/**
+	 * @return The configured directory
+	 */
+	private Path getDirectory() throws IOException {
+		if (!isConfigured()) {
+			throw new IOException("No directory is configured for offloaded results.");
+		}
+		return Paths.get(OFFLOAD_DIRECTORY).toAbsolutePath();
+	}
+}
@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.result;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.springframework.util.StreamUtils;
+
+/**
+ * Holds the body of a User Service response. Small bodies are kept in memory. Once a body grows past the memory
+ * threshold it is spilled to a temporary file, so the heap used by a single result is bounded regardless of the size
+ * of the result.
+ * <p>
+ * A buffer is written once, and may then be read any number of times. It must be closed to delete any temporary file.
+ * </p>
+ */
+public class ResultBuffer implements Closeable {
+	private static final int COPY_BUFFER_SIZE = 8192;
+
+	private final int memoryThreshold;
+	private final Path directory;
+	private ExposedByteArrayOutputStream memory = new ExposedByteArrayOutputStream();
+	private Path file;
+	private OutputStream fileStream;
+	private long size;
+	private Charset charset = StandardCharsets.UTF_8;
+
+	/**
+	 * @param memoryThreshold
+	 *            The number of bytes held in memory before spilling to a file
+	 * @param directory
+	 *            The directory for temporary files, or null for the system default
+	 */
+	public ResultBuffer(int memoryThreshold, Path directory) {
+		this.memoryThreshold = memoryThreshold;
+		this.directory = directory;
+	}
+
+	/**
+	 * Creates an in-memory buffer holding the specified content. Used where a result has already been read as text.
+	 * 
+	 * @param content
+	 *            The content. Null is treated as empty.
+	 * @return The buffer
+	 */
+	public static ResultBuffer of(String content) {
+		ResultBuffer buffer = new ResultBuffer(Integer.MAX_VALUE, null);
+		if (content != null) {
+			byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+			buffer.memory.write(bytes, 0, bytes.length);
+			buffer.size = bytes.length;
+		}
+		return buffer;
+	}
+
+	/**
+	 * Copies the stream into this buffer, spilling to a file if the memory threshold is exceeded.
+	 * 
+	 * @param input
+	 *            The stream to read. It is not closed.
+	 */
+	public void write(InputStream input) throws IOException {
+		byte[] chunk = new byte[COPY_BUFFER_SIZE];
+		int read;
+		while ((read = input.read(chunk)) != -1) {
+			write(chunk, 0, read);
+		}
+	}
+
+	private void write(byte[] bytes, int offset, int length) throws IOException {
+		if (file == null && size + length > memoryThreshold) {
+			spill();
+		}
+		if (file == null) {
+			memory.write(bytes, offset, length);
+		} else {
+			fileStream.write(bytes, offset, length);
+		}
+		size += length;
+	}
+
+	private void spill() throws IOException {
+		file = (directory == null) ? Files.createTempFile("pz-result-", ".tmp") : Files.createTempFile(directory, "pz-result-", ".tmp");
+		fileStream = Files.newOutputStream(file);
+		memory.writeTo(fileStream);
+		memory = null;
+	}
+
+	/**
+	 * @return A new stream over the content of this buffer. Completes any writing to the spill file.
+	 */
+	public InputStream getInputStream() throws IOException {
+		if (file == null) {
+			return memory.toInputStream();
+		}
+		if (fileStream != null) {
+			fileStream.close();
+			fileStream = null;
+		}
+		return Files.newInputStream(file);
+	}
+
+	/**
+	 * Reads up to the specified number of bytes from the start of the content, without reading the rest.
+	 * 
+	 * @param maxBytes
+	 *            The maximum number of bytes to read
+	 * @return The leading bytes of the content
+	 */
+	public byte[] readHead(int maxBytes) throws IOException {
+		int length = (int) Math.min(size, maxBytes);
+		byte[] head = new byte[length];
+		try (InputStream stream = getInputStream()) {
+			int offset = 0;
+			while (offset < length) {
+				int read = stream.read(head, offset, length - offset);
+				if (read == -1) {
+					break;
+				}
+				offset += read;
+			}
+		}
+		return head;
+	}
+
+	/**
+	 * Reads the entire content as text. This places the whole result in memory, and should only be used where the
+	 * content must be handled as a String.
+	 * 
+	 * @return The content, decoded with the charset of this buffer
+	 */
+	public String asString() throws IOException {
+		try (InputStream stream = getInputStream()) {
+			return StreamUtils.copyToString(stream, charset);
+		}
+	}
+
+	/**
+	 * @return The number of bytes in the buffer
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return True if the content has been spilled to a temporary file
+	 */
+	public boolean isSpilled() {
+		return file != null;
+	}
+
+	/**
+	 * @return The temporary file holding the content, or null if the content is held in memory
+	 */
+	public Path getFile() {
+		return file;
+	}
+
+	public Charset getCharset() {
+		return charset;
+	}
+
+	public void setCharset(Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * Releases the content, deleting any temporary file.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (fileStream != null) {
+			fileStream.close();
+			fileStream = null;
+		}
+		if (file != null) {
+			Files.deleteIfExists(file);
+		}
+		memory = null;
+	}
+
+	/**
+	 * Allows the in-memory content to be read without copying the backing array.
+	 */
+	private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+		InputStream toInputStream() {
+			return new ByteArrayInputStream(buf, 0, count);
+		}
+	}
+}
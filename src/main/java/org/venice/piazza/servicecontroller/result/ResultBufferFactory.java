@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.result;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.io.JsonEOFException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Creates ResultBuffers, and streams User Service responses into them.
+ * <p>
+ * Also determines whether a result is a DataResource by looking first at a bounded number of leading bytes, so that
+ * most results which are not DataResources are never fully parsed. Only a JSON object whose top-level fields run past
+ * that window is scanned further, as a stream.
+ * </p>
+ */
+@Component
+public class ResultBufferFactory {
+	@Value("${result.buffer.memory.threshold.bytes}")
+	private int MEMORY_THRESHOLD_BYTES; //NOSONAR
+	@Value("${result.buffer.directory}")
+	private String BUFFER_DIRECTORY; //NOSONAR
+	@Value("${result.sniff.lookahead.bytes}")
+	private int SNIFF_LOOKAHEAD_BYTES; //NOSONAR
+
+	@Autowired
+	private ObjectMapper mapper;
+
+	private static final String DATA_TYPE_FIELD = "dataType";
+	/**
+	 * Charset used when a request or response does not declare one. User Services return JSON, which is UTF-8.
+	 */
+	private static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
+	private static final String ACCEPT = "text/plain, application/json, */*";
+
+	/**
+	 * @return A new, empty buffer
+	 */
+	public ResultBuffer newBuffer() {
+		Path directory = (BUFFER_DIRECTORY == null || BUFFER_DIRECTORY.isEmpty()) ? null : Paths.get(BUFFER_DIRECTORY);
+		return new ResultBuffer(MEMORY_THRESHOLD_BYTES, directory);
+	}
+
+	/**
+	 * Reads the stream into a new buffer.
+	 * 
+	 * @param input
+	 *            The stream to read. It is not closed.
+	 * @return The buffer
+	 */
+	public ResultBuffer read(InputStream input) throws IOException {
+		ResultBuffer buffer = newBuffer();
+		try {
+			buffer.write(input);
+		} catch (IOException exception) {
+			buffer.close();
+			throw exception;
+		}
+		return buffer;
+	}
+
+	/**
+	 * @return Response extractor that streams the response body into a buffer, rather than reading it as a String.
+	 *         The caller must close the buffer.
+	 */
+	public ResponseExtractor<ResponseEntity<ResultBuffer>> responseExtractor() {
+		return response -> {
+			ResultBuffer buffer = read(response.getBody());
+			MediaType contentType = response.getHeaders().getContentType();
+			buffer.setCharset((contentType != null && contentType.getCharset() != null) ? contentType.getCharset() : DEFAULT_CHARSET);
+			return new ResponseEntity<>(buffer, response.getHeaders(), response.getStatusCode());
+		};
+	}
+
+	/**
+	 * Request callback that writes the headers and text body of a request to a User Service, in the same way the
+	 * String message converter would.
+	 * 
+	 * @param headers
+	 *            The request headers
+	 * @param body
+	 *            The request body. May be null or empty.
+	 * @return The callback
+	 */
+	public RequestCallback requestCallback(HttpHeaders headers, String body) {
+		return request -> {
+			if (headers != null) {
+				request.getHeaders().putAll(headers);
+			}
+			if (request.getHeaders().getAccept().isEmpty()) {
+				request.getHeaders().set(HttpHeaders.ACCEPT, ACCEPT);
+			}
+			if (body != null && !body.isEmpty()) {
+				MediaType contentType = request.getHeaders().getContentType();
+				Charset charset = (contentType != null && contentType.getCharset() != null) ? contentType.getCharset() : DEFAULT_CHARSET;
+				StreamUtils.copy(body, charset, request.getBody());
+			}
+		};
+	}
+
+	/**
+	 * Determines if the result appears to be a serialized DataResource, that is, a JSON object with a top-level
+	 * dataType field. The lookahead window is inspected first; the rest of the result is only scanned if the window
+	 * ends inside the top-level object before a dataType field is found.
+	 * 
+	 * @param buffer
+	 *            The result
+	 * @return True if a top-level dataType field is found
+	 */
+	public boolean isDataResource(ResultBuffer buffer) throws IOException {
+		if (buffer == null || buffer.size() == 0) {
+			return false;
+		}
+		Boolean found = findDataTypeField(new ByteArrayInputStream(buffer.readHead(SNIFF_LOOKAHEAD_BYTES)));
+		if (found == null && buffer.size() > SNIFF_LOOKAHEAD_BYTES) {
+			try (InputStream stream = buffer.getInputStream()) {
+				found = findDataTypeField(stream);
+			}
+		}
+		return Boolean.TRUE.equals(found);
+	}
+
+	/**
+	 * Scans the top-level fields of a JSON object for a dataType field, without reading their values.
+	 * 
+	 * @return True if found, false if the input is not a JSON object or the object ends without one, or null if the
+	 *         input ends first
+	 */
+	private Boolean findDataTypeField(InputStream input) {
+		try (JsonParser parser = mapper.getFactory().createParser(input)) {
+			JsonToken token = parser.nextToken();
+			if (token == null) {
+				return null;
+			}
+			if (token != JsonToken.START_OBJECT) {
+				return false;
+			}
+			while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+				if (DATA_TYPE_FIELD.equals(parser.getCurrentName())) {
+					return true;
+				}
+				if (parser.nextToken() == null) {
+					return null;
+				}
+				parser.skipChildren();
+			}
+			return (token == null) ? null : Boolean.FALSE;
+		} catch (JsonEOFException exception) { //NOSONAR
+			// The input ended inside a value
+			return null;
+		} catch (IOException exception) { //NOSONAR
+			// Not JSON
+			return false;
+		}
+	}
+}
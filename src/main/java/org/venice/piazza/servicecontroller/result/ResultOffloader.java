@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.result;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.venice.piazza.servicecontroller.executor.SupervisedScheduler;
+import org.venice.piazza.servicecontroller.executor.SupervisedScheduler.SupervisedTask;
+
+import model.data.location.FileLocation;
+import model.data.location.FolderShare;
+import model.logger.Severity;
+import util.PiazzaLogger;
+
+/**
+ * Decides whether a Service result is sent inline in the Ingest message, or is offloaded to the Blob Store with only
+ * its location sent in the message (the claim-check pattern). Keeps the size of messages on the bus bounded regardless
+ * of the size of the results.
+ * <p>
+ * Offloading is off unless both a threshold and a Blob Store readable by the consumers are configured. Stored results
+ * are deleted once they are older than the retention period, by which time the Ingest job has copied them.
+ * </p>
+ */
+@Component
+public class ResultOffloader {
+	@Value("${result.offload.threshold.bytes}")
+	private long OFFLOAD_THRESHOLD_BYTES; //NOSONAR
+
+	@Value("${result.offload.retention.hours}")
+	private long RETENTION_HOURS; //NOSONAR
+	@Value("${result.offload.cleanup.interval.minutes}")
+	private long CLEANUP_INTERVAL_MINUTES; //NOSONAR
+
+	@Autowired
+	private BlobStore blobStore;
+	@Autowired
+	private SupervisedScheduler scheduler;
+	@Autowired
+	private PiazzaLogger logger;
+
+	private SupervisedTask cleanupTask;
+
+	private static final Logger LOG = LoggerFactory.getLogger(ResultOffloader.class);
+
+	/**
+	 * Begins periodic deletion of expired results, if offloading is enabled.
+	 */
+	@PostConstruct
+	public void startCleanup() {
+		if (OFFLOAD_THRESHOLD_BYTES > 0 && !blobStore.isConfigured()) {
+			LOG.warn("A result offload threshold of {} bytes is set, but no shared Blob Store is configured. All results will be sent inline.",
+					OFFLOAD_THRESHOLD_BYTES);
+		}
+		if (isEnabled() && RETENTION_HOURS > 0) {
+			long period = TimeUnit.MINUTES.toMillis(CLEANUP_INTERVAL_MINUTES);
+			cleanupTask = scheduler.schedule("resultOffloadCleanup", this::deleteExpired, period, period);
+		}
+	}
+
+	/**
+	 * Halts periodic deletion of expired results.
+	 */
+	@PreDestroy
+	public void stopCleanup() {
+		if (cleanupTask != null) {
+			cleanupTask.cancel();
+		}
+	}
+
+	/**
+	 * @return True if results are offloaded. A threshold of zero or less, or a Blob Store that is not configured, sends
+	 *         all results inline.
+	 */
+	public boolean isEnabled() {
+		return OFFLOAD_THRESHOLD_BYTES > 0 && blobStore.isConfigured();
+	}
+
+	/**
+	 * @return True if the result is larger than the threshold, and should be offloaded
+	 */
+	public boolean shouldOffload(ResultBuffer result) {
+		return isEnabled() && result != null && result.size() > OFFLOAD_THRESHOLD_BYTES;
+	}
+
+	/**
+	 * Stores the result in the Blob Store.
+	 * 
+	 * @param dataId
+	 *            The Data ID the result will be ingested as
+	 * @param result
+	 *            The result. It is not closed.
+	 * @return The location of the stored result, for use as the location of the Data
+	 */
+	public FileLocation offload(String dataId, ResultBuffer result) throws IOException {
+		FolderShare location = new FolderShare();
+		try (InputStream stream = result.getInputStream()) {
+			location.filePath = blobStore.store(dataId, stream);
+		}
+		return location;
+	}
+
+	/**
+	 * Deletes an offloaded result that will not be ingested, such as when its Ingest job could not be sent. Failures
+	 * are logged; the result is removed by the retention cleanup instead.
+	 */
+	public void discard(FileLocation location) {
+		if (!(location instanceof FolderShare)) {
+			return;
+		}
+		String filePath = ((FolderShare) location).filePath;
+		try {
+			blobStore.delete(filePath);
+		} catch (IOException exception) {
+			LOG.error("Could not delete offloaded result {}", filePath, exception);
+		}
+	}
+
+	/**
+	 * Deletes stored results older than the retention period.
+	 */
+	void deleteExpired() {
+		try {
+			int deleted = blobStore.deleteOlderThan(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(RETENTION_HOURS));
+			if (deleted > 0) {
+				logger.log(String.format("Deleted %s offloaded results older than %s hours.", deleted, RETENTION_HOURS),
+						Severity.INFORMATIONAL);
+			}
+		} catch (IOException exception) {
+			LOG.error("Could not delete expired offloaded results", exception);
+			logger.log(String.format("Could not delete expired offloaded results: %s", exception.getMessage()), Severity.ERROR);
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.taskmanaged;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hashed timer wheel holding the timeout deadline of each Task-Managed Service Job that has been handed out to a
+ * worker.
+ * <p>
+ * The wheel is a ring of slots, each covering one tick. A deadline is placed in the slot of the tick it falls in, so
+ * that scheduling and cancelling take constant time, and each tick only looks at the deadlines in one slot. Deadlines
+ * more than one rotation away stay in their slot until the rotation they fall in.
+ * </p>
+ */
+@Component
+public class ServiceJobTimeoutWheel implements PublicMetrics {
+	@Value("${task.managed.timeout.wheel.tick.ms}")
+	private long TICK_MS; //NOSONAR
+	@Value("${task.managed.timeout.wheel.size}")
+	private int WHEEL_SIZE; //NOSONAR
+
+	private List<Map<String, Long>> slots;
+	private final Map<String, Integer> slotByJobId = new HashMap<>();
+	private long nextTick;
+	private final AtomicLong expiredCount = new AtomicLong();
+
+	/**
+	 * Creates the slots of the wheel, starting at the current tick.
+	 */
+	@PostConstruct
+	public synchronized void initialize() {
+		slots = new ArrayList<>(WHEEL_SIZE);
+		for (int i = 0; i < WHEEL_SIZE; i++) {
+			slots.add(new HashMap<>());
+		}
+		nextTick = System.currentTimeMillis() / TICK_MS;
+	}
+
+	/**
+	 * Schedules the timeout deadline of a Service Job, replacing any deadline it already has.
+	 * 
+	 * @param jobId
+	 *            The ID of the Job
+	 * @param deadline
+	 *            The epoch time at which the Job times out
+	 */
+	public synchronized void schedule(String jobId, long deadline) {
+		cancel(jobId);
+		int slot = (int) (Math.max(deadline / TICK_MS, nextTick) % WHEEL_SIZE);
+		slots.get(slot).put(jobId, deadline);
+		slotByJobId.put(jobId, slot);
+	}
+
+	/**
+	 * Cancels the timeout deadline of a Service Job, if it has one.
+	 * 
+	 * @param jobId
+	 *            The ID of the Job
+	 */
+	public synchronized void cancel(String jobId) {
+		Integer slot = slotByJobId.remove(jobId);
+		if (slot != null) {
+			slots.get(slot).remove(jobId);
+		}
+	}
+
+	/**
+	 * Advances the wheel past every tick that has fully elapsed, and removes the deadlines that fell in them.
+	 * 
+	 * @param now
+	 *            The current epoch time
+	 * @return The IDs of the Jobs whose deadlines have passed
+	 */
+	public synchronized List<String> expire(long now) {
+		List<String> expiredJobIds = new ArrayList<>();
+		long lastTick = (now / TICK_MS) - 1;
+		// A full rotation visits every slot, so ticks further behind than that need not be visited again.
+		for (long tick = Math.max(nextTick, lastTick - WHEEL_SIZE + 1); tick <= lastTick; tick++) {
+			Iterator<Map.Entry<String, Long>> deadlines = slots.get((int) (tick % WHEEL_SIZE)).entrySet().iterator();
+			while (deadlines.hasNext()) {
+				Map.Entry<String, Long> deadline = deadlines.next();
+				if ((deadline.getValue() / TICK_MS) <= lastTick) {
+					deadlines.remove();
+					slotByJobId.remove(deadline.getKey());
+					expiredJobIds.add(deadline.getKey());
+				}
+			}
+		}
+		nextTick = Math.max(nextTick, lastTick + 1);
+		expiredCount.addAndGet(expiredJobIds.size());
+		return expiredJobIds;
+	}
+
+	/**
+	 * @return The number of deadlines scheduled
+	 */
+	public synchronized int getScheduledCount() {
+		return slotByJobId.size();
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		Collection<Metric<?>> metrics = new ArrayList<>();
+		metrics.add(new Metric<Integer>("servicecontroller.task.timeout.scheduled", getScheduledCount()));
+		metrics.add(new Metric<Long>("servicecontroller.task.timeout.expired", expiredCount.get()));
+		return metrics;
+	}
+}
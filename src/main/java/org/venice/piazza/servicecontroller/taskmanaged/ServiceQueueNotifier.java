@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.taskmanaged;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Component;
+import org.venice.piazza.servicecontroller.executor.ExecutorConfiguration;
+
+import messaging.job.JobMessageFactory;
+import model.logger.Severity;
+import util.PiazzaLogger;
+
+/**
+ * Wakes Task-Managed workers that are waiting for a Job to be added to an empty Service Queue.
+ * <p>
+ * Each waiting worker registers a one-time listener for its Service. When a Job is added to the Service Queue, the
+ * longest-waiting listener of that Service is run on the task wait executor. A listener whose worker has stopped
+ * waiting passes the wakeup on to the next listener. The addition is also published on the Piazza exchange, so that
+ * every other instance of the Service Controller wakes one of its own listeners for the Service; an instance ignores
+ * the notifications it published itself, as it has already woken a listener.
+ * </p>
+ */
+@Component
+public class ServiceQueueNotifier implements PublicMetrics {
+	@Autowired
+	private RabbitTemplate rabbitTemplate;
+	@Autowired
+	private PiazzaLogger logger;
+	@Autowired
+	@Qualifier(ExecutorConfiguration.TASK_WAIT_EXECUTOR)
+	private Executor executor;
+
+	@Value("${SPACE}")
+	private String SPACE; //NOSONAR
+
+	private static final String JOB_ADDED_TOPIC_TEMPLATE = "ServiceQueueJobAdded-%s";
+	private static final String ORIGIN_HEADER = "originId";
+	private static final Logger LOG = LoggerFactory.getLogger(ServiceQueueNotifier.class);
+
+	private final String originId = UUID.randomUUID().toString();
+	private final ConcurrentHashMap<String, ConcurrentLinkedQueue<Waiter>> waiters = new ConcurrentHashMap<>();
+	private final AtomicInteger waitingCount = new AtomicInteger();
+	private final AtomicLong wakeCount = new AtomicLong();
+
+	/**
+	 * Registers a listener to run once a Job is added to the Service Queue.
+	 * 
+	 * @param serviceId
+	 *            The ID of the Service
+	 * @param listener
+	 *            The listener, run at most once. Returns false if its worker had already stopped waiting, in which case
+	 *            the next listener is woken instead.
+	 * @return Cancels the listener, if it has not yet run
+	 */
+	public Runnable await(String serviceId, BooleanSupplier listener) {
+		Waiter waiter = new Waiter(listener);
+		waitingCount.incrementAndGet();
+		enqueue(serviceId, waiter);
+		return () -> {
+			if (waiter.claim()) {
+				waiters.computeIfPresent(serviceId, (key, serviceWaiters) -> {
+					serviceWaiters.remove(waiter);
+					return serviceWaiters.isEmpty() ? null : serviceWaiters;
+				});
+			}
+		};
+	}
+
+	/**
+	 * Wakes one listener waiting on the Service Queue, on this and every other instance.
+	 * 
+	 * @param serviceId
+	 *            The ID of the Service that a Job was added to
+	 */
+	public void notifyJobAdded(String serviceId) {
+		wake(serviceId);
+		try {
+			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, String.format(JOB_ADDED_TOPIC_TEMPLATE, SPACE), serviceId,
+					message -> {
+						message.getMessageProperties().setHeader(ORIGIN_HEADER, originId);
+						return message;
+					});
+		} catch (AmqpException exception) {
+			// Workers waiting on other instances will find the Job when they next ask for one.
+			String error = String.format("Could not publish Job added notification for Service %s: %s", serviceId, exception.getMessage());
+			LOG.error(error, exception);
+			logger.log(error, Severity.WARNING);
+		}
+	}
+
+	/**
+	 * Processes a Job added notification from another instance of the Service Controller. Notifications published by
+	 * this instance are ignored, as a listener was already woken when the Job was added.
+	 * 
+	 * @param serviceId
+	 *            The ID of the Service that a Job was added to
+	 * @param origin
+	 *            The instance that published the notification, if known
+	 */
+	@RabbitListener(bindings = @QueueBinding(key = "ServiceQueueJobAdded-${SPACE}", value = @Queue(autoDelete = "true", durable = "true", exclusive = "true"), exchange = @Exchange(value = JobMessageFactory.PIAZZA_EXCHANGE_NAME, autoDelete = "false", durable = "true")))
+	public void processJobAdded(String serviceId, @Header(value = ORIGIN_HEADER, required = false) String origin) {
+		if (originId.equals(origin)) {
+			return;
+		}
+		wake(serviceId);
+	}
+
+	/**
+	 * @return The number of listeners waiting across all Service Queues
+	 */
+	public int getWaitingCount() {
+		return waitingCount.get();
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		Collection<Metric<?>> metrics = new ArrayList<>();
+		metrics.add(new Metric<Integer>("servicecontroller.task.wait.waiting", getWaitingCount()));
+		metrics.add(new Metric<Long>("servicecontroller.task.wait.woken", wakeCount.get()));
+		return metrics;
+	}
+
+	/**
+	 * Runs the longest-waiting listener of the Service, skipping those that were cancelled. If the listener finds that
+	 * its worker has stopped waiting, the next listener is woken in its place, so that the Job is not left unclaimed.
+	 * <p>
+	 * The listener is never run on the calling thread, which may be the broker's listener thread or a request adding a
+	 * Job. If the task wait executor is saturated, the listener is registered again and its worker is left to find the
+	 * Job when its wait times out.
+	 * </p>
+	 */
+	private void wake(String serviceId) {
+		ConcurrentLinkedQueue<Waiter> serviceWaiters = waiters.get(serviceId);
+		if (serviceWaiters == null) {
+			return;
+		}
+		Waiter waiter;
+		while ((waiter = serviceWaiters.poll()) != null) {
+			if (waiter.claim()) {
+				BooleanSupplier listener = waiter.listener;
+				try {
+					executor.execute(() -> {
+						if (!listener.getAsBoolean()) {
+							wake(serviceId);
+						}
+					});
+					wakeCount.incrementAndGet();
+				} catch (RejectedExecutionException exception) {
+					LOG.warn("Task wait executor is saturated; leaving a listener of Service {} waiting.", serviceId, exception);
+					waiter.release();
+					enqueue(serviceId, waiter);
+				}
+				return;
+			}
+		}
+		// Drop the Service's queue once it is empty, so that Services no longer waited on are not kept
+		waiters.computeIfPresent(serviceId, (key, emptyWaiters) -> emptyWaiters.isEmpty() ? null : emptyWaiters);
+	}
+
+	/**
+	 * Adds a listener to the Service's queue. The queue is created, and dropped once empty, under the map's lock for
+	 * the Service, so that a listener is never added to a queue that has already been dropped.
+	 */
+	private void enqueue(String serviceId, Waiter waiter) {
+		waiters.compute(serviceId, (key, serviceWaiters) -> {
+			ConcurrentLinkedQueue<Waiter> queue = (serviceWaiters != null) ? serviceWaiters : new ConcurrentLinkedQueue<>();
+			queue.add(waiter);
+			return queue;
+		});
+	}
+
+	/**
+	 * A registered listener. It is claimed once, either to be run or to be cancelled.
+	 */
+	private class Waiter {
+		private final BooleanSupplier listener;
+		private final AtomicBoolean claimed = new AtomicBoolean();
+
+		Waiter(BooleanSupplier listener) {
+			this.listener = listener;
+		}
+
+		boolean claim() {
+			if (claimed.compareAndSet(false, true)) {
+				waitingCount.decrementAndGet();
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Reverses a claim made to run the listener, so that it can be run, or cancelled, later.
+		 */
+		void release() {
+			waitingCount.incrementAndGet();
+			claimed.set(false);
+		}
+	}
+}
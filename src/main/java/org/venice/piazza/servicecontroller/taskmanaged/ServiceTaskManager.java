@@ -15,22 +15,27 @@
  **/
 package org.venice.piazza.servicecontroller.taskmanaged;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import javax.annotation.PostConstruct;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.ResourceAccessException;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
-
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.venice.piazza.servicecontroller.data.model.ServiceJobQueueEntity;
+import org.venice.piazza.servicecontroller.messaging.StatusUpdatePublisher;
 
 import exception.InvalidInputException;
-import messaging.job.JobMessageFactory;
 import model.job.Job;
 import model.job.result.type.ErrorResult;
 import model.job.type.ExecuteServiceJob;
@@ -64,20 +69,31 @@ public class ServiceTaskManager {
 	@Value("${task.managed.error.limit}")
 	private Integer TIMEOUT_LIMIT_COUNT; //NOSONAR
 
-	@Autowired
-	private ObjectMapper objectMapper;
 	@Autowired
 	private DatabaseAccessor accessor;
 	@Autowired
 	private PiazzaLogger piazzaLogger;
 	@Autowired
-	@Qualifier("UpdateJobsQueue")
-	private Queue updateJobsQueue;
+	private StatusUpdatePublisher statusPublisher;
+	@Autowired
+	private ServiceQueueNotifier queueNotifier;
 	@Autowired
-	private RabbitTemplate rabbitTemplate;
+	private ServiceJobTimeoutWheel timeoutWheel;
 
 	private static final Logger LOG = LoggerFactory.getLogger(ServiceTaskManager.class);
 
+	/**
+	 * Adds Service Queue entries for any Service Jobs queued before entries were kept. This runs once, as the Service
+	 * Controller starts, so that every queued Job can be pulled off of its queue before any Jobs are handed out.
+	 */
+	@PostConstruct
+	public void indexServiceQueues() {
+		int added = accessor.indexServiceJobQueues();
+		if (added > 0) {
+			piazzaLogger.log(String.format("Added %s Service Jobs to Service Queues.", added), Severity.INFORMATIONAL);
+		}
+	}
+
 	/**
 	 * Creates a Service Queue for a newly registered Job.
 	 * 
@@ -103,14 +119,9 @@ public class ServiceTaskManager {
 		StatusUpdate statusUpdate = new StatusUpdate();
 		statusUpdate.setStatus(StatusUpdate.STATUS_PENDING);
 		statusUpdate.setJobId(job.getJobId());
-		try {
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(),
-					objectMapper.writeValueAsString(statusUpdate));
-		} catch (JsonProcessingException exception) {
-			String error = "Error Sending Pending Job Status to Job Manager: " + exception.getMessage();
-			LOG.error(error, exception);
-			piazzaLogger.log(error, Severity.ERROR);
-		}
+		statusPublisher.publish(statusUpdate);
+		// Wake a worker waiting for work
+		queueNotifier.notifyJobAdded(job.getData().getServiceId());
 	}
 
 	/**
@@ -151,20 +162,13 @@ public class ServiceTaskManager {
 	}
 
 	private void handleTaskManagedJob(final String serviceId, final String jobId) {
-		// If this is a Task Managed Service, then remove the Job from the Queue.
-		accessor.removeJobFromServiceQueue(serviceId, jobId);
-		// Send the Message that this Job has been cancelled
+		// If this is a Task Managed Service, then remove the Job from the Queue, and send the Message that this Job has
+		// been cancelled
 		StatusUpdate statusUpdate = new StatusUpdate();
 		statusUpdate.setStatus(StatusUpdate.STATUS_CANCELLED);
 		statusUpdate.setJobId(jobId);
-		try {
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(),
-					objectMapper.writeValueAsString(statusUpdate));
-		} catch (JsonProcessingException exception) {
-			String error = String.format("Error Sending Cancelled Job %s Status to Job Manager: %s", jobId, exception.getMessage());
-			LOG.error(error, exception);
-			piazzaLogger.log(error, Severity.ERROR);
-		}
+		statusPublisher.publish(statusUpdate, () -> accessor.removeJobFromServiceQueue(serviceId, jobId));
+		timeoutWheel.cancel(jobId);
 
 		// Log the success
 		piazzaLogger.log(String.format("Successfully removed Service Job %s from Service Queue for %s", jobId, serviceId),
@@ -189,22 +193,65 @@ public class ServiceTaskManager {
 		}
 		// Send the Update
 		statusUpdate.setJobId(jobId);
-		try {
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(),
-					objectMapper.writeValueAsString(statusUpdate));
-		} catch (JsonProcessingException exception) {
-			String error = "Error Sending Job Status from External Service to Job Manager: " + exception.getMessage();
-			LOG.error(error, exception);
-			piazzaLogger.log(error, Severity.ERROR);
-		}
 		// If done, remove the Job from the Service Queue
 		String status = statusUpdate.getStatus();
-		if ((StatusUpdate.STATUS_CANCELLED.equals(status)) || (StatusUpdate.STATUS_ERROR.equals(status))
-				|| (StatusUpdate.STATUS_FAIL.equals(status)) || (StatusUpdate.STATUS_SUCCESS.equals(status))) {
+		if (isFinalStatus(status)) {
 			piazzaLogger.log(String.format("Job %s For Service %s has reached final state %s. Removing from Service Jobs Queue.", jobId,
 					serviceId, status), Severity.INFORMATIONAL);
-			accessor.removeJobFromServiceQueue(serviceId, jobId);
+			statusPublisher.publish(statusUpdate, () -> accessor.removeJobFromServiceQueue(serviceId, jobId));
+			timeoutWheel.cancel(jobId);
+		} else {
+			statusPublisher.publish(statusUpdate);
+		}
+	}
+
+	/**
+	 * Processes the external Worker reporting the Status of several running jobs at once. Final Statuses are sent
+	 * together, in the same transaction as their Jobs are removed from the Service Queue.
+	 * 
+	 * @param serviceId
+	 *            The ID of the Service
+	 * @param statusUpdates
+	 *            The Status of each Job, with its Job ID set
+	 * @return The error for each Job whose Status could not be processed, keyed by Job ID. Empty if all were processed.
+	 */
+	public Map<String, String> processStatusUpdates(String serviceId, List<StatusUpdate> statusUpdates) {
+		Map<String, String> errors = new LinkedHashMap<>();
+		List<StatusUpdate> validUpdates = new ArrayList<>(statusUpdates.size());
+		List<String> finishedJobIds = new ArrayList<>();
+		for (StatusUpdate statusUpdate : statusUpdates) {
+			String jobId = statusUpdate.getJobId();
+			// Validate the Service ID exists, and contains the Job ID
+			if (accessor.getServiceJob(serviceId, jobId) == null) {
+				errors.put(jobId, String.format("Cannot find the specified Job %s for this Service %s", jobId, serviceId));
+				continue;
+			}
+			validUpdates.add(statusUpdate);
+			// If done, remove the Job from the Service Queue
+			if (isFinalStatus(statusUpdate.getStatus())) {
+				finishedJobIds.add(jobId);
+			}
+		}
+		if (!finishedJobIds.isEmpty()) {
+			piazzaLogger.log(String.format("%s Jobs For Service %s have reached a final state. Removing from Service Jobs Queue.",
+					finishedJobIds.size(), serviceId), Severity.INFORMATIONAL);
+		}
+		if (!validUpdates.isEmpty()) {
+			statusPublisher.publishAll(validUpdates, finishedJobIds.isEmpty() ? null : () -> {
+				for (String jobId : finishedJobIds) {
+					accessor.removeJobFromServiceQueue(serviceId, jobId);
+				}
+			});
 		}
+		for (String jobId : finishedJobIds) {
+			timeoutWheel.cancel(jobId);
+		}
+		return errors;
+	}
+
+	private static boolean isFinalStatus(String status) {
+		return (StatusUpdate.STATUS_CANCELLED.equals(status)) || (StatusUpdate.STATUS_ERROR.equals(status))
+				|| (StatusUpdate.STATUS_FAIL.equals(status)) || (StatusUpdate.STATUS_SUCCESS.equals(status));
 	}
 
 	/**
@@ -219,36 +266,186 @@ public class ServiceTaskManager {
 	public ExecuteServiceJob getNextJobFromQueue(String serviceId)
 			throws InvalidInputException {
 		// Pull the Job off of the queue.
-		ServiceJob serviceJob = accessor.getNextJobInServiceQueue(serviceId);
+		ServiceJobQueueEntity serviceJob = accessor.getNextJobInServiceQueue(serviceId);
 
 		// If no Job exists in the Queue, then return null. No work needs to be done.
 		if (serviceJob == null) {
 			return null;
 		}
+		scheduleTimeout(serviceJob);
 
 		// Read the Jobs collection for the full Job Details
 		String jobId = serviceJob.getJobId();
-		Job job = accessor.getJobById(jobId);
-		// Ensure the Job exists. If it does not, then throw an error.
+		ExecuteServiceJob executeServiceJob = getExecuteServiceJob(serviceId, jobId, accessor.getJobById(jobId));
+
+		// Update the Job Status as Running
+		statusPublisher.publish(createRunningStatus(jobId));
+		return executeServiceJob;
+	}
+
+	/**
+	 * Pulls the next waiting Job off of the Jobs queue. If the queue is empty, waits for a Job to be added to it.
+	 * <p>
+	 * The wait ends when the returned future is completed by the caller, for example with null when the caller stops
+	 * waiting. A Job pulled after the caller has stopped waiting is returned to the queue.
+	 * </p>
+	 * 
+	 * @param serviceId
+	 *            The ID of the Service whose Queue to pull a Job from
+	 * @return Completed with the Job information, or exceptionally if the Job could not be pulled
+	 */
+	public CompletableFuture<ExecuteServiceJob> awaitNextJobFromQueue(String serviceId) {
+		CompletableFuture<ExecuteServiceJob> result = new CompletableFuture<>();
+		if (!completeWithNextJob(serviceId, result)) {
+			waitForNextJob(serviceId, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Waits for a Job to be added to the queue, and then tries again to pull one off. If the caller has stopped waiting
+	 * by the time it is woken, the wakeup is passed on to another waiting caller.
+	 */
+	private void waitForNextJob(String serviceId, CompletableFuture<ExecuteServiceJob> result) {
+		Runnable cancel = queueNotifier.await(serviceId, () -> {
+			if (result.isDone()) {
+				return false;
+			}
+			if (!completeWithNextJob(serviceId, result)) {
+				// Another worker took the Job
+				waitForNextJob(serviceId, result);
+			}
+			return true;
+		});
+		result.whenComplete((job, exception) -> cancel.run());
+		// A Job may have been added before the listener was registered
+		completeWithNextJob(serviceId, result);
+	}
+
+	/**
+	 * Tries to pull the next Job off of the queue for a waiting caller.
+	 * 
+	 * @return True if the wait is over
+	 */
+	private boolean completeWithNextJob(String serviceId, CompletableFuture<ExecuteServiceJob> result) {
+		if (result.isDone()) {
+			return true;
+		}
+		ExecuteServiceJob job;
+		try {
+			job = getNextJobFromQueue(serviceId);
+		} catch (Exception exception) {
+			result.completeExceptionally(exception);
+			return true;
+		}
 		if (job == null) {
-			String error = String.format(
-					"Error pulling Service Job off Job Queue for Service %s and Job Id %s. The Job was not found in the database.",
-					serviceId, jobId);
-			piazzaLogger.log(error, Severity.ERROR);
-			throw new ResourceAccessException(error);
+			return false;
 		}
+		if (!result.complete(job)) {
+			returnJobToQueue(serviceId, job.getJobId());
+		}
+		return true;
+	}
 
-		// Update the Job Status as Running
+	/**
+	 * Returns a Job that was pulled off of the Jobs queue, but could not be handed to a worker, to the front of the
+	 * queue.
+	 * 
+	 * @param serviceId
+	 *            The ID of the Service
+	 * @param jobId
+	 *            The ID of the Job
+	 */
+	public void returnJobToQueue(String serviceId, String jobId) {
+		piazzaLogger.log(String.format("Returning Service Job %s to the Service Queue for %s.", jobId, serviceId), Severity.INFORMATIONAL);
+		accessor.releaseServiceJob(serviceId, jobId);
+		timeoutWheel.cancel(jobId);
+		StatusUpdate statusUpdate = new StatusUpdate();
+		statusUpdate.setStatus(StatusUpdate.STATUS_PENDING);
+		statusUpdate.setJobId(jobId);
+		statusPublisher.publish(statusUpdate);
+		queueNotifier.notifyJobAdded(serviceId);
+	}
+
+	/**
+	 * Pulls up to a number of waiting Jobs off of the Jobs queue and returns them. The Jobs are claimed together, and
+	 * their Running Statuses sent together.
+	 * <p>
+	 * A Job that cannot be read is logged and skipped. It is not returned to the queue, and so is retried once it
+	 * times out, as if a Worker had failed to process it.
+	 * </p>
+	 * 
+	 * @param serviceId
+	 *            The ID of the Service whose Queue to pull Jobs from
+	 * @param count
+	 *            The maximum number of Jobs to pull
+	 * @return The Jobs information, in queue order. Empty if no Jobs are waiting.
+	 */
+	public List<ExecuteServiceJob> getNextJobsFromQueue(String serviceId, int count) {
+		// Pull the Jobs off of the queue, and read the Jobs collection for their full Job Details
+		List<ServiceJobQueueEntity> serviceJobs = accessor.getNextJobsInServiceQueue(serviceId, count);
+		List<ExecuteServiceJob> executeServiceJobs = new ArrayList<>(serviceJobs.size());
+		if (serviceJobs.isEmpty()) {
+			return executeServiceJobs;
+		}
+		List<String> jobIds = new ArrayList<>(serviceJobs.size());
+		for (ServiceJobQueueEntity serviceJob : serviceJobs) {
+			scheduleTimeout(serviceJob);
+			jobIds.add(serviceJob.getJobId());
+		}
+		Map<String, Job> jobs = accessor.getJobsById(jobIds);
+
+		List<StatusUpdate> statusUpdates = new ArrayList<>(jobIds.size());
+		for (String jobId : jobIds) {
+			try {
+				executeServiceJobs.add(getExecuteServiceJob(serviceId, jobId, jobs.get(jobId)));
+				statusUpdates.add(createRunningStatus(jobId));
+			} catch (InvalidInputException | ResourceAccessException exception) {
+				LOG.error(exception.getMessage(), exception);
+			}
+		}
+
+		// Update the Job Statuses as Running
+		if (!statusUpdates.isEmpty()) {
+			statusPublisher.publishAll(statusUpdates, null);
+		}
+		return executeServiceJobs;
+	}
+
+	/**
+	 * Schedules the timeout deadline of a Job that has been pulled off of the Jobs queue, if its Service has a
+	 * timeout. The deadline uses the timeout held by the Job's Service Queue entry, as the database check does when it
+	 * fires, rather than the Service's current timeout, which may have been changed since.
+	 */
+	private void scheduleTimeout(ServiceJobQueueEntity serviceJob) {
+		if ((serviceJob.getTimeoutMs() != null) && (serviceJob.getStartedOn() != null)) {
+			timeoutWheel.schedule(serviceJob.getJobId(), serviceJob.getStartedOn() + serviceJob.getTimeoutMs());
+		}
+	}
+
+	private static StatusUpdate createRunningStatus(String jobId) {
 		StatusUpdate statusUpdate = new StatusUpdate();
 		statusUpdate.setStatus(StatusUpdate.STATUS_RUNNING);
 		statusUpdate.setJobId(jobId);
-		try {
-			rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(),
-					objectMapper.writeValueAsString(statusUpdate));
-		} catch (JsonProcessingException exception) {
-			String error = "Error Sending Pending Job Status to Job Manager: ";
-			LOG.error(error, exception);
+		return statusUpdate;
+	}
+
+	/**
+	 * Gets the Job Execution Information, including payload and parameters, of a Job pulled off of the Jobs queue.
+	 * 
+	 * @throws ResourceAccessException
+	 *             If the Job was not found
+	 * @throws InvalidInputException
+	 *             If the Job is not an ExecuteServiceJob
+	 */
+	private ExecuteServiceJob getExecuteServiceJob(String serviceId, String jobId, Job job) throws InvalidInputException {
+		// Ensure the Job exists. If it does not, then throw an error.
+		if (job == null) {
+			String error = String.format(
+					"Error pulling Service Job off Job Queue for Service %s and Job Id %s. The Job was not found in the database.",
+					serviceId, jobId);
 			piazzaLogger.log(error, Severity.ERROR);
+			throw new ResourceAccessException(error);
 		}
 
 		// Return the Job Execution Information, including payload and parameters.
@@ -271,43 +468,91 @@ public class ServiceTaskManager {
 	}
 
 	/**
-	 * Handles the Timeout logic for a timed out Service Job.
+	 * Handles the Timeout logic for every timed out Service Job of every Task-Managed Service at once. Jobs under the
+	 * timeout limit are requeued in a single update. Jobs that have reached the limit are claimed by removing them from
+	 * the Service Queues, and failed with their status updates published as one batch. A Job claimed by another
+	 * Service Controller, or finished by its worker in the meantime, is not failed here.
 	 * 
-	 * @param serviceId
-	 *            The Service ID
-	 * @param serviceJob
-	 *            The ServiceJob that has timed out
+	 * @return The number of timed out Service Jobs that were handled
 	 */
-	public void processTimedOutServiceJob(String serviceId, ServiceJob serviceJob) {
-		// Check if the Job has received too many timeouts thus far.
-		if (serviceJob.getTimeouts().intValue() >= TIMEOUT_LIMIT_COUNT) {
-			String error = String.format(
-					"Service Job %s for Service %s has timed out too many times and is being removed from the Jobs Queue.", serviceId,
-					serviceJob.getJobId());
-			piazzaLogger.log(error, Severity.INFORMATIONAL,
-					new AuditElement("serviceController", "failTimedOutJob", serviceJob.getJobId()));
-			// If the Job has too many timeouts, then fail the Job.
-			accessor.removeJobFromServiceQueue(serviceId, serviceJob.getJobId());
-			// Send the message that this Job has failed.
-			StatusUpdate statusUpdate = new StatusUpdate();
-			statusUpdate.setResult(new ErrorResult("Service Timed Out", error));
-			statusUpdate.setStatus(StatusUpdate.STATUS_ERROR);
-			statusUpdate.setJobId(serviceJob.getJobId());
-			try {
-				rabbitTemplate.convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, updateJobsQueue.getName(),
-						objectMapper.writeValueAsString(statusUpdate));
-			} catch (JsonProcessingException exception) {
-				String innerError = "Error Sending Failed/Timed Out Job Status to Job Manager: ";
-				LOG.error(innerError, exception);
-				piazzaLogger.log(innerError, Severity.ERROR);
-			}
-		} else {
-			// Otherwise, increment the failure count and try again.
+	public int processTimedOutServiceJobs() {
+		long now = System.currentTimeMillis();
+		List<ServiceJobQueueEntity> failedJobs = accessor.claimFailedTimedOutServiceJobs(now, TIMEOUT_LIMIT_COUNT);
+		List<ServiceJobQueueEntity> retriedJobs = accessor.retryTimedOutServiceJobs(now, TIMEOUT_LIMIT_COUNT);
+		return handleTimedOutServiceJobs(failedJobs, retriedJobs);
+	}
+
+	/**
+	 * Handles the Timeout logic for the Service Jobs whose deadlines have passed on the timeout wheel. Each Job is
+	 * checked against the database, so Jobs that have since finished, or been handed out again, are left alone.
+	 * 
+	 * @return The number of timed out Service Jobs that were handled
+	 */
+	public int processExpiredServiceJobTimeouts() {
+		long now = System.currentTimeMillis();
+		List<String> jobIds = timeoutWheel.expire(now);
+		if (jobIds.isEmpty()) {
+			return 0;
+		}
+		List<ServiceJobQueueEntity> failedJobs = accessor.claimFailedTimedOutServiceJobs(jobIds, now, TIMEOUT_LIMIT_COUNT);
+		List<ServiceJobQueueEntity> retriedJobs = accessor.retryTimedOutServiceJobs(jobIds, now, TIMEOUT_LIMIT_COUNT);
+		return handleTimedOutServiceJobs(failedJobs, retriedJobs);
+	}
+
+	/**
+	 * Schedules timeout deadlines on the timeout wheel for the started Service Jobs in a shard, such as those handed
+	 * out before this Service Controller started.
+	 * 
+	 * @param shardCount
+	 *            The number of shards
+	 * @param shard
+	 *            The shard, from zero
+	 * @return The number of deadlines scheduled
+	 */
+	public int scheduleStartedServiceJobTimeouts(int shardCount, int shard) {
+		List<ServiceJobQueueEntity> startedJobs = accessor.getStartedServiceJobs(shardCount, shard);
+		for (ServiceJobQueueEntity startedJob : startedJobs) {
+			timeoutWheel.schedule(startedJob.getJobId(), startedJob.getStartedOn() + startedJob.getTimeoutMs());
+		}
+		return startedJobs.size();
+	}
+
+	/**
+	 * Requeues the retried Jobs and wakes waiting workers, then fails the Jobs over the timeout limit in one batch. Only
+	 * the Jobs that this call claimed are failed, so no Job is failed twice.
+	 */
+	private int handleTimedOutServiceJobs(List<ServiceJobQueueEntity> failedJobs, List<ServiceJobQueueEntity> retriedJobs) {
+		Set<String> retriedServiceIds = new LinkedHashSet<>();
+		for (ServiceJobQueueEntity retriedJob : retriedJobs) {
 			piazzaLogger.log(String.format("Service Job %s for Service %s has timed out for the %s time and will be retried again.",
-					serviceId, serviceJob.getJobId(), serviceJob.getTimeouts() + 1), Severity.INFORMATIONAL);
-			// Increment the failure count and tag for retry
-			accessor.incrementServiceJobTimeout(serviceId, serviceJob);
+					retriedJob.getJobId(), retriedJob.getServiceId(), retriedJob.getTimeouts()), Severity.INFORMATIONAL);
+			retriedServiceIds.add(retriedJob.getServiceId());
+		}
+		for (String serviceId : retriedServiceIds) {
+			queueNotifier.notifyJobAdded(serviceId);
 		}
 
+		if (!failedJobs.isEmpty()) {
+			List<StatusUpdate> statusUpdates = new ArrayList<>();
+			for (ServiceJobQueueEntity failedJob : failedJobs) {
+				String error = String.format(
+						"Service Job %s for Service %s has timed out too many times and is being removed from the Jobs Queue.",
+						failedJob.getJobId(), failedJob.getServiceId());
+				piazzaLogger.log(error, Severity.INFORMATIONAL,
+						new AuditElement("serviceController", "failTimedOutJob", failedJob.getJobId()));
+				StatusUpdate statusUpdate = new StatusUpdate();
+				statusUpdate.setResult(new ErrorResult("Service Timed Out", error));
+				statusUpdate.setStatus(StatusUpdate.STATUS_ERROR);
+				statusUpdate.setJobId(failedJob.getJobId());
+				statusUpdates.add(statusUpdate);
+				timeoutWheel.cancel(failedJob.getJobId());
+			}
+			statusPublisher.publishAll(statusUpdates, () -> {
+				for (ServiceJobQueueEntity failedJob : failedJobs) {
+					accessor.removeJobFromServiceQueue(failedJob.getServiceId(), failedJob.getJobId());
+				}
+			});
+		}
+		return failedJobs.size() + retriedJobs.size();
 	}
 }
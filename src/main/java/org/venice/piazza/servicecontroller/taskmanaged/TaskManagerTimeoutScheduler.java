@@ -15,20 +15,16 @@
  **/
 package org.venice.piazza.servicecontroller.taskmanaged;
 
-import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
-
 import javax.annotation.PostConstruct;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
+import org.venice.piazza.servicecontroller.async.PollShardCoordinator;
+import org.venice.piazza.servicecontroller.executor.SupervisedScheduler;
+import org.venice.piazza.servicecontroller.executor.SupervisedScheduler.SupervisedTask;
 
 import model.logger.Severity;
-import model.service.metadata.Service;
-import model.service.taskmanaged.ServiceJob;
 import util.PiazzaLogger;
 
 /**
@@ -39,18 +35,22 @@ import util.PiazzaLogger;
  */
 @Component
 public class TaskManagerTimeoutScheduler {
-	@Autowired
-	private DatabaseAccessor accessor;
 	@Autowired
 	private ServiceTaskManager serviceTaskManager;
 	@Autowired
 	private PiazzaLogger piazzaLogger;
+	@Autowired
+	private SupervisedScheduler scheduler;
+	@Autowired
+	private PollShardCoordinator shardCoordinator;
 
 	@Value("${task.managed.timeout.frequency.seconds}")
 	private int POLL_FREQUENCY_SECONDS; //NOSONAR
+	@Value("${task.managed.timeout.wheel.tick.ms}")
+	private long WHEEL_TICK_MS; //NOSONAR
 
-	private CheckTimeoutTask timeoutTask = new CheckTimeoutTask();
-	private Timer pollTimer = new Timer();
+	private SupervisedTask timeoutTask;
+	private SupervisedTask wheelTask;
 
 	/**
 	 * Begins scheduled polling of timed out Service Jobs.
@@ -58,36 +58,68 @@ public class TaskManagerTimeoutScheduler {
 	@PostConstruct
 	public void startPolling() {
 		// Begin polling at the determined frequency
-		pollTimer.schedule(timeoutTask, 10000, POLL_FREQUENCY_SECONDS * (long) 1000);
+		timeoutTask = scheduler.schedule("taskManagedTimeout", new CheckTimeoutTask(), 10000, POLL_FREQUENCY_SECONDS * (long) 1000);
+		wheelTask = scheduler.schedule("taskManagedTimeoutWheel", new TimeoutWheelTask(), 10000, WHEEL_TICK_MS);
 	}
 
 	/**
 	 * Halts scheduled polling of timed out Service Jobs.
 	 */
 	public void stopPolling() {
-		pollTimer.cancel();
+		if (timeoutTask != null) {
+			timeoutTask.cancel();
+		}
+		if (wheelTask != null) {
+			wheelTask.cancel();
+		}
 	}
 
 	/**
-	 * Timer Task that will, on a schedule, poll for the Status of Stale Service Jobs that have timed out.
+	 * Task that will, on a schedule, poll for the Status of Stale Service Jobs that have timed out.
 	 */
-	public class CheckTimeoutTask extends TimerTask {
+	public class CheckTimeoutTask implements Runnable {
 		/**
-		 * Polls all stale Service Jobs for all Task-Managed user Services.
+		 * Handles all stale Service Jobs for all Task-Managed user Services in a single sweep. The sweep is only run by
+		 * the Service Controller holding the first polling shard, so that failed Jobs are only reported once.
 		 */
 		@Override
 		public void run() {
+			if (shardCoordinator.getShard().getIndex() != 0) {
+				return;
+			}
 			piazzaLogger.log("Checking for Timed out Service Jobs for Task-Managed Services.", Severity.INFORMATIONAL);
-			// Get a list of all Task-Managed User Services
-			List<Service> managedServices = accessor.getTaskManagedServices();
-			// For each Task Managed Service, query for stale Jobs.
-			for (Service managedService : managedServices) {
-				// Get the list of all Stale Jobs
-				List<ServiceJob> staleJobs = accessor.getTimedOutServiceJobs(managedService.getServiceId());
-				for (ServiceJob staleJob : staleJobs) {
-					// For each Stale Job, process its timeout.
-					serviceTaskManager.processTimedOutServiceJob(managedService.getServiceId(), staleJob);
+			int timedOut = serviceTaskManager.processTimedOutServiceJobs();
+			if (timedOut > 0) {
+				piazzaLogger.log(String.format("Handled %s Timed out Service Jobs.", timedOut), Severity.INFORMATIONAL);
+			}
+		}
+	}
+
+	/**
+	 * Task that will, every tick of the timeout wheel, handle the Service Jobs whose deadlines have passed.
+	 * <p>
+	 * Deadlines are scheduled as this Service Controller hands out Jobs. On the first tick, deadlines are also
+	 * scheduled for the Jobs already started in the shard this Service Controller polls, so that Jobs handed out
+	 * before a restart are still timed out promptly. Jobs handed out by a Service Controller that has stopped are left
+	 * to the slower {@link CheckTimeoutTask}.
+	 * </p>
+	 */
+	public class TimeoutWheelTask implements Runnable {
+		private boolean startedJobsScheduled = false;
+
+		@Override
+		public void run() {
+			if (!startedJobsScheduled) {
+				PollShardCoordinator.Shard shard = shardCoordinator.getShard();
+				int scheduled = serviceTaskManager.scheduleStartedServiceJobTimeouts(shard.getCount(), shard.getIndex());
+				if (scheduled > 0) {
+					piazzaLogger.log(String.format("Scheduled timeouts for %s started Service Jobs.", scheduled), Severity.INFORMATIONAL);
 				}
+				startedJobsScheduled = true;
+			}
+			int timedOut = serviceTaskManager.processExpiredServiceJobTimeouts();
+			if (timedOut > 0) {
+				piazzaLogger.log(String.format("Handled %s Timed out Service Jobs.", timedOut), Severity.INFORMATIONAL);
 			}
 		}
 	}
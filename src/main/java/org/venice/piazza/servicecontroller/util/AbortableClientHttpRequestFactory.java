@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.util;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+/**
+ * Request factory that keeps track of the HTTP request each Job has most recently made, so that the request can be
+ * aborted from another thread.
+ * <p>
+ * Interrupting a thread does not interrupt a blocking socket read. Without this, a cancelled Job would hold its thread
+ * until the User Service responds, or the request times out.
+ * </p>
+ * <p>
+ * Only requests made inside {@link #track(String, BooleanSupplier)} are tracked. Requests made by other callers, such
+ * as calls to other Piazza components, can never be aborted by a Job's cancellation. A request that a Job makes after
+ * it has been cancelled is aborted as soon as it is created, so an abort that arrives before the request is made is
+ * not lost.
+ * </p>
+ */
+public class AbortableClientHttpRequestFactory extends HttpComponentsClientHttpRequestFactory {
+	private final Map<String, HttpUriRequest> requests = new ConcurrentHashMap<>();
+	private final ThreadLocal<Span> currentJob = new ThreadLocal<>();
+
+	/**
+	 * The span of a Job on a thread. Closing it stops tracking the Job's requests.
+	 */
+	public interface TrackedJob extends AutoCloseable {
+		@Override
+		void close();
+	}
+
+	public AbortableClientHttpRequestFactory(HttpClient httpClient) {
+		super(httpClient);
+	}
+
+	/**
+	 * Tracks requests made by the calling thread as requests of the Job, until the returned span is closed. Must be
+	 * closed on the same thread, in a finally block or try-with-resources statement.
+	 * 
+	 * @param jobId
+	 *            The ID of the Job
+	 * @param cancelled
+	 *            Whether the Job has been cancelled. Checked after each request is tracked.
+	 * @return The span of the Job
+	 */
+	public TrackedJob track(final String jobId, final BooleanSupplier cancelled) {
+		currentJob.set(new Span(jobId, cancelled));
+		return () -> {
+			currentJob.remove();
+			requests.remove(jobId);
+		};
+	}
+
+	@Override
+	protected HttpUriRequest createHttpUriRequest(HttpMethod httpMethod, URI uri) {
+		HttpUriRequest request = super.createHttpUriRequest(httpMethod, uri);
+		Span span = currentJob.get();
+		if (span != null) {
+			requests.put(span.jobId, request);
+			// The Job is cancelled before it is aborted, so either the abort finds this request, or this finds the Job
+			// cancelled
+			if (span.cancelled.getAsBoolean()) {
+				request.abort();
+			}
+		}
+		return request;
+	}
+
+	/**
+	 * Aborts the request most recently made by the Job, releasing its connection. A thread blocked on the request then
+	 * fails with an I/O error.
+	 * 
+	 * @param jobId
+	 *            The ID of the Job
+	 * @return True if a request was aborted
+	 */
+	public boolean abort(String jobId) {
+		HttpUriRequest request = (jobId == null) ? null : requests.remove(jobId);
+		if ((request == null) || request.isAborted()) {
+			return false;
+		}
+		request.abort();
+		return true;
+	}
+
+	/**
+	 * The Job tracked on a thread.
+	 */
+	private static class Span {
+		private final String jobId;
+		private final BooleanSupplier cancelled;
+
+		Span(String jobId, BooleanSupplier cancelled) {
+			this.jobId = jobId;
+			this.cancelled = cancelled;
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import model.data.DataResource;
+import model.job.Job;
+import model.request.PiazzaJobRequest;
+import model.response.JobResponse;
+import model.status.StatusUpdate;
+
+/**
+ * Single point of JSON serialization for the ServiceController. All serialization goes through the Spring-managed
+ * ObjectMapper, so that every path uses the same settings, and no mapper is constructed per request.
+ * <p>
+ * ObjectReaders and ObjectWriters are immutable and thread-safe, and are cached per type. The types on the message and
+ * status paths are created up front; others are created on first use.
+ * </p>
+ */
+@Component
+public class JsonSerialization {
+	@Autowired
+	private ObjectMapper mapper;
+
+	private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+	private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+	@PostConstruct
+	public void initialize() {
+		for (Class<?> type : new Class<?>[] { StatusUpdate.class, DataResource.class, PiazzaJobRequest.class, Job.class,
+				JobResponse.class }) {
+			getReader(type);
+			getWriter(type);
+		}
+	}
+
+	/**
+	 * @return The shared ObjectMapper. It must not be reconfigured by callers.
+	 */
+	public ObjectMapper getMapper() {
+		return mapper;
+	}
+
+	/**
+	 * @return The cached reader for the type
+	 */
+	public ObjectReader getReader(Class<?> type) {
+		return readers.computeIfAbsent(type, mapper::readerFor);
+	}
+
+	/**
+	 * @return The cached writer for the type
+	 */
+	public ObjectWriter getWriter(Class<?> type) {
+		return writers.computeIfAbsent(type, mapper::writerFor);
+	}
+
+	/**
+	 * Deserializes the JSON content as the type.
+	 */
+	public <T> T read(String content, Class<T> type) throws IOException {
+		return getReader(type).readValue(content);
+	}
+
+	/**
+	 * Deserializes the JSON stream as the type.
+	 */
+	public <T> T read(InputStream content, Class<T> type) throws IOException {
+		return getReader(type).readValue(content);
+	}
+
+	/**
+	 * Serializes the value as JSON, using the writer for its runtime type.
+	 */
+	public String write(Object value) throws JsonProcessingException {
+		if (value == null) {
+			return mapper.writeValueAsString(null);
+		}
+		return getWriter(value.getClass()).writeValueAsString(value);
+	}
+}
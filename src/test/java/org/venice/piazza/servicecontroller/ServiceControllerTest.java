@@ -36,10 +36,12 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
 import org.springframework.web.client.ResourceAccessException;
+import org.venice.piazza.servicecontroller.async.AsynchronousServiceWorker;
 import org.venice.piazza.servicecontroller.controller.ServiceController;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
 import org.venice.piazza.servicecontroller.messaging.handlers.DeleteServiceHandler;
@@ -63,8 +65,10 @@ import model.response.ServiceIdResponse;
 import model.response.ServiceListResponse;
 import model.response.ServiceResponse;
 import model.response.SuccessResponse;
+import model.service.async.AsyncServiceInstance;
 import model.service.metadata.ExecuteServiceData;
 import model.service.metadata.Service;
+import model.status.StatusUpdate;
 import util.PiazzaLogger;
 @RunWith(PowerMockRunner.class)
 public class ServiceControllerTest {
@@ -93,6 +97,8 @@ public class ServiceControllerTest {
 	private PiazzaLogger loggerMock;
 	@Mock
 	private LocalValidatorFactoryBean validator;
+	@Mock
+	private AsynchronousServiceWorker asyncWorkerMock;
 
 	@Before
 	/** 
@@ -140,7 +146,7 @@ public class ServiceControllerTest {
 		Mockito.doReturn(testServiceId).when(rsHandlerMock).handle(rsj.getData());
 
 		// Should check to make sure each of the handlers are not null
-		PiazzaResponse piazzaResponse = sc.registerService(pjr).getBody();
+		PiazzaResponse piazzaResponse = sc.registerService(pjr, false, null, null).getBody();
 
 		assertEquals("The response String should match", ((ServiceIdResponse)piazzaResponse).data.getServiceId(), testServiceId);
 	}
@@ -152,9 +158,98 @@ public class ServiceControllerTest {
 	public void testRegisterServiceNullJobRequest() {
 		
 		// Should check to make sure each of the handlers are not null
-		PiazzaResponse piazzaResponse = sc.registerService(null).getBody();
+		PiazzaResponse piazzaResponse = sc.registerService(null, false, null, null).getBody();
 		assertThat("An ErrorResponse should be returned",piazzaResponse, instanceOf(ErrorResponse.class));
 	}
+
+	@Test
+	/**
+	 * Test registering a service that reports status by callback
+	 */
+	public void testRegisterServiceStatusCallback() {
+		PiazzaJobRequest pjr = new PiazzaJobRequest();
+		RegisterServiceJob rsj = new RegisterServiceJob();
+		rsj.setData(service);
+		pjr.jobType = rsj;
+		Mockito.doReturn("serviceId").when(rsHandlerMock).handle(rsj.getData());
+
+		// Only asynchronous services may opt in
+		ResponseEntity<PiazzaResponse> response = sc.registerService(pjr, true, null, null);
+		assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+		Mockito.verify(accessorMock, Mockito.never()).setStatusCallbackEnabled(Mockito.anyString(), Mockito.anyBoolean());
+
+		service.setIsAsynchronous(true);
+		response = sc.registerService(pjr, true, null, null);
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		Mockito.verify(accessorMock).setStatusCallbackEnabled("serviceId", true);
+	}
+
+	@Test
+	/**
+	 * Test registering an asynchronous service with its own poll intervals
+	 */
+	public void testRegisterServicePollIntervals() {
+		PiazzaJobRequest pjr = new PiazzaJobRequest();
+		RegisterServiceJob rsj = new RegisterServiceJob();
+		rsj.setData(service);
+		pjr.jobType = rsj;
+		Mockito.doReturn("serviceId").when(rsHandlerMock).handle(rsj.getData());
+
+		// Only asynchronous services are polled
+		ResponseEntity<PiazzaResponse> response = sc.registerService(pjr, false, 5, 60);
+		assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+
+		// Intervals must be positive and in order
+		service.setIsAsynchronous(true);
+		response = sc.registerService(pjr, false, 0, 60);
+		assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+		response = sc.registerService(pjr, false, 60, 5);
+		assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+		Mockito.verify(accessorMock, Mockito.never()).setPollIntervals(Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt());
+
+		response = sc.registerService(pjr, false, 5, 60);
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		Mockito.verify(accessorMock).setPollIntervals("serviceId", 5, 60);
+	}
+
+	@Test
+	/**
+	 * Test receiving the status of an instance from a service
+	 */
+	public void testReceiveStatusCallback() throws Exception {
+		// No status
+		ResponseEntity<PiazzaResponse> response = sc.receiveStatusCallback("owner", "serviceId", "instanceId", new StatusUpdate());
+		assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+
+		// Not permitted
+		StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_RUNNING);
+		response = sc.receiveStatusCallback("someone", "serviceId", "instanceId", statusUpdate);
+		assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
+
+		// No matching instance
+		Mockito.when(accessorMock.canUserReportServiceStatus("serviceId", "owner")).thenReturn(true);
+		response = sc.receiveStatusCallback("owner", "serviceId", "instanceId", statusUpdate);
+		assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+
+		// Before the instance has been recorded
+		Mockito.when(accessorMock.isStatusCallbackEnabled("serviceId")).thenReturn(true);
+		Mockito.when(asyncWorkerMock.deferStatusCallback("serviceId", "instanceId", statusUpdate)).thenReturn(true);
+		response = sc.receiveStatusCallback("owner", "serviceId", "instanceId", statusUpdate);
+		assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+		Mockito.verify(asyncWorkerMock, Mockito.never()).processStatusCallback(Mockito.any(), Mockito.any());
+
+		// Handed to the worker
+		AsyncServiceInstance instance = new AsyncServiceInstance("jobId", "serviceId", "instanceId", null, "TextDataType");
+		Mockito.when(accessorMock.getStatusCallbackInstance("serviceId", "instanceId")).thenReturn(instance);
+		response = sc.receiveStatusCallback("owner", "serviceId", "instanceId", statusUpdate);
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		Mockito.verify(asyncWorkerMock).processStatusCallback(instance, statusUpdate);
+
+		// Too many callbacks waiting
+		Mockito.doThrow(new TaskRejectedException("Full")).when(asyncWorkerMock).processStatusCallback(instance, statusUpdate);
+		response = sc.receiveStatusCallback("owner", "serviceId", "instanceId", statusUpdate);
+		assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+	}
 	
 	@Test
 	/**
@@ -242,9 +337,9 @@ public class ServiceControllerTest {
 		String testServiceId = "9a6baae2-bd74-4c4b-9a65-c45e8cd9060";
 		service.setServiceId(testServiceId);
 		Mockito.doReturn("Update Successful").when(usHandlerMock).handle(service);
-		Mockito.doReturn(service).when(accessorMock).getServiceById(Mockito.eq("9a6baae2-bd74-4c4b-9a65-c45e8cd9060"));
+		Mockito.doReturn(service).when(accessorMock).getServiceById(Mockito.eq("9a6baae2-bd74-4c4b-9a65-c45e8cd9060"), Mockito.eq(false));
 
-		ResponseEntity<PiazzaResponse> piazzaResponse = sc.updateServiceMetadata(testServiceId, service);
+		ResponseEntity<PiazzaResponse> piazzaResponse = sc.updateServiceMetadata(testServiceId, service, null, null, null);
 		assertThat("The update of service metadata should be successful", piazzaResponse.getBody(), instanceOf(SuccessResponse.class));
 	}
 
@@ -256,9 +351,9 @@ public class ServiceControllerTest {
 		String testServiceId = "9a6baae2-bd74-4c4b-9a65-c45e8cd9060";
 		service.setServiceId("123-23323bsr");
 		Mockito.doReturn("Update Successful").when(usHandlerMock).handle(service);
-		Mockito.doReturn(service).when(accessorMock).getServiceById(Mockito.eq(testServiceId));
+		Mockito.doReturn(service).when(accessorMock).getServiceById(Mockito.eq(testServiceId), Mockito.eq(false));
 
-		ResponseEntity<PiazzaResponse> piazzaResponse = sc.updateServiceMetadata(testServiceId, service);
+		ResponseEntity<PiazzaResponse> piazzaResponse = sc.updateServiceMetadata(testServiceId, service, null, null, null);
 		assertThat("The update of service metadata should be  successful", piazzaResponse.getBody(), instanceOf(SuccessResponse.class));
 	}
 
@@ -272,9 +367,9 @@ public class ServiceControllerTest {
 		String testServiceId = "9a6baae2-bd74-4c4b-9a65-c45e8cd9060";
 		service.setServiceId(testServiceId);
 		Mockito.doReturn("").when(usHandlerMock).handle(service);
-		Mockito.doReturn(service).when(accessorMock).getServiceById(Mockito.eq(testServiceId));
+		Mockito.doReturn(service).when(accessorMock).getServiceById(Mockito.eq(testServiceId), Mockito.eq(false));
 
-		ResponseEntity<PiazzaResponse> piazzaResponse = sc.updateServiceMetadata(testServiceId, service);
+		ResponseEntity<PiazzaResponse> piazzaResponse = sc.updateServiceMetadata(testServiceId, service, null, null, null);
 		assertThat("The update of service metadata should be unsuccessful", piazzaResponse.getBody(), instanceOf(ErrorResponse.class));
 	}
 
@@ -287,9 +382,9 @@ public class ServiceControllerTest {
 		String testServiceId = "9a6baae2-bd74-4c4b-9a65-c45e8cd9060";
 		service.setServiceId(testServiceId);
 		Mockito.doThrow(new ResourceAccessException("There was an error")).when(usHandlerMock).handle(service);
-		Mockito.doReturn(service).when(accessorMock).getServiceById(Mockito.eq(testServiceId));
+		Mockito.doReturn(service).when(accessorMock).getServiceById(Mockito.eq(testServiceId), Mockito.eq(false));
 
-		ResponseEntity<PiazzaResponse> piazzaResponse = sc.updateServiceMetadata(testServiceId, service);
+		ResponseEntity<PiazzaResponse> piazzaResponse = sc.updateServiceMetadata(testServiceId, service, null, null, null);
 		assertThat("The update of service metadata should be unsuccessful", piazzaResponse.getBody(), instanceOf(ErrorResponse.class));
 	}
 
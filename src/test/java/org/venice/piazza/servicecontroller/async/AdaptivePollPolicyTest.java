@@ -0,0 +1,217 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.servicecontroller.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
+import org.venice.piazza.servicecontroller.data.model.AsyncPollScheduleEntity;
+import org.venice.piazza.servicecontroller.data.model.ServicePollIntervalEntity;
+import org.venice.piazza.servicecontroller.executor.SupervisedScheduler;
+
+import model.service.async.AsyncServiceInstance;
+import model.status.StatusUpdate;
+import util.PiazzaLogger;
+
+/**
+ * Tests the adaptive scheduling of Asynchronous Service Instance polls
+ */
+public class AdaptivePollPolicyTest {
+	@Mock
+	private DatabaseAccessor accessor;
+	@Mock
+	private PiazzaLogger logger;
+	@Mock
+	private SupervisedScheduler scheduler;
+	@InjectMocks
+	private AdaptivePollPolicy pollPolicy;
+
+	private AsyncServiceInstance mockInstance = new AsyncServiceInstance("job1", "service1", "instance1", null, "TextDataType");
+
+	/**
+	 * Test initialization
+	 */
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+
+		ReflectionTestUtils.setField(pollPolicy, "MIN_INTERVAL_SECONDS", 10);
+		ReflectionTestUtils.setField(pollPolicy, "MAX_INTERVAL_SECONDS", 600);
+		ReflectionTestUtils.setField(pollPolicy, "BACKOFF_MULTIPLIER", 2.0);
+		ReflectionTestUtils.setField(pollPolicy, "JITTER", 0.2);
+		ReflectionTestUtils.setField(pollPolicy, "CALLBACK_FALLBACK_POLL_SECONDS", 900);
+		ReflectionTestUtils.setField(pollPolicy, "LEASE_SECONDS", 120);
+	}
+
+	/**
+	 * Tests that the interval backs off while the Status is unchanged, up to the maximum, and resets on a change
+	 */
+	@Test
+	public void testNextInterval() {
+		assertEquals(20000, pollPolicy.getNextInterval(10000, 10000, 600000, false));
+		assertEquals(600000, pollPolicy.getNextInterval(400000, 10000, 600000, false));
+		assertEquals(10000, pollPolicy.getNextInterval(400000, 10000, 600000, true));
+	}
+
+	/**
+	 * Tests that jitter stays within its fraction of the interval
+	 */
+	@Test
+	public void testJitter() {
+		for (int i = 0; i < 100; i++) {
+			long interval = pollPolicy.applyJitter(10000);
+			assertTrue(interval >= 8000 && interval <= 12000);
+		}
+		ReflectionTestUtils.setField(pollPolicy, "JITTER", 0.0);
+		assertEquals(10000, pollPolicy.applyJitter(10000));
+	}
+
+	/**
+	 * Tests the bounds given to new instances, from the defaults, Service overrides, and Status callbacks
+	 */
+	@Test
+	public void testScheduleFirstPoll() {
+		// Defaults
+		assertSchedule(10000, 600000);
+
+		// Service overrides, with the maximum never below the minimum
+		Mockito.doReturn(new ServicePollIntervalEntity("service1", 30, null)).when(accessor).getPollIntervals("service1");
+		assertSchedule(30000, 600000);
+		Mockito.doReturn(new ServicePollIntervalEntity("service1", 30, 20)).when(accessor).getPollIntervals("service1");
+		assertSchedule(30000, 30000);
+
+		// Status callbacks are only polled at the fallback interval
+		Mockito.doReturn(true).when(accessor).isStatusCallbackEnabled("service1");
+		assertSchedule(900000, 900000);
+	}
+
+	/**
+	 * Tests that a later poll backs off from the saved schedule, and is written back in a batch
+	 */
+	@Test
+	public void testScheduleNextPoll() {
+		AsyncPollScheduleEntity schedule = new AsyncPollScheduleEntity("job1", "service1", 10000, 600000);
+		Mockito.doReturn(schedule).when(accessor).getPollSchedule("job1");
+		mockInstance.setStatus(new StatusUpdate(StatusUpdate.STATUS_RUNNING));
+
+		long before = System.currentTimeMillis();
+		pollPolicy.scheduleNextPoll(mockInstance, false);
+		assertEquals(20000, schedule.getIntervalMs());
+		assertTrue(schedule.getNextPollAt() >= before + 16000);
+		assertEquals(StatusUpdate.STATUS_RUNNING, schedule.getLastStatus());
+		pollPolicy.scheduleNextPoll(mockInstance, true);
+		assertEquals(10000, schedule.getIntervalMs());
+		Mockito.verify(accessor, Mockito.never()).savePollSchedule(schedule);
+
+		// Both polls of the instance are written as one
+		pollPolicy.flushSchedules();
+		Mockito.verify(accessor).updatePollSchedules(Collections.singletonList(schedule));
+		pollPolicy.flushSchedules();
+		Mockito.verify(accessor, Mockito.times(1)).updatePollSchedules(Mockito.anyListOf(AsyncPollScheduleEntity.class));
+	}
+
+	/**
+	 * Tests that schedules are kept for the next write if a write fails
+	 */
+	@Test
+	public void testFlushFailure() {
+		AsyncPollScheduleEntity schedule = new AsyncPollScheduleEntity("job1", "service1", 10000, 600000);
+		Mockito.doReturn(schedule).when(accessor).getPollSchedule("job1");
+		pollPolicy.scheduleNextPoll(mockInstance, false);
+		Mockito.doThrow(new IllegalStateException("Database unavailable")).doNothing().when(accessor)
+				.updatePollSchedules(Mockito.anyListOf(AsyncPollScheduleEntity.class));
+
+		try {
+			pollPolicy.flushSchedules();
+			fail("The failed write should be reported.");
+		} catch (IllegalStateException exception) {
+			// Expected
+		}
+		pollPolicy.flushSchedules();
+
+		Mockito.verify(accessor, Mockito.times(2)).updatePollSchedules(Collections.singletonList(schedule));
+	}
+
+	/**
+	 * Tests that claimed instances are built from their schedules, and reuse the claimed schedule when rescheduled
+	 */
+	@Test
+	public void testClaimDueInstances() {
+		AsyncPollScheduleEntity schedule = new AsyncPollScheduleEntity("job1", "service1", 10000, 600000);
+		schedule.setInstanceId("instance1");
+		schedule.setOutputType("TextDataType");
+		schedule.setLastStatus(StatusUpdate.STATUS_RUNNING);
+		schedule.setErrorCount(1);
+		AsyncPollScheduleEntity legacy = new AsyncPollScheduleEntity("job2", "service1", 10000, 600000);
+		AsyncPollScheduleEntity completed = new AsyncPollScheduleEntity("job3", "service1", 10000, 600000);
+		Mockito.doReturn(Arrays.asList(schedule, legacy, completed)).when(accessor).claimDueSchedules(2, 0, 120000);
+		AsyncServiceInstance legacyInstance = new AsyncServiceInstance("job2", "service1", "instance2", null, "TextDataType");
+		Mockito.doReturn(legacyInstance).when(accessor).getInstanceByJobId("job2");
+
+		List<AsyncServiceInstance> instances = pollPolicy.claimDueInstances(2, 0);
+
+		assertEquals(2, instances.size());
+		assertEquals("instance1", instances.get(0).getInstanceId());
+		assertEquals(StatusUpdate.STATUS_RUNNING, instances.get(0).getStatus().getStatus());
+		assertEquals(1, (int) instances.get(0).getNumberErrorResponses());
+		assertEquals(legacyInstance, instances.get(1));
+		// Instances since completed are removed
+		Mockito.verify(accessor).deleteAsyncServiceInstance("job3");
+		// Only schedules that predate holding their instance need the instance read
+		Mockito.verify(accessor, Mockito.never()).getInstanceByJobId("job1");
+
+		// Rescheduling uses the claimed schedule without reading it again
+		pollPolicy.scheduleNextPoll(instances.get(0), false);
+		Mockito.verify(accessor, Mockito.never()).getPollSchedule("job1");
+		assertEquals(20000, schedule.getIntervalMs());
+	}
+
+	/**
+	 * Tests that instances started without a schedule are scheduled
+	 */
+	@Test
+	public void testScheduleUnscheduledInstances() {
+		Mockito.doReturn(Collections.singletonList(mockInstance)).when(accessor).getUnscheduledServiceInstances();
+
+		pollPolicy.scheduleUnscheduledInstances();
+
+		Mockito.verify(accessor).savePollSchedule(Mockito.any(AsyncPollScheduleEntity.class));
+	}
+
+	private void assertSchedule(long minIntervalMs, long maxIntervalMs) {
+		pollPolicy.scheduleFirstPoll(mockInstance);
+		ArgumentCaptor<AsyncPollScheduleEntity> schedule = ArgumentCaptor.forClass(AsyncPollScheduleEntity.class);
+		Mockito.verify(accessor, Mockito.atLeastOnce()).savePollSchedule(schedule.capture());
+		assertEquals("job1", schedule.getValue().getJobId());
+		assertEquals(minIntervalMs, schedule.getValue().getMinIntervalMs());
+		assertEquals(maxIntervalMs, schedule.getValue().getMaxIntervalMs());
+		assertEquals(minIntervalMs, schedule.getValue().getIntervalMs());
+	}
+}
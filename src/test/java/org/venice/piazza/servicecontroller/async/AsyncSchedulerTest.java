@@ -15,7 +15,6 @@
  **/
 package org.venice.piazza.servicecontroller.async;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 
 import org.junit.Before;
@@ -26,6 +25,8 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
+import org.venice.piazza.servicecontroller.executor.SupervisedScheduler;
+import org.venice.piazza.servicecontroller.executor.SupervisedScheduler.SupervisedTask;
 
 import model.service.async.AsyncServiceInstance;
 
@@ -40,6 +41,12 @@ public class AsyncSchedulerTest {
 	private DatabaseAccessor accessor;
 	@Mock
 	private AsynchronousServiceWorker worker;
+	@Mock
+	private AdaptivePollPolicy pollPolicy;
+	@Mock
+	private SupervisedScheduler supervisedScheduler;
+	@Mock
+	private PollShardCoordinator shardCoordinator;
 	@InjectMocks
 	private AsyncServiceInstanceScheduler scheduler;
 
@@ -52,24 +59,43 @@ public class AsyncSchedulerTest {
 	public void setup() {
 		MockitoAnnotations.initMocks(this);
 
-		ReflectionTestUtils.setField(scheduler, "STALE_INSTANCE_THRESHOLD_SECONDS", 5);
 		ReflectionTestUtils.setField(scheduler, "POLL_FREQUENCY_SECONDS", 5);
+		Mockito.doReturn(new PollShardCoordinator.Shard(3, 1)).when(shardCoordinator).getShard();
 	}
 
 	/**
-	 * Tests polling of stale async instances.
+	 * Tests starting and stopping the polling of stale async instances.
 	 */
 	@Test
-	public void testPolling() throws Exception {
+	public void testPolling() {
 		// Mock
-		Mockito.doReturn(new ArrayList<AsyncServiceInstance>(Arrays.asList(mockInstance))).when(accessor).getStaleServiceInstances();
+		SupervisedTask pollTask = Mockito.mock(SupervisedTask.class);
+		Mockito.doReturn(pollTask).when(supervisedScheduler).schedule(Mockito.eq("asyncPoll"), Mockito.any(Runnable.class),
+				Mockito.anyLong(), Mockito.eq(5000L));
 
-		// Start Polling
+		// Start Polling, then cancel.
 		scheduler.startPolling();
-
-		// Wait a couple of seconds on the main thread, then cancel.
-		Thread.sleep(1000); //NOSONAR
 		scheduler.stopPolling();
+
+		Mockito.verify(pollTask).cancel();
+	}
+
+	/**
+	 * Tests that due instances are polled, and that legacy instances are scheduled only on the first cycle
+	 */
+	@Test
+	public void testPollDueInstances() {
+		AsyncServiceInstance first = new AsyncServiceInstance("job1", "service", "instance1", null, "TextDataType");
+		AsyncServiceInstance second = new AsyncServiceInstance("job2", "service", "instance2", null, "TextDataType");
+		Mockito.doReturn(Arrays.asList(first, second)).when(pollPolicy).claimDueInstances(3, 1);
+
+		AsyncServiceInstanceScheduler.PollServiceTask task = scheduler.new PollServiceTask();
+		task.run();
+		task.run();
+
+		Mockito.verify(pollPolicy, Mockito.times(1)).scheduleUnscheduledInstances();
+		Mockito.verify(worker, Mockito.times(2)).pollStatus(first);
+		Mockito.verify(worker, Mockito.times(2)).pollStatus(second);
 	}
 
 	/**
@@ -15,6 +15,7 @@
  **/
 package org.venice.piazza.servicecontroller.async;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.when;
 
@@ -23,19 +24,26 @@ import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
-import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
+import org.venice.piazza.servicecontroller.messaging.StatusUpdatePublisher;
 import org.venice.piazza.servicecontroller.messaging.handlers.ExecuteServiceHandler;
+import org.venice.piazza.servicecontroller.result.ResultBuffer;
+import org.venice.piazza.servicecontroller.result.ResultBufferFactory;
+import org.venice.piazza.servicecontroller.util.JsonSerialization;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -72,9 +80,11 @@ public class AsyncServiceWorkerTest {
 	@Mock
 	private RestTemplate restTemplate;
 	@Mock
-	private RabbitTemplate rabbitTemplate;
+	private StatusUpdatePublisher statusPublisher;
 	@Mock
-	private Queue updateJobsQueue;
+	private ResultBufferFactory resultBufferFactory;
+	@Mock
+	private AdaptivePollPolicy pollPolicy;
 
 	@InjectMocks
 	private AsynchronousServiceWorker worker;
@@ -91,6 +101,15 @@ public class AsyncServiceWorkerTest {
 	public void setup() {
 		MockitoAnnotations.initMocks(this);
 
+		// Database changes reported with a Status are made immediately
+		Mockito.doAnswer(invocation -> {
+			Runnable databaseUpdate = (Runnable) invocation.getArguments()[1];
+			if (databaseUpdate != null) {
+				databaseUpdate.run();
+			}
+			return null;
+		}).when(statusPublisher).publish(Mockito.any(StatusUpdate.class), Mockito.any(Runnable.class));
+
 		// UUID Factory always generates a specific GUID
 		when(uuidFactory.getUUID()).thenReturn("123456");
 
@@ -121,6 +140,9 @@ public class AsyncServiceWorkerTest {
 		ReflectionTestUtils.setField(worker, "DELETE_ENDPOINT", "delete");
 		ReflectionTestUtils.setField(worker, "STATUS_ERROR_LIMIT", 10);
 		ReflectionTestUtils.setField(worker, "SPACE", "test");
+		JsonSerialization serialization = new JsonSerialization();
+		ReflectionTestUtils.setField(serialization, "mapper", new ObjectMapper());
+		ReflectionTestUtils.setField(worker, "serialization", serialization);
 	}
 
 	/**
@@ -136,8 +158,68 @@ public class AsyncServiceWorkerTest {
 				.when(executeServiceHandler).handle(any(ExecuteServiceJob.class));
 		// Test
 		worker.executeService(mockJob);
-		// Verify that the database attempted to insert the newly created Instance
+		// Verify that the database attempted to insert the newly created Instance, and scheduled its first poll
 		Mockito.verify(accessor, Mockito.times(1)).addAsyncServiceInstance(any(AsyncServiceInstance.class));
+		Mockito.verify(pollPolicy, Mockito.times(1)).scheduleFirstPoll(any(AsyncServiceInstance.class));
+	}
+
+	/**
+	 * Test that instances of a Service reporting Status by callback are recorded for callbacks
+	 */
+	@Test
+	public void testExecuteStatusCallback() throws JsonProcessingException, InterruptedException {
+		JobResponse mockResponse = new JobResponse("instanceId");
+		Mockito.doReturn(new ResponseEntity<String>(objectMapper.writeValueAsString(mockResponse), HttpStatus.OK))
+				.when(executeServiceHandler).handle(any(ExecuteServiceJob.class));
+		Mockito.doReturn(true).when(accessor).isStatusCallbackEnabled("serviceId");
+
+		worker.executeService(mockJob);
+
+		// The instance is added before callbacks are matched to it
+		ArgumentCaptor<AsyncServiceInstance> instance = ArgumentCaptor.forClass(AsyncServiceInstance.class);
+		InOrder inOrder = Mockito.inOrder(accessor, pollPolicy);
+		inOrder.verify(accessor).addAsyncServiceInstance(instance.capture());
+		inOrder.verify(pollPolicy).scheduleFirstPoll(instance.getValue());
+		inOrder.verify(accessor).addStatusCallbackInstance(instance.getValue());
+		assertEquals("instanceId", instance.getValue().getInstanceId());
+		Mockito.verifyZeroInteractions(statusPublisher);
+	}
+
+	/**
+	 * Test that a Status reported by callback before the instance was recorded is applied once it is
+	 */
+	@Test
+	public void testExecuteEarlyStatusCallback() throws JsonProcessingException, InterruptedException {
+		JobResponse mockResponse = new JobResponse("instanceId");
+		Mockito.doReturn(new ResponseEntity<String>(objectMapper.writeValueAsString(mockResponse), HttpStatus.OK))
+				.when(executeServiceHandler).handle(any(ExecuteServiceJob.class));
+		Mockito.doReturn(true).when(accessor).isStatusCallbackEnabled("serviceId");
+		Mockito.doReturn(mockService).when(accessor).getServiceById(Mockito.anyString());
+		Mockito.doReturn(objectMapper.writeValueAsString(new StatusUpdate(StatusUpdate.STATUS_FAIL))).when(accessor)
+				.addStatusCallbackInstance(any(AsyncServiceInstance.class));
+
+		worker.executeService(mockJob);
+
+		ArgumentCaptor<StatusUpdate> statusUpdate = ArgumentCaptor.forClass(StatusUpdate.class);
+		Mockito.verify(statusPublisher).publish(statusUpdate.capture(), Mockito.any(Runnable.class));
+		assertEquals(StatusUpdate.STATUS_FAIL, statusUpdate.getValue().getStatus());
+	}
+
+	/**
+	 * Test that a Status reported by callback is processed without polling the Service
+	 */
+	@Test
+	public void testStatusCallback() {
+		Mockito.doReturn(mockService).when(accessor).getServiceById(Mockito.eq(mockInstance.getServiceId()));
+		StatusUpdate mockStatus = new StatusUpdate(StatusUpdate.STATUS_FAIL);
+
+		worker.processStatusCallback(mockInstance, mockStatus);
+
+		Mockito.verify(restTemplate, Mockito.never()).getForObject(Mockito.anyString(), Mockito.any());
+		Mockito.verify(accessor).deleteAsyncServiceInstance(mockInstance.getJobId());
+		ArgumentCaptor<StatusUpdate> statusUpdate = ArgumentCaptor.forClass(StatusUpdate.class);
+		Mockito.verify(statusPublisher).publish(statusUpdate.capture(), Mockito.any(Runnable.class));
+		assertEquals(StatusUpdate.STATUS_FAIL, statusUpdate.getValue().getStatus());
 	}
 
 	/**
@@ -186,8 +268,10 @@ public class AsyncServiceWorkerTest {
 		// Test
 		worker.pollStatus(mockInstance);
 
-		// Verify
-		Mockito.verify(accessor, Mockito.times(1)).updateAsyncServiceInstance(Mockito.any(AsyncServiceInstance.class));
+		// Verify that the new Status is recorded with the next poll, rather than updating the instance directly
+		Mockito.verify(accessor, Mockito.never()).updateAsyncServiceInstance(Mockito.any(AsyncServiceInstance.class));
+		Mockito.verify(pollPolicy, Mockito.times(1)).scheduleNextPoll(mockInstance, false);
+		assertEquals(StatusUpdate.STATUS_RUNNING, mockInstance.getStatus().getStatus());
 	}
 
 	/**
@@ -207,6 +291,10 @@ public class AsyncServiceWorkerTest {
 
 		// Verify
 		Mockito.verify(accessor, Mockito.times(1)).deleteAsyncServiceInstance(Mockito.eq(mockInstance.getJobId()));
+		ArgumentCaptor<StatusUpdate> statusUpdate = ArgumentCaptor.forClass(StatusUpdate.class);
+		Mockito.verify(statusPublisher).publish(statusUpdate.capture(), Mockito.any(Runnable.class));
+		assertEquals(StatusUpdate.STATUS_ERROR, statusUpdate.getValue().getStatus());
+		assertEquals(mockInstance.getJobId(), statusUpdate.getValue().getJobId());
 	}
 
 	/**
@@ -221,9 +309,10 @@ public class AsyncServiceWorkerTest {
 		// Mock the status fetch
 		Mockito.doReturn(mockStatus).when(restTemplate).getForObject(Mockito.eq(url), Mockito.eq(StatusUpdate.class));
 		// Mock the result fetch
-		String getResultUrl = String.format("%s/%s/%s", mockService.getUrl(), "results", mockInstance.getServiceId());
-		Mockito.doReturn(new ResponseEntity<String>(objectMapper.writeValueAsString(new DataResult()), HttpStatus.OK)).when(restTemplate)
-				.getForEntity(Mockito.eq(getResultUrl), Mockito.eq(String.class));
+		String getResultUrl = String.format("%s/%s/%s", mockService.getUrl(), "results", mockInstance.getInstanceId());
+		Mockito.doReturn(new ResponseEntity<ResultBuffer>(ResultBuffer.of(objectMapper.writeValueAsString(new DataResult())), HttpStatus.OK))
+				.when(restTemplate).execute(Mockito.eq(getResultUrl), Mockito.eq(HttpMethod.GET), Mockito.any(RequestCallback.class),
+						Mockito.any(ResponseExtractor.class), Mockito.<Object> anyVararg());
 
 		// Test
 		worker.pollStatus(mockInstance);
@@ -250,6 +339,9 @@ public class AsyncServiceWorkerTest {
 		// Mock an instance that is above the threshold
 		instance.setNumberErrorResponses(15);
 		worker.updateFailureCount(instance);
+
+		// Only the instance below the threshold is polled again, and backs off
+		Mockito.verify(pollPolicy, Mockito.times(1)).scheduleNextPoll(instance, false);
 	}
 
 	/**
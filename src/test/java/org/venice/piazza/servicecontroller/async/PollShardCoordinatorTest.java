@@ -0,0 +1,103 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.venice.piazza.servicecontroller.async;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
+import org.venice.piazza.servicecontroller.executor.SupervisedScheduler;
+import org.venice.piazza.servicecontroller.executor.SupervisedScheduler.SupervisedTask;
+
+import util.PiazzaLogger;
+
+/**
+ * Tests the division of async polling between Service Controllers
+ */
+public class PollShardCoordinatorTest {
+	@Mock
+	private DatabaseAccessor accessor;
+	@Mock
+	private SupervisedScheduler scheduler;
+	@Mock
+	private PiazzaLogger logger;
+	@InjectMocks
+	private PollShardCoordinator coordinator;
+
+	/**
+	 * Test initialization
+	 */
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+
+		ReflectionTestUtils.setField(coordinator, "HEARTBEAT_INTERVAL_SECONDS", 10);
+		ReflectionTestUtils.setField(coordinator, "HEARTBEAT_TIMEOUT_SECONDS", 30);
+	}
+
+	/**
+	 * Tests that each live Service Controller takes the shard at its place among all live Service Controllers
+	 */
+	@Test
+	public void testShardFromLiveNodes() {
+		String nodeId = coordinator.getNodeId();
+
+		// Polls everything until the first heartbeat
+		assertEquals(1, coordinator.getShard().getCount());
+		assertEquals(0, coordinator.getShard().getIndex());
+
+		Mockito.doReturn(Arrays.asList("a", nodeId, "z")).when(accessor).heartbeatNode(nodeId, 30000);
+		coordinator.heartbeat();
+		assertEquals(3, coordinator.getShard().getCount());
+		assertEquals(1, coordinator.getShard().getIndex());
+
+		// Another node stops
+		Mockito.doReturn(Arrays.asList(nodeId, "z")).when(accessor).heartbeatNode(nodeId, 30000);
+		coordinator.heartbeat();
+		assertEquals(2, coordinator.getShard().getCount());
+		assertEquals(0, coordinator.getShard().getIndex());
+
+		// Not recorded as live; poll everything rather than nothing
+		Mockito.doReturn(Collections.singletonList("z")).when(accessor).heartbeatNode(nodeId, 30000);
+		coordinator.heartbeat();
+		assertEquals(1, coordinator.getShard().getCount());
+	}
+
+	/**
+	 * Tests that the heartbeat is scheduled on start, and the node is removed on stop
+	 */
+	@Test
+	public void testStartStop() {
+		SupervisedTask heartbeatTask = Mockito.mock(SupervisedTask.class);
+		Mockito.doReturn(heartbeatTask).when(scheduler).schedule(Mockito.eq("asyncPollHeartbeat"), Mockito.any(Runnable.class),
+				Mockito.eq(0L), Mockito.eq(10000L));
+
+		coordinator.start();
+		coordinator.stop();
+
+		Mockito.verify(heartbeatTask).cancel();
+		Mockito.verify(accessor).removeNode(coordinator.getNodeId());
+	}
+}
@@ -14,11 +14,18 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.client.ResourceAccessException;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
 import org.venice.piazza.servicecontroller.taskmanaged.ServiceTaskManager;
 import util.PiazzaLogger;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 public class TaskManagedControllerTest {
 
     private ExecuteServiceJob executeServiceJob;
@@ -86,6 +93,72 @@ public class TaskManagedControllerTest {
         Assert.assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, this.controller.updateServiceJobStatus("my_username", "unknownEx", "my_job_id", statusUpdate).getStatusCode());
     }
 
+    @Test
+    public void testWaitForNextServiceJobFromQueue() throws InvalidInputException {
+        ReflectionTestUtils.setField(this.controller, "MAX_WAIT_SECONDS", 60);
+        Mockito.when(this.databaseAccessor.canUserAccessServiceQueue(Mockito.any(), Mockito.eq("my_username")))
+                .thenReturn(true);
+        CompletableFuture<ExecuteServiceJob> nextJob = new CompletableFuture<>();
+        Mockito.when(this.serviceTaskManager.awaitNextJobFromQueue("my_service_id")).thenReturn(nextJob);
+        CompletableFuture<ExecuteServiceJob> failedJob = new CompletableFuture<>();
+        failedJob.completeExceptionally(new InvalidInputException("Not an ExecuteServiceJob"));
+        Mockito.when(this.serviceTaskManager.awaitNextJobFromQueue("invalidInputException_id")).thenReturn(failedJob);
+
+        // The response waits for a Job
+        DeferredResult<ResponseEntity<PiazzaResponse>> result = this.controller.waitForNextServiceJobFromQueue("my_username", "my_service_id", 30);
+        Assert.assertFalse(result.hasResult());
+        nextJob.complete(this.executeServiceJob);
+        Assert.assertEquals(HttpStatus.OK, ((ResponseEntity) result.getResult()).getStatusCode());
+
+        Assert.assertEquals(HttpStatus.NOT_FOUND,
+                ((ResponseEntity) this.controller.waitForNextServiceJobFromQueue("my_username", "invalidInputException_id", 30).getResult()).getStatusCode());
+        Assert.assertEquals(HttpStatus.UNAUTHORIZED,
+                ((ResponseEntity) this.controller.waitForNextServiceJobFromQueue("an_invalid_user", "my_service_id", 30).getResult()).getStatusCode());
+        Assert.assertEquals(HttpStatus.BAD_REQUEST,
+                ((ResponseEntity) this.controller.waitForNextServiceJobFromQueue("my_username", "my_service_id", 61).getResult()).getStatusCode());
+    }
+
+    @Test
+    public void testGetNextServiceJobsFromQueue() throws InvalidInputException {
+        ReflectionTestUtils.setField(this.controller, "BATCH_MAX_SIZE", 100);
+        Mockito.when(this.databaseAccessor.canUserAccessServiceQueue(Mockito.any(), Mockito.eq("my_username")))
+                .thenReturn(true);
+        Mockito.when(this.serviceTaskManager.getNextJobsFromQueue("my_service_id", 10))
+                .thenReturn(Collections.singletonList(this.executeServiceJob));
+        Mockito.when(this.serviceTaskManager.getNextJobsFromQueue("unknownException_id", 10))
+                .thenThrow(RuntimeException.class);
+
+        ResponseEntity response = this.controller.getNextServiceJobsFromQueue("my_username", "my_service_id", 10);
+        Assert.assertEquals(HttpStatus.OK, response.getStatusCode());
+        Assert.assertEquals(1, ((List) response.getBody()).size());
+        Assert.assertEquals(HttpStatus.UNAUTHORIZED, this.controller.getNextServiceJobsFromQueue("an_invalid_user", "my_service_id", 10).getStatusCode());
+        Assert.assertEquals(HttpStatus.BAD_REQUEST, this.controller.getNextServiceJobsFromQueue("my_username", "my_service_id", 0).getStatusCode());
+        Assert.assertEquals(HttpStatus.BAD_REQUEST, this.controller.getNextServiceJobsFromQueue("my_username", "my_service_id", 101).getStatusCode());
+        Assert.assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, this.controller.getNextServiceJobsFromQueue("my_username", "unknownException_id", 10).getStatusCode());
+    }
+
+    @Test
+    public void testUpdateServiceJobStatuses() throws InvalidInputException {
+        ReflectionTestUtils.setField(this.controller, "BATCH_MAX_SIZE", 100);
+        Mockito.when(this.databaseAccessor.canUserAccessServiceQueue(Mockito.any(), Mockito.eq("my_username")))
+                .thenReturn(true);
+
+        StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_SUCCESS);
+        statusUpdate.setJobId("my_job_id");
+        StatusUpdate noJobIdUpdate = new StatusUpdate(StatusUpdate.STATUS_SUCCESS);
+        List<StatusUpdate> statusUpdates = Collections.singletonList(statusUpdate);
+
+        Mockito.when(this.serviceTaskManager.processStatusUpdates("my_service_id", statusUpdates))
+                .thenReturn(Collections.singletonMap("my_job_id", "Cannot find the specified Job"));
+
+        ResponseEntity response = this.controller.updateServiceJobStatuses("my_username", "my_service_id", statusUpdates);
+        Assert.assertEquals(HttpStatus.OK, response.getStatusCode());
+        Assert.assertEquals(0, ((Map) response.getBody()).get("processed"));
+        Assert.assertEquals(HttpStatus.UNAUTHORIZED, this.controller.updateServiceJobStatuses("an_invalid_user", "my_service_id", statusUpdates).getStatusCode());
+        Assert.assertEquals(HttpStatus.BAD_REQUEST, this.controller.updateServiceJobStatuses("my_username", "my_service_id",
+                Collections.singletonList(noJobIdUpdate)).getStatusCode());
+    }
+
     @Test
     public void testGetServiceQueueData() throws InvalidInputException {
         Service unmanagedService = new Service();
@@ -7,15 +7,20 @@ import model.response.Pagination;
 import model.service.async.AsyncServiceInstance;
 import model.service.metadata.Service;
 import model.service.taskmanaged.ServiceJob;
+import model.status.StatusUpdate;
 import org.assertj.core.api.Fail;
+import org.joda.time.DateTime;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.data.domain.Page;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
 import org.springframework.web.client.ResourceAccessException;
 import org.venice.piazza.common.hibernate.dao.AsyncServiceInstanceDao;
 import org.venice.piazza.common.hibernate.dao.ServiceJobDao;
@@ -25,12 +30,31 @@ import org.venice.piazza.common.hibernate.entity.AsyncServiceInstanceEntity;
 import org.venice.piazza.common.hibernate.entity.JobEntity;
 import org.venice.piazza.common.hibernate.entity.ServiceEntity;
 import org.venice.piazza.common.hibernate.entity.ServiceJobEntity;
+import org.venice.piazza.servicecontroller.data.accessor.AsyncPollScheduleDao;
+import org.venice.piazza.servicecontroller.data.accessor.ControllerNodeDao;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
+import org.venice.piazza.servicecontroller.data.accessor.JobBatchDao;
+import org.venice.piazza.servicecontroller.data.accessor.OutboxMessageDao;
+import org.venice.piazza.servicecontroller.data.accessor.ServiceJobQueueDao;
+import org.venice.piazza.servicecontroller.data.accessor.ServicePollIntervalDao;
+import org.venice.piazza.servicecontroller.data.accessor.StatusCallbackInstanceDao;
+import org.venice.piazza.servicecontroller.data.accessor.StatusCallbackServiceDao;
+import org.venice.piazza.servicecontroller.data.cache.ServiceCache;
+import org.venice.piazza.servicecontroller.data.cache.ServiceCacheSynchronizer;
+import org.venice.piazza.servicecontroller.data.model.AsyncPollScheduleEntity;
+import org.venice.piazza.servicecontroller.data.model.OutboxMessageEntity;
+import org.venice.piazza.servicecontroller.data.model.ServiceJobQueueEntity;
+import org.venice.piazza.servicecontroller.data.model.ServicePollIntervalEntity;
+import org.venice.piazza.servicecontroller.data.model.StatusCallbackInstanceEntity;
+import org.venice.piazza.servicecontroller.data.model.StatusCallbackServiceEntity;
+import org.springframework.test.util.ReflectionTestUtils;
 import util.PiazzaLogger;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 public class DatabaseAccessorTest {
 
@@ -48,18 +72,47 @@ public class DatabaseAccessorTest {
     @Mock
     private JobDao jobDao;
     @Mock
+    private JobBatchDao jobBatchDao;
+    @Mock
     ServiceDao serviceDao;
     @Mock
     ServiceJobDao serviceJobDao;
     @Mock
     AsyncServiceInstanceDao asyncServiceInstanceDao;
+    @Mock
+    ServiceCacheSynchronizer serviceCacheSynchronizer;
+    @Mock
+    OutboxMessageDao outboxMessageDao;
+    @Mock
+    StatusCallbackServiceDao statusCallbackServiceDao;
+    @Mock
+    StatusCallbackInstanceDao statusCallbackInstanceDao;
+    @Mock
+    AsyncPollScheduleDao asyncPollScheduleDao;
+    @Mock
+    ServicePollIntervalDao servicePollIntervalDao;
+    @Mock
+    ControllerNodeDao controllerNodeDao;
+    @Mock
+    ServiceJobQueueDao serviceJobQueueDao;
+    @Mock
+    JdbcTemplate jdbcTemplate;
 
     @InjectMocks
     private DatabaseAccessor accessor;
 
+    private ServiceCache serviceCache = new ServiceCache();
+
     @Before
     public void setup() {
         MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(this.serviceCache, "MAX_SIZE", 10);
+        ReflectionTestUtils.setField(this.serviceCache, "TTL_SECONDS", 60);
+        ReflectionTestUtils.setField(this.accessor, "serviceCache", this.serviceCache);
+        Mockito.doAnswer(invocation -> {
+            this.serviceCache.invalidate((String) invocation.getArguments()[0]);
+            return null;
+        }).when(this.serviceCacheSynchronizer).invalidate(Mockito.anyString());
 
         this.metadata = new ResourceMetadata();
         this.service = new Service();
@@ -157,6 +210,27 @@ public class DatabaseAccessorTest {
         }
     }
 
+    @Test
+    public void testGetServiceByIdCached() {
+        String serviceId = this.serviceEntity.getService().getServiceId();
+
+        // Second read is served from the cache
+        this.accessor.getServiceById(serviceId);
+        this.accessor.getServiceById(serviceId);
+        Mockito.verify(this.serviceDao, Mockito.times(1)).getServiceById(serviceId);
+        Assert.assertEquals(1L, this.serviceCache.getHitCount());
+
+        // Bypassing the cache always reads from the database
+        this.accessor.getServiceById(serviceId, false);
+        Mockito.verify(this.serviceDao, Mockito.times(2)).getServiceById(serviceId);
+
+        // Updates invalidate the cached entry on every instance
+        this.accessor.updateService(this.service);
+        Mockito.verify(this.serviceCacheSynchronizer, Mockito.times(1)).invalidate(serviceId);
+        this.accessor.getServiceById(serviceId);
+        Mockito.verify(this.serviceDao, Mockito.times(4)).getServiceById(serviceId);
+    }
+
     @Test
     public void testAddAsyncServiceInstance() {
 
@@ -188,13 +262,91 @@ public class DatabaseAccessorTest {
     }
 
     @Test
-    public void testGetStaleServiceInstances() {
-        Mockito.when(this.asyncServiceInstanceDao.getStaleServiceInstances(Mockito.anyLong()))
-                .thenReturn(Collections.singletonList(this.asyncServiceInstanceEntity));
+    public void testClaimDueSchedules() {
+        ReflectionTestUtils.setField(this.accessor, "MAX_POLLS_PER_CYCLE", 100);
+        List<AsyncPollScheduleEntity> schedules = Collections.singletonList(
+                new AsyncPollScheduleEntity(this.asyncServiceInstance.getJobId(), "my_service_id", 10000, 600000));
+        Mockito.when(this.asyncPollScheduleDao.claimDueSchedules(Mockito.anyLong(), Mockito.anyLong(), Mockito.eq(2), Mockito.eq(1),
+                Mockito.eq(100))).thenReturn(schedules);
+
+        long before = System.currentTimeMillis();
+        Assert.assertEquals(schedules, this.accessor.claimDueSchedules(2, 1, 60000));
+
+        // Claimed schedules are leased until after the current time
+        ArgumentCaptor<Long> leaseUntil = ArgumentCaptor.forClass(Long.class);
+        ArgumentCaptor<Long> now = ArgumentCaptor.forClass(Long.class);
+        Mockito.verify(this.asyncPollScheduleDao).claimDueSchedules(leaseUntil.capture(), now.capture(), Mockito.eq(2), Mockito.eq(1),
+                Mockito.eq(100));
+        Assert.assertTrue(now.getValue() >= before);
+        Assert.assertEquals(now.getValue() + 60000, (long) leaseUntil.getValue());
+    }
 
-        List<AsyncServiceInstance> resultList = this.accessor.getStaleServiceInstances();
+    @Test
+    public void testUpdatePollSchedules() {
+        List<AsyncPollScheduleEntity> schedules = new ArrayList<>();
+        schedules.add(new AsyncPollScheduleEntity("job_1", "my_service_id", 10000, 600000));
+        schedules.add(new AsyncPollScheduleEntity("job_2", "my_service_id", 10000, 600000));
+
+        this.accessor.updatePollSchedules(schedules);
+
+        // All schedules are written in a single batch
+        Mockito.verify(this.jdbcTemplate, Mockito.times(1)).batchUpdate(Mockito.anyString(), Mockito.eq(schedules), Mockito.eq(2),
+                Mockito.<ParameterizedPreparedStatementSetter<AsyncPollScheduleEntity>> any());
+    }
+
+    @Test
+    public void testGetInstanceWithPollState() {
+        AsyncPollScheduleEntity schedule = new AsyncPollScheduleEntity(this.asyncServiceInstance.getJobId(), "my_service_id", 10000,
+                600000);
+        schedule.setLastStatus(StatusUpdate.STATUS_RUNNING);
+        schedule.setErrorCount(2);
+        Mockito.when(this.asyncPollScheduleDao.findOne(this.asyncServiceInstance.getJobId())).thenReturn(schedule);
+
+        AsyncServiceInstance instance = this.accessor.getInstanceByJobId(this.asyncServiceInstance.getJobId());
+
+        Assert.assertEquals(StatusUpdate.STATUS_RUNNING, instance.getStatus().getStatus());
+        Assert.assertEquals(2, (int) instance.getNumberErrorResponses());
+    }
+
+    @Test
+    public void testGetUnscheduledServiceInstances() {
+        AsyncServiceInstance unscheduled = new AsyncServiceInstance();
+        unscheduled.setJobId("unscheduled_job_id");
+        List<AsyncServiceInstanceEntity> instances = new ArrayList<>();
+        instances.add(this.asyncServiceInstanceEntity);
+        instances.add(new AsyncServiceInstanceEntity(unscheduled));
+        Mockito.when(this.asyncServiceInstanceDao.findAll()).thenReturn(instances);
+        Mockito.when(this.asyncPollScheduleDao.findAll()).thenReturn(Collections.singletonList(
+                new AsyncPollScheduleEntity(this.asyncServiceInstance.getJobId(), "my_service_id", 10000, 600000)));
+
+        List<AsyncServiceInstance> resultList = this.accessor.getUnscheduledServiceInstances();
 
         Assert.assertEquals(1, resultList.size());
+        Assert.assertEquals("unscheduled_job_id", resultList.get(0).getJobId());
+    }
+
+    @Test
+    public void testNodeHeartbeats() {
+        Mockito.when(this.controllerNodeDao.getLiveNodeIds(30000)).thenReturn(Collections.singletonList("node_id"));
+
+        Assert.assertEquals(Collections.singletonList("node_id"), this.accessor.heartbeatNode("node_id", 30000));
+        Mockito.verify(this.controllerNodeDao, Mockito.times(1)).upsertHeartbeat("node_id");
+        Mockito.verify(this.controllerNodeDao, Mockito.times(1)).deleteExpiredNodes(30000);
+
+        Mockito.when(this.controllerNodeDao.exists("node_id")).thenReturn(true);
+        this.accessor.removeNode("node_id");
+        Mockito.verify(this.controllerNodeDao, Mockito.times(1)).delete("node_id");
+    }
+
+    @Test
+    public void testPollIntervals() {
+        this.accessor.setPollIntervals("my_service_id", 5, 60);
+        Mockito.verify(this.servicePollIntervalDao, Mockito.times(1)).save(Mockito.any(ServicePollIntervalEntity.class));
+
+        // Clearing both bounds removes the override
+        Mockito.when(this.servicePollIntervalDao.exists("my_service_id")).thenReturn(true);
+        this.accessor.setPollIntervals("my_service_id", null, null);
+        Mockito.verify(this.servicePollIntervalDao, Mockito.times(1)).delete("my_service_id");
     }
 
     @Test
@@ -212,30 +364,86 @@ public class DatabaseAccessorTest {
         ServiceJobEntity serviceJobEntity = new ServiceJobEntity();
         serviceJobEntity.setServiceId("my_service_id");
         serviceJobEntity.setServiceJob(new ServiceJob());
-
-        Mockito.when(this.serviceJobDao.getNextJobInServiceQueue(serviceJobEntity.getServiceId()))
+        serviceJobEntity.getServiceJob().setJobId("my_job_id");
+
+        ServiceJobQueueEntity removed = new ServiceJobQueueEntity("my_service_id", "removed_job_id");
+        removed.setStartedOn(1000L);
+        ServiceJobQueueEntity claimed = new ServiceJobQueueEntity("my_service_id", "my_job_id");
+        claimed.setStartedOn(2000L);
+        Mockito.when(this.serviceJobQueueDao.claimNextJob(Mockito.eq("my_service_id"), Mockito.anyLong()))
+                .thenReturn(removed, claimed);
+        Mockito.when(this.serviceJobDao.getServiceJobByServiceAndJobId("my_service_id", "my_job_id"))
                 .thenReturn(serviceJobEntity);
 
-        Assert.assertEquals(serviceJobEntity.getServiceJob().getJobId(), this.accessor.getNextJobInServiceQueue(serviceJobEntity.getServiceId()).getJobId());
+        ServiceJobQueueEntity entry = this.accessor.getNextJobInServiceQueue(serviceJobEntity.getServiceId());
+        Assert.assertSame(claimed, entry);
+        Assert.assertEquals(2000L, serviceJobEntity.getServiceJob().getStartedOn().getMillis());
+        Mockito.verify(this.serviceJobQueueDao, Mockito.times(1)).deleteJob("my_service_id", "removed_job_id");
+        Mockito.verify(this.serviceJobDao, Mockito.times(1)).save(serviceJobEntity);
         Assert.assertNull(this.accessor.getNextJobInServiceQueue("an_invalid_service"));
     }
 
     @Test
-    public void testGetTimedOutServiceJobs() {
-        ServiceJobEntity serviceJobEntity = new ServiceJobEntity();
-        serviceJobEntity.setServiceId("my_service_id");
-        serviceJobEntity.setServiceJob(new ServiceJob());
+    public void testGetNextJobsInServiceQueue() {
+        ServiceJobEntity first = new ServiceJobEntity();
+        first.setServiceId("my_service_id");
+        first.setServiceJob(new ServiceJob());
+        first.getServiceJob().setJobId("first_job_id");
+        ServiceJobEntity second = new ServiceJobEntity();
+        second.setServiceId("my_service_id");
+        second.setServiceJob(new ServiceJob());
+        second.getServiceJob().setJobId("second_job_id");
+
+        ServiceJobQueueEntity firstEntry = new ServiceJobQueueEntity("my_service_id", "first_job_id");
+        ReflectionTestUtils.setField(firstEntry, "id", 1L);
+        firstEntry.setStartedOn(1000L);
+        ServiceJobQueueEntity removedEntry = new ServiceJobQueueEntity("my_service_id", "removed_job_id");
+        ReflectionTestUtils.setField(removedEntry, "id", 2L);
+        removedEntry.setStartedOn(1000L);
+        ServiceJobQueueEntity secondEntry = new ServiceJobQueueEntity("my_service_id", "second_job_id");
+        ReflectionTestUtils.setField(secondEntry, "id", 3L);
+        secondEntry.setStartedOn(1000L);
+        Mockito.when(this.serviceJobQueueDao.claimNextJobs(Mockito.eq("my_service_id"), Mockito.anyLong(), Mockito.eq(3)))
+                .thenReturn(Arrays.asList(secondEntry, removedEntry, firstEntry));
+        Mockito.when(this.serviceJobDao.getServiceJobByServiceAndJobId("my_service_id", "first_job_id")).thenReturn(first);
+        Mockito.when(this.serviceJobDao.getServiceJobByServiceAndJobId("my_service_id", "second_job_id")).thenReturn(second);
+
+        // Jobs are returned in queue order, and entries for removed Jobs dropped
+        List<ServiceJobQueueEntity> entries = this.accessor.getNextJobsInServiceQueue("my_service_id", 3);
+        Assert.assertEquals(Arrays.asList(firstEntry, secondEntry), entries);
+        Assert.assertEquals(1000L, first.getServiceJob().getStartedOn().getMillis());
+        Mockito.verify(this.serviceJobQueueDao, Mockito.times(1)).deleteJob("my_service_id", "removed_job_id");
+        Mockito.verify(this.serviceJobDao, Mockito.times(1)).save(Arrays.asList(first, second));
+    }
 
-        Mockito.when(this.serviceJobDao.getTimedOutServiceJobs(Mockito.anyString(), Mockito.anyLong()))
-                .thenReturn(Collections.singletonList(serviceJobEntity));
+    @Test
+    public void testIndexServiceJobQueues() {
+        Mockito.when(this.serviceJobQueueDao.insertMissingJobs()).thenReturn(1);
+        Mockito.when(this.serviceDao.getAllTaskManagedServices())
+                .thenReturn(Collections.singletonList(this.serviceEntity));
+        this.service.setTimeout(30L);
 
-        this.service.setTimeout(1000L);
-        List<ServiceJob> results = this.accessor.getTimedOutServiceJobs("my_service_id");
-        Assert.assertEquals(1, results.size());
+        Assert.assertEquals(1, this.accessor.indexServiceJobQueues());
+        Mockito.verify(this.serviceJobDao, Mockito.never()).findAll();
+        Mockito.verify(this.serviceJobQueueDao, Mockito.times(1)).setServiceTimeout(this.service.getServiceId(), 30000L);
+    }
 
-        this.service.setTimeout(null);
-        List<ServiceJob> nullResults = this.accessor.getTimedOutServiceJobs("my_service_id");
-        Assert.assertEquals(0, nullResults.size());
+    @Test
+    public void testTimedOutServiceJobSweep() {
+        ServiceJobQueueEntity timedOut = new ServiceJobQueueEntity("my_service_id", "my_job_id", 1000L);
+        Mockito.when(this.serviceJobQueueDao.retryTimedOutJobs(5000L, 2)).thenReturn(Collections.singletonList(timedOut));
+        Mockito.when(this.serviceJobQueueDao.claimFailedTimedOutJobs(5000L, 2)).thenReturn(Collections.emptyList());
+
+        Assert.assertEquals(1, this.accessor.retryTimedOutServiceJobs(5000L, 2).size());
+        Assert.assertTrue(this.accessor.claimFailedTimedOutServiceJobs(5000L, 2).isEmpty());
+
+        // Only the specified Jobs
+        List<String> jobIds = Collections.singletonList("my_job_id");
+        Mockito.when(this.serviceJobQueueDao.retryTimedOutJobs(5000L, 2, jobIds)).thenReturn(Collections.singletonList(timedOut));
+        Mockito.when(this.serviceJobQueueDao.getStartedJobs(1, 0)).thenReturn(Collections.singletonList(timedOut));
+        Assert.assertEquals(1, this.accessor.retryTimedOutServiceJobs(jobIds, 5000L, 2).size());
+        Assert.assertTrue(this.accessor.claimFailedTimedOutServiceJobs(jobIds, 5000L, 2).isEmpty());
+        Assert.assertEquals(1, this.accessor.getStartedServiceJobs(1, 0).size());
     }
 
     @Test
@@ -252,29 +460,30 @@ public class DatabaseAccessorTest {
     }
 
     @Test
-    public void testIncrementServiceJobTimeout() {
+    public void testReleaseServiceJob() {
         ServiceJobEntity serviceJobEntity = new ServiceJobEntity();
         serviceJobEntity.setServiceId("my_service_id");
         serviceJobEntity.setServiceJob(new ServiceJob());
-        serviceJobEntity.getServiceJob().setJobId("my_service_job_id");
-
-        ServiceJob otherServiceJob = new ServiceJob();
-        otherServiceJob.setJobId(serviceJobEntity.getServiceJob().getJobId());
-        otherServiceJob.setServiceId(serviceJobEntity.getServiceId());
-
-        Mockito.when(this.serviceJobDao.getServiceJobByServiceAndJobId(serviceJobEntity.getServiceId(), serviceJobEntity.getServiceJob().getJobId()))
-                .thenReturn(serviceJobEntity);
+        serviceJobEntity.getServiceJob().setStartedOn(new DateTime());
+        Mockito.when(this.serviceJobDao.getServiceJobByServiceAndJobId("my_service_id", "my_job_id")).thenReturn(serviceJobEntity);
 
-        this.accessor.incrementServiceJobTimeout(serviceJobEntity.getServiceId(), otherServiceJob);
+        this.accessor.releaseServiceJob("my_service_id", "my_job_id");
 
-        Assert.assertEquals(1L, (long)serviceJobEntity.getServiceJob().getTimeouts());
+        Assert.assertNull(serviceJobEntity.getServiceJob().getStartedOn());
+        Assert.assertEquals(0L, (long) serviceJobEntity.getServiceJob().getTimeouts());
+        Mockito.verify(this.serviceJobQueueDao, Mockito.times(1)).releaseJob("my_service_id", "my_job_id");
     }
 
     @Test
     public void testAddJobToServiceQueue()
     {
+        this.service.setTimeout(30L);
         this.accessor.addJobToServiceQueue("my_service_id", new ServiceJob());
         Mockito.verify(this.serviceJobDao, Mockito.times(1)).save(Mockito.any(ServiceJobEntity.class));
+        ArgumentCaptor<ServiceJobQueueEntity> captor = ArgumentCaptor.forClass(ServiceJobQueueEntity.class);
+        Mockito.verify(this.serviceJobQueueDao, Mockito.times(1)).save(captor.capture());
+        Assert.assertEquals(30000L, (long) captor.getValue().getTimeoutMs());
+        Assert.assertEquals(0, (int) captor.getValue().getTimeouts());
     }
 
     @Test
@@ -291,6 +500,7 @@ public class DatabaseAccessorTest {
 
         this.accessor.removeJobFromServiceQueue("invalid_service_id", "my_job_id");
         Mockito.verify(this.serviceJobDao, Mockito.times(1)).delete(Mockito.any(ServiceJobEntity.class));
+        Mockito.verify(this.serviceJobQueueDao, Mockito.times(1)).deleteJob("my_service_id", "my_job_id");
     }
 
     @Test
@@ -299,6 +509,21 @@ public class DatabaseAccessorTest {
         Assert.assertNull(this.accessor.getJobById("invalid_job_id"));
     }
 
+    @Test
+    public void testGetJobsById() {
+        List<String> jobIds = Arrays.asList(this.job.getJobId(), "invalid_job_id");
+        Mockito.when(this.jobBatchDao.getJobsByJobIds(jobIds)).thenReturn(Collections.singletonList(this.jobEntity));
+
+        Map<String, Job> jobs = this.accessor.getJobsById(jobIds);
+        Assert.assertEquals(1, jobs.size());
+        Assert.assertSame(this.job, jobs.get(this.job.getJobId()));
+        Mockito.verify(this.jobDao, Mockito.never()).getJobByJobId(Mockito.anyString());
+
+        // No query is made for no Jobs
+        Assert.assertTrue(this.accessor.getJobsById(Collections.emptyList()).isEmpty());
+        Mockito.verify(this.jobBatchDao, Mockito.times(1)).getJobsByJobIds(Mockito.anyCollectionOf(String.class));
+    }
+
     @Test
     public void testCanUserAccessServiceQueue() throws InvalidInputException {
 
@@ -310,6 +535,13 @@ public class DatabaseAccessorTest {
         this.service.getTaskAdministrators().add("my_username");
         Assert.assertTrue(this.accessor.canUserAccessServiceQueue("my_service_id", "my_username"));
 
+        // The owner and task administrators may report Status
+        Assert.assertTrue(this.accessor.canUserReportServiceStatus("my_service_id", "my_username"));
+        Assert.assertFalse(this.accessor.canUserReportServiceStatus("my_service_id", "owner"));
+        this.metadata.setCreatedBy("owner");
+        Assert.assertTrue(this.accessor.canUserReportServiceStatus("my_service_id", "owner"));
+        Assert.assertFalse(this.accessor.canUserReportServiceStatus("my_service_id", null));
+
         try {
             Mockito.when(this.serviceDao.getServiceById(Mockito.anyString())).thenThrow(ResourceAccessException.class);
             this.accessor.canUserAccessServiceQueue("m_service_id", "my_username");
@@ -327,4 +559,66 @@ public class DatabaseAccessorTest {
         Assert.assertEquals(0L, (long)this.accessor.getServiceQueueCollectionMetadata("invalid_service").get("totalJobCount"));
         Assert.assertEquals(4L, (long)this.accessor.getServiceQueueCollectionMetadata("my_service_id").get("totalJobCount"));
     }
+
+    @Test
+    public void testOutboxMessages() {
+        this.accessor.addOutboxMessage("UpdateJob-unittest", "{}");
+        Mockito.verify(this.outboxMessageDao, Mockito.times(1)).save(Mockito.any(OutboxMessageEntity.class));
+
+        OutboxMessageEntity first = new OutboxMessageEntity("UpdateJob-unittest", "1");
+        OutboxMessageEntity second = new OutboxMessageEntity("UpdateJob-unittest", "2");
+        ReflectionTestUtils.setField(first, "id", 1L);
+        ReflectionTestUtils.setField(second, "id", 2L);
+        // Claimed messages are returned oldest first
+        Mockito.when(this.outboxMessageDao.claimOldestMessages(60000, 10)).thenReturn(Arrays.asList(second, first));
+        List<OutboxMessageEntity> messages = this.accessor.claimOutboxMessages(10, 60000);
+        Assert.assertEquals(Arrays.asList(first, second), messages);
+
+        this.accessor.releaseOutboxMessages(messages);
+        Mockito.verify(this.outboxMessageDao, Mockito.times(1)).releaseMessages(Arrays.asList(1L, 2L));
+
+        this.accessor.deleteOutboxMessages(messages);
+        Mockito.verify(this.outboxMessageDao, Mockito.times(1)).delete(messages);
+
+        Mockito.when(this.outboxMessageDao.count()).thenReturn(3L);
+        Assert.assertEquals(3L, this.accessor.getOutboxMessageCount());
+    }
+
+    @Test
+    public void testStatusCallbacks() {
+        this.accessor.setStatusCallbackEnabled("my_service_id", true);
+        Mockito.verify(this.statusCallbackServiceDao, Mockito.times(1)).save(Mockito.any(StatusCallbackServiceEntity.class));
+        Mockito.when(this.statusCallbackServiceDao.exists("my_service_id")).thenReturn(true);
+        Assert.assertTrue(this.accessor.isStatusCallbackEnabled("my_service_id"));
+
+        // Instances are matched to their Job
+        Assert.assertNull(this.accessor.getStatusCallbackInstance("my_service_id", "instance_id"));
+        Mockito.when(this.statusCallbackInstanceDao.findByServiceIdAndInstanceId("my_service_id", "instance_id"))
+                .thenReturn(new StatusCallbackInstanceEntity("my_service_id", "instance_id", null));
+        Assert.assertNull(this.accessor.getStatusCallbackInstance("my_service_id", "instance_id"));
+        Mockito.when(this.statusCallbackInstanceDao.findByServiceIdAndInstanceId("my_service_id", "instance_id"))
+                .thenReturn(new StatusCallbackInstanceEntity("my_service_id", "instance_id", this.asyncServiceInstance.getJobId()));
+        Assert.assertNotNull(this.accessor.getStatusCallbackInstance("my_service_id", "instance_id"));
+
+        // Recording an instance takes any Status that arrived before it
+        String serviceId = this.asyncServiceInstance.getServiceId();
+        String instanceId = this.asyncServiceInstance.getInstanceId();
+        String jobId = this.asyncServiceInstance.getJobId();
+        Mockito.when(this.statusCallbackInstanceDao.insertInstance(serviceId, instanceId, jobId)).thenReturn(1);
+        Assert.assertNull(this.accessor.addStatusCallbackInstance(this.asyncServiceInstance));
+        Mockito.verify(this.statusCallbackInstanceDao, Mockito.times(1)).insertInstance(serviceId, instanceId, jobId);
+        Mockito.when(this.statusCallbackInstanceDao.claimEarlyStatus(serviceId, instanceId, jobId)).thenReturn("{}");
+        Assert.assertEquals("{}", this.accessor.addStatusCallbackInstance(this.asyncServiceInstance));
+        Mockito.verify(this.statusCallbackInstanceDao, Mockito.times(1)).insertInstance(serviceId, instanceId, jobId);
+
+        Mockito.when(this.statusCallbackInstanceDao.upsertEarlyStatus(Mockito.eq("my_service_id"), Mockito.eq("early_id"), Mockito.eq("{}"),
+                Mockito.anyLong())).thenReturn(1);
+        Assert.assertTrue(this.accessor.addEarlyStatusCallback("my_service_id", "early_id", "{}"));
+        Assert.assertFalse(this.accessor.addEarlyStatusCallback("my_service_id", "instance_id", "{}"));
+
+        // Disabling removes the Service and its Instances
+        this.accessor.setStatusCallbackEnabled("my_service_id", false);
+        Mockito.verify(this.statusCallbackServiceDao, Mockito.times(1)).delete("my_service_id");
+        Mockito.verify(this.statusCallbackInstanceDao, Mockito.times(1)).deleteByServiceId("my_service_id");
+    }
 }
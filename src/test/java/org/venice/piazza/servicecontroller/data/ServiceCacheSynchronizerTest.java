@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.data;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.venice.piazza.servicecontroller.data.cache.ServiceCache;
+import org.venice.piazza.servicecontroller.data.cache.ServiceCacheSynchronizer;
+
+import messaging.job.JobMessageFactory;
+import util.PiazzaLogger;
+
+/**
+ * Tests cross-instance Service cache invalidation
+ */
+public class ServiceCacheSynchronizerTest {
+	@Mock
+	private ServiceCache serviceCache;
+	@Mock
+	private RabbitTemplate rabbitTemplate;
+	@Mock
+	private PiazzaLogger logger;
+	@InjectMocks
+	private ServiceCacheSynchronizer synchronizer;
+
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		ReflectionTestUtils.setField(synchronizer, "SPACE", "unittest");
+	}
+
+	@Test
+	public void testInvalidate() {
+		synchronizer.invalidate("123456");
+		Mockito.verify(serviceCache).invalidate("123456");
+		Mockito.verify(rabbitTemplate).convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, "ServiceCacheInvalidation-unittest",
+				"123456");
+	}
+
+	@Test
+	public void testInvalidateBrokerUnavailable() {
+		Mockito.doThrow(new AmqpConnectException(new Exception("Connection refused"))).when(rabbitTemplate)
+				.convertAndSend(Mockito.anyString(), Mockito.anyString(), Mockito.anyString());
+		synchronizer.invalidate("123456");
+		// The local entry must still be evicted
+		Mockito.verify(serviceCache).invalidate("123456");
+	}
+
+	@Test
+	public void testProcessInvalidation() {
+		synchronizer.processServiceInvalidation("123456");
+		Mockito.verify(serviceCache).invalidate("123456");
+	}
+}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.data;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.venice.piazza.servicecontroller.data.cache.ServiceCache;
+
+import model.service.metadata.Service;
+
+/**
+ * Tests the Service metadata cache
+ */
+public class ServiceCacheTest {
+	private ServiceCache cache;
+
+	@Before
+	public void setup() {
+		cache = new ServiceCache();
+		ReflectionTestUtils.setField(cache, "MAX_SIZE", 2);
+		ReflectionTestUtils.setField(cache, "TTL_SECONDS", 60);
+	}
+
+	private Service makeService(String serviceId) {
+		Service service = new Service();
+		service.setServiceId(serviceId);
+		return service;
+	}
+
+	@Test
+	public void testHitAndMiss() {
+		Assert.assertNull(cache.get("one"));
+		cache.put(makeService("one"));
+		Assert.assertNotNull(cache.get("one"));
+		Assert.assertEquals(1L, cache.getHitCount());
+		Assert.assertEquals(1L, cache.getMissCount());
+	}
+
+	@Test
+	public void testEviction() {
+		cache.put(makeService("one"));
+		cache.put(makeService("two"));
+		// Touch the first entry so the second is least recently used
+		cache.get("one");
+		cache.put(makeService("three"));
+		Assert.assertEquals(2, cache.size());
+		Assert.assertNull(cache.get("two"));
+		Assert.assertNotNull(cache.get("one"));
+		Assert.assertEquals(1L, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testExpiry() {
+		ReflectionTestUtils.setField(cache, "TTL_SECONDS", 0);
+		cache.put(makeService("one"));
+		Assert.assertNull(cache.get("one"));
+		Assert.assertEquals(1L, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testInvalidate() {
+		cache.put(makeService("one"));
+		cache.invalidate("one");
+		Assert.assertNull(cache.get("one"));
+		cache.put(makeService("two"));
+		cache.invalidateAll();
+		Assert.assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testStalePut() {
+		// A read that started before an invalidation does not put the old Service back
+		long readGeneration = cache.getGeneration();
+		cache.invalidate("one");
+		Assert.assertFalse(cache.put(makeService("one"), readGeneration));
+		Assert.assertNull(cache.get("one"));
+		// Other Services, and reads started after the invalidation, are cached
+		Assert.assertTrue(cache.put(makeService("two"), readGeneration));
+		Assert.assertTrue(cache.put(makeService("one"), cache.getGeneration()));
+
+		// Once more Services are invalidated than are remembered, older reads are dropped for all of them
+		readGeneration = cache.getGeneration();
+		cache.invalidate("three");
+		cache.invalidate("four");
+		cache.invalidate("five");
+		Assert.assertFalse(cache.put(makeService("six"), readGeneration));
+	}
+
+	@Test
+	public void testDisabled() {
+		ReflectionTestUtils.setField(cache, "MAX_SIZE", 0);
+		cache.put(makeService("one"));
+		Assert.assertFalse(cache.isEnabled());
+		Assert.assertNull(cache.get("one"));
+		Assert.assertEquals(4, cache.metrics().size());
+	}
+}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Tests the bounded worker executors and their saturation policies
+ */
+public class ExecutorConfigurationTest {
+	private ExecutorConfiguration configuration = new ExecutorConfiguration();
+	private ThreadPoolTaskExecutor executionExecutor;
+	private ThreadPoolTaskExecutor pollExecutor;
+
+	@Before
+	public void setup() {
+		for (String field : new String[] { "EXECUTION", "KICKOFF", "POLL", "CALLBACK", "CANCELLATION" }) {
+			ReflectionTestUtils.setField(configuration, field + "_CORE_SIZE", 1);
+			ReflectionTestUtils.setField(configuration, field + "_MAX_SIZE", 1);
+			ReflectionTestUtils.setField(configuration, field + "_QUEUE_CAPACITY", 1);
+		}
+		executionExecutor = (ThreadPoolTaskExecutor) configuration.serviceExecutionExecutor();
+		executionExecutor.initialize();
+		pollExecutor = (ThreadPoolTaskExecutor) configuration.asyncPollExecutor();
+		pollExecutor.initialize();
+	}
+
+	@After
+	public void teardown() {
+		executionExecutor.shutdown();
+		pollExecutor.shutdown();
+	}
+
+	/**
+	 * Test that the execution executor blocks the submitting thread when saturated, rather than rejecting.
+	 */
+	@Test
+	public void testExecutionBlocksWhenFull() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch completed = new CountDownLatch(3);
+		Runnable task = () -> {
+			try {
+				release.await();
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+			}
+			completed.countDown();
+		};
+		// One running, one queued
+		executionExecutor.execute(task);
+		executionExecutor.execute(task);
+
+		// The third submission must wait for capacity
+		CountDownLatch submitted = new CountDownLatch(1);
+		Thread submitter = new Thread(() -> {
+			executionExecutor.execute(task);
+			submitted.countDown();
+		});
+		submitter.start();
+		assertTrue(!submitted.await(200, TimeUnit.MILLISECONDS));
+
+		release.countDown();
+		assertTrue(submitted.await(5, TimeUnit.SECONDS));
+		assertTrue(completed.await(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Test that the polling executor blocks the poll cycle when saturated, rather than dropping claimed instances.
+	 */
+	@Test
+	public void testPollBlocksWhenFull() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch completed = new CountDownLatch(3);
+		Runnable task = () -> {
+			try {
+				release.await();
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+			}
+			completed.countDown();
+		};
+		pollExecutor.execute(task);
+		pollExecutor.execute(task);
+
+		CountDownLatch submitted = new CountDownLatch(1);
+		Thread submitter = new Thread(() -> {
+			pollExecutor.execute(task);
+			submitted.countDown();
+		});
+		submitter.start();
+		assertTrue(!submitted.await(200, TimeUnit.MILLISECONDS));
+		assertEquals(1, pollExecutor.getThreadPoolExecutor().getQueue().size());
+
+		release.countDown();
+		assertTrue(submitted.await(5, TimeUnit.SECONDS));
+		assertTrue(completed.await(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Test that the status callback executor rejects when saturated, rather than blocking the HTTP request thread.
+	 */
+	@Test
+	public void testCallbackRejectsWhenFull() throws Exception {
+		ThreadPoolTaskExecutor callbackExecutor = configuration.statusCallbackExecutor();
+		callbackExecutor.initialize();
+		CountDownLatch release = new CountDownLatch(1);
+		Runnable task = () -> {
+			try {
+				release.await();
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+			}
+		};
+		try {
+			callbackExecutor.execute(task);
+			callbackExecutor.execute(task);
+			callbackExecutor.execute(task);
+			fail("Expected the callback to be rejected.");
+		} catch (TaskRejectedException exception) {
+			// Good
+		} finally {
+			release.countDown();
+			callbackExecutor.shutdown();
+		}
+	}
+
+	/**
+	 * Test the executor metrics
+	 */
+	@Test
+	public void testMetrics() {
+		ExecutorMetrics executorMetrics = new ExecutorMetrics();
+		Map<String, AsyncTaskExecutor> executors = new HashMap<>();
+		executors.put(ExecutorConfiguration.SERVICE_EXECUTION_EXECUTOR, executionExecutor);
+		ReflectionTestUtils.setField(executorMetrics, "executors", executors);
+		Collection<Metric<?>> metrics = executorMetrics.metrics();
+		assertEquals(5, metrics.size());
+		assertTrue(metrics.stream()
+				.anyMatch(metric -> "servicecontroller.executor.serviceExecutionExecutor.queue.remaining".equals(metric.getName())));
+	}
+}
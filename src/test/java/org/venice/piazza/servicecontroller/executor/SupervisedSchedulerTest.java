@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.venice.piazza.servicecontroller.executor.SupervisedScheduler.SupervisedTask;
+
+import util.PiazzaLogger;
+
+/**
+ * Tests the supervised scheduling of periodic tasks
+ */
+public class SupervisedSchedulerTest {
+	@Mock
+	private PiazzaLogger logger;
+	@InjectMocks
+	private SupervisedScheduler scheduler;
+
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		ReflectionTestUtils.setField(scheduler, "POOL_SIZE", 2);
+		ReflectionTestUtils.setField(scheduler, "SHUTDOWN_TIMEOUT_SECONDS", 5);
+		scheduler.initialize();
+	}
+
+	@After
+	public void teardown() throws InterruptedException {
+		scheduler.shutdown();
+	}
+
+	/**
+	 * Tests that a failing task keeps running on schedule
+	 */
+	@Test
+	public void testFailureDoesNotStopSchedule() throws InterruptedException {
+		CountDownLatch runs = new CountDownLatch(3);
+		SupervisedTask task = scheduler.schedule("failing", () -> {
+			runs.countDown();
+			throw new IllegalStateException("Database unavailable");
+		}, 0, 10);
+
+		assertTrue(runs.await(5, TimeUnit.SECONDS));
+		assertTrue(task.getFailureCount() >= 2);
+	}
+
+	/**
+	 * Tests that a trigger is skipped while the previous run of the task is still going
+	 */
+	@Test
+	public void testOverlapSkipped() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger concurrent = new AtomicInteger();
+		AtomicBoolean overlapped = new AtomicBoolean(false);
+		SupervisedTask task = scheduler.schedule("slow", () -> {
+			if (concurrent.incrementAndGet() > 1) {
+				overlapped.set(true);
+			}
+			try {
+				release.await();
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+			} finally {
+				concurrent.decrementAndGet();
+			}
+		}, 0, 10);
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while ((task.getSkippedCount() < 3) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(10);
+		}
+		assertTrue(task.isRunning());
+		assertTrue(task.getSkippedCount() >= 3);
+		release.countDown();
+		assertFalse(overlapped.get());
+	}
+
+	/**
+	 * Tests that shutdown waits for a run in progress, and stops further runs
+	 */
+	@Test
+	public void testShutdownDrains() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		AtomicBoolean finished = new AtomicBoolean(false);
+		AtomicInteger runs = new AtomicInteger();
+		scheduler.schedule("draining", () -> {
+			runs.incrementAndGet();
+			started.countDown();
+			try {
+				Thread.sleep(200);
+				finished.set(true);
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+			}
+		}, 0, 1000);
+
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		scheduler.shutdown();
+		assertTrue(finished.get());
+		assertEquals(1, runs.get());
+	}
+
+	/**
+	 * Tests that task names are unique, and that metrics are reported per task
+	 */
+	@Test
+	public void testMetrics() throws InterruptedException {
+		CountDownLatch runs = new CountDownLatch(1);
+		SupervisedTask task = scheduler.schedule("metered", runs::countDown, 0, 60000);
+		try {
+			scheduler.schedule("metered", () -> {
+			}, 0, 60000);
+			fail("Duplicate task names should be rejected.");
+		} catch (IllegalStateException exception) {
+			// Expected
+		}
+		assertTrue(runs.await(5, TimeUnit.SECONDS));
+		while (task.getRunCount() == 0) {
+			Thread.sleep(10);
+		}
+
+		Map<String, Number> metrics = new HashMap<>();
+		Collection<Metric<?>> results = scheduler.metrics();
+		for (Metric<?> metric : results) {
+			metrics.put(metric.getName(), metric.getValue());
+		}
+		assertEquals(1L, metrics.get("servicecontroller.scheduler.metered.runs"));
+		assertEquals(0L, metrics.get("servicecontroller.scheduler.metered.failures"));
+		assertTrue(metrics.containsKey("servicecontroller.scheduler.metered.duration.max.ms"));
+
+		// Cancelled tasks are no longer reported
+		task.cancel();
+		assertTrue(scheduler.metrics().isEmpty());
+	}
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests the concurrency bound and cancellation of the virtual thread executor. Runs against a platform thread
+ * delegate, so that the tests pass on runtimes without virtual threads.
+ */
+public class VirtualThreadTaskExecutorTest {
+	private VirtualThreadTaskExecutor executor;
+
+	@After
+	public void teardown() {
+		executor.destroy();
+	}
+
+	/**
+	 * Test that cancelling a submitted task interrupts it and frees its permit
+	 */
+	@Test
+	public void testCancel() throws Exception {
+		executor = new VirtualThreadTaskExecutor(Executors.newCachedThreadPool(), 1, true);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch interrupted = new CountDownLatch(1);
+		Future<String> future = executor.submit(() -> {
+			started.countDown();
+			try {
+				Thread.sleep(60000);
+			} catch (InterruptedException exception) {
+				interrupted.countDown();
+			}
+			return "done";
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		assertEquals(1, executor.getActiveCount());
+		assertTrue(future.cancel(true));
+		assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+
+		// The permit is returned, so a new task may run
+		Future<?> next = executor.submit(() -> {
+		});
+		next.get(5, TimeUnit.SECONDS);
+		assertEquals(0, executor.getActiveCount());
+	}
+
+	/**
+	 * Test that cancelling a task before it starts frees its permit
+	 */
+	@Test
+	public void testCancelBeforeStart() throws Exception {
+		// A single delegate thread, so that the second task waits behind the first
+		executor = new VirtualThreadTaskExecutor(Executors.newSingleThreadExecutor(), 2, true);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<?> first = executor.submit(() -> {
+			release.await();
+			return null;
+		});
+		Future<?> second = executor.submit(() -> {
+		});
+		assertEquals(2, executor.getActiveCount());
+		assertTrue(second.cancel(false));
+		assertEquals(1, executor.getActiveCount());
+		release.countDown();
+		first.get(5, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Test that tasks are discarded once the bound is reached when not blocking
+	 */
+	@Test
+	public void testDiscardWhenFull() throws Exception {
+		executor = new VirtualThreadTaskExecutor(Executors.newCachedThreadPool(), 1, false);
+		CountDownLatch release = new CountDownLatch(1);
+		executor.submit(() -> {
+			release.await();
+			return null;
+		});
+		Future<?> discarded = executor.submit(() -> {
+		});
+		assertTrue(discarded.isCancelled());
+		assertEquals(1, executor.getActiveCount());
+		release.countDown();
+	}
+
+	/**
+	 * Test that submissions block once the bound is reached when blocking
+	 */
+	@Test
+	public void testBlockWhenFull() throws Exception {
+		executor = new VirtualThreadTaskExecutor(Executors.newCachedThreadPool(), 1, true);
+		CountDownLatch release = new CountDownLatch(1);
+		executor.execute(() -> {
+			try {
+				release.await();
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		CountDownLatch submitted = new CountDownLatch(1);
+		new Thread(() -> {
+			executor.execute(() -> {
+			});
+			submitted.countDown();
+		}).start();
+		assertTrue(!submitted.await(200, TimeUnit.MILLISECONDS));
+		release.countDown();
+		assertTrue(submitted.await(5, TimeUnit.SECONDS));
+	}
+}
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.venice.piazza.servicecontroller.messaging.InFlightJobRegistry.InFlightJob;
+
+/**
+ * Tests the in-flight Job registry
+ */
+public class InFlightJobRegistryTest {
+	private InFlightJobRegistry registry;
+
+	@Before
+	public void setup() {
+		registry = new InFlightJobRegistry();
+		ReflectionTestUtils.setField(registry, "MAX_IN_FLIGHT", 2);
+		registry.initialize();
+	}
+
+	/**
+	 * Test registering, tracking and completing Jobs
+	 */
+	@Test
+	public void testRegisterAndComplete() throws InterruptedException {
+		InFlightJob job = registry.register("job1", "service1");
+		assertNotNull(job);
+		assertEquals("service1", job.getServiceId());
+		assertNull(job.getThread());
+		registry.started("job1");
+		assertEquals(Thread.currentThread(), registry.get("job1").getThread());
+
+		// A duplicate is rejected, and does not use a place
+		assertNull(registry.register("job1", "service1"));
+		assertEquals(1, registry.getCount());
+		assertEquals(1, registry.getAvailableCount());
+
+		assertTrue(registry.complete("job1"));
+		assertFalse(registry.complete("job1"));
+		assertFalse(registry.complete(null));
+		assertEquals(0, registry.getCount());
+		assertEquals(2, registry.getAvailableCount());
+
+		// A Job that cannot be registered does not keep its place
+		try {
+			registry.register(null, "service1");
+			fail("A null Job ID should not be registered");
+		} catch (NullPointerException exception) {
+			assertEquals(2, registry.getAvailableCount());
+		}
+	}
+
+	/**
+	 * Test that registering blocks while at the cap, until a Job completes
+	 */
+	@Test
+	public void testBackpressure() throws InterruptedException {
+		registry.register("job1", "service1");
+		registry.register("job2", "service1");
+
+		CountDownLatch registered = new CountDownLatch(1);
+		Thread listener = new Thread(() -> {
+			try {
+				registry.register("job3", "service1");
+				registered.countDown();
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		listener.start();
+		assertFalse(registered.await(100, TimeUnit.MILLISECONDS));
+
+		registry.complete("job1");
+		assertTrue(registered.await(5, TimeUnit.SECONDS));
+		assertNotNull(registry.get("job3"));
+	}
+
+	/**
+	 * Test cancelling a Job before its worker starts, and before and after its Future is attached
+	 */
+	@Test
+	public void testCancel() throws InterruptedException {
+		// Cancelled before the worker started: the worker does not run the Job, and completes it
+		CompletableFuture<String> unstartedFuture = new CompletableFuture<>();
+		registry.register("job0", "service1");
+		assertTrue(registry.get("job0").cancel());
+		registry.attach("job0", unstartedFuture);
+		assertFalse(unstartedFuture.isCancelled());
+		assertFalse(registry.started("job0"));
+		assertTrue(registry.isCancelled("job0"));
+		assertFalse(registry.isCancelled("job9"));
+		assertTrue(registry.complete("job0"));
+
+		// Cancelled after the worker started, before the Future was attached
+		CompletableFuture<String> future = new CompletableFuture<>();
+		registry.register("job1", "service1");
+		assertTrue(registry.startedNonBlocking("job1"));
+		assertNull(registry.get("job1").getThread());
+		assertTrue(registry.get("job1").cancel());
+		registry.attach("job1", future);
+		assertTrue(future.isCancelled());
+		assertNotNull(registry.get("job1"));
+
+		CompletableFuture<String> runningFuture = new CompletableFuture<>();
+		registry.register("job2", "service1");
+		registry.started("job2");
+		registry.attach("job2", runningFuture);
+		assertTrue(registry.get("job2").cancel());
+		assertTrue(runningFuture.isCancelled());
+
+		// Attaching to a completed Job has no effect
+		registry.complete("job1");
+		registry.attach("job1", new CompletableFuture<String>());
+		assertNull(registry.get("job1"));
+	}
+
+	/**
+	 * Test counts by Service, the age histogram and metrics
+	 */
+	@Test
+	public void testStatistics() throws InterruptedException {
+		registry.register("job1", "service1");
+		registry.register("job2", "service2");
+		ReflectionTestUtils.setField(registry.get("job2"), "startedOn", System.currentTimeMillis() - 30000);
+
+		Map<String, Integer> counts = registry.getCountsByService();
+		assertEquals(Integer.valueOf(1), counts.get("service1"));
+		assertEquals(Integer.valueOf(1), counts.get("service2"));
+
+		Map<String, Integer> histogram = registry.getAgeHistogram();
+		assertEquals(Integer.valueOf(1), histogram.get("lt1s"));
+		assertEquals(Integer.valueOf(0), histogram.get("lt10s"));
+		assertEquals(Integer.valueOf(1), histogram.get("lt60s"));
+		assertEquals(Integer.valueOf(0), histogram.get("ge300s"));
+		assertTrue(registry.getOldestAge() >= 30000);
+		assertEquals(2, registry.getJobs().size());
+
+		// Count, available, oldest age, five age buckets and two Services
+		assertEquals(10, registry.metrics().size());
+	}
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.messaging;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Tests the RabbitMQ listener container factories
+ */
+public class ListenerConfigurationTest {
+	@InjectMocks
+	private ListenerConfiguration configuration;
+	@Mock
+	private ConnectionFactory connectionFactory;
+
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		ReflectionTestUtils.setField(configuration, "EXECUTION_CONCURRENCY", 2);
+		ReflectionTestUtils.setField(configuration, "EXECUTION_MAX_CONCURRENCY", 8);
+		ReflectionTestUtils.setField(configuration, "EXECUTION_PREFETCH", 1);
+		ReflectionTestUtils.setField(configuration, "EXECUTION_BATCH_SIZE", 5);
+		ReflectionTestUtils.setField(configuration, "EXECUTION_ACKNOWLEDGE_MODE", AcknowledgeMode.MANUAL);
+		ReflectionTestUtils.setField(configuration, "ABORT_CONCURRENCY", 0);
+		ReflectionTestUtils.setField(configuration, "ABORT_MAX_CONCURRENCY", 0);
+		ReflectionTestUtils.setField(configuration, "ABORT_PREFETCH", 10);
+	}
+
+	/**
+	 * Test that the execution factory is configured from properties
+	 */
+	@Test
+	public void testExecutionFactory() {
+		SimpleRabbitListenerContainerFactory factory = configuration.executionListenerContainerFactory();
+		assertEquals(connectionFactory, ReflectionTestUtils.getField(factory, "connectionFactory"));
+		assertEquals(2, ReflectionTestUtils.getField(factory, "concurrentConsumers"));
+		assertEquals(8, ReflectionTestUtils.getField(factory, "maxConcurrentConsumers"));
+		// Prefetch is raised to cover a full batch
+		assertEquals(5, ReflectionTestUtils.getField(factory, "prefetchCount"));
+		assertEquals(5, ReflectionTestUtils.getField(factory, "txSize"));
+		assertEquals(AcknowledgeMode.MANUAL, ReflectionTestUtils.getField(factory, "acknowledgeMode"));
+	}
+
+	/**
+	 * Test that the abort factory acknowledges automatically, and corrects invalid consumer counts
+	 */
+	@Test
+	public void testAbortFactory() {
+		SimpleRabbitListenerContainerFactory factory = configuration.abortListenerContainerFactory();
+		assertEquals(1, ReflectionTestUtils.getField(factory, "concurrentConsumers"));
+		assertEquals(1, ReflectionTestUtils.getField(factory, "maxConcurrentConsumers"));
+		assertEquals(10, ReflectionTestUtils.getField(factory, "prefetchCount"));
+		assertEquals(AcknowledgeMode.AUTO, ReflectionTestUtils.getField(factory, "acknowledgeMode"));
+	}
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.messaging;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
+import org.venice.piazza.servicecontroller.data.model.OutboxMessageEntity;
+
+import messaging.job.JobMessageFactory;
+import util.PiazzaLogger;
+
+/**
+ * Tests writing messages to, and relaying them from, the outbox
+ */
+public class MessageOutboxTest {
+	@InjectMocks
+	private MessageOutbox outbox;
+	@Mock
+	private DatabaseAccessor accessor;
+	@Mock
+	private ConfirmedMessageSender sender;
+	@Mock
+	private RabbitTemplate rabbitTemplate;
+	@Mock
+	private PiazzaLogger logger;
+	@Mock
+	private PlatformTransactionManager transactionManager;
+	@Mock
+	private TransactionStatus transaction;
+
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		ReflectionTestUtils.setField(outbox, "ENABLED", true);
+		ReflectionTestUtils.setField(outbox, "BATCH_SIZE", 10);
+		ReflectionTestUtils.setField(outbox, "CLAIM_TIMEOUT_MS", 60000);
+		ReflectionTestUtils.setField(outbox, "transactionTemplate", new TransactionTemplate(transactionManager));
+		Mockito.when(transactionManager.getTransaction(Mockito.any())).thenReturn(transaction);
+	}
+
+	/**
+	 * Test that a message and its database changes are committed together
+	 */
+	@Test
+	public void testSend() {
+		Runnable databaseUpdate = Mockito.mock(Runnable.class);
+		outbox.send("UpdateJob-unittest", "{}", databaseUpdate);
+
+		InOrder inOrder = Mockito.inOrder(transactionManager, accessor, databaseUpdate);
+		inOrder.verify(transactionManager).getTransaction(Mockito.any());
+		inOrder.verify(accessor).addOutboxMessage("UpdateJob-unittest", "{}");
+		inOrder.verify(databaseUpdate).run();
+		inOrder.verify(transactionManager).commit(transaction);
+		Mockito.verifyZeroInteractions(rabbitTemplate, sender);
+	}
+
+	/**
+	 * Test that messages are sent directly when the outbox is disabled
+	 */
+	@Test
+	public void testSendDisabled() {
+		ReflectionTestUtils.setField(outbox, "ENABLED", false);
+		Runnable databaseUpdate = Mockito.mock(Runnable.class);
+		outbox.send("UpdateJob-unittest", "{}", databaseUpdate);
+
+		Mockito.verify(rabbitTemplate).convertAndSend(JobMessageFactory.PIAZZA_EXCHANGE_NAME, "UpdateJob-unittest", "{}");
+		Mockito.verify(databaseUpdate).run();
+		Mockito.verifyZeroInteractions(accessor, transactionManager);
+	}
+
+	/**
+	 * Test that the oldest messages are sent in order, grouped by routing key, and removed once confirmed, without a
+	 * transaction held while sending
+	 */
+	@Test
+	public void testRelayBatch() {
+		List<OutboxMessageEntity> messages = Arrays.asList(new OutboxMessageEntity("UpdateJob-unittest", "1"),
+				new OutboxMessageEntity("Request-Job-unittest", "2"), new OutboxMessageEntity("UpdateJob-unittest", "3"));
+		Mockito.when(accessor.claimOutboxMessages(10, 60000)).thenReturn(messages);
+
+		assertEquals(3, outbox.relayBatch());
+
+		InOrder inOrder = Mockito.inOrder(sender, accessor);
+		inOrder.verify(accessor).claimOutboxMessages(10, 60000);
+		inOrder.verify(sender).send("UpdateJob-unittest", Arrays.asList("1", "3"));
+		inOrder.verify(sender).send("Request-Job-unittest", Arrays.asList("2"));
+		inOrder.verify(accessor).deleteOutboxMessages(messages);
+		Mockito.verifyZeroInteractions(transactionManager);
+	}
+
+	/**
+	 * Test that messages the broker does not confirm are kept in the outbox, and released to be sent again
+	 */
+	@Test(expected = AmqpException.class)
+	public void testRelayBatchFailure() {
+		List<OutboxMessageEntity> messages = Arrays.asList(new OutboxMessageEntity("UpdateJob-unittest", "1"));
+		Mockito.when(accessor.claimOutboxMessages(10, 60000)).thenReturn(messages);
+		Mockito.doThrow(new AmqpException("The broker did not confirm the messages.")).when(sender).send(Mockito.anyString(),
+				Mockito.anyListOf(String.class));
+		try {
+			outbox.relayBatch();
+		} finally {
+			Mockito.verify(accessor, Mockito.never()).deleteOutboxMessages(Mockito.anyListOf(OutboxMessageEntity.class));
+			Mockito.verify(accessor).releaseOutboxMessages(messages);
+		}
+	}
+}
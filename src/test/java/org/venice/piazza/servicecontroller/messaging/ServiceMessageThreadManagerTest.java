@@ -15,21 +15,40 @@
  *******************************************************************************/
 package org.venice.piazza.servicecontroller.messaging;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
-import org.mockito.Spy;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.AcknowledgeMode;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.venice.piazza.servicecontroller.async.AsyncServiceInstanceScheduler;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
+import org.venice.piazza.servicecontroller.taskmanaged.ServiceTaskManager;
+import org.venice.piazza.servicecontroller.util.AbortableClientHttpRequestFactory;
 import org.venice.piazza.servicecontroller.util.CoreServiceProperties;
+import org.venice.piazza.servicecontroller.util.JsonSerialization;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
 
+import messaging.job.WorkerCallback;
 import model.job.Job;
 import model.job.metadata.ResourceMetadata;
+import model.job.type.AbortJob;
 import model.request.PiazzaJobRequest;
 import model.service.metadata.Service;
 import util.PiazzaLogger;
@@ -48,9 +67,15 @@ public class ServiceMessageThreadManagerTest {
 	private CoreServiceProperties propertiesMock;
 	@Mock
 	private ServiceMessageWorker serviceMessageWorker;
-	@Spy
-	private ObjectMapper mapper;
-
+	@Mock
+	private ServiceTaskManager serviceTaskManager;
+	@Mock
+	private AsyncServiceInstanceScheduler asyncServiceInstanceScheduler;
+	@Mock
+	private AbortableClientHttpRequestFactory requestFactory;
+	@Mock
+	private Channel channel;
+	private InFlightJobRegistry inFlightJobs;
 	ResourceMetadata rm = null;
 	Service service = null;
 	Service movieService = null;
@@ -73,6 +98,15 @@ public class ServiceMessageThreadManagerTest {
 		MockitoAnnotations.initMocks(this);
 
 		ReflectionTestUtils.setField(smtManager, "SPACE", "unittest");
+		JsonSerialization serialization = new JsonSerialization();
+		// Configured as Spring Boot configures the application's ObjectMapper
+		ReflectionTestUtils.setField(serialization, "mapper",
+				new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false));
+		ReflectionTestUtils.setField(smtManager, "serialization", serialization);
+		inFlightJobs = new InFlightJobRegistry();
+		ReflectionTestUtils.setField(inFlightJobs, "MAX_IN_FLIGHT", 2);
+		inFlightJobs.initialize();
+		ReflectionTestUtils.setField(smtManager, "inFlightJobs", inFlightJobs);
 	}
 
 	/**
@@ -86,4 +120,220 @@ public class ServiceMessageThreadManagerTest {
 		smtManager.processServiceExecutionJob(new ObjectMapper().writeValueAsString(mockJob));
 
 	}
+
+	/**
+	 * Test that with manual acknowledgement, a Job is acknowledged once handed off, and unreadable Messages are discarded
+	 */
+	@Test
+	public void testManualAcknowledgement() throws IOException {
+		ReflectionTestUtils.setField(smtManager, "EXECUTION_ACKNOWLEDGE_MODE", AcknowledgeMode.MANUAL);
+		Mockito.when(serviceMessageWorker.run(Mockito.any(Job.class), Mockito.any(WorkerCallback.class)))
+				.thenReturn(new CompletableFuture<String>());
+
+		smtManager.processServiceExecutionJob(new ObjectMapper().writeValueAsString(new Job(new PiazzaJobRequest(), "123456")), channel, 1L);
+		Mockito.verify(serviceMessageWorker).run(Mockito.any(Job.class), Mockito.any(WorkerCallback.class));
+		Mockito.verify(channel).basicAck(1L, false);
+
+		// A redelivery of a Job already running here is acknowledged without running it again
+		smtManager.processServiceExecutionJob(new ObjectMapper().writeValueAsString(new Job(new PiazzaJobRequest(), "123456")), channel, 2L);
+		Mockito.verify(channel).basicAck(2L, false);
+		Mockito.verify(serviceMessageWorker).run(Mockito.any(Job.class), Mockito.any(WorkerCallback.class));
+
+		smtManager.processServiceExecutionJob("Not a Job", channel, 3L);
+		Mockito.verify(channel).basicReject(3L, false);
+	}
+
+	/**
+	 * Test that a Job the workers refuse is requeued, and does not hold an in-flight permit
+	 */
+	@Test
+	public void testRequeueWhenNotHandedOff() throws IOException {
+		ReflectionTestUtils.setField(smtManager, "EXECUTION_ACKNOWLEDGE_MODE", AcknowledgeMode.MANUAL);
+		Mockito.when(serviceMessageWorker.run(Mockito.any(Job.class), Mockito.any(WorkerCallback.class)))
+				.thenThrow(new RejectedExecutionException("Executor has been shut down."));
+
+		smtManager.processServiceExecutionJob(new ObjectMapper().writeValueAsString(new Job(new PiazzaJobRequest(), "123456")), channel, 1L);
+		Mockito.verify(channel).basicReject(1L, true);
+		Mockito.verify(channel, Mockito.never()).basicAck(Mockito.anyLong(), Mockito.anyBoolean());
+		assertEquals(0, inFlightJobs.getCount());
+		assertEquals(2, inFlightJobs.getAvailableCount());
+	}
+
+	/**
+	 * Test that a Job that fails to start, or has no Job ID, is discarded and does not hold an in-flight permit
+	 */
+	@Test
+	public void testRejectWhenStartFails() throws IOException {
+		ReflectionTestUtils.setField(smtManager, "EXECUTION_ACKNOWLEDGE_MODE", AcknowledgeMode.MANUAL);
+		Mockito.when(serviceMessageWorker.run(Mockito.any(Job.class), Mockito.any(WorkerCallback.class)))
+				.thenThrow(new NullPointerException());
+
+		smtManager.processServiceExecutionJob(new ObjectMapper().writeValueAsString(new Job(new PiazzaJobRequest(), "123456")), channel, 1L);
+		Mockito.verify(channel).basicReject(1L, false);
+		assertEquals(0, inFlightJobs.getCount());
+		assertEquals(2, inFlightJobs.getAvailableCount());
+
+		smtManager.processServiceExecutionJob(new ObjectMapper().writeValueAsString(new Job(new PiazzaJobRequest(), null)), channel, 2L);
+		Mockito.verify(channel).basicReject(2L, false);
+		assertEquals(2, inFlightJobs.getAvailableCount());
+		Mockito.verify(channel, Mockito.never()).basicAck(Mockito.anyLong(), Mockito.anyBoolean());
+	}
+
+	/**
+	 * Test that with automatic acknowledgement, the container is left to acknowledge, and unreadable Messages are
+	 * rejected
+	 */
+	@Test(expected = AmqpRejectAndDontRequeueException.class)
+	public void testAutoAcknowledgement() throws IOException {
+		ReflectionTestUtils.setField(smtManager, "EXECUTION_ACKNOWLEDGE_MODE", AcknowledgeMode.AUTO);
+		Mockito.when(serviceMessageWorker.run(Mockito.any(Job.class), Mockito.any(WorkerCallback.class)))
+				.thenReturn(new CompletableFuture<String>());
+
+		smtManager.processServiceExecutionJob(new ObjectMapper().writeValueAsString(new Job(new PiazzaJobRequest(), "123456")), channel, 1L);
+		Mockito.verifyZeroInteractions(channel);
+
+		smtManager.processServiceExecutionJob("Not a Job", channel, 2L);
+	}
+
+	/**
+	 * Test that async mode holds an in-flight permit until the Job completes
+	 */
+	@Test
+	public void testAsyncMode() throws JsonProcessingException {
+		ReflectionTestUtils.setField(smtManager, "HTTP_CLIENT_MODE", "async");
+		Mockito.when(serviceMessageWorker.runAsync(Mockito.any(Job.class), Mockito.any(WorkerCallback.class)))
+				.thenReturn(new CompletableFuture<String>());
+
+		Job mockJob = new Job(new PiazzaJobRequest(), "123456");
+		smtManager.processServiceExecutionJob(new ObjectMapper().writeValueAsString(mockJob));
+
+		ArgumentCaptor<WorkerCallback> callback = ArgumentCaptor.forClass(WorkerCallback.class);
+		Mockito.verify(serviceMessageWorker).runAsync(Mockito.any(Job.class), callback.capture());
+		Mockito.verify(serviceMessageWorker, Mockito.never()).run(Mockito.any(Job.class), Mockito.any(WorkerCallback.class));
+		assertEquals(1, inFlightJobs.getAvailableCount());
+
+		callback.getValue().onComplete("123456");
+		assertEquals(2, inFlightJobs.getAvailableCount());
+		assertEquals(0, inFlightJobs.getCount());
+	}
+
+	/**
+	 * Test that a Job completing before its Future is tracked does not leave it registered
+	 */
+	@Test
+	public void testCompletionBeforeTracking() throws JsonProcessingException {
+		Mockito.when(serviceMessageWorker.run(Mockito.any(Job.class), Mockito.any(WorkerCallback.class))).thenAnswer(invocation -> {
+			((WorkerCallback) invocation.getArguments()[1]).onComplete("123456");
+			return CompletableFuture.completedFuture("done");
+		});
+
+		smtManager.processServiceExecutionJob(new ObjectMapper().writeValueAsString(new Job(new PiazzaJobRequest(), "123456")));
+
+		assertEquals(0, inFlightJobs.getCount());
+		assertEquals(2, inFlightJobs.getAvailableCount());
+	}
+
+	/**
+	 * Test that aborting a running Job cancels its worker, and that its place is freed once the worker stops
+	 */
+	@Test
+	public void testAbortRunningJob() throws JsonProcessingException {
+		CompletableFuture<String> workerFuture = new CompletableFuture<>();
+		Mockito.when(serviceMessageWorker.run(Mockito.any(Job.class), Mockito.any(WorkerCallback.class))).thenReturn(workerFuture);
+		smtManager.processServiceExecutionJob(new ObjectMapper().writeValueAsString(new Job(new PiazzaJobRequest(), "123456")));
+		assertEquals(1, inFlightJobs.getCount());
+		inFlightJobs.started("123456");
+
+		smtManager.processAbortJob(abortMessage("123456"));
+
+		assertTrue(workerFuture.isCancelled());
+		Mockito.verify(requestFactory).abort("123456");
+		// The worker may still be running until its callback fires
+		assertEquals(1, inFlightJobs.getCount());
+		ArgumentCaptor<WorkerCallback> callback = ArgumentCaptor.forClass(WorkerCallback.class);
+		Mockito.verify(serviceMessageWorker).run(Mockito.any(Job.class), callback.capture());
+		callback.getValue().onComplete("123456");
+		assertEquals(0, inFlightJobs.getCount());
+		assertEquals(2, inFlightJobs.getAvailableCount());
+		// Jobs held in the database are left to the shared abort queue
+		Mockito.verify(serviceTaskManager, Mockito.never()).cancelJob(Mockito.anyString());
+	}
+
+	/**
+	 * Test that an abort arriving after a Job is handed to a started worker, but before its Future is attached,
+	 * cancels the worker once it is
+	 */
+	@Test
+	public void testAbortBeforeAttach() throws JsonProcessingException {
+		CompletableFuture<String> workerFuture = new CompletableFuture<>();
+		Mockito.when(serviceMessageWorker.run(Mockito.any(Job.class), Mockito.any(WorkerCallback.class))).thenAnswer(invocation -> {
+			assertTrue(inFlightJobs.started("123456"));
+			smtManager.processAbortJob(abortMessage("123456"));
+			return workerFuture;
+		});
+
+		smtManager.processServiceExecutionJob(new ObjectMapper().writeValueAsString(new Job(new PiazzaJobRequest(), "123456")));
+
+		assertTrue(workerFuture.isCancelled());
+		assertEquals(1, inFlightJobs.getCount());
+	}
+
+	/**
+	 * Test that a Job aborted before its worker started is not run by the worker, and is not given up by this instance
+	 * until the worker completes it
+	 */
+	@Test
+	public void testAbortBeforeStart() throws JsonProcessingException {
+		CompletableFuture<String> workerFuture = new CompletableFuture<>();
+		Mockito.when(serviceMessageWorker.run(Mockito.any(Job.class), Mockito.any(WorkerCallback.class))).thenAnswer(invocation -> {
+			smtManager.processAbortJob(abortMessage("123456"));
+			return workerFuture;
+		});
+
+		smtManager.processServiceExecutionJob(new ObjectMapper().writeValueAsString(new Job(new PiazzaJobRequest(), "123456")));
+
+		// The worker is left to find the Job cancelled when it starts
+		assertFalse(workerFuture.isCancelled());
+		assertEquals(1, inFlightJobs.getCount());
+		assertFalse(inFlightJobs.started("123456"));
+
+		// A redelivery while the worker holds the Job is not run again
+		smtManager.processServiceExecutionJob(new ObjectMapper().writeValueAsString(new Job(new PiazzaJobRequest(), "123456")));
+		Mockito.verify(serviceMessageWorker).run(Mockito.any(Job.class), Mockito.any(WorkerCallback.class));
+	}
+
+	/**
+	 * Test that an abort for a Job not running on this instance is ignored by this instance
+	 */
+	@Test
+	public void testAbortJobNotRunning() throws JsonProcessingException {
+		PiazzaJobRequest abortRequest = new PiazzaJobRequest();
+		abortRequest.jobType = new AbortJob("654321");
+		smtManager.processAbortJob(new ObjectMapper().writeValueAsString(abortRequest));
+
+		Mockito.verifyZeroInteractions(requestFactory, serviceTaskManager, asyncServiceInstanceScheduler);
+	}
+
+	/**
+	 * Test that an abort from the shared queue cancels Task-Managed and Asynchronous Jobs
+	 */
+	@Test
+	public void testPersistedJobAbort() throws JsonProcessingException {
+		PiazzaJobRequest abortRequest = new PiazzaJobRequest();
+		abortRequest.jobType = new AbortJob("654321");
+		smtManager.processPersistedJobAbort(new ObjectMapper().writeValueAsString(abortRequest));
+
+		Mockito.verify(serviceTaskManager).cancelJob("654321");
+		Mockito.verify(asyncServiceInstanceScheduler).cancelInstance("654321");
+
+		// A message that cannot be read is not acted on
+		smtManager.processPersistedJobAbort("{}");
+		Mockito.verifyNoMoreInteractions(serviceTaskManager, asyncServiceInstanceScheduler);
+	}
+
+	private String abortMessage(String jobId) throws JsonProcessingException {
+		PiazzaJobRequest abortRequest = new PiazzaJobRequest();
+		abortRequest.jobType = new AbortJob(jobId);
+		return new ObjectMapper().writeValueAsString(abortRequest);
+	}
 }
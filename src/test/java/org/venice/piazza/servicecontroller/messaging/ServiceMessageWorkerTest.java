@@ -15,16 +15,22 @@
  *******************************************************************************/
 package org.venice.piazza.servicecontroller.messaging;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -35,6 +41,8 @@ import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
 import org.venice.piazza.servicecontroller.messaging.handlers.DeleteServiceHandler;
 import org.venice.piazza.servicecontroller.messaging.handlers.DescribeServiceHandler;
@@ -42,7 +50,10 @@ import org.venice.piazza.servicecontroller.messaging.handlers.ExecuteServiceHand
 import org.venice.piazza.servicecontroller.messaging.handlers.ListServiceHandler;
 import org.venice.piazza.servicecontroller.messaging.handlers.RegisterServiceHandler;
 import org.venice.piazza.servicecontroller.messaging.handlers.UpdateServiceHandler;
+import org.venice.piazza.servicecontroller.result.ResultBuffer;
+import org.venice.piazza.servicecontroller.util.AbortableClientHttpRequestFactory;
 import org.venice.piazza.servicecontroller.util.CoreServiceProperties;
+import org.venice.piazza.servicecontroller.util.JsonSerialization;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -51,6 +62,8 @@ import model.data.DataType;
 import model.data.type.GeoJsonDataType;
 import model.data.type.TextDataType;
 import model.job.Job;
+import messaging.job.WorkerCallback;
+import model.status.StatusUpdate;
 import model.job.metadata.ResourceMetadata;
 import model.job.type.ExecuteServiceJob;
 import model.job.type.RegisterServiceJob;
@@ -88,12 +101,15 @@ public class ServiceMessageWorkerTest {
 	@Mock
 	private UUIDFactory uuidFactoryMock;
 	@Mock
-	private ObjectMapper omMock;
+	private JsonSerialization serializationMock;
 	@Mock
 	private DatabaseAccessor accessorMock;
 	@Mock
-	@Qualifier("UpdateJobsQueue")
-	private Queue updateJobsQueue;
+	private InFlightJobRegistry inFlightJobRegistryMock;
+	@Mock
+	private StatusUpdatePublisher statusPublisher;
+	@Mock
+	private AbortableClientHttpRequestFactory requestFactory;
 	@Mock
 	@Qualifier("RequestJobQueue")
 	private Queue requestJobQueue;
@@ -138,6 +154,29 @@ public class ServiceMessageWorkerTest {
 		validJob.setJobType(esJob);
 
 		MockitoAnnotations.initMocks(this);
+		ReflectionTestUtils.setField(smWorkerMock, "responseExecutor", new ConcurrentTaskExecutor(Runnable::run));
+		Mockito.when(inFlightJobRegistryMock.started(Mockito.anyString())).thenReturn(true);
+		Mockito.when(inFlightJobRegistryMock.startedNonBlocking(Mockito.anyString())).thenReturn(true);
+	}
+
+	/**
+	 * Test that a Job aborted before its worker started is reported as cancelled and completed, without being run
+	 */
+	@Test
+	public void testCancelledBeforeStart() throws Exception {
+		Mockito.when(inFlightJobRegistryMock.started(validJob.getJobId())).thenReturn(false);
+		Mockito.when(inFlightJobRegistryMock.startedNonBlocking(validJob.getJobId())).thenReturn(false);
+		WorkerCallback callback = Mockito.mock(WorkerCallback.class);
+
+		assertTrue(smWorkerMock.run(validJob, callback).get() != null);
+		assertTrue(smWorkerMock.runAsync(validJob, callback).get() != null);
+
+		Mockito.verify(callback, Mockito.times(2)).onComplete(validJob.getJobId());
+		ArgumentCaptor<StatusUpdate> statusUpdate = ArgumentCaptor.forClass(StatusUpdate.class);
+		Mockito.verify(statusPublisher, Mockito.times(2)).publish(statusUpdate.capture());
+		assertEquals(StatusUpdate.STATUS_CANCELLED, statusUpdate.getValue().getStatus());
+		Mockito.verify(requestFactory, Mockito.never()).track(Mockito.anyString(), Mockito.any(BooleanSupplier.class));
+		Mockito.verifyZeroInteractions(esHandlerMock, accessorMock);
 	}
 
 	@Test
@@ -191,7 +230,7 @@ public class ServiceMessageWorkerTest {
 
 			ExecuteServiceJob jobItem = (ExecuteServiceJob) validJob.getJobType();
 			ExecuteServiceData esData = jobItem.data;
-			Mockito.when(esHandlerMock.handle(jobItem)).thenReturn(response);
+			Mockito.when(esHandlerMock.handleStreaming(jobItem)).thenReturn(streamed(response));
 			// Mockito.doNothing().when(loggerMock).log(Mockito.anyString(), Severity.INFORMATIONAL);
 
 			// Test valid Payload
@@ -277,7 +316,7 @@ public class ServiceMessageWorkerTest {
 			ExecuteServiceJob jobItem = (ExecuteServiceJob) validJob.getJobType();
 			ExecuteServiceData esData = jobItem.data;
 			// What happens if the handled executeservice returns a null
-			Mockito.when(esHandlerMock.handle(jobItem)).thenReturn(null);
+			Mockito.when(esHandlerMock.handleStreaming(jobItem)).thenReturn(null);
 			// Mockito.doNothing().when(loggerMock).log(Mockito.anyString(), Severity.INFORMATIONAL);
 
 			// Test valid Payload
@@ -310,7 +349,7 @@ public class ServiceMessageWorkerTest {
 
 			ExecuteServiceJob jobItem = (ExecuteServiceJob) validJob.getJobType();
 			ExecuteServiceData esData = jobItem.data;
-			Mockito.when(esHandlerMock.handle(jobItem)).thenReturn(response);
+			Mockito.when(esHandlerMock.handleStreaming(jobItem)).thenReturn(streamed(response));
 			// Mockito.doNothing().when(loggerMock).log(Mockito.anyString(), Severity.INFORMATIONAL);
 
 			// Test valid Payload
@@ -322,6 +361,74 @@ public class ServiceMessageWorkerTest {
 
 	}
 
+	/**
+	 * Test the non-blocking execution path, where the response is processed as a continuation
+	 */
+	@Test
+	public void testRunAsync() throws Exception {
+		ExecuteServiceJob jobItem = (ExecuteServiceJob) validJob.getJobType();
+		Mockito.when(accessorMock.getServiceById(jobItem.data.getServiceId())).thenReturn(service);
+		CompletableFuture<ResponseEntity<String>> request = new CompletableFuture<>();
+		Mockito.when(esHandlerMock.handleAsync(jobItem)).thenReturn(request);
+		AtomicInteger callbacks = new AtomicInteger();
+
+		CompletableFuture<String> workerFuture = smWorkerMock.runAsync(validJob, (String jobId) -> callbacks.incrementAndGet());
+		// No thread is held while the Service responds
+		assertTrue(!workerFuture.isDone());
+		assertEquals(0, callbacks.get());
+
+		ResponseEntity<String> response = new ResponseEntity<>("Run results", HttpStatus.OK);
+		request.complete(response);
+		assertTrue(workerFuture.get() != null);
+		Mockito.verify(esHandlerMock).processStreamedExecutionResult(Mockito.eq(service), Mockito.anyString(), Mockito.anyString(),
+				Mockito.any(ResultBuffer.class), Mockito.anyString());
+		assertEquals(1, callbacks.get());
+	}
+
+	/**
+	 * Test cancelling a Job on the non-blocking execution path
+	 */
+	@Test
+	public void testRunAsyncCancel() throws Exception {
+		ExecuteServiceJob jobItem = (ExecuteServiceJob) validJob.getJobType();
+		Mockito.when(accessorMock.getServiceById(jobItem.data.getServiceId())).thenReturn(service);
+		CompletableFuture<ResponseEntity<String>> request = new CompletableFuture<>();
+		Mockito.when(esHandlerMock.handleAsync(jobItem)).thenReturn(request);
+		AtomicInteger callbacks = new AtomicInteger();
+
+		CompletableFuture<String> workerFuture = smWorkerMock.runAsync(validJob, (String jobId) -> callbacks.incrementAndGet());
+		assertTrue(workerFuture.cancel(true));
+		assertTrue(request.isCancelled());
+		assertEquals(1, callbacks.get());
+		Mockito.verify(esHandlerMock, Mockito.never()).processStreamedExecutionResult(Mockito.any(Service.class), Mockito.anyString(),
+				Mockito.anyString(), Mockito.any(ResultBuffer.class), Mockito.anyString());
+	}
+
+	/**
+	 * Test that a cancellation arriving while the response is being handled does not also report the Job cancelled
+	 */
+	@Test
+	public void testRunAsyncCancelDuringResponse() throws Exception {
+		ExecuteServiceJob jobItem = (ExecuteServiceJob) validJob.getJobType();
+		Mockito.when(accessorMock.getServiceById(jobItem.data.getServiceId())).thenReturn(service);
+		CompletableFuture<ResponseEntity<String>> request = new CompletableFuture<>();
+		Mockito.when(esHandlerMock.handleAsync(jobItem)).thenReturn(request);
+		AtomicInteger callbacks = new AtomicInteger();
+		CompletableFuture<String> workerFuture = smWorkerMock.runAsync(validJob, (String jobId) -> callbacks.incrementAndGet());
+		Mockito.doAnswer(invocation -> workerFuture.cancel(true)).when(esHandlerMock).processStreamedExecutionResult(
+				Mockito.eq(service), Mockito.anyString(), Mockito.anyString(), Mockito.any(ResultBuffer.class), Mockito.anyString());
+
+		request.complete(new ResponseEntity<>("Run results", HttpStatus.OK));
+		assertTrue(!request.isCancelled());
+		assertEquals(1, callbacks.get());
+		Mockito.verify(statusPublisher, Mockito.never()).publish(Mockito.argThat(new ArgumentMatcher<StatusUpdate>() {
+			@Override
+			public boolean matches(Object argument) {
+				return StatusUpdate.STATUS_CANCELLED.equals(((StatusUpdate) argument).getStatus());
+			}
+		}));
+	}
+
 	/**
 	 * Test creation of headers with media type
 	 */
@@ -352,9 +459,9 @@ public class ServiceMessageWorkerTest {
 
 			ExecuteServiceJob jobItem = (ExecuteServiceJob) validJob.getJobType();
 			ExecuteServiceData esData = jobItem.data;
-			Mockito.when(esHandlerMock.handle(jobItem)).thenReturn(response);
+			Mockito.when(esHandlerMock.handleStreaming(jobItem)).thenReturn(streamed(response));
 			// Mockito.doNothing().when(loggerMock).log(Mockito.anyString(), Severity.INFORMATIONAL);
-			Mockito.when(omMock.readValue(Mockito.anyString(), eq(DataResource.class))).thenReturn(null);
+			Mockito.when(serializationMock.read(Mockito.anyString(), eq(DataResource.class))).thenReturn(null);
 
 			// Test valid Payload
 			Future<String> workerFuture = spy.run(validJob, null);
@@ -388,6 +495,10 @@ public class ServiceMessageWorkerTest {
 
 	}
 
+	private ResponseEntity<ResultBuffer> streamed(ResponseEntity<String> response) {
+		return new ResponseEntity<>(ResultBuffer.of(response.getBody()), response.getStatusCode());
+	}
+
 	private Job createInvalidJobWithoutOuptut() {
 
 		Job job = new Job();
@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Queue;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.venice.piazza.servicecontroller.util.JsonSerialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import model.status.StatusUpdate;
+import util.PiazzaLogger;
+
+/**
+ * Tests the batching and coalescing of Status Updates
+ */
+public class StatusUpdatePublisherTest {
+	@InjectMocks
+	private StatusUpdatePublisher publisher;
+	@Mock
+	private ConfirmedMessageSender sender;
+	@Mock
+	private MessageOutbox outbox;
+	@Mock
+	private Queue updateJobsQueue;
+	@Mock
+	private PiazzaLogger logger;
+
+	@Before
+	public void setup() throws Exception {
+		MockitoAnnotations.initMocks(this);
+		JsonSerialization serialization = new JsonSerialization();
+		ReflectionTestUtils.setField(serialization, "mapper", new ObjectMapper());
+		ReflectionTestUtils.setField(publisher, "serialization", serialization);
+		ReflectionTestUtils.setField(publisher, "BUFFER_CAPACITY", 10);
+		ReflectionTestUtils.setField(publisher, "BATCH_SIZE", 5);
+		ReflectionTestUtils.setField(publisher, "LINGER_MS", 10);
+
+		Mockito.when(updateJobsQueue.getName()).thenReturn("UpdateJob-unittest");
+	}
+
+	/**
+	 * Test that only the latest non-terminal Status of a Job is sent, and that terminal Statuses go through the outbox
+	 */
+	@Test
+	public void testCoalescing() throws Exception {
+		publisher.publish(status("job1", StatusUpdate.STATUS_PENDING));
+		publisher.publish(status("job1", StatusUpdate.STATUS_RUNNING));
+		publisher.publish(status("job2", StatusUpdate.STATUS_RUNNING));
+		publisher.publish(status("job3", StatusUpdate.STATUS_PENDING));
+		publisher.publish(status("job3", StatusUpdate.STATUS_RUNNING));
+		assertEquals(3, publisher.getBufferedCount());
+		assertEquals(2, publisher.getCoalescedCount());
+
+		// A terminal Status discards the unsent Status of its Job
+		Runnable databaseUpdate = Mockito.mock(Runnable.class);
+		publisher.publish(status("job2", StatusUpdate.STATUS_SUCCESS), databaseUpdate);
+		assertEquals(3, publisher.getCoalescedCount());
+		ArgumentCaptor<List> terminal = ArgumentCaptor.forClass(List.class);
+		Mockito.verify(outbox).send(Mockito.eq("UpdateJob-unittest"), terminal.capture(), Mockito.eq(databaseUpdate));
+		assertEquals(1, terminal.getValue().size());
+		String payload = (String) terminal.getValue().get(0);
+		assertTrue(payload.contains("job2") && payload.contains(StatusUpdate.STATUS_SUCCESS));
+
+		publisher.flush();
+
+		List<String> sent = getSentMessages(1);
+		assertEquals(2, sent.size());
+		assertTrue(sent.get(0).contains("job1") && sent.get(0).contains(StatusUpdate.STATUS_RUNNING));
+		assertTrue(sent.get(1).contains("job3") && sent.get(1).contains(StatusUpdate.STATUS_RUNNING));
+		assertEquals(2, publisher.getPublishedCount());
+		assertEquals(0, publisher.getBufferedCount());
+	}
+
+	/**
+	 * Test that the database changes of a non-terminal Status are made once it is queued
+	 */
+	@Test
+	public void testNonTerminalDatabaseUpdate() throws Exception {
+		Runnable databaseUpdate = Mockito.mock(Runnable.class);
+		publisher.publish(status("job1", StatusUpdate.STATUS_RUNNING), databaseUpdate);
+		Mockito.verify(databaseUpdate).run();
+		Mockito.verifyZeroInteractions(outbox);
+		assertEquals(1, publisher.getBufferedCount());
+	}
+
+	/**
+	 * Test that the terminal Statuses of several Jobs are written to the outbox together, and the non-terminal ones are
+	 * queued
+	 */
+	@Test
+	public void testPublishAll() throws Exception {
+		Runnable databaseUpdate = Mockito.mock(Runnable.class);
+		List<StatusUpdate> statusUpdates = new ArrayList<>();
+		statusUpdates.add(status("job1", StatusUpdate.STATUS_SUCCESS));
+		statusUpdates.add(status("job2", StatusUpdate.STATUS_RUNNING));
+		statusUpdates.add(status("job3", StatusUpdate.STATUS_FAIL));
+		publisher.publishAll(statusUpdates, databaseUpdate);
+
+		ArgumentCaptor<List> terminal = ArgumentCaptor.forClass(List.class);
+		Mockito.verify(outbox).send(Mockito.eq("UpdateJob-unittest"), terminal.capture(), Mockito.eq(databaseUpdate));
+		assertEquals(2, terminal.getValue().size());
+		assertTrue(((String) terminal.getValue().get(0)).contains("job1"));
+		assertTrue(((String) terminal.getValue().get(1)).contains("job3"));
+		assertEquals(1, publisher.getBufferedCount());
+	}
+
+	/**
+	 * Test that a batch the broker does not confirm is sent again
+	 */
+	@Test
+	public void testRetryUntilConfirmed() throws Exception {
+		Mockito.doThrow(new AmqpException("The broker did not confirm the messages.")).doNothing().when(sender)
+				.send(Mockito.anyString(), Mockito.anyListOf(String.class));
+		publisher.initialize();
+		try {
+			publisher.publish(status("job1", StatusUpdate.STATUS_RUNNING));
+			long deadline = System.currentTimeMillis() + 10000;
+			while ((publisher.getPublishedCount() == 0) && (System.currentTimeMillis() < deadline)) {
+				Thread.sleep(50);
+			}
+			assertEquals(1, publisher.getPublishedCount());
+			getSentMessages(2);
+		} finally {
+			publisher.shutdown();
+		}
+	}
+
+	/**
+	 * Test that no non-terminal Status of a Job is sent once its terminal Status has been written, including a batch
+	 * waiting to be retried
+	 */
+	@Test
+	public void testNoStatusAfterTerminal() throws Exception {
+		Mockito.doThrow(new AmqpException("The broker did not confirm the messages.")).doNothing().when(sender)
+				.send(Mockito.anyString(), Mockito.anyListOf(String.class));
+		publisher.initialize();
+		try {
+			publisher.publish(status("job1", StatusUpdate.STATUS_RUNNING));
+			// Wait for the first attempt to fail
+			long deadline = System.currentTimeMillis() + 10000;
+			while ((getSendCount() == 0) && (System.currentTimeMillis() < deadline)) {
+				Thread.sleep(10);
+			}
+			publisher.publish(status("job1", StatusUpdate.STATUS_SUCCESS));
+			publisher.publish(status("job1", StatusUpdate.STATUS_RUNNING));
+			assertEquals(0, publisher.getBufferedCount());
+
+			// The retry has nothing left to send
+			Thread.sleep(1500);
+			getSentMessages(1);
+			assertEquals(0, publisher.getPublishedCount());
+		} finally {
+			publisher.shutdown();
+		}
+	}
+
+	/**
+	 * Test that a Status that fails to send while shutting down is retried until the shutdown timeout
+	 */
+	@Test
+	public void testRetryWhileShuttingDown() throws Exception {
+		publisher.shutdown();
+		Mockito.doThrow(new AmqpException("The broker did not confirm the messages.")).doNothing().when(sender)
+				.send(Mockito.anyString(), Mockito.anyListOf(String.class));
+
+		publisher.publish(status("job1", StatusUpdate.STATUS_RUNNING));
+		assertEquals(1, publisher.getPublishedCount());
+		getSentMessages(2);
+	}
+
+	/**
+	 * Test that publishing blocks while the buffer is full, rather than discarding the Status
+	 */
+	@Test
+	public void testBlocksWhenFull() throws Exception {
+		ReflectionTestUtils.setField(publisher, "BUFFER_CAPACITY", 1);
+		publisher.publish(status("job1", StatusUpdate.STATUS_RUNNING));
+
+		CountDownLatch published = new CountDownLatch(1);
+		Thread producer = new Thread(() -> {
+			publisher.publish(status("job2", StatusUpdate.STATUS_RUNNING));
+			published.countDown();
+		});
+		producer.start();
+		assertTrue(!published.await(200, TimeUnit.MILLISECONDS));
+
+		publisher.flush();
+		assertTrue(published.await(5, TimeUnit.SECONDS));
+		publisher.flush();
+		getSentMessages(2);
+	}
+
+	/**
+	 * @return The number of batches the sender has been asked to send
+	 */
+	private int getSendCount() {
+		return Mockito.mockingDetails(sender).getInvocations().size();
+	}
+
+	/**
+	 * @return The messages of all batches sent, verifying the number of batches
+	 */
+	@SuppressWarnings("unchecked")
+	private List<String> getSentMessages(int batches) throws Exception {
+		ArgumentCaptor<List> payloads = ArgumentCaptor.forClass(List.class);
+		Mockito.verify(sender, Mockito.times(batches)).send(Mockito.eq("UpdateJob-unittest"), payloads.capture());
+		List<String> sent = new ArrayList<>();
+		for (List<String> batch : payloads.getAllValues()) {
+			sent.addAll(batch);
+		}
+		return sent;
+	}
+
+	private static StatusUpdate status(String jobId, String status) {
+		StatusUpdate statusUpdate = new StatusUpdate(status);
+		statusUpdate.setJobId(jobId);
+		return statusUpdate;
+	}
+}
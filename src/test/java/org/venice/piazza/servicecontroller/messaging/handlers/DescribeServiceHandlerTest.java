@@ -24,11 +24,13 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
 
 import org.venice.piazza.servicecontroller.util.CoreServiceProperties;
+import org.venice.piazza.servicecontroller.util.JsonSerialization;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -77,6 +79,9 @@ import util.UUIDFactory;
 			service.setResourceMetadata(rm);
 			service.setUrl("http://localhost:8082/string/toUpper");
 			MockitoAnnotations.initMocks(this);			
+			JsonSerialization serialization = new JsonSerialization();
+			ReflectionTestUtils.setField(serialization, "mapper", new ObjectMapper());
+			ReflectionTestUtils.setField(dsHandler, "serialization", serialization);
 	    }
 		
 		@Test
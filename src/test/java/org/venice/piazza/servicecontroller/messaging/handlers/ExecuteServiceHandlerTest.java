@@ -21,12 +21,15 @@ import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.when;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
 
 import model.data.DataResource;
 import model.data.type.GeoJsonDataType;
@@ -36,18 +39,29 @@ import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.powermock.modules.junit4.PowerMockRunner;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.concurrent.SettableListenableFuture;
+import org.springframework.web.client.AsyncRestTemplate;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
+import org.venice.piazza.servicecontroller.messaging.MessageOutbox;
 import org.venice.piazza.servicecontroller.messaging.handlers.ExecuteServiceHandler;
+import org.venice.piazza.servicecontroller.result.ResultBuffer;
+import org.venice.piazza.servicecontroller.result.BlobStore;
+import org.venice.piazza.servicecontroller.result.ResultBufferFactory;
+import org.venice.piazza.servicecontroller.result.ResultOffloader;
+import org.venice.piazza.servicecontroller.util.JsonSerialization;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
@@ -57,6 +71,7 @@ import model.data.DataType;
 import model.data.type.BodyDataType;
 import model.data.type.TextDataType;
 import model.data.type.URLParameterDataType;
+import model.job.result.type.DataResult;
 import model.job.metadata.ResourceMetadata;
 import model.job.type.ExecuteServiceJob;
 import model.service.metadata.ExecuteServiceData;
@@ -82,9 +97,11 @@ public class ExecuteServiceHandlerTest {
 	@Mock
 	private Service serviceMock;
 	@Mock
-	private RabbitTemplate rabbitTemplate;
+	private MessageOutbox outbox;
 	@Mock
 	private org.springframework.amqp.core.Queue jobQueue;
+	@Mock
+	private BlobStore blobStore;
 
 	private UUIDFactory uuidFactory = new UUIDFactory();
 	private ObjectMapper objectMapper = new ObjectMapper();
@@ -96,6 +113,8 @@ public class ExecuteServiceHandlerTest {
 
 	@Mock
 	RestTemplate restTemplateMock;
+	@Mock
+	AsyncRestTemplate asyncRestTemplateMock;
 
 	@Before
     public void setup() {
@@ -140,6 +159,22 @@ public class ExecuteServiceHandlerTest {
 
 		ReflectionTestUtils.setField(this.executeServiceHandler, "uuidFactory", this.uuidFactory);
 		ReflectionTestUtils.setField(this.executeServiceHandler, "requestJobQueue", this.jobQueue);
+		JsonSerialization serialization = new JsonSerialization();
+		ReflectionTestUtils.setField(serialization, "mapper", new ObjectMapper());
+		ReflectionTestUtils.setField(this.executeServiceHandler, "serialization", serialization);
+
+		ResultBufferFactory resultBufferFactory = new ResultBufferFactory();
+		ReflectionTestUtils.setField(resultBufferFactory, "MEMORY_THRESHOLD_BYTES", 1024);
+		ReflectionTestUtils.setField(resultBufferFactory, "BUFFER_DIRECTORY", "");
+		ReflectionTestUtils.setField(resultBufferFactory, "SNIFF_LOOKAHEAD_BYTES", 1024);
+		ReflectionTestUtils.setField(resultBufferFactory, "mapper", this.objectMapper);
+		ReflectionTestUtils.setField(this.executeServiceHandler, "resultBufferFactory", resultBufferFactory);
+
+		ResultOffloader resultOffloader = new ResultOffloader();
+		ReflectionTestUtils.setField(resultOffloader, "OFFLOAD_THRESHOLD_BYTES", 8192);
+		ReflectionTestUtils.setField(resultOffloader, "blobStore", this.blobStore);
+		Mockito.when(this.blobStore.isConfigured()).thenReturn(true);
+		ReflectionTestUtils.setField(this.executeServiceHandler, "resultOffloader", resultOffloader);
     }
 	
 	/**
@@ -185,6 +220,39 @@ public class ExecuteServiceHandlerTest {
 
 	}
 	
+	/**
+	 * Test the non-blocking execution of a GET service, including cancellation of the request
+	 */
+	@Test
+	public void testExecuteServiceAsync() throws Exception {
+		ExecuteServiceJob job = new ExecuteServiceJob();
+		ExecuteServiceData edata = new ExecuteServiceData();
+		String serviceId = "a842aae2-bd74-4c4b-9a65-c45e8cd9060f";
+		edata.setServiceId(serviceId);
+		edata.setDataInputs(new HashMap<String, DataType>());
+		job.data = edata;
+		Mockito.when(accessorMock.getServiceById(serviceId)).thenReturn(movieService);
+
+		// Successful request
+		SettableListenableFuture<ResponseEntity<String>> responseFuture = new SettableListenableFuture<>();
+		Mockito.when(asyncRestTemplateMock.getForEntity(Mockito.any(URI.class), Mockito.eq(String.class))).thenReturn(responseFuture);
+		CompletableFuture<ResponseEntity<String>> result = executeServiceHandler.handleAsync(job);
+		assertTrue(!result.isDone());
+		responseFuture.set(new ResponseEntity<String>("Run results", HttpStatus.OK));
+		assertEquals("Run results", result.get().getBody());
+		assertEquals(HttpStatus.OK, result.get().getStatusCode());
+
+		// Cancelled request
+		SettableListenableFuture<ResponseEntity<String>> cancelledFuture = new SettableListenableFuture<>();
+		Mockito.when(asyncRestTemplateMock.getForEntity(Mockito.any(URI.class), Mockito.eq(String.class))).thenReturn(cancelledFuture);
+		result = executeServiceHandler.handleAsync(job);
+		result.cancel(true);
+		assertTrue(cancelledFuture.isCancelled());
+
+		// Null Job
+		assertEquals(HttpStatus.BAD_REQUEST, executeServiceHandler.handleAsync(null).get().getStatusCode());
+	}
+
 	/**
 	 * tests what happens when the mime type is not specified for the payload
 	 * 
@@ -406,4 +474,101 @@ public class ExecuteServiceHandlerTest {
 				null, "dataId"
 		);
 	}
+
+	/**
+	 * Test that the streaming execution path returns the buffered body of the Service
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testExecuteServiceStreaming() throws Exception {
+		ExecuteServiceJob job = new ExecuteServiceJob();
+		ExecuteServiceData edata = new ExecuteServiceData();
+		String serviceId = "a842aae2-bd74-4c4b-9a65-c45e8cd9060f";
+		edata.setServiceId(serviceId);
+		edata.setDataInputs(new HashMap<String, DataType>());
+		job.data = edata;
+		Mockito.when(accessorMock.getServiceById(serviceId)).thenReturn(movieService);
+		Mockito.when(restTemplateMock.execute(Mockito.any(URI.class), Mockito.eq(HttpMethod.GET), Mockito.any(RequestCallback.class),
+				Mockito.any(ResponseExtractor.class))).thenReturn(new ResponseEntity<>(ResultBuffer.of("Run results"), HttpStatus.OK));
+
+		ResponseEntity<ResultBuffer> result = executeServiceHandler.handleStreaming(job);
+		assertEquals(HttpStatus.OK, result.getStatusCode());
+		assertEquals("Run results", result.getBody().asString());
+
+		// Null Job
+		assertEquals(HttpStatus.BAD_REQUEST, executeServiceHandler.handleStreaming(null).getStatusCode());
+	}
+
+	/**
+	 * Test processing of buffered results that are, and are not, DataResources
+	 */
+	@Test
+	public void testProcessStreamedExecutionResult() throws Exception {
+		DataResource da = new DataResource();
+		da.dataId = "dr_id";
+		TextDataType text = new TextDataType();
+		text.content = "Some content";
+		da.dataType = text;
+
+		// A DataResource is parsed, and given the new Data ID
+		try (ResultBuffer buffer = ResultBuffer.of(this.objectMapper.writeValueAsString(da))) {
+			DataResult result = this.executeServiceHandler.processStreamedExecutionResult(this.service,
+					(new TextDataType()).getClass().getSimpleName(), StatusUpdate.STATUS_SUCCESS, buffer, "dataId");
+			assertEquals("dataId", result.getDataId());
+		}
+
+		// Raw GeoJSON larger than the memory threshold is wrapped as the output type
+		StringBuilder geoJson = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+		for (int i = 0; i < 100; i++) {
+			geoJson.append(i == 0 ? "" : ",").append("{\"type\":\"Feature\",\"geometry\":null,\"properties\":{}}");
+		}
+		geoJson.append("]}");
+		ResultBufferFactory factory = (ResultBufferFactory) ReflectionTestUtils.getField(this.executeServiceHandler, "resultBufferFactory");
+		try (ResultBuffer buffer = factory.read(new ByteArrayInputStream(geoJson.toString().getBytes("UTF-8")))) {
+			assertTrue(buffer.isSpilled());
+			DataResult result = this.executeServiceHandler.processStreamedExecutionResult(this.service,
+					(new GeoJsonDataType()).getClass().getSimpleName(), StatusUpdate.STATUS_SUCCESS, buffer, "dataId");
+			assertEquals("dataId", result.getDataId());
+		}
+		Mockito.verify(this.outbox, Mockito.times(2)).send(Mockito.anyString(), Mockito.anyString(), Mockito.isNull(Runnable.class));
+	}
+
+	/**
+	 * Test that GeoJSON results over the offload threshold are sent by reference instead of inline
+	 */
+	@Test
+	public void testProcessStreamedExecutionResultOffload() throws Exception {
+		StringBuilder geoJson = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+		for (int i = 0; i < 300; i++) {
+			geoJson.append(i == 0 ? "" : ",").append("{\"type\":\"Feature\",\"geometry\":null,\"properties\":{}}");
+		}
+		geoJson.append("]}");
+		Mockito.when(this.blobStore.store(Mockito.eq("dataId"), Mockito.any(InputStream.class))).thenReturn("/share/dataId");
+
+		ResultBufferFactory factory = (ResultBufferFactory) ReflectionTestUtils.getField(this.executeServiceHandler, "resultBufferFactory");
+		try (ResultBuffer buffer = factory.read(new ByteArrayInputStream(geoJson.toString().getBytes("UTF-8")))) {
+			DataResult result = this.executeServiceHandler.processStreamedExecutionResult(this.service,
+					(new GeoJsonDataType()).getClass().getSimpleName(), StatusUpdate.STATUS_SUCCESS, buffer, "dataId");
+			assertEquals("dataId", result.getDataId());
+		}
+
+		ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+		Mockito.verify(this.outbox).send(Mockito.anyString(), message.capture(), Mockito.isNull(Runnable.class));
+		assertTrue(message.getValue().contains("/share/dataId"));
+		assertTrue(!message.getValue().contains("FeatureCollection"));
+		assertTrue(message.getValue().length() < 8192);
+	}
+
+	/**
+	 * Test that a result too large to be sent inline fails, rather than being read into memory
+	 */
+	@Test(expected = IOException.class)
+	public void testProcessStreamedExecutionResultTooLarge() throws Exception {
+		ReflectionTestUtils.setField(this.executeServiceHandler, "MAX_INLINE_BYTES", 16L);
+		ResultBufferFactory factory = (ResultBufferFactory) ReflectionTestUtils.getField(this.executeServiceHandler, "resultBufferFactory");
+		try (ResultBuffer buffer = factory.read(new ByteArrayInputStream("A text result of more than sixteen bytes".getBytes("UTF-8")))) {
+			this.executeServiceHandler.processStreamedExecutionResult(this.service, (new TextDataType()).getClass().getSimpleName(),
+					StatusUpdate.STATUS_SUCCESS, buffer, "dataId");
+		}
+	}
 }
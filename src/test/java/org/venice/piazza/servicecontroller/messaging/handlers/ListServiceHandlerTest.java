@@ -26,12 +26,14 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
 
 import org.venice.piazza.servicecontroller.util.CoreServiceProperties;
+import org.venice.piazza.servicecontroller.util.JsonSerialization;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
@@ -112,6 +114,9 @@ public class ListServiceHandlerTest {
 		
 		services.add(service);
 		MockitoAnnotations.initMocks(this);	
+		JsonSerialization serialization = new JsonSerialization();
+		ReflectionTestUtils.setField(serialization, "mapper", new ObjectMapper());
+		ReflectionTestUtils.setField(lsHandler, "serialization", serialization);
 		
     }
 	/**
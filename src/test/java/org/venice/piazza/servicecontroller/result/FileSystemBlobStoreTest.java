@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.result;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.StreamUtils;
+
+import model.data.location.FolderShare;
+
+/**
+ * Tests storing offloaded results on the file system
+ */
+public class FileSystemBlobStoreTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private FileSystemBlobStore blobStore = new FileSystemBlobStore();
+
+	@Before
+	public void setup() {
+		ReflectionTestUtils.setField(blobStore, "OFFLOAD_DIRECTORY", folder.getRoot().getAbsolutePath());
+	}
+
+	/**
+	 * Test storing, retrieving and deleting a payload
+	 */
+	@Test
+	public void testStore() throws IOException {
+		String location = blobStore.store("dataId", new ByteArrayInputStream("Payload".getBytes(StandardCharsets.UTF_8)));
+		assertEquals(folder.getRoot().toPath().resolve("dataId").toString(), location);
+		try (InputStream stream = blobStore.retrieve(location)) {
+			assertEquals("Payload", StreamUtils.copyToString(stream, StandardCharsets.UTF_8));
+		}
+		// No temporary files are left behind
+		assertEquals(1, folder.getRoot().list().length);
+
+		blobStore.delete(location);
+		assertFalse(Files.exists(Paths.get(location)));
+	}
+
+	/**
+	 * Test that keys cannot escape the directory
+	 */
+	@Test(expected = IOException.class)
+	public void testInvalidKey() throws IOException {
+		blobStore.store("../dataId", new ByteArrayInputStream(new byte[0]));
+	}
+
+	/**
+	 * Test that only results over the threshold are offloaded, and are sent as a location
+	 */
+	@Test
+	public void testOffloader() throws IOException {
+		ResultOffloader offloader = new ResultOffloader();
+		ReflectionTestUtils.setField(offloader, "OFFLOAD_THRESHOLD_BYTES", 4);
+		ReflectionTestUtils.setField(offloader, "blobStore", blobStore);
+
+		try (ResultBuffer small = ResultBuffer.of("Tiny"); ResultBuffer large = ResultBuffer.of("Larger")) {
+			assertFalse(offloader.shouldOffload(small));
+			assertTrue(offloader.shouldOffload(large));
+			FolderShare location = (FolderShare) offloader.offload("dataId", large);
+			assertTrue(Files.exists(Paths.get(location.filePath)));
+
+			// A result that will not be ingested is deleted
+			offloader.discard(location);
+			assertFalse(Files.exists(Paths.get(location.filePath)));
+		}
+
+		ReflectionTestUtils.setField(offloader, "OFFLOAD_THRESHOLD_BYTES", 0);
+		try (ResultBuffer large = ResultBuffer.of("Larger")) {
+			assertFalse(offloader.shouldOffload(large));
+		}
+	}
+
+	/**
+	 * Test that nothing is offloaded unless a shared directory is configured
+	 */
+	@Test
+	public void testUnconfigured() throws IOException {
+		ReflectionTestUtils.setField(blobStore, "OFFLOAD_DIRECTORY", "");
+		ResultOffloader offloader = new ResultOffloader();
+		ReflectionTestUtils.setField(offloader, "OFFLOAD_THRESHOLD_BYTES", 4);
+		ReflectionTestUtils.setField(offloader, "blobStore", blobStore);
+
+		assertFalse(blobStore.isConfigured());
+		assertFalse(offloader.isEnabled());
+		try (ResultBuffer large = ResultBuffer.of("Larger")) {
+			assertFalse(offloader.shouldOffload(large));
+		}
+		assertEquals(0, blobStore.deleteOlderThan(Long.MAX_VALUE));
+	}
+
+	/**
+	 * Test that only payloads older than the cutoff are deleted
+	 */
+	@Test
+	public void testDeleteOlderThan() throws IOException {
+		String expired = blobStore.store("expired", new ByteArrayInputStream("Old".getBytes(StandardCharsets.UTF_8)));
+		String current = blobStore.store("current", new ByteArrayInputStream("New".getBytes(StandardCharsets.UTF_8)));
+		long now = System.currentTimeMillis();
+		Path expiredPath = Paths.get(expired);
+		Files.setLastModifiedTime(expiredPath, FileTime.fromMillis(now - 10000));
+
+		assertEquals(1, blobStore.deleteOlderThan(now - 5000));
+		assertFalse(Files.exists(expiredPath));
+		assertTrue(Files.exists(Paths.get(current)));
+	}
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.result;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests streaming of responses into buffers, and DataResource detection
+ */
+public class ResultBufferFactoryTest {
+	private ResultBufferFactory factory = new ResultBufferFactory();
+
+	@Before
+	public void setup() {
+		ReflectionTestUtils.setField(factory, "MEMORY_THRESHOLD_BYTES", 16);
+		ReflectionTestUtils.setField(factory, "BUFFER_DIRECTORY", "");
+		ReflectionTestUtils.setField(factory, "SNIFF_LOOKAHEAD_BYTES", 64);
+		ReflectionTestUtils.setField(factory, "mapper", new ObjectMapper());
+	}
+
+	/**
+	 * Test detection of DataResources within the lookahead window
+	 */
+	@Test
+	public void testIsDataResource() throws IOException {
+		assertTrue(isDataResource("{\"dataId\":\"123\",\"dataType\":{\"type\":\"text\",\"content\":\"abc\"}}"));
+		assertTrue(isDataResource("{\"metadata\":{\"name\":\"x\"},\"dataType\":{\"type\":\"text\"}}"));
+		assertFalse(isDataResource("{\"type\":\"FeatureCollection\",\"features\":[]}"));
+		assertFalse(isDataResource("Plain text result"));
+		assertFalse(isDataResource("[1, 2, 3]"));
+		assertFalse(isDataResource(""));
+		// The dataType field lies beyond the lookahead window, so the rest of the object is scanned
+		String padding = new String(new char[100]).replace('\0', 'x');
+		assertTrue(isDataResource("{\"padding\":\"" + padding + "\",\"dataType\":{}}"));
+		assertTrue(isDataResource("{\"padding\":[\"" + padding + "\"],\"dataType\":{}}"));
+		assertFalse(isDataResource("{\"padding\":\"" + padding + "\",\"type\":\"FeatureCollection\"}"));
+		assertFalse(isDataResource("Plain text result " + padding));
+	}
+
+	/**
+	 * Test that the response extractor buffers the body, and keeps the declared charset
+	 */
+	@Test
+	public void testResponseExtractor() throws IOException {
+		ClientHttpResponse response = Mockito.mock(ClientHttpResponse.class);
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.parseMediaType("text/plain;charset=UTF-8"));
+		Mockito.when(response.getHeaders()).thenReturn(headers);
+		Mockito.when(response.getStatusCode()).thenReturn(HttpStatus.OK);
+		Mockito.when(response.getBody()).thenReturn(new ByteArrayInputStream("R\u00e9sultat du service".getBytes(StandardCharsets.UTF_8)));
+
+		ResponseEntity<ResultBuffer> entity = factory.responseExtractor().extractData(response);
+		try (ResultBuffer buffer = entity.getBody()) {
+			assertEquals(HttpStatus.OK, entity.getStatusCode());
+			assertTrue(buffer.isSpilled());
+			assertEquals("R\u00e9sultat du service", buffer.asString());
+		}
+	}
+
+	/**
+	 * Test that the request callback writes the headers and body
+	 */
+	@Test
+	public void testRequestCallback() throws IOException {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		MockClientHttpRequest request = new MockClientHttpRequest();
+		factory.requestCallback(headers, "{\"name\":\"value\"}").doWithRequest(request);
+		assertEquals(MediaType.APPLICATION_JSON, request.getHeaders().getContentType());
+		assertFalse(request.getHeaders().getAccept().isEmpty());
+		assertEquals("{\"name\":\"value\"}", request.getBodyAsString());
+	}
+
+	private boolean isDataResource(String content) throws IOException {
+		try (ResultBuffer buffer = ResultBuffer.of(content)) {
+			return factory.isDataResource(buffer);
+		}
+	}
+}
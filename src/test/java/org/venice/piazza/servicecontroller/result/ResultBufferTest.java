@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.result;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+/**
+ * Tests the in-memory and spilled states of the result buffer
+ */
+public class ResultBufferTest {
+	/**
+	 * Test that small results are held in memory
+	 */
+	@Test
+	public void testInMemory() throws IOException {
+		try (ResultBuffer buffer = new ResultBuffer(64, null)) {
+			buffer.write(new ByteArrayInputStream("Small result".getBytes(StandardCharsets.UTF_8)));
+			assertFalse(buffer.isSpilled());
+			assertEquals(12, buffer.size());
+			assertEquals("Small result", buffer.asString());
+			assertArrayEquals("Small".getBytes(StandardCharsets.UTF_8), buffer.readHead(5));
+		}
+	}
+
+	/**
+	 * Test that results over the threshold are spilled to a file, which is deleted on close
+	 */
+	@Test
+	public void testSpill() throws IOException {
+		byte[] content = new byte[20000];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) ('a' + (i % 26));
+		}
+		Path file;
+		try (ResultBuffer buffer = new ResultBuffer(1024, null)) {
+			buffer.write(new ByteArrayInputStream(content));
+			assertTrue(buffer.isSpilled());
+			assertEquals(content.length, buffer.size());
+			file = buffer.getFile();
+			assertTrue(Files.exists(file));
+			assertEquals(new String(content, StandardCharsets.UTF_8), buffer.asString());
+			// May be read more than once
+			assertEquals(4, buffer.readHead(4).length);
+			assertEquals(content.length, buffer.asString().length());
+		}
+		assertFalse(Files.exists(file));
+	}
+
+	/**
+	 * Test wrapping of content that has already been read as text
+	 */
+	@Test
+	public void testOf() throws IOException {
+		try (ResultBuffer buffer = ResultBuffer.of("Text")) {
+			assertEquals("Text", buffer.asString());
+		}
+		try (ResultBuffer buffer = ResultBuffer.of(null)) {
+			assertEquals(0, buffer.size());
+		}
+	}
+}
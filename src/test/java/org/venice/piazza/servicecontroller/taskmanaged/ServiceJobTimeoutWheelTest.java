@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.taskmanaged;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Tests the timer wheel of Task-Managed Service Job timeouts
+ */
+public class ServiceJobTimeoutWheelTest {
+	private ServiceJobTimeoutWheel wheel = new ServiceJobTimeoutWheel();
+	private long start;
+
+	@Before
+	public void setup() {
+		ReflectionTestUtils.setField(wheel, "TICK_MS", 1000L);
+		ReflectionTestUtils.setField(wheel, "WHEEL_SIZE", 8);
+		wheel.initialize();
+		start = System.currentTimeMillis();
+	}
+
+	/**
+	 * Test that deadlines expire only once their tick has fully elapsed, including those more than one rotation away
+	 */
+	@Test
+	public void testExpire() {
+		wheel.schedule("soon", start + 2000);
+		wheel.schedule("later", start + 20000);
+		assertEquals(2, wheel.getScheduledCount());
+
+		assertTrue(wheel.expire(start + 1000).isEmpty());
+		assertEquals(Collections.singletonList("soon"), wheel.expire(start + 4000));
+		// Two rotations have passed the slot of the later deadline before it is due
+		assertTrue(wheel.expire(start + 19000).isEmpty());
+		assertEquals(Collections.singletonList("later"), wheel.expire(start + 22000));
+		assertEquals(0, wheel.getScheduledCount());
+	}
+
+	/**
+	 * Test that cancelled and rescheduled deadlines do not expire at their old time, and that past deadlines expire at
+	 * the next tick
+	 */
+	@Test
+	public void testCancel() {
+		wheel.schedule("cancelled", start + 2000);
+		wheel.schedule("rescheduled", start + 2000);
+		wheel.schedule("past", start - 60000);
+		wheel.cancel("cancelled");
+		wheel.schedule("rescheduled", start + 6000);
+
+		assertEquals(Collections.singletonList("past"), wheel.expire(start + 4000));
+		assertEquals(Collections.singletonList("rescheduled"), wheel.expire(start + 8000));
+		assertTrue(wheel.expire(start + 60000).isEmpty());
+	}
+}
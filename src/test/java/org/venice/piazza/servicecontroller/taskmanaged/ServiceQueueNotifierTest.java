@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.taskmanaged;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import messaging.job.JobMessageFactory;
+import util.PiazzaLogger;
+
+/**
+ * Tests waking Task-Managed workers waiting on a Service Queue
+ */
+public class ServiceQueueNotifierTest {
+	@Mock
+	private RabbitTemplate rabbitTemplate;
+	@Mock
+	private PiazzaLogger logger;
+
+	private ServiceQueueNotifier notifier = new ServiceQueueNotifier();
+
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		ReflectionTestUtils.setField(notifier, "rabbitTemplate", rabbitTemplate);
+		ReflectionTestUtils.setField(notifier, "logger", logger);
+		ReflectionTestUtils.setField(notifier, "executor", (Executor) Runnable::run);
+		ReflectionTestUtils.setField(notifier, "SPACE", "unittest");
+	}
+
+	/**
+	 * Test that each Job added wakes the longest-waiting listener of its Service, on every instance
+	 */
+	@Test
+	public void testNotifyJobAdded() {
+		BooleanSupplier first = waitingListener();
+		BooleanSupplier second = waitingListener();
+		BooleanSupplier third = waitingListener();
+		BooleanSupplier otherService = waitingListener();
+		notifier.await("service1", first);
+		notifier.await("service1", second);
+		notifier.await("service1", third);
+		notifier.await("service2", otherService);
+		assertEquals(4, notifier.getWaitingCount());
+
+		notifier.notifyJobAdded("service1");
+		Mockito.verify(first).getAsBoolean();
+		Mockito.verifyZeroInteractions(second, third, otherService);
+		ArgumentCaptor<MessagePostProcessor> postProcessor = ArgumentCaptor.forClass(MessagePostProcessor.class);
+		Mockito.verify(rabbitTemplate).convertAndSend(Mockito.eq(JobMessageFactory.PIAZZA_EXCHANGE_NAME),
+				Mockito.eq("ServiceQueueJobAdded-unittest"), Mockito.eq("service1"), postProcessor.capture());
+
+		// The notification this instance published does not wake another listener
+		Message message = postProcessor.getValue().postProcessMessage(new Message(new byte[0], new MessageProperties()));
+		notifier.processJobAdded("service1", (String) message.getMessageProperties().getHeaders().get("originId"));
+		Mockito.verifyZeroInteractions(second, third);
+
+		// A notification from another instance wakes the next listener
+		notifier.processJobAdded("service1", "another-instance");
+		Mockito.verify(second).getAsBoolean();
+		Mockito.verify(first).getAsBoolean();
+		notifier.processJobAdded("service1", null);
+		Mockito.verify(third).getAsBoolean();
+		assertEquals(1, notifier.getWaitingCount());
+	}
+
+	/**
+	 * Test that a listener that has stopped waiting passes the wakeup on to the next
+	 */
+	@Test
+	public void testWakeupPassedOn() {
+		BooleanSupplier done = Mockito.mock(BooleanSupplier.class);
+		BooleanSupplier waiting = waitingListener();
+		notifier.await("service1", done);
+		notifier.await("service1", waiting);
+
+		notifier.processJobAdded("service1", null);
+		Mockito.verify(done).getAsBoolean();
+		Mockito.verify(waiting).getAsBoolean();
+		assertEquals(0, notifier.getWaitingCount());
+	}
+
+	/**
+	 * Test that cancelled listeners are not run
+	 */
+	@Test
+	public void testCancel() {
+		BooleanSupplier cancelled = waitingListener();
+		BooleanSupplier waiting = waitingListener();
+		notifier.await("service1", cancelled).run();
+		notifier.await("service1", waiting);
+		assertEquals(1, notifier.getWaitingCount());
+
+		notifier.processJobAdded("service1", null);
+		Mockito.verifyZeroInteractions(cancelled);
+		Mockito.verify(waiting).getAsBoolean();
+		assertEquals(0, notifier.getWaitingCount());
+	}
+
+	/**
+	 * Test that the queues of Services no longer waited on are dropped
+	 */
+	@Test
+	public void testEmptyQueuesRemoved() {
+		Map<?, ?> waiters = (Map<?, ?>) ReflectionTestUtils.getField(notifier, "waiters");
+		notifier.await("service1", waitingListener()).run();
+		notifier.await("service2", waitingListener());
+		assertEquals(1, waiters.size());
+
+		notifier.processJobAdded("service2", null);
+		notifier.processJobAdded("service2", null);
+		assertTrue(waiters.isEmpty());
+	}
+
+	/**
+	 * Test that a listener is left waiting, rather than run on the caller, when the executor is saturated
+	 */
+	@Test
+	public void testExecutorSaturated() {
+		Executor saturated = Mockito.mock(Executor.class);
+		Mockito.doThrow(new TaskRejectedException("Saturated")).when(saturated).execute(Mockito.any(Runnable.class));
+		ReflectionTestUtils.setField(notifier, "executor", saturated);
+		BooleanSupplier listener = waitingListener();
+		notifier.await("service1", listener);
+
+		notifier.processJobAdded("service1", null);
+		Mockito.verifyZeroInteractions(listener);
+		assertEquals(1, notifier.getWaitingCount());
+
+		// The listener is still registered, and is run by the next wakeup
+		ReflectionTestUtils.setField(notifier, "executor", (Executor) Runnable::run);
+		notifier.processJobAdded("service1", null);
+		Mockito.verify(listener).getAsBoolean();
+		assertEquals(0, notifier.getWaitingCount());
+	}
+
+	/**
+	 * Test that local listeners are woken when the broker is unavailable
+	 */
+	@Test
+	public void testNotifyBrokerUnavailable() {
+		Mockito.doThrow(new AmqpConnectException(new Exception("Connection refused"))).when(rabbitTemplate)
+				.convertAndSend(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.any(MessagePostProcessor.class));
+		BooleanSupplier listener = waitingListener();
+		notifier.await("service1", listener);
+		notifier.notifyJobAdded("service1");
+		Mockito.verify(listener).getAsBoolean();
+	}
+
+	/**
+	 * @return A listener whose worker is still waiting
+	 */
+	private BooleanSupplier waitingListener() {
+		BooleanSupplier listener = Mockito.mock(BooleanSupplier.class);
+		Mockito.when(listener.getAsBoolean()).thenReturn(true);
+		return listener;
+	}
+}
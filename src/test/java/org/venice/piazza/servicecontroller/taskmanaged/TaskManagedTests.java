@@ -15,29 +15,36 @@
  **/
 package org.venice.piazza.servicecontroller.taskmanaged;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
-import org.mockito.Spy;
-import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.util.Assert;
 import org.springframework.web.client.ResourceAccessException;
 import org.venice.piazza.servicecontroller.data.accessor.DatabaseAccessor;
-
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.venice.piazza.servicecontroller.data.model.ServiceJobQueueEntity;
+import org.venice.piazza.servicecontroller.messaging.StatusUpdatePublisher;
 
 import exception.InvalidInputException;
 import model.job.Job;
 import model.job.type.AbortJob;
 import model.job.type.ExecuteServiceJob;
+import model.logger.Severity;
 import model.service.metadata.ExecuteServiceData;
+import model.service.metadata.Service;
 import model.service.taskmanaged.ServiceJob;
 import model.status.StatusUpdate;
 import util.PiazzaLogger;
@@ -49,16 +56,16 @@ import util.PiazzaLogger;
  *
  */
 public class TaskManagedTests {
-	@Spy
-	private ObjectMapper objectMapper;
 	@Mock
 	private DatabaseAccessor accessor;
 	@Mock
 	private PiazzaLogger piazzaLogger;
 	@Mock
-	private Queue updateJobsQueue;
+	private StatusUpdatePublisher statusPublisher;
 	@Mock
-	private RabbitTemplate rabbitTemplate;
+	private ServiceQueueNotifier queueNotifier;
+	@Mock
+	private ServiceJobTimeoutWheel timeoutWheel;
 
 	@InjectMocks
 	private ServiceTaskManager serviceTaskManager;
@@ -70,6 +77,26 @@ public class TaskManagedTests {
 	public void setup() {
 		MockitoAnnotations.initMocks(this);
 
+		// Database changes reported with a Status are made immediately
+		Mockito.doAnswer(invocation -> {
+			Runnable databaseUpdate = (Runnable) invocation.getArguments()[1];
+			if (databaseUpdate != null) {
+				databaseUpdate.run();
+			}
+			return null;
+		}).when(statusPublisher).publish(Mockito.any(StatusUpdate.class), Mockito.any(Runnable.class));
+		Mockito.doAnswer(invocation -> {
+			Runnable databaseUpdate = (Runnable) invocation.getArguments()[1];
+			if (databaseUpdate != null) {
+				databaseUpdate.run();
+			}
+			return null;
+		}).when(statusPublisher).publishAll(Mockito.anyListOf(StatusUpdate.class), Mockito.any(Runnable.class));
+
+		Service service = new Service();
+		service.setTimeout(60L);
+		Mockito.when(accessor.getServiceById(Mockito.anyString())).thenReturn(service);
+
 		ReflectionTestUtils.setField(serviceTaskManager, "SPACE", "UnitTest");
 		ReflectionTestUtils.setField(serviceTaskManager, "TIMEOUT_LIMIT_COUNT", 5);
 	}
@@ -78,7 +105,7 @@ public class TaskManagedTests {
 	 * Tests adding a job to a Service's queue.
 	 */
 	@Test
-	public void testAddJob() throws JsonProcessingException {
+	public void testAddJob() {
 		// Mock Data
 		ExecuteServiceJob job = new ExecuteServiceJob("job123");
 		job.setData(new ExecuteServiceData());
@@ -87,8 +114,13 @@ public class TaskManagedTests {
 		// Test, ensure no errors
 		serviceTaskManager.addJobToQueue(job);
 
-		// Test Exception handling, ensure exception is handled
-		Mockito.when(objectMapper.writeValueAsString(Mockito.any())).thenThrow(new JsonMappingException("Oops"));
+		// Ensure the Pending Status is sent
+		ArgumentCaptor<StatusUpdate> statusUpdate = ArgumentCaptor.forClass(StatusUpdate.class);
+		Mockito.verify(statusPublisher).publish(statusUpdate.capture());
+		Assert.isTrue(StatusUpdate.STATUS_PENDING.equals(statusUpdate.getValue().getStatus()));
+		Assert.isTrue("job123".equals(statusUpdate.getValue().getJobId()));
+		// Waiting workers are woken
+		Mockito.verify(queueNotifier).notifyJobAdded("service123");
 	}
 
 	/**
@@ -103,7 +135,7 @@ public class TaskManagedTests {
 	 * Tests updating a Status
 	 */
 	@Test
-	public void testStatusUpdate() throws JsonProcessingException, InvalidInputException {
+	public void testStatusUpdate() throws InvalidInputException {
 		// Mock
 		StatusUpdate mockUpdate = new StatusUpdate(StatusUpdate.STATUS_RUNNING);
 		ServiceJob mockJob = new ServiceJob("job123", "service123");
@@ -116,9 +148,11 @@ public class TaskManagedTests {
 		mockUpdate = new StatusUpdate(StatusUpdate.STATUS_SUCCESS);
 		serviceTaskManager.processStatusUpdate("service123", "job123", mockUpdate);
 
-		// Test - Messaging fails
-		Mockito.when(objectMapper.writeValueAsString(Mockito.any())).thenThrow(new JsonMappingException("Oops"));
-		serviceTaskManager.processStatusUpdate("service123", "job123", mockUpdate);
+		// Both Statuses are sent, and the Job is removed from the queue with the final Status
+		Mockito.verify(statusPublisher).publish(Mockito.any(StatusUpdate.class));
+		Mockito.verify(statusPublisher).publish(Mockito.any(StatusUpdate.class), Mockito.any(Runnable.class));
+		Mockito.verify(accessor).removeJobFromServiceQueue("service123", "job123");
+		Mockito.verify(timeoutWheel).cancel("job123");
 	}
 
 	/**
@@ -131,17 +165,138 @@ public class TaskManagedTests {
 		Assert.isNull(job);
 
 		// Test - No Piazza Job found. Exception should be thrown.
-		Mockito.when(accessor.getNextJobInServiceQueue("service123")).thenReturn(new ServiceJob("job123", "service123"));
+		Mockito.when(accessor.getNextJobInServiceQueue("service123")).thenReturn(new ServiceJobQueueEntity("service123", "job123"));
 		serviceTaskManager.getNextJobFromQueue("service123");
 	}
 
+	/**
+	 * Tests updating the Statuses of several Jobs at once
+	 */
+	@Test
+	public void testStatusUpdates() {
+		// Mock
+		Mockito.when(accessor.getServiceJob("service123", "job1")).thenReturn(new ServiceJob("job1", "service123"));
+		Mockito.when(accessor.getServiceJob("service123", "job2")).thenReturn(new ServiceJob("job2", "service123"));
+		List<StatusUpdate> statusUpdates = new ArrayList<>();
+		statusUpdates.add(new StatusUpdate(StatusUpdate.STATUS_RUNNING));
+		statusUpdates.get(0).setJobId("job1");
+		statusUpdates.add(new StatusUpdate(StatusUpdate.STATUS_SUCCESS));
+		statusUpdates.get(1).setJobId("job2");
+		statusUpdates.add(new StatusUpdate(StatusUpdate.STATUS_SUCCESS));
+		statusUpdates.get(2).setJobId("missingJob");
+
+		// Test
+		Map<String, String> errors = serviceTaskManager.processStatusUpdates("service123", statusUpdates);
+
+		// The unknown Job is reported, the others sent together, and only the finished Job removed from the queue
+		Assert.isTrue(errors.size() == 1 && errors.containsKey("missingJob"));
+		ArgumentCaptor<List> published = ArgumentCaptor.forClass(List.class);
+		Mockito.verify(statusPublisher).publishAll(published.capture(), Mockito.any(Runnable.class));
+		Assert.isTrue(published.getValue().size() == 2);
+		Mockito.verify(accessor).removeJobFromServiceQueue("service123", "job2");
+		Mockito.verify(accessor, Mockito.never()).removeJobFromServiceQueue("service123", "job1");
+	}
+
+	/**
+	 * Tests adding Service Queue entries for earlier Service Jobs at startup
+	 */
+	@Test
+	public void testIndexServiceQueues() {
+		Mockito.when(accessor.indexServiceJobQueues()).thenReturn(2);
+		serviceTaskManager.indexServiceQueues();
+		Mockito.verify(accessor).indexServiceJobQueues();
+		Mockito.verify(piazzaLogger).log(Mockito.contains("Added 2"), Mockito.eq(Severity.INFORMATIONAL));
+	}
+
+	/**
+	 * Tests pulling several Jobs off the queue for a service at once
+	 */
+	@Test
+	public void testGetJobs() {
+		// Test - No service jobs found
+		Mockito.when(accessor.getNextJobsInServiceQueue("service123", 3)).thenReturn(new ArrayList<>());
+		Assert.isTrue(serviceTaskManager.getNextJobsFromQueue("service123", 3).isEmpty());
+		Mockito.verify(statusPublisher, Mockito.never()).publishAll(Mockito.anyListOf(StatusUpdate.class), Mockito.any(Runnable.class));
+
+		// Mock - one proper Job, one Job of the wrong type, and one missing Job
+		Mockito.when(accessor.getNextJobsInServiceQueue("service123", 3)).thenReturn(Arrays.asList(new ServiceJobQueueEntity("service123", "job1"),
+				new ServiceJobQueueEntity("service123", "job2"), new ServiceJobQueueEntity("service123", "job3")));
+		Map<String, Job> jobs = new HashMap<>();
+		jobs.put("job1", new Job());
+		jobs.get("job1").setJobType(new ExecuteServiceJob());
+		jobs.put("job2", new Job());
+		jobs.get("job2").setJobType(new AbortJob("job321"));
+		Mockito.when(accessor.getJobsById(Arrays.asList("job1", "job2", "job3"))).thenReturn(jobs);
+
+		// Test - only the proper Job is returned, and its Running Status sent
+		List<ExecuteServiceJob> results = serviceTaskManager.getNextJobsFromQueue("service123", 3);
+		Assert.isTrue(results.size() == 1);
+		Assert.isTrue("job1".equals(results.get(0).getJobId()));
+		ArgumentCaptor<List> published = ArgumentCaptor.forClass(List.class);
+		Mockito.verify(statusPublisher).publishAll(published.capture(), Mockito.isNull(Runnable.class));
+		Assert.isTrue(published.getValue().size() == 1);
+		StatusUpdate running = (StatusUpdate) published.getValue().get(0);
+		Assert.isTrue(StatusUpdate.STATUS_RUNNING.equals(running.getStatus()) && "job1".equals(running.getJobId()));
+	}
+
+	/**
+	 * Tests waiting for a Job to be added to an empty queue
+	 */
+	@Test
+	public void testAwaitJob() throws Exception {
+		// Mock - the queue is empty until a Job is added
+		ArgumentCaptor<BooleanSupplier> listener = ArgumentCaptor.forClass(BooleanSupplier.class);
+		Runnable cancel = Mockito.mock(Runnable.class);
+		Mockito.when(queueNotifier.await(Mockito.eq("service123"), listener.capture())).thenReturn(cancel);
+		Job mockJob = new Job();
+		mockJob.setJobType(new ExecuteServiceJob("job123"));
+		Mockito.when(accessor.getJobById("job123")).thenReturn(mockJob);
+
+		// Test - waits while the queue is empty
+		CompletableFuture<ExecuteServiceJob> nextJob = serviceTaskManager.awaitNextJobFromQueue("service123");
+		Assert.isTrue(!nextJob.isDone());
+
+		// Test - a Job is added, and the listener pulls it off the queue
+		Mockito.when(accessor.getNextJobInServiceQueue("service123")).thenReturn(new ServiceJobQueueEntity("service123", "job123"));
+		Assert.isTrue(listener.getValue().getAsBoolean());
+		Assert.isTrue("job123".equals(nextJob.get().getJobId()));
+		Mockito.verify(cancel).run();
+	}
+
+	/**
+	 * Tests that no Job is pulled off the queue once the caller has stopped waiting, and that a Job pulled too late is
+	 * returned to the queue
+	 */
+	@Test
+	public void testAwaitJobEnded() {
+		ArgumentCaptor<BooleanSupplier> listener = ArgumentCaptor.forClass(BooleanSupplier.class);
+		Mockito.when(queueNotifier.await(Mockito.eq("service123"), listener.capture())).thenReturn(Mockito.mock(Runnable.class));
+		CompletableFuture<ExecuteServiceJob> nextJob = serviceTaskManager.awaitNextJobFromQueue("service123");
+		nextJob.complete(null);
+
+		// A listener run after the wait ended does not pull a Job, and passes the wakeup on
+		Mockito.when(accessor.getNextJobInServiceQueue("service123")).thenReturn(new ServiceJobQueueEntity("service123", "job123"));
+		Assert.isTrue(!listener.getValue().getAsBoolean());
+		Mockito.verify(accessor, Mockito.times(2)).getNextJobInServiceQueue("service123");
+
+		// Test - returning a Job releases it, and wakes another worker
+		serviceTaskManager.returnJobToQueue("service123", "job123");
+		Mockito.verify(accessor).releaseServiceJob("service123", "job123");
+		ArgumentCaptor<StatusUpdate> statusUpdate = ArgumentCaptor.forClass(StatusUpdate.class);
+		Mockito.verify(statusPublisher).publish(statusUpdate.capture());
+		Assert.isTrue(StatusUpdate.STATUS_PENDING.equals(statusUpdate.getValue().getStatus()));
+		Mockito.verify(queueNotifier).notifyJobAdded("service123");
+	}
+
 	/**
 	 * Tests logic for pulling a Job off the queue for a service
 	 */
 	@Test
-	public void testGetJob() throws ResourceAccessException, InterruptedException, InvalidInputException, JsonProcessingException {
+	public void testGetJob() throws ResourceAccessException, InterruptedException, InvalidInputException {
 		// Mock
-		ServiceJob mockServiceJob = new ServiceJob("job123", "service123");
+		// The entry was queued with a 30 second timeout, before the Service's timeout was changed
+		ServiceJobQueueEntity mockServiceJob = new ServiceJobQueueEntity("service123", "job123", 30000L);
+		mockServiceJob.setStartedOn(1000L);
 		Mockito.when(accessor.getNextJobInServiceQueue(Mockito.eq("service123"))).thenReturn(mockServiceJob);
 
 		// Test - normal flow, proper Job type
@@ -155,22 +310,22 @@ public class TaskManagedTests {
 		Assert.isInstanceOf(ExecuteServiceJob.class, result);
 		Assert.isTrue(result.getJobId().equals("job123"));
 
-		// Test - Handle JSON Exception
-		Mockito.when(objectMapper.writeValueAsString(Mockito.any())).thenThrow(new JsonMappingException("Oops"));
-		result = serviceTaskManager.getNextJobFromQueue("service123");
+		// Ensure the Running Status is sent
+		ArgumentCaptor<StatusUpdate> statusUpdate = ArgumentCaptor.forClass(StatusUpdate.class);
+		Mockito.verify(statusPublisher).publish(statusUpdate.capture());
+		Assert.isTrue(StatusUpdate.STATUS_RUNNING.equals(statusUpdate.getValue().getStatus()));
 
-		// Check not null, and proper Job ID
-		Assert.isInstanceOf(ExecuteServiceJob.class, result);
-		Assert.isTrue(result.getJobId().equals("job123"));
+		// Ensure the timeout deadline is scheduled from the entry's timeout, not the Service's current one
+		Mockito.verify(timeoutWheel).schedule("job123", 31000L);
 	}
 
 	/**
 	 * Tests getting a Job off the queue that has an improper type
 	 */
 	@Test(expected = InvalidInputException.class)
-	public void testGetJobTypeError() throws ResourceAccessException, InterruptedException, JsonProcessingException, InvalidInputException {
+	public void testGetJobTypeError() throws ResourceAccessException, InterruptedException, InvalidInputException {
 		// Mock
-		ServiceJob mockServiceJob = new ServiceJob("job123", "service123");
+		ServiceJobQueueEntity mockServiceJob = new ServiceJobQueueEntity("service123", "job123");
 		Mockito.when(accessor.getNextJobInServiceQueue(Mockito.eq("service123"))).thenReturn(mockServiceJob);
 
 		// Test - Handle Message Exception, with Improper Job Type
@@ -178,23 +333,64 @@ public class TaskManagedTests {
 		mockJob.setJobId("job123");
 		mockJob.setJobType(new AbortJob("job321"));
 		Mockito.when(accessor.getJobById(Mockito.eq("job123"))).thenReturn(mockJob);
-		Mockito.when(objectMapper.writeValueAsString(Mockito.any())).thenThrow(new JsonMappingException("Oops"));
 		serviceTaskManager.getNextJobFromQueue("service123"); // Should throw
 	}
 
 	/**
-	 * Test logic that processes timed out service jobs. Ensures no exceptions are thrown.
+	 * Test the single sweep over timed out service jobs of all services.
 	 */
 	@Test
-	public void processTimeoutJobs() {
-		// Mock
-		ServiceJob mockJob = new ServiceJob("job123", "service123");
-		mockJob.setTimeouts(0);
+	public void testProcessTimedOutServiceJobs() {
+		// Mock - one Job to retry, and two Jobs over the limit
+		Mockito.when(accessor.retryTimedOutServiceJobs(Mockito.anyLong(), Mockito.eq(5)))
+				.thenReturn(Collections.singletonList(new ServiceJobQueueEntity("service123", "job1", 1000L)));
+		Mockito.when(accessor.claimFailedTimedOutServiceJobs(Mockito.anyLong(), Mockito.eq(5))).thenReturn(
+				Arrays.asList(new ServiceJobQueueEntity("service123", "job2", 1000L), new ServiceJobQueueEntity("service456", "job3", 1000L)));
+
+		// Test
+		Assert.isTrue(serviceTaskManager.processTimedOutServiceJobs() == 3);
+
+		// Verify - failures are published in one batch, along with their removal
+		ArgumentCaptor<List> published = ArgumentCaptor.forClass(List.class);
+		Mockito.verify(statusPublisher).publishAll(published.capture(), Mockito.any(Runnable.class));
+		Assert.isTrue(published.getValue().size() == 2);
+		Assert.isTrue(StatusUpdate.STATUS_ERROR.equals(((StatusUpdate) published.getValue().get(0)).getStatus()));
+		Mockito.verify(accessor).removeJobFromServiceQueue("service123", "job2");
+		Mockito.verify(accessor).removeJobFromServiceQueue("service456", "job3");
+		Mockito.verify(queueNotifier).notifyJobAdded("service123");
+	}
+
+	/**
+	 * Test handling the service jobs whose deadlines have passed on the timeout wheel.
+	 */
+	@Test
+	public void testProcessExpiredServiceJobTimeouts() {
+		// Test - no deadlines passed
+		Mockito.when(timeoutWheel.expire(Mockito.anyLong())).thenReturn(Collections.emptyList());
+		Assert.isTrue(serviceTaskManager.processExpiredServiceJobTimeouts() == 0);
+		Mockito.verify(accessor, Mockito.never()).retryTimedOutServiceJobs(Mockito.anyListOf(String.class), Mockito.anyLong(),
+				Mockito.anyInt());
+
+		// Test - one deadline passed, and the Job is retried
+		Mockito.when(timeoutWheel.expire(Mockito.anyLong())).thenReturn(Collections.singletonList("job1"));
+		Mockito.when(accessor.retryTimedOutServiceJobs(Mockito.eq(Collections.singletonList("job1")), Mockito.anyLong(), Mockito.eq(5)))
+				.thenReturn(Collections.singletonList(new ServiceJobQueueEntity("service123", "job1", 1000L)));
+		Mockito.when(accessor.claimFailedTimedOutServiceJobs(Mockito.eq(Collections.singletonList("job1")), Mockito.anyLong(), Mockito.eq(5)))
+				.thenReturn(Collections.emptyList());
+		Assert.isTrue(serviceTaskManager.processExpiredServiceJobTimeouts() == 1);
+		Mockito.verify(queueNotifier).notifyJobAdded("service123");
+	}
 
-		// Test - No Timeout exceeded
-		serviceTaskManager.processTimedOutServiceJob("service123", mockJob);
+	/**
+	 * Test rebuilding the timeout wheel from the started service jobs.
+	 */
+	@Test
+	public void testScheduleStartedServiceJobTimeouts() {
+		ServiceJobQueueEntity started = new ServiceJobQueueEntity("service123", "job1", 1000L);
+		started.setStartedOn(5000L);
+		Mockito.when(accessor.getStartedServiceJobs(2, 1)).thenReturn(Collections.singletonList(started));
 
-		// Test - Timeout exceeded
-		mockJob.setTimeouts(100);
+		Assert.isTrue(serviceTaskManager.scheduleStartedServiceJobTimeouts(2, 1) == 1);
+		Mockito.verify(timeoutWheel).schedule("job1", 6000L);
 	}
 }
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.impl.client.HttpClients;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.venice.piazza.servicecontroller.util.AbortableClientHttpRequestFactory.TrackedJob;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Tests aborting requests made through the request factory
+ */
+public class AbortableClientHttpRequestFactoryTest {
+
+	/**
+	 * Test that a request blocked waiting on a response is released when aborted
+	 */
+	@Test
+	public void testAbortBlockedRequest() throws Exception {
+		AbortableClientHttpRequestFactory factory = new AbortableClientHttpRequestFactory(HttpClients.createDefault());
+		RestTemplate template = new RestTemplate(factory);
+
+		// A server that accepts connections, but never responds
+		try (ServerSocket server = new ServerSocket(0)) {
+			CompletableFuture<Socket> connection = CompletableFuture.supplyAsync(() -> {
+				try {
+					return server.accept();
+				} catch (Exception exception) {
+					throw new IllegalStateException(exception);
+				}
+			});
+			CompletableFuture<String> request = CompletableFuture.supplyAsync(() -> {
+				try (TrackedJob trackedJob = factory.track("job1", () -> false)) {
+					return template.getForObject("http://localhost:" + server.getLocalPort() + "/service", String.class);
+				}
+			});
+
+			try (Socket socket = connection.get(5, TimeUnit.SECONDS)) {
+				assertTrue(factory.abort("job1"));
+				try {
+					request.get(5, TimeUnit.SECONDS);
+				} catch (ExecutionException exception) {
+					assertTrue(exception.getCause() instanceof ResourceAccessException);
+				}
+			}
+			assertTrue(request.isCompletedExceptionally());
+		}
+
+		// Nothing to abort once the request has been aborted, or for a Job that has made no request
+		assertFalse(factory.abort("job1"));
+		assertFalse(factory.abort("job2"));
+		assertFalse(factory.abort(null));
+	}
+
+	/**
+	 * Test that a request made after its Job was cancelled fails at once, rather than waiting on the response
+	 */
+	@Test
+	public void testRequestAfterCancel() throws Exception {
+		AbortableClientHttpRequestFactory factory = new AbortableClientHttpRequestFactory(HttpClients.createDefault());
+		RestTemplate template = new RestTemplate(factory);
+
+		// A server that accepts connections, but never responds
+		try (ServerSocket server = new ServerSocket(0)) {
+			CompletableFuture<String> request = CompletableFuture.supplyAsync(() -> {
+				try (TrackedJob trackedJob = factory.track("job1", () -> true)) {
+					return template.getForObject("http://localhost:" + server.getLocalPort() + "/service", String.class);
+				}
+			});
+			try {
+				request.get(5, TimeUnit.SECONDS);
+			} catch (ExecutionException exception) {
+				assertTrue(exception.getCause() instanceof ResourceAccessException);
+			}
+			assertTrue(request.isCompletedExceptionally());
+		}
+	}
+
+	/**
+	 * Test that requests are no longer tracked once their Job has ended, and requests made outside a Job are never
+	 * tracked
+	 */
+	@Test
+	public void testTrackingEnds() throws Exception {
+		AbortableClientHttpRequestFactory factory = new AbortableClientHttpRequestFactory(HttpClients.createDefault());
+		try (TrackedJob trackedJob = factory.track("job1", () -> false)) {
+			factory.createRequest(new URI("http://localhost/service"), HttpMethod.GET);
+		}
+		assertFalse(factory.abort("job1"));
+
+		// A later request on the same thread does not belong to the ended Job
+		factory.createRequest(new URI("http://localhost/workflow"), HttpMethod.GET);
+		assertFalse(factory.abort("job1"));
+	}
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.venice.piazza.servicecontroller.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import model.status.StatusUpdate;
+
+/**
+ * Tests the shared serialization component
+ */
+public class JsonSerializationTest {
+	private JsonSerialization serialization = new JsonSerialization();
+
+	@Before
+	public void setup() {
+		ReflectionTestUtils.setField(serialization, "mapper", new ObjectMapper());
+		serialization.initialize();
+	}
+
+	/**
+	 * Test that readers and writers are created once per type
+	 */
+	@Test
+	public void testCaching() {
+		assertSame(serialization.getReader(StatusUpdate.class), serialization.getReader(StatusUpdate.class));
+		assertSame(serialization.getWriter(StatusUpdate.class), serialization.getWriter(StatusUpdate.class));
+		assertSame(serialization.getWriter(String.class), serialization.getWriter(String.class));
+	}
+
+	/**
+	 * Test round trips of message types
+	 */
+	@Test
+	public void testReadWrite() throws IOException {
+		StatusUpdate statusUpdate = new StatusUpdate();
+		statusUpdate.setStatus(StatusUpdate.STATUS_RUNNING);
+		statusUpdate.setJobId("123456");
+
+		String json = serialization.write(statusUpdate);
+		StatusUpdate read = serialization.read(json, StatusUpdate.class);
+		assertEquals("123456", read.getJobId());
+		assertEquals(StatusUpdate.STATUS_RUNNING, read.getStatus());
+
+		read = serialization.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), StatusUpdate.class);
+		assertEquals("123456", read.getJobId());
+
+		assertEquals("null", serialization.write(null));
+	}
+}